@@ -0,0 +1,69 @@
+package org.jasig.cas.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Runs the CAS benchmark suites once per configured thread count and writes
+ * the results of each run as JSON, named after the version under test,
+ * so results of different releases can be compared side by side.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class BenchmarkRunner {
+
+    /** Benchmarks to run, as a regular expression. */
+    public static final String PROPERTY_INCLUDE = "jmh.include";
+
+    /** Comma-separated thread counts each suite is run with. */
+    public static final String PROPERTY_THREADS = "jmh.threads";
+
+    /** Number of forks per benchmark. */
+    public static final String PROPERTY_FORKS = "jmh.forks";
+
+    private static final String DEFAULT_INCLUDE = "org\\.jasig\\.cas\\..*Benchmark.*";
+
+    private static final String DEFAULT_THREADS = "1,8,64";
+
+    private BenchmarkRunner() {}
+
+    /**
+     * Main entry point.
+     *
+     * @param args the output directory and the version label of the results
+     * @throws RunnerException if any of the benchmarks fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final File outputDirectory = new File(args.length > 0 ? args[0] : "build/reports/jmh");
+        final String version = args.length > 1 ? args[1] : "current";
+        if (!outputDirectory.exists() && !outputDirectory.mkdirs()) {
+            throw new IllegalStateException("Unable to create benchmark output directory " + outputDirectory);
+        }
+
+        final String include = System.getProperty(PROPERTY_INCLUDE, DEFAULT_INCLUDE);
+        final int forks = Integer.getInteger(PROPERTY_FORKS, 1);
+        final int[] threadCounts = Arrays.stream(System.getProperty(PROPERTY_THREADS, DEFAULT_THREADS).split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+
+        for (final int threads : threadCounts) {
+            final File result = new File(outputDirectory, String.format("cas-%s-%dt.json", version, threads));
+            final Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .forks(forks)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(result.getAbsolutePath())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.jasig.cas.benchmark;
+
+import org.jasig.cas.authentication.AcceptUsersAuthenticationHandler;
+import org.jasig.cas.authentication.Authentication;
+import org.jasig.cas.authentication.BasicCredentialMetaData;
+import org.jasig.cas.authentication.CredentialMetaData;
+import org.jasig.cas.authentication.DefaultAuthenticationBuilder;
+import org.jasig.cas.authentication.DefaultHandlerResult;
+import org.jasig.cas.authentication.UsernamePasswordCredential;
+import org.jasig.cas.authentication.principal.DefaultPrincipalFactory;
+import org.jasig.cas.authentication.principal.Principal;
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.authentication.principal.WebApplicationServiceFactory;
+import org.jasig.cas.ticket.ExpirationPolicy;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.UniqueTicketIdGenerator;
+import org.jasig.cas.ticket.support.HardTimeoutExpirationPolicy;
+import org.jasig.cas.util.DefaultUniqueTicketIdGenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the tickets that are fed into the benchmark suites. Tickets carry
+ * a realistic amount of principal and authentication attributes.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class BenchmarkTickets {
+
+    /** Service tickets are created for this service. */
+    public static final String SERVICE_URL = "https://www.example.org/app/login";
+
+    private static final String HANDLER_NAME = "benchmarkHandler";
+
+    private static final int TIMEOUT_IN_HOURS = 8;
+
+    private static final UniqueTicketIdGenerator ID_GENERATOR = new DefaultUniqueTicketIdGenerator(64, "cas01");
+
+    private static final ExpirationPolicy EXPIRATION_POLICY = new HardTimeoutExpirationPolicy(TIMEOUT_IN_HOURS, TimeUnit.HOURS);
+
+    private static final WebApplicationServiceFactory SERVICE_FACTORY = new WebApplicationServiceFactory();
+
+    private BenchmarkTickets() {}
+
+    /**
+     * Creates a new ticket-granting ticket for a principal with the given number of attributes.
+     *
+     * @param attributeCount the number of principal attributes
+     * @return the ticket-granting ticket
+     */
+    public static TicketGrantingTicket newTicketGrantingTicket(final int attributeCount) {
+        return new TicketGrantingTicketImpl(ID_GENERATOR.getNewTicketId(TicketGrantingTicket.PREFIX),
+                newAuthentication(attributeCount), EXPIRATION_POLICY);
+    }
+
+    /**
+     * Grants a new service ticket from the given ticket-granting ticket.
+     *
+     * @param ticketGrantingTicket the ticket-granting ticket
+     * @return the service ticket
+     */
+    public static ServiceTicket newServiceTicket(final TicketGrantingTicket ticketGrantingTicket) {
+        return ticketGrantingTicket.grantServiceTicket(ID_GENERATOR.getNewTicketId(ServiceTicket.PREFIX),
+                newService(), EXPIRATION_POLICY, false, true);
+    }
+
+    /**
+     * Creates a new authentication for a principal with the given number of attributes.
+     *
+     * @param attributeCount the number of principal attributes
+     * @return the authentication
+     */
+    public static Authentication newAuthentication(final int attributeCount) {
+        final Map<String, Object> attributes = new HashMap<>();
+        for (int i = 0; i < attributeCount; i++) {
+            final List<String> values = new ArrayList<>();
+            values.add("value-" + i);
+            values.add("another-value-" + i);
+            attributes.put("attribute" + i, values);
+        }
+        final Principal principal = new DefaultPrincipalFactory().createPrincipal("casuser", attributes);
+        final CredentialMetaData meta = new BasicCredentialMetaData(new UsernamePasswordCredential("casuser", "Mellon"));
+        return new DefaultAuthenticationBuilder(principal)
+                .addCredential(meta)
+                .addSuccess(HANDLER_NAME, new DefaultHandlerResult(new AcceptUsersAuthenticationHandler(), meta))
+                .build();
+    }
+
+    /**
+     * Creates the service that service tickets are granted for. Granting a service ticket
+     * assigns the principal to the service, so every grant gets its own instance.
+     *
+     * @return the service
+     */
+    public static Service newService() {
+        return SERVICE_FACTORY.createService(SERVICE_URL);
+    }
+
+    /**
+     * Gets the expiration policy shared by all tickets.
+     *
+     * @return the expiration policy
+     */
+    public static ExpirationPolicy getExpirationPolicy() {
+        return EXPIRATION_POLICY;
+    }
+
+    /**
+     * Generates a new ticket id with the given prefix.
+     *
+     * @param prefix the prefix
+     * @return the ticket id
+     */
+    public static String newTicketId(final String prefix) {
+        return ID_GENERATOR.getNewTicketId(prefix);
+    }
+}
@@ -0,0 +1,123 @@
+package org.jasig.cas.benchmark;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the latency and allocation samples of a single stage of a load run.
+ * Instances are confined to the thread that records into them and are merged
+ * once the run is over.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class StageStatistics {
+
+    private static final double PERCENTILE_50 = 0.50;
+
+    private static final double PERCENTILE_99 = 0.99;
+
+    private static final double PERCENTILE_999 = 0.999;
+
+    private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private final String name;
+
+    private long[] latencies;
+
+    private int count;
+
+    private long errors;
+
+    private long allocatedBytes;
+
+    /**
+     * Instantiates a new stage statistics instance.
+     *
+     * @param name          the stage name
+     * @param expectedCount the expected number of samples
+     */
+    public StageStatistics(final String name, final int expectedCount) {
+        this.name = name;
+        this.latencies = new long[Math.max(expectedCount, 1)];
+    }
+
+    /**
+     * Records a successful execution of the stage.
+     *
+     * @param latencyInNanos the latency in nanoseconds
+     * @param bytes          the number of bytes allocated by the executing thread, or a negative value if unknown
+     */
+    public void record(final long latencyInNanos, final long bytes) {
+        if (this.count == this.latencies.length) {
+            this.latencies = Arrays.copyOf(this.latencies, this.latencies.length * 2);
+        }
+        this.latencies[this.count++] = latencyInNanos;
+        if (bytes > 0) {
+            this.allocatedBytes += bytes;
+        }
+    }
+
+    /**
+     * Records a failed execution of the stage.
+     */
+    public void error() {
+        this.errors++;
+    }
+
+    /**
+     * Adds the samples of the given statistics to this instance.
+     *
+     * @param other the other statistics of the same stage
+     */
+    public void merge(final StageStatistics other) {
+        final long[] merged = Arrays.copyOf(this.latencies, this.count + other.count);
+        System.arraycopy(other.latencies, 0, merged, this.count, other.count);
+        this.latencies = merged;
+        this.count += other.count;
+        this.errors += other.errors;
+        this.allocatedBytes += other.allocatedBytes;
+    }
+
+    /**
+     * Summarizes the samples. Latencies are reported in microseconds.
+     *
+     * @param wallClockNanos the wall clock duration of the run in nanoseconds
+     * @return the summary, keyed by metric name
+     */
+    public Map<String, Object> summarize(final long wallClockNanos) {
+        final long[] sorted = Arrays.copyOf(this.latencies, this.count);
+        Arrays.sort(sorted);
+        final double seconds = wallClockNanos / (double) TimeUnit.SECONDS.toNanos(1);
+
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("stage", this.name);
+        summary.put("count", this.count);
+        summary.put("errors", this.errors);
+        summary.put("throughputPerSecond", seconds > 0 ? this.count / seconds : 0);
+        summary.put("p50Micros", toMicros(percentile(sorted, PERCENTILE_50)));
+        summary.put("p99Micros", toMicros(percentile(sorted, PERCENTILE_99)));
+        summary.put("p999Micros", toMicros(percentile(sorted, PERCENTILE_999)));
+        summary.put("allocatedBytesPerOperation", this.count > 0 ? this.allocatedBytes / this.count : 0);
+        summary.put("allocationRateMegabytesPerSecond", seconds > 0 ? this.allocatedBytes / BYTES_PER_MEGABYTE / seconds : 0);
+        return summary;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    private static long percentile(final long[] sorted, final double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.min(Math.max(index, 0), sorted.length - 1)];
+    }
+
+    private static double toMicros(final long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+}
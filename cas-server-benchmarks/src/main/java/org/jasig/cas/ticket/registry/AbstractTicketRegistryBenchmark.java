@@ -0,0 +1,341 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.benchmark.BenchmarkTickets;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class for ticket registry benchmarks. Subclasses provide the registry under test;
+ * this class measures add, get, update and delete of ticket-granting and service tickets.
+ * <p>
+ * Get and update operations run in steady state against a pre-populated registry.
+ * Add and delete operations change the size of the registry and are measured as
+ * single-shot batches of {@link #BATCH_SIZE} operations per thread, so that the registry
+ * does not grow without bound during an iteration.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public abstract class AbstractTicketRegistryBenchmark {
+
+    /** Number of operations per thread in a single-shot add or delete batch. */
+    public static final int BATCH_SIZE = 1000;
+
+    /** Number of tickets the registry is populated with for get and update operations. */
+    public static final int TICKET_COUNT = 1024;
+
+    private static final int TICKET_INDEX_MASK = TICKET_COUNT - 1;
+
+    /**
+     * The registry under test and the attribute count of the trial. Exposed statically so that
+     * per-thread batch states, which are set up after the trial-level setup of this class, can reach them.
+     */
+    private static volatile AbstractTicketRegistry currentRegistry;
+
+    private static volatile int currentAttributeCount;
+
+    /** Number of principal attributes carried by each ticket-granting ticket. */
+    @Param({"10"})
+    public int attributeCount;
+
+    private final TicketGrantingTicket[] ticketGrantingTickets = new TicketGrantingTicket[TICKET_COUNT];
+
+    private final ServiceTicket[] serviceTickets = new ServiceTicket[TICKET_COUNT];
+
+    private AbstractTicketRegistry ticketRegistry;
+
+    /**
+     * Creates and populates the registry under test.
+     *
+     * @throws Exception if the registry cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.ticketRegistry = newTicketRegistry();
+        currentRegistry = this.ticketRegistry;
+        currentAttributeCount = this.attributeCount;
+
+        for (int i = 0; i < TICKET_COUNT; i++) {
+            this.ticketGrantingTickets[i] = BenchmarkTickets.newTicketGrantingTicket(this.attributeCount);
+            this.serviceTickets[i] = BenchmarkTickets.newServiceTicket(this.ticketGrantingTickets[i]);
+            this.ticketRegistry.addTicket(this.ticketGrantingTickets[i]);
+            this.ticketRegistry.addTicket(this.serviceTickets[i]);
+        }
+    }
+
+    /**
+     * Removes the populated tickets and shuts down the registry.
+     *
+     * @throws Exception if the registry cannot be shut down
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (final TicketGrantingTicket ticket : this.ticketGrantingTickets) {
+            this.ticketRegistry.deleteTicket(ticket.getId());
+        }
+        shutdown(this.ticketRegistry);
+        currentRegistry = null;
+    }
+
+    /**
+     * Creates the ticket registry under test. Also used by the protocol load driver
+     * to run the full CAS protocol against each registry.
+     *
+     * @return the ticket registry
+     * @throws Exception if the registry cannot be created
+     */
+    public abstract AbstractTicketRegistry newTicketRegistry() throws Exception;
+
+    /**
+     * Shuts down the ticket registry and any infrastructure it requires.
+     *
+     * @param registry the ticket registry
+     * @throws Exception if the registry cannot be shut down
+     */
+    public void shutdown(final AbstractTicketRegistry registry) throws Exception {
+    }
+
+    /**
+     * Gets a ticket-granting ticket.
+     *
+     * @param cursor the per-thread cursor
+     * @return the ticket
+     */
+    @Benchmark
+    public Ticket getTicketGrantingTicket(final Cursor cursor) {
+        return this.ticketRegistry.getTicket(this.ticketGrantingTickets[cursor.next()].getId());
+    }
+
+    /**
+     * Gets a service ticket.
+     *
+     * @param cursor the per-thread cursor
+     * @return the ticket
+     */
+    @Benchmark
+    public Ticket getServiceTicket(final Cursor cursor) {
+        return this.ticketRegistry.getTicket(this.serviceTickets[cursor.next()].getId());
+    }
+
+    /**
+     * Updates a ticket-granting ticket.
+     *
+     * @param cursor the per-thread cursor
+     */
+    @Benchmark
+    public void updateTicketGrantingTicket(final Cursor cursor) {
+        this.ticketRegistry.updateTicket(this.ticketGrantingTickets[cursor.next()]);
+    }
+
+    /**
+     * Updates a service ticket.
+     *
+     * @param cursor the per-thread cursor
+     */
+    @Benchmark
+    public void updateServiceTicket(final Cursor cursor) {
+        this.ticketRegistry.updateTicket(this.serviceTickets[cursor.next()]);
+    }
+
+    /**
+     * Adds a new ticket-granting ticket.
+     *
+     * @param batch the per-thread batch of new tickets
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = BATCH_SIZE)
+    @Measurement(iterations = 10, batchSize = BATCH_SIZE)
+    public void addTicketGrantingTicket(final AddBatch batch) {
+        this.ticketRegistry.addTicket(batch.nextTicketGrantingTicket());
+    }
+
+    /**
+     * Adds a new service ticket.
+     *
+     * @param batch the per-thread batch of new tickets
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = BATCH_SIZE)
+    @Measurement(iterations = 10, batchSize = BATCH_SIZE)
+    public void addServiceTicket(final AddBatch batch) {
+        this.ticketRegistry.addTicket(batch.nextServiceTicket());
+    }
+
+    /**
+     * Deletes a ticket-granting ticket.
+     *
+     * @param batch the per-thread batch of tickets already in the registry
+     * @return whether the ticket was deleted
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = BATCH_SIZE)
+    @Measurement(iterations = 10, batchSize = BATCH_SIZE)
+    public boolean deleteTicketGrantingTicket(final DeleteBatch batch) {
+        return this.ticketRegistry.deleteTicket(batch.nextTicketGrantingTicket().getId());
+    }
+
+    /**
+     * Deletes a service ticket.
+     *
+     * @param batch the per-thread batch of tickets already in the registry
+     * @return whether the ticket was deleted
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = BATCH_SIZE)
+    @Measurement(iterations = 10, batchSize = BATCH_SIZE)
+    public boolean deleteServiceTicket(final DeleteBatch batch) {
+        return this.ticketRegistry.deleteTicket(batch.nextServiceTicket().getId());
+    }
+
+    /**
+     * Per-thread cursor over the populated tickets.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index;
+
+        /**
+         * Next index into the populated tickets.
+         *
+         * @return the index
+         */
+        public int next() {
+            return this.index++ & TICKET_INDEX_MASK;
+        }
+    }
+
+    /**
+     * Per-thread batch of freshly created tickets. Tickets added during an iteration
+     * are removed again once the iteration completes.
+     */
+    @State(Scope.Thread)
+    public static class AddBatch {
+        private final TicketGrantingTicket[] ticketGrantingTickets = new TicketGrantingTicket[BATCH_SIZE];
+
+        private final ServiceTicket[] serviceTickets = new ServiceTicket[BATCH_SIZE];
+
+        private int tgtIndex;
+
+        private int stIndex;
+
+        /**
+         * Creates the tickets of the next batch.
+         */
+        @Setup(Level.Iteration)
+        public void prepare() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                this.ticketGrantingTickets[i] = BenchmarkTickets.newTicketGrantingTicket(currentAttributeCount);
+                this.serviceTickets[i] = BenchmarkTickets.newServiceTicket(this.ticketGrantingTickets[i]);
+            }
+            rewind();
+        }
+
+        /**
+         * Removes the tickets of this batch from the registry.
+         */
+        @TearDown(Level.Iteration)
+        public void cleanup() {
+            deleteTickets(this.tgtIndex, this.stIndex);
+        }
+
+        /**
+         * Removes the first tickets of this batch from the registry. Tickets that are
+         * no longer in the registry are skipped.
+         *
+         * @param tgtCount the number of ticket-granting tickets to remove
+         * @param stCount  the number of service tickets to remove
+         */
+        protected void deleteTickets(final int tgtCount, final int stCount) {
+            final AbstractTicketRegistry registry = currentRegistry;
+            for (int i = 0; i < tgtCount; i++) {
+                registry.deleteSingleTicket(this.ticketGrantingTickets[i].getId());
+            }
+            for (int i = 0; i < stCount; i++) {
+                registry.deleteSingleTicket(this.serviceTickets[i].getId());
+            }
+        }
+
+        /**
+         * Next ticket-granting ticket of the batch.
+         *
+         * @return the ticket
+         */
+        public TicketGrantingTicket nextTicketGrantingTicket() {
+            return this.ticketGrantingTickets[this.tgtIndex++];
+        }
+
+        /**
+         * Next service ticket of the batch.
+         *
+         * @return the ticket
+         */
+        public ServiceTicket nextServiceTicket() {
+            return this.serviceTickets[this.stIndex++];
+        }
+
+        /**
+         * Starts handing out the tickets of this batch from the beginning again.
+         */
+        protected void rewind() {
+            this.tgtIndex = 0;
+            this.stIndex = 0;
+        }
+    }
+
+    /**
+     * Per-thread batch of tickets that are added to the registry before the iteration starts,
+     * and removed again once the iteration completes.
+     */
+    @State(Scope.Thread)
+    public static class DeleteBatch extends AddBatch {
+
+        @Override
+        @Setup(Level.Iteration)
+        public void prepare() {
+            super.prepare();
+            final AbstractTicketRegistry registry = currentRegistry;
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                registry.addTicket(nextTicketGrantingTicket());
+                registry.addTicket(nextServiceTicket());
+            }
+            rewind();
+        }
+
+        /**
+         * Removes every ticket added by {@link #prepare()}, since each delete benchmark
+         * only removes tickets of one type.
+         */
+        @Override
+        @TearDown(Level.Iteration)
+        public void cleanup() {
+            deleteTickets(BATCH_SIZE, BATCH_SIZE);
+        }
+    }
+}
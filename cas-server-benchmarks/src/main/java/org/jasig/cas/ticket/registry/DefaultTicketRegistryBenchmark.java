@@ -0,0 +1,15 @@
+package org.jasig.cas.ticket.registry;
+
+/**
+ * Benchmarks the in-memory {@link DefaultTicketRegistry}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class DefaultTicketRegistryBenchmark extends AbstractTicketRegistryBenchmark {
+
+    @Override
+    public AbstractTicketRegistry newTicketRegistry() throws Exception {
+        return new DefaultTicketRegistry();
+    }
+}
@@ -0,0 +1,51 @@
+package org.jasig.cas.ticket.registry;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+
+/**
+ * Benchmarks the {@link EhCacheTicketRegistry} backed by heap-only caches.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class EhCacheTicketRegistryBenchmark extends AbstractTicketRegistryBenchmark {
+
+    private static final int MAX_ENTRIES = 1_000_000;
+
+    private static final long TGT_TIME_TO_LIVE = 28800;
+
+    private static final long ST_TIME_TO_LIVE = 300;
+
+    private CacheManager cacheManager;
+
+    @Override
+    public AbstractTicketRegistry newTicketRegistry() throws Exception {
+        final Configuration configuration = new Configuration();
+        configuration.setName("benchmarkCacheManager");
+        configuration.setUpdateCheck(false);
+        this.cacheManager = CacheManager.create(configuration);
+
+        final Cache serviceTicketsCache = newCache("serviceTicketsCache", ST_TIME_TO_LIVE);
+        final Cache ticketGrantingTicketsCache = newCache("ticketGrantingTicketsCache", TGT_TIME_TO_LIVE);
+        final EhCacheTicketRegistry registry = new EhCacheTicketRegistry(serviceTicketsCache, ticketGrantingTicketsCache);
+        registry.afterPropertiesSet();
+        return registry;
+    }
+
+    @Override
+    public void shutdown(final AbstractTicketRegistry registry) throws Exception {
+        this.cacheManager.shutdown();
+    }
+
+    private Cache newCache(final String name, final long timeToLive) {
+        final CacheConfiguration config = new CacheConfiguration(name, MAX_ENTRIES);
+        config.setEternal(false);
+        config.setTimeToLiveSeconds(timeToLive);
+        final Cache cache = new Cache(config);
+        this.cacheManager.addCache(cache);
+        return cache;
+    }
+}
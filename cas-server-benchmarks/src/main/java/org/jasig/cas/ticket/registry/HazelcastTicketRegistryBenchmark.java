@@ -0,0 +1,44 @@
+package org.jasig.cas.ticket.registry;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+/**
+ * Benchmarks the {@link HazelcastTicketRegistry} against a single embedded member.
+ * Network discovery is disabled so that the member does not join other clusters.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class HazelcastTicketRegistryBenchmark extends AbstractTicketRegistryBenchmark {
+
+    private static final long TGT_TIME_TO_LIVE = 28800;
+
+    private static final long ST_TIME_TO_LIVE = 300;
+
+    private HazelcastInstance hazelcastInstance;
+
+    @Override
+    public AbstractTicketRegistry newTicketRegistry() throws Exception {
+        final Config config = new Config("benchmark");
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        final JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(false);
+        join.getAwsConfig().setEnabled(false);
+
+        this.hazelcastInstance = Hazelcast.newHazelcastInstance(config);
+        final HazelcastTicketRegistry registry = new HazelcastTicketRegistry(this.hazelcastInstance,
+                "tickets", TGT_TIME_TO_LIVE, ST_TIME_TO_LIVE);
+        registry.init();
+        return registry;
+    }
+
+    @Override
+    public void shutdown(final AbstractTicketRegistry registry) throws Exception {
+        this.hazelcastInstance.shutdown();
+    }
+}
@@ -0,0 +1,45 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.AbstractMemcachedTests;
+import org.jasig.cas.ticket.registry.support.kryo.KryoTranscoder;
+
+import net.spy.memcached.AddrUtil;
+import net.spy.memcached.ConnectionFactoryBuilder;
+import net.spy.memcached.MemcachedClient;
+
+/**
+ * Benchmarks the {@link MemCacheTicketRegistry} against an embedded memcached process
+ * on the local host, using the {@link KryoTranscoder} as the production configuration does.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class MemCacheTicketRegistryBenchmark extends AbstractTicketRegistryBenchmark {
+
+    private static final int TGT_TIME_TO_LIVE = 28800;
+
+    private static final int ST_TIME_TO_LIVE = 300;
+
+    private static final long OPERATION_TIMEOUT = 1000;
+
+    private MemcachedClient client;
+
+    @Override
+    public AbstractTicketRegistry newTicketRegistry() throws Exception {
+        AbstractMemcachedTests.bootstrap();
+
+        final KryoTranscoder transcoder = new KryoTranscoder();
+        transcoder.initialize();
+        this.client = new MemcachedClient(new ConnectionFactoryBuilder()
+                .setTranscoder(transcoder)
+                .setOpTimeout(OPERATION_TIMEOUT)
+                .build(), AddrUtil.getAddresses("localhost:11211"));
+        return new MemCacheTicketRegistry(this.client, TGT_TIME_TO_LIVE, ST_TIME_TO_LIVE);
+    }
+
+    @Override
+    public void shutdown(final AbstractTicketRegistry registry) throws Exception {
+        this.client.shutdown();
+        AbstractMemcachedTests.shutdown();
+    }
+}
@@ -0,0 +1,113 @@
+package org.jasig.cas.ticket.registry.support.kryo;
+
+import org.jasig.cas.benchmark.BenchmarkTickets;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+
+import net.spy.memcached.CachedData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single {@link KryoTranscoder} shared by all benchmark threads, the way the
+ * memcached client uses it. Run with several threads to observe the cost of borrowing
+ * and releasing pooled Kryo instances, and with a pool smaller than the thread count to
+ * observe the cost of instances created on demand.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class KryoTranscoderBenchmark {
+
+    /** Number of principal attributes carried by the ticket-granting ticket. */
+    @Param({"10"})
+    public int attributeCount;
+
+    /** Maximum number of idle Kryo instances retained by the transcoder. */
+    @Param({"1", "64"})
+    public int poolSize;
+
+    private KryoTranscoder transcoder;
+
+    private TicketGrantingTicket ticketGrantingTicket;
+
+    private ServiceTicket serviceTicket;
+
+    private CachedData encodedTicketGrantingTicket;
+
+    private CachedData encodedServiceTicket;
+
+    /**
+     * Creates the shared transcoder, the tickets and their encoded forms.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.transcoder = new KryoTranscoder();
+        this.transcoder.setPoolSize(this.poolSize);
+        this.transcoder.initialize();
+
+        this.ticketGrantingTicket = BenchmarkTickets.newTicketGrantingTicket(this.attributeCount);
+        this.serviceTicket = BenchmarkTickets.newServiceTicket(this.ticketGrantingTicket);
+
+        this.encodedTicketGrantingTicket = this.transcoder.encode(this.ticketGrantingTicket);
+        this.encodedServiceTicket = this.transcoder.encode(this.serviceTicket);
+    }
+
+    /**
+     * Encodes a ticket-granting ticket.
+     *
+     * @return the encoded ticket
+     */
+    @Benchmark
+    public CachedData encodeTicketGrantingTicket() {
+        return this.transcoder.encode(this.ticketGrantingTicket);
+    }
+
+    /**
+     * Decodes a ticket-granting ticket.
+     *
+     * @return the decoded ticket
+     */
+    @Benchmark
+    public Object decodeTicketGrantingTicket() {
+        return this.transcoder.decode(this.encodedTicketGrantingTicket);
+    }
+
+    /**
+     * Encodes a service ticket.
+     *
+     * @return the encoded ticket
+     */
+    @Benchmark
+    public CachedData encodeServiceTicket() {
+        return this.transcoder.encode(this.serviceTicket);
+    }
+
+    /**
+     * Decodes a service ticket.
+     *
+     * @return the decoded ticket
+     */
+    @Benchmark
+    public Object decodeServiceTicket() {
+        return this.transcoder.decode(this.encodedServiceTicket);
+    }
+}
@@ -0,0 +1,157 @@
+package org.jasig.cas.ticket.registry.support.kryo;
+
+import org.jasig.cas.benchmark.BenchmarkTickets;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.util.SerializationUtils;
+
+import net.spy.memcached.CachedData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link KryoTranscoder} used by the memcached ticket registry with plain
+ * Java serialization, as used by the other distributed registries, for ticket-granting
+ * and service tickets.
+ * <p>
+ * The transcoder is held per thread to measure serialization cost without pool contention;
+ * see {@link KryoTranscoderBenchmark} for a transcoder shared by all threads.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TicketSerializationBenchmark {
+
+    /** Number of principal attributes carried by the ticket-granting ticket. */
+    @Param({"0", "10", "50"})
+    public int attributeCount;
+
+    private KryoTranscoder transcoder;
+
+    private TicketGrantingTicket ticketGrantingTicket;
+
+    private ServiceTicket serviceTicket;
+
+    private CachedData encodedTicketGrantingTicket;
+
+    private CachedData encodedServiceTicket;
+
+    private byte[] serializedTicketGrantingTicket;
+
+    private byte[] serializedServiceTicket;
+
+    /**
+     * Creates the tickets and their encoded forms.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.transcoder = new KryoTranscoder();
+        this.transcoder.initialize();
+
+        this.ticketGrantingTicket = BenchmarkTickets.newTicketGrantingTicket(this.attributeCount);
+        this.serviceTicket = BenchmarkTickets.newServiceTicket(this.ticketGrantingTicket);
+
+        this.encodedTicketGrantingTicket = this.transcoder.encode(this.ticketGrantingTicket);
+        this.encodedServiceTicket = this.transcoder.encode(this.serviceTicket);
+        this.serializedTicketGrantingTicket = SerializationUtils.serialize(this.ticketGrantingTicket);
+        this.serializedServiceTicket = SerializationUtils.serialize(this.serviceTicket);
+    }
+
+    /**
+     * Encodes a ticket-granting ticket with Kryo.
+     *
+     * @return the encoded ticket
+     */
+    @Benchmark
+    public CachedData kryoEncodeTicketGrantingTicket() {
+        return this.transcoder.encode(this.ticketGrantingTicket);
+    }
+
+    /**
+     * Decodes a ticket-granting ticket with Kryo.
+     *
+     * @return the decoded ticket
+     */
+    @Benchmark
+    public Object kryoDecodeTicketGrantingTicket() {
+        return this.transcoder.decode(this.encodedTicketGrantingTicket);
+    }
+
+    /**
+     * Encodes a service ticket with Kryo.
+     *
+     * @return the encoded ticket
+     */
+    @Benchmark
+    public CachedData kryoEncodeServiceTicket() {
+        return this.transcoder.encode(this.serviceTicket);
+    }
+
+    /**
+     * Decodes a service ticket with Kryo.
+     *
+     * @return the decoded ticket
+     */
+    @Benchmark
+    public Object kryoDecodeServiceTicket() {
+        return this.transcoder.decode(this.encodedServiceTicket);
+    }
+
+    /**
+     * Serializes a ticket-granting ticket with Java serialization.
+     *
+     * @return the serialized ticket
+     */
+    @Benchmark
+    public byte[] javaSerializeTicketGrantingTicket() {
+        return SerializationUtils.serialize(this.ticketGrantingTicket);
+    }
+
+    /**
+     * Deserializes a ticket-granting ticket with Java serialization.
+     *
+     * @return the deserialized ticket
+     */
+    @Benchmark
+    public TicketGrantingTicket javaDeserializeTicketGrantingTicket() {
+        return SerializationUtils.deserialize(this.serializedTicketGrantingTicket);
+    }
+
+    /**
+     * Serializes a service ticket with Java serialization.
+     *
+     * @return the serialized ticket
+     */
+    @Benchmark
+    public byte[] javaSerializeServiceTicket() {
+        return SerializationUtils.serialize(this.serviceTicket);
+    }
+
+    /**
+     * Deserializes a service ticket with Java serialization.
+     *
+     * @return the deserialized ticket
+     */
+    @Benchmark
+    public ServiceTicket javaDeserializeServiceTicket() {
+        return SerializationUtils.deserialize(this.serializedServiceTicket);
+    }
+}
@@ -0,0 +1,463 @@
+package org.jasig.cas.web;
+
+import org.jasig.cas.CasViewConstants;
+import org.jasig.cas.authentication.Credential;
+import org.jasig.cas.authentication.UsernamePasswordCredential;
+import org.jasig.cas.authentication.principal.WebApplicationService;
+import org.jasig.cas.authentication.principal.WebApplicationServiceFactory;
+import org.jasig.cas.benchmark.StageStatistics;
+import org.jasig.cas.services.LogoutType;
+import org.jasig.cas.services.RegexRegisteredService;
+import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.ReturnAllAttributeReleasePolicy;
+import org.jasig.cas.ticket.registry.AbstractTicketRegistry;
+import org.jasig.cas.ticket.registry.AbstractTicketRegistryBenchmark;
+import org.jasig.cas.ticket.registry.DefaultTicketRegistryBenchmark;
+import org.jasig.cas.ticket.registry.EhCacheTicketRegistryBenchmark;
+import org.jasig.cas.ticket.registry.HazelcastTicketRegistryBenchmark;
+import org.jasig.cas.ticket.registry.MemCacheTicketRegistryBenchmark;
+import org.jasig.cas.web.flow.AuthenticationViaFormAction;
+import org.jasig.cas.web.flow.GenerateServiceTicketAction;
+import org.jasig.cas.web.flow.SendTicketGrantingTicketAction;
+import org.jasig.cas.web.flow.TerminateSessionAction;
+import org.jasig.cas.web.support.WebUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.webflow.context.servlet.ServletExternalContext;
+import org.springframework.webflow.execution.Event;
+import org.springframework.webflow.test.MockRequestContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Drives the complete CAS protocol inside a single JVM, without a servlet container or
+ * any external service. Each simulated session runs the login webflow actions, validates
+ * one service ticket through {@code /serviceValidate} and another one through
+ * {@code /p3/serviceValidate}, and finally logs out.
+ * <p>
+ * Throughput, the 50th, 99th and 99.9th percentile latencies and the allocation rate are
+ * reported for every stage. Allocations are measured per thread, so they are only reported
+ * on JVMs that support thread allocation accounting. Rendering of the protocol views is not
+ * part of the measured path.
+ * <p>
+ * The run is configured through system properties:
+ * <ul>
+ *     <li>{@code load.registry}: one of {@code default}, {@code ehcache}, {@code hazelcast}, {@code memcached}</li>
+ *     <li>{@code load.services}: number of registered services; the target service is evaluated last</li>
+ *     <li>{@code load.attributes}: number of principal attributes released to the service</li>
+ *     <li>{@code load.threads}: number of concurrent sessions</li>
+ *     <li>{@code load.sessions}: number of measured sessions per thread</li>
+ *     <li>{@code load.warmup}: number of warm-up sessions per thread</li>
+ * </ul>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class ProtocolLoadDriver {
+
+    /** Ticket registry the protocol runs against. */
+    public static final String PROPERTY_REGISTRY = "load.registry";
+
+    /** Number of registered services. */
+    public static final String PROPERTY_SERVICES = "load.services";
+
+    /** Number of principal attributes. */
+    public static final String PROPERTY_ATTRIBUTES = "load.attributes";
+
+    /** Number of concurrent sessions. */
+    public static final String PROPERTY_THREADS = "load.threads";
+
+    /** Number of measured sessions per thread. */
+    public static final String PROPERTY_SESSIONS = "load.sessions";
+
+    /** Number of warm-up sessions per thread. */
+    public static final String PROPERTY_WARMUP = "load.warmup";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProtocolLoadDriver.class);
+
+    private static final String CONTEXT_LOCATION = "classpath:/protocol-load-context.xml";
+
+    private static final String EVENT_SUCCESS = "success";
+
+    private static final String LOGIN_TICKET = "LT-benchmark";
+
+    private static final int DEFAULT_SERVICES = 100;
+
+    private static final int DEFAULT_ATTRIBUTES = 10;
+
+    private static final int DEFAULT_THREADS = 8;
+
+    private static final int DEFAULT_SESSIONS = 10000;
+
+    private static final int DEFAULT_WARMUP = 2000;
+
+    /** Two service tickets are generated per session. */
+    private static final int SERVICE_TICKETS_PER_SESSION = 2;
+
+    /**
+     * Stages of a session, in the order they are executed.
+     */
+    enum Stage {
+        /** Credential submission to {@link AuthenticationViaFormAction}. */
+        LOGIN,
+        /** {@link SendTicketGrantingTicketAction}. */
+        SEND_TGT,
+        /** {@link GenerateServiceTicketAction}. */
+        GENERATE_ST,
+        /** {@code /serviceValidate}. */
+        SERVICE_VALIDATE,
+        /** {@code /p3/serviceValidate}. */
+        P3_SERVICE_VALIDATE,
+        /** {@link TerminateSessionAction}. */
+        LOGOUT
+    }
+
+    /**
+     * Ticket registries the protocol can run against.
+     */
+    enum RegistryType {
+        /** In-memory registry. */
+        DEFAULT(DefaultTicketRegistryBenchmark::new),
+        /** Ehcache registry. */
+        EHCACHE(EhCacheTicketRegistryBenchmark::new),
+        /** Embedded Hazelcast registry. */
+        HAZELCAST(HazelcastTicketRegistryBenchmark::new),
+        /** Memcached registry against an embedded memcached process. */
+        MEMCACHED(MemCacheTicketRegistryBenchmark::new);
+
+        private final Supplier<AbstractTicketRegistryBenchmark> factory;
+
+        RegistryType(final Supplier<AbstractTicketRegistryBenchmark> factory) {
+            this.factory = factory;
+        }
+    }
+
+    /**
+     * A unit of work that is measured as a stage.
+     */
+    @FunctionalInterface
+    private interface StageAction {
+        boolean execute() throws Exception;
+    }
+
+    private final MockServletContext servletContext = new MockServletContext();
+
+    private final WebApplicationServiceFactory serviceFactory = new WebApplicationServiceFactory();
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final boolean allocationsMeasured;
+
+    private final String serviceUrl;
+
+    private final AuthenticationViaFormAction authenticationViaFormAction;
+
+    private final SendTicketGrantingTicketAction sendTicketGrantingTicketAction;
+
+    private final GenerateServiceTicketAction generateServiceTicketAction;
+
+    private final AbstractServiceValidateController serviceValidateController;
+
+    private final AbstractServiceValidateController v3ServiceValidateController;
+
+    private final TerminateSessionAction terminateSessionAction;
+
+    /**
+     * Instantiates a new driver using the beans of the given context.
+     *
+     * @param context    the application context
+     * @param serviceUrl the url of the service that tickets are issued for
+     */
+    private ProtocolLoadDriver(final GenericXmlApplicationContext context, final String serviceUrl) {
+        this.serviceUrl = serviceUrl;
+        this.authenticationViaFormAction = context.getBean("authenticationViaFormAction", AuthenticationViaFormAction.class);
+        this.sendTicketGrantingTicketAction = context.getBean("sendTicketGrantingTicketAction",
+                SendTicketGrantingTicketAction.class);
+        this.generateServiceTicketAction = context.getBean("generateServiceTicketAction", GenerateServiceTicketAction.class);
+        this.serviceValidateController = context.getBean("serviceValidateController", AbstractServiceValidateController.class);
+        this.v3ServiceValidateController = context.getBean("v3ServiceValidateController",
+                AbstractServiceValidateController.class);
+        this.terminateSessionAction = context.getBean("terminateSessionAction", TerminateSessionAction.class);
+
+        this.allocationsMeasured = this.threadMXBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) this.threadMXBean).isThreadAllocatedMemorySupported();
+        if (this.allocationsMeasured) {
+            ((com.sun.management.ThreadMXBean) this.threadMXBean).setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    /**
+     * Main entry point.
+     *
+     * @param args the output directory and the version label of the results
+     * @throws Exception if the run fails
+     */
+    public static void main(final String[] args) throws Exception {
+        final File outputDirectory = new File(args.length > 0 ? args[0] : "build/reports/load");
+        final String version = args.length > 1 ? args[1] : "current";
+
+        final RegistryType registryType = RegistryType.valueOf(
+                System.getProperty(PROPERTY_REGISTRY, RegistryType.DEFAULT.name()).toUpperCase(Locale.ENGLISH));
+        final int serviceCount = Math.max(Integer.getInteger(PROPERTY_SERVICES, DEFAULT_SERVICES), 1);
+        final int attributeCount = Integer.getInteger(PROPERTY_ATTRIBUTES, DEFAULT_ATTRIBUTES);
+        final int threads = Integer.getInteger(PROPERTY_THREADS, DEFAULT_THREADS);
+        final int sessions = Integer.getInteger(PROPERTY_SESSIONS, DEFAULT_SESSIONS);
+        final int warmup = Integer.getInteger(PROPERTY_WARMUP, DEFAULT_WARMUP);
+
+        final AbstractTicketRegistryBenchmark registryFactory = registryType.factory.get();
+        final AbstractTicketRegistry ticketRegistry = registryFactory.newTicketRegistry();
+        final List<RegisteredService> services = newRegisteredServices(serviceCount);
+
+        final GenericXmlApplicationContext context = new GenericXmlApplicationContext();
+        try {
+            context.getBeanFactory().registerSingleton("benchmarkTicketRegistry", ticketRegistry);
+            context.getBeanFactory().registerSingleton("inMemoryRegisteredServices", services);
+            context.getBeanFactory().registerSingleton("attrRepoBackingMap", newAttributes(attributeCount));
+            context.load(CONTEXT_LOCATION);
+            context.refresh();
+
+            final ProtocolLoadDriver driver = new ProtocolLoadDriver(context, newServiceUrl(serviceCount - 1));
+            LOGGER.info("Warming up with {} sessions on each of {} threads against the {} ticket registry",
+                    warmup, threads, registryType);
+            driver.run(threads, warmup);
+
+            LOGGER.info("Running {} sessions on each of {} threads", sessions, threads);
+            final long start = System.nanoTime();
+            final Map<Stage, StageStatistics> statistics = driver.run(threads, sessions);
+            final long wallClockNanos = System.nanoTime() - start;
+
+            final Map<String, Object> report = new LinkedHashMap<>();
+            report.put("version", version);
+            report.put("registry", registryType.name().toLowerCase(Locale.ENGLISH));
+            report.put("services", serviceCount);
+            report.put("attributes", attributeCount);
+            report.put("threads", threads);
+            report.put("sessionsPerThread", sessions);
+            report.put("allocationsMeasured", driver.allocationsMeasured);
+            report.put("wallClockMillis", TimeUnit.NANOSECONDS.toMillis(wallClockNanos));
+            final List<Map<String, Object>> stages = new ArrayList<>();
+            for (final StageStatistics stage : statistics.values()) {
+                final Map<String, Object> summary = stage.summarize(wallClockNanos);
+                LOGGER.info("{}", summary);
+                stages.add(summary);
+            }
+            report.put("stages", stages);
+            writeReport(outputDirectory, String.format("cas-%s-protocol-%s-%dt.json",
+                    version, report.get("registry"), threads), report);
+        } finally {
+            context.close();
+            registryFactory.shutdown(ticketRegistry);
+        }
+    }
+
+    /**
+     * Runs the given number of sessions on each thread.
+     *
+     * @param threads  the number of threads
+     * @param sessions the number of sessions per thread
+     * @return the merged statistics of all threads
+     * @throws Exception if any of the threads fails
+     */
+    private Map<Stage, StageStatistics> run(final int threads, final int sessions) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            final List<Future<Map<Stage, StageStatistics>>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                results.add(executor.submit(() -> {
+                    final Map<Stage, StageStatistics> statistics = newStatistics(sessions);
+                    start.await();
+                    for (int i = 0; i < sessions; i++) {
+                        runSession("user" + thread + '-' + i, statistics);
+                    }
+                    return statistics;
+                }));
+            }
+            start.countDown();
+
+            final Map<Stage, StageStatistics> merged = newStatistics(sessions * threads);
+            for (final Future<Map<Stage, StageStatistics>> result : results) {
+                result.get().forEach((stage, statistics) -> merged.get(stage).merge(statistics));
+            }
+            return merged;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a single session: login, two service ticket validations and logout.
+     *
+     * @param username   the username to authenticate
+     * @param statistics the statistics of the current thread
+     */
+    private void runSession(final String username, final Map<Stage, StageStatistics> statistics) {
+        final WebApplicationService service = this.serviceFactory.createService(this.serviceUrl);
+        final MockRequestContext context = newRequestContext(username);
+        WebUtils.putLoginTicket(context, LOGIN_TICKET);
+        WebUtils.putService(context, service);
+        final Credential credential = new UsernamePasswordCredential(username, username);
+
+        if (!measure(Stage.LOGIN, statistics, () -> isSuccess(
+                this.authenticationViaFormAction.submit(context, credential, context.getMessageContext())))) {
+            return;
+        }
+        try {
+            if (!measure(Stage.SEND_TGT, statistics, () -> isSuccess(this.sendTicketGrantingTicketAction.execute(context)))) {
+                return;
+            }
+            for (final Stage validation : new Stage[] {Stage.SERVICE_VALIDATE, Stage.P3_SERVICE_VALIDATE}) {
+                if (!measure(Stage.GENERATE_ST, statistics, () -> isSuccess(this.generateServiceTicketAction.execute(context)))) {
+                    return;
+                }
+                final String serviceTicketId = WebUtils.getServiceTicketFromRequestScope(context);
+                final AbstractServiceValidateController controller = validation == Stage.SERVICE_VALIDATE
+                        ? this.serviceValidateController : this.v3ServiceValidateController;
+                measure(validation, statistics, () -> isSuccess(controller.handleRequestInternal(
+                        newValidationRequest(service, serviceTicketId), new MockHttpServletResponse())));
+            }
+        } finally {
+            measure(Stage.LOGOUT, statistics, () -> isSuccess(this.terminateSessionAction.terminate(context)));
+        }
+    }
+
+    /**
+     * Executes and measures a stage.
+     *
+     * @param stage      the stage
+     * @param statistics the statistics of the current thread
+     * @param action     the stage action
+     * @return true if the stage succeeded
+     */
+    private boolean measure(final Stage stage, final Map<Stage, StageStatistics> statistics, final StageAction action) {
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+        boolean success;
+        try {
+            success = action.execute();
+        } catch (final Exception e) {
+            LOGGER.debug("Stage {} failed", stage, e);
+            success = false;
+        }
+        final long latency = System.nanoTime() - start;
+        final long allocated = allocatedBytes() - allocatedBefore;
+
+        if (success) {
+            statistics.get(stage).record(latency, allocated);
+        } else {
+            statistics.get(stage).error();
+        }
+        return success;
+    }
+
+    private long allocatedBytes() {
+        if (!this.allocationsMeasured) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean) this.threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private MockRequestContext newRequestContext(final String username) {
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/cas/login");
+        request.addParameter("lt", LOGIN_TICKET);
+        request.addParameter("username", username);
+        request.addParameter("password", username);
+        request.addParameter("service", this.serviceUrl);
+
+        final MockRequestContext context = new MockRequestContext();
+        context.setExternalContext(new ServletExternalContext(this.servletContext, request, new MockHttpServletResponse()));
+        return context;
+    }
+
+    private static MockHttpServletRequest newValidationRequest(final WebApplicationService service, final String ticket) {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/cas/serviceValidate");
+        request.addParameter("service", service.getId());
+        request.addParameter("ticket", ticket);
+        return request;
+    }
+
+    private static boolean isSuccess(final Event event) {
+        return event != null && EVENT_SUCCESS.equals(event.getId());
+    }
+
+    private static boolean isSuccess(final ModelAndView modelAndView) {
+        return modelAndView != null && !modelAndView.getModel().containsKey(CasViewConstants.MODEL_ATTRIBUTE_NAME_ERROR_CODE);
+    }
+
+    private static Map<Stage, StageStatistics> newStatistics(final int sessions) {
+        final Map<Stage, StageStatistics> statistics = new EnumMap<>(Stage.class);
+        for (final Stage stage : Stage.values()) {
+            final int expected = stage == Stage.GENERATE_ST ? sessions * SERVICE_TICKETS_PER_SESSION : sessions;
+            statistics.put(stage, new StageStatistics(stage.name(), expected));
+        }
+        return statistics;
+    }
+
+    /**
+     * Creates the registered services. Services are evaluated in order and the driver targets
+     * the last one, so every service lookup walks the complete list.
+     *
+     * @param count the number of services
+     * @return the registered services
+     */
+    private static List<RegisteredService> newRegisteredServices(final int count) {
+        final List<RegisteredService> services = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final RegexRegisteredService service = new RegexRegisteredService();
+            service.setId(i + 1);
+            service.setName("Benchmark Service " + i);
+            service.setServiceId("^https://app" + i + "\\.example\\.org/.*");
+            service.setEvaluationOrder(i);
+            service.setLogoutType(LogoutType.NONE);
+            service.setAttributeReleasePolicy(new ReturnAllAttributeReleasePolicy());
+            services.add(service);
+        }
+        return services;
+    }
+
+    private static String newServiceUrl(final int index) {
+        return "https://app" + index + ".example.org/login";
+    }
+
+    private static Map<String, List<Object>> newAttributes(final int count) {
+        final Map<String, List<Object>> attributes = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            attributes.put("attribute" + i, Collections.<Object>singletonList("value-" + i));
+        }
+        return attributes;
+    }
+
+    private static void writeReport(final File outputDirectory, final String name, final Map<String, Object> report)
+            throws IOException {
+        if (!outputDirectory.exists() && !outputDirectory.mkdirs()) {
+            throw new IOException("Unable to create output directory " + outputDirectory);
+        }
+        final File file = new File(outputDirectory, name);
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, report);
+        LOGGER.info("Results are written to {}", file);
+    }
+}
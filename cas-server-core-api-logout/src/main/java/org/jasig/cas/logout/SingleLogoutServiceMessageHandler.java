@@ -1,5 +1,10 @@
 package org.jasig.cas.logout;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
 /**
  * This is {@link SingleLogoutServiceMessageHandler} which defines how a logout message
  * for a service that supports SLO should be handled.
@@ -17,4 +22,19 @@ public interface SingleLogoutServiceMessageHandler {
      * @return the logout request
      */
     LogoutRequest handle(SingleLogoutService singleLogoutService, String ticketId);
+
+    /**
+     * Handle logout for a number of slo services at once, which lets implementations
+     * coalesce the logout messages sent to the same endpoints.
+     * By default, each service is handled on its own.
+     *
+     * @param singleLogoutServices the services, keyed by their ticket id
+     * @return the logout requests
+     */
+    default List<LogoutRequest> handle(final Map<String, SingleLogoutService> singleLogoutServices) {
+        return singleLogoutServices.entrySet().stream()
+                .map(entry -> handle(entry.getValue(), entry.getKey()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
 }
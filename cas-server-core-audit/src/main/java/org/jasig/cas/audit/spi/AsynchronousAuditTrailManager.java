@@ -0,0 +1,460 @@
+package org.jasig.cas.audit.spi;
+
+import org.jasig.inspektr.audit.AuditActionContext;
+import org.jasig.inspektr.audit.AuditPointRuntimeInfo;
+import org.jasig.inspektr.audit.AuditTrailManager;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorTwoArg;
+import com.lmax.disruptor.LifecycleAware;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records audit records in the background, so that the requests that are audited do not wait
+ * on the audit trail manager it wraps, such as a database.
+ * <p>
+ * Audit records are handed to a bounded Disruptor ring buffer, which a single thread drains, recording them
+ * in batches when the wrapped manager is a {@link BatchAuditTrailManager}. When the ring buffer is full, or
+ * the wrapped manager fails, records are appended to an overflow file, if defined; they are dropped otherwise.
+ * The overflow file is replayed periodically in the background. While the wrapped manager fails, replays are
+ * put off with an exponential backoff, until it records audit records again. On shutdown, the ring buffer is
+ * drained, and records that cannot be recorded in time are appended to the overflow file.
+ * </p>
+ * <p>
+ * The lag between the time records are queued and recorded, the backlog of the ring buffer, and the records
+ * that overflowed or were dropped are published into the Dropwizard {@link MetricRegistry} under
+ * {@code cas.audit.async}.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class AsynchronousAuditTrailManager implements AuditTrailManager {
+
+    /** Root name of all metrics published by this manager. */
+    public static final String METRIC_PREFIX = "cas.audit.async";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsynchronousAuditTrailManager.class);
+
+    private static final String OVERFLOW_FIELD_SEPARATOR = " ";
+
+    private static final String OVERFLOW_NULL_FIELD = "-";
+
+    private static final int OVERFLOW_FIELDS = 8;
+
+    private static final long MAX_REPLAY_BACKOFF_IN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final EventTranslatorTwoArg<AuditRecord, AuditActionContext, Long> TRANSLATOR =
+            (record, sequence, context, queuedAt) -> {
+                record.context = context;
+                record.queuedAt = queuedAt;
+            };
+
+    private final AuditTrailManager auditTrailManager;
+
+    private final Object overflowLock = new Object();
+
+    @Autowired(required = false)
+    @Qualifier("metrics")
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
+    private boolean enabled = true;
+
+    private int bufferSize = 8192;
+
+    private int batchSize = 100;
+
+    private String overflowFile;
+
+    private long shutdownTimeoutInSeconds = 30;
+
+    private long replayIntervalInMillis = 30000;
+
+    private volatile Disruptor<AuditRecord> disruptor;
+
+    private RingBuffer<AuditRecord> ringBuffer;
+
+    private AuditRecordHandler handler;
+
+    private ScheduledExecutorService replayScheduler;
+
+    private volatile long replayBackoffInMillis;
+
+    private volatile long nextReplayAt;
+
+    /**
+     * Instantiates a new asynchronous audit trail manager.
+     *
+     * @param auditTrailManager the audit trail manager that records the audit records
+     */
+    public AsynchronousAuditTrailManager(final AuditTrailManager auditTrailManager) {
+        this.auditTrailManager = auditTrailManager;
+    }
+
+    /**
+     * Starts the thread that records audit records.
+     */
+    @PostConstruct
+    public void initialize() {
+        if (!this.enabled) {
+            LOGGER.info("Asynchronous audit is disabled; audit records are recorded by [{}] right away",
+                    this.auditTrailManager.getClass().getSimpleName());
+            return;
+        }
+        this.disruptor = new Disruptor<>(AuditRecord::new, ceilingPowerOfTwo(this.bufferSize), r -> {
+            final Thread thread = new Thread(r, "AsynchronousAuditTrailManager");
+            thread.setDaemon(true);
+            return thread;
+        }, ProducerType.MULTI, new BlockingWaitStrategy());
+        this.handler = new AuditRecordHandler();
+        this.disruptor.handleEventsWith(this.handler);
+        this.ringBuffer = this.disruptor.start();
+        this.metricRegistry.register(MetricRegistry.name(METRIC_PREFIX, "backlog"),
+                (Gauge<Long>) () -> this.ringBuffer.getBufferSize() - this.ringBuffer.remainingCapacity());
+        if (StringUtils.isNotBlank(this.overflowFile)) {
+            this.replayScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "AsynchronousAuditTrailManagerReplay");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.replayScheduler.scheduleWithFixedDelay(this::replayOverflow, 0, this.replayIntervalInMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Records the audit records still in the ring buffer, for a while, and appends
+     * the ones that are not recorded in time to the overflow file.
+     */
+    @PreDestroy
+    public void destroy() {
+        final Disruptor<AuditRecord> current = this.disruptor;
+        if (current == null) {
+            return;
+        }
+        this.disruptor = null;
+        if (this.replayScheduler != null) {
+            this.replayScheduler.shutdownNow();
+        }
+        try {
+            current.shutdown(this.shutdownTimeoutInSeconds, TimeUnit.SECONDS);
+        } catch (final TimeoutException e) {
+            current.halt();
+            final List<AuditActionContext> unrecorded = new ArrayList<>();
+            for (long sequence = current.getSequenceValueFor(this.handler) + 1; sequence <= this.ringBuffer.getCursor(); sequence++) {
+                final AuditActionContext context = this.ringBuffer.get(sequence).context;
+                if (context != null) {
+                    unrecorded.add(context);
+                }
+            }
+            LOGGER.warn("{} audit records were not recorded within {} seconds", unrecorded.size(), this.shutdownTimeoutInSeconds);
+            overflow(unrecorded);
+        }
+        this.metricRegistry.removeMatching((name, metric) -> name.startsWith(METRIC_PREFIX + '.'));
+    }
+
+    @Override
+    public void record(final AuditActionContext auditActionContext) {
+        if (this.disruptor == null) {
+            this.auditTrailManager.record(auditActionContext);
+            return;
+        }
+        if (!this.ringBuffer.tryPublishEvent(TRANSLATOR, auditActionContext, System.nanoTime())) {
+            overflow(Collections.singletonList(auditActionContext));
+        }
+    }
+
+    /**
+     * Records a batch of audit records with the wrapped audit trail manager,
+     * and appends them to the overflow file if it fails.
+     *
+     * @param contexts the audit records
+     */
+    private void write(final List<AuditActionContext> contexts) {
+        if (contexts.isEmpty()) {
+            return;
+        }
+        try {
+            recordWithWrappedManager(contexts);
+            resumeReplays();
+        } catch (final Exception e) {
+            LOGGER.error("Cannot record {} audit records: {}", contexts.size(), e.getMessage(), e);
+            this.metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "failure")).mark(contexts.size());
+            putOffReplays();
+            overflow(contexts);
+        }
+    }
+
+    private void recordWithWrappedManager(final List<AuditActionContext> contexts) {
+        if (this.auditTrailManager instanceof BatchAuditTrailManager) {
+            ((BatchAuditTrailManager) this.auditTrailManager).record(contexts);
+        } else {
+            contexts.forEach(this.auditTrailManager::record);
+        }
+    }
+
+    /**
+     * Puts off the next replay of the overflow file, doubling the delay each time the
+     * wrapped manager fails once the previous delay has elapsed.
+     */
+    private void putOffReplays() {
+        final long now = System.currentTimeMillis();
+        if (now < this.nextReplayAt) {
+            return;
+        }
+        this.replayBackoffInMillis = this.replayBackoffInMillis == 0
+                ? this.replayIntervalInMillis : Math.min(this.replayBackoffInMillis * 2, MAX_REPLAY_BACKOFF_IN_MILLIS);
+        this.nextReplayAt = now + this.replayBackoffInMillis;
+    }
+
+    /**
+     * Lets the overflow file be replayed right away, once the wrapped manager records audit records again.
+     */
+    private void resumeReplays() {
+        if (this.nextReplayAt != 0) {
+            this.replayBackoffInMillis = 0;
+            this.nextReplayAt = 0;
+        }
+    }
+
+    /**
+     * Appends audit records to the overflow file, or drops them when no overflow file is defined.
+     *
+     * @param contexts the audit records
+     */
+    private void overflow(final List<AuditActionContext> contexts) {
+        if (contexts.isEmpty()) {
+            return;
+        }
+        if (StringUtils.isBlank(this.overflowFile)) {
+            this.metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "dropped")).mark(contexts.size());
+            LOGGER.warn("{} audit records are dropped, and no overflow file is defined to keep them", contexts.size());
+            return;
+        }
+        if (append(contexts)) {
+            this.metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "overflow")).mark(contexts.size());
+        }
+    }
+
+    /**
+     * Appends audit records to the overflow file.
+     *
+     * @param contexts the audit records
+     * @return true if the records are kept, false if they are dropped
+     */
+    private boolean append(final List<AuditActionContext> contexts) {
+        synchronized (this.overflowLock) {
+            try (BufferedWriter writer = Files.newBufferedWriter(new File(this.overflowFile).toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (final AuditActionContext context : contexts) {
+                    writer.write(encode(context));
+                    writer.newLine();
+                }
+                return true;
+            } catch (final IOException e) {
+                this.metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "dropped")).mark(contexts.size());
+                LOGGER.error("{} audit records are dropped; they cannot be kept in [{}]", contexts.size(), this.overflowFile, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Records the audit records of the overflow file, if any, with the wrapped audit trail manager, unless
+     * replays are put off. Stops at the first batch that fails, and keeps the records left in the overflow file.
+     */
+    private void replayOverflow() {
+        if (System.currentTimeMillis() < this.nextReplayAt) {
+            return;
+        }
+        final File file = new File(this.overflowFile);
+        final File replay = new File(this.overflowFile + ".replay");
+        final List<String> lines;
+        try {
+            synchronized (this.overflowLock) {
+                if (!file.exists()) {
+                    return;
+                }
+                Files.move(file.toPath(), replay.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            lines = Files.readAllLines(replay.toPath(), StandardCharsets.UTF_8);
+            Files.delete(replay.toPath());
+        } catch (final IOException e) {
+            LOGGER.error("Cannot read audit records from [{}]: {}", file, e.getMessage(), e);
+            return;
+        }
+        final List<AuditActionContext> contexts = new ArrayList<>(lines.size());
+        for (final String line : lines) {
+            final AuditActionContext context = decode(line);
+            if (context != null) {
+                contexts.add(context);
+            }
+        }
+        LOGGER.info("Recording {} audit records kept in [{}]", contexts.size(), file);
+        for (int from = 0; from < contexts.size(); from += this.batchSize) {
+            try {
+                recordWithWrappedManager(contexts.subList(from, Math.min(from + this.batchSize, contexts.size())));
+            } catch (final Exception e) {
+                putOffReplays();
+                LOGGER.warn("Cannot record audit records kept in [{}]; trying again in {} ms: {}",
+                        file, this.replayBackoffInMillis, e.getMessage());
+                append(contexts.subList(from, contexts.size()));
+                return;
+            }
+        }
+        resumeReplays();
+    }
+
+    private static String encode(final AuditActionContext context) {
+        final AuditPointRuntimeInfo runtimeInfo = context.getAuditPointRuntimeInfo();
+        return String.join(OVERFLOW_FIELD_SEPARATOR,
+                encodeField(context.getPrincipal()),
+                encodeField(context.getResourceOperatedUpon()),
+                encodeField(context.getActionPerformed()),
+                encodeField(context.getApplicationCode()),
+                String.valueOf(context.getWhenActionWasPerformed().getTime()),
+                encodeField(context.getClientIpAddress()),
+                encodeField(context.getServerIpAddress()),
+                encodeField(runtimeInfo == null ? null : runtimeInfo.asString()));
+    }
+
+    private static AuditActionContext decode(final String line) {
+        final String[] fields = StringUtils.split(line, OVERFLOW_FIELD_SEPARATOR);
+        if (fields.length != OVERFLOW_FIELDS) {
+            LOGGER.warn("Ignoring malformed audit record [{}]", line);
+            return null;
+        }
+        int index = 0;
+        return new AuditActionContext(decodeField(fields[index++]), decodeField(fields[index++]), decodeField(fields[index++]),
+                decodeField(fields[index++]), new Date(Long.parseLong(fields[index++])), decodeField(fields[index++]),
+                decodeField(fields[index++]), new StoredAuditPointRuntimeInfo(decodeField(fields[index])));
+    }
+
+    private static String encodeField(final String value) {
+        return value == null ? OVERFLOW_NULL_FIELD : Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeField(final String value) {
+        return OVERFLOW_NULL_FIELD.equals(value) ? null : new String(Base64.getDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+
+    private static int ceilingPowerOfTwo(final int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    public void setMetricRegistry(final MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setBufferSize(final int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setOverflowFile(final String overflowFile) {
+        this.overflowFile = overflowFile;
+    }
+
+    public void setShutdownTimeoutInSeconds(final long shutdownTimeoutInSeconds) {
+        this.shutdownTimeoutInSeconds = shutdownTimeoutInSeconds;
+    }
+
+    public void setReplayIntervalInMillis(final long replayIntervalInMillis) {
+        this.replayIntervalInMillis = replayIntervalInMillis;
+    }
+
+    /**
+     * Slot of the ring buffer, holding an audit record and the time it was queued.
+     */
+    private static final class AuditRecord {
+
+        private AuditActionContext context;
+
+        private long queuedAt;
+    }
+
+    /**
+     * Records the audit records of the ring buffer in batches.
+     */
+    private final class AuditRecordHandler implements EventHandler<AuditRecord>, LifecycleAware {
+
+        private final List<AuditActionContext> batch = new ArrayList<>();
+
+        @Override
+        public void onEvent(final AuditRecord record, final long sequence, final boolean endOfBatch) {
+            batch.add(record.context);
+            metricRegistry.timer(MetricRegistry.name(METRIC_PREFIX, "lag"))
+                    .update(System.nanoTime() - record.queuedAt, TimeUnit.NANOSECONDS);
+            record.context = null;
+            if (endOfBatch || batch.size() >= batchSize) {
+                write(batch);
+                batch.clear();
+            }
+        }
+
+        @Override
+        public void onStart() {
+            LOGGER.debug("Recording audit records in the background");
+        }
+
+        @Override
+        public void onShutdown() {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Runtime information of an audit record read from the overflow file.
+     */
+    private static final class StoredAuditPointRuntimeInfo implements AuditPointRuntimeInfo {
+
+        private static final long serialVersionUID = -3393766466407453658L;
+
+        private final String value;
+
+        StoredAuditPointRuntimeInfo(final String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String asString() {
+            return this.value;
+        }
+    }
+}
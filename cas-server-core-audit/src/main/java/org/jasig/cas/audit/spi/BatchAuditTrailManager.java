@@ -0,0 +1,23 @@
+package org.jasig.cas.audit.spi;
+
+import org.jasig.inspektr.audit.AuditActionContext;
+import org.jasig.inspektr.audit.AuditTrailManager;
+
+import java.util.List;
+
+/**
+ * An {@link AuditTrailManager} that is able to record a number of audit records at once,
+ * such as the ones queued by the {@link AsynchronousAuditTrailManager}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public interface BatchAuditTrailManager extends AuditTrailManager {
+
+    /**
+     * Record a batch of audit records.
+     *
+     * @param auditActionContexts the audit records
+     */
+    void record(List<AuditActionContext> auditActionContexts);
+}
@@ -0,0 +1,71 @@
+package org.jasig.cas.audit.spi;
+
+import org.jasig.inspektr.audit.AuditActionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link BatchAuditTrailManager} that appends audit records to a local file, one line per record,
+ * writing and flushing each batch of records at once.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class FileAuditTrailManager implements BatchAuditTrailManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileAuditTrailManager.class);
+
+    private final File file;
+
+    private String separator = "|";
+
+    /**
+     * Instantiates a new file audit trail manager.
+     *
+     * @param file the file the audit records are appended to
+     */
+    public FileAuditTrailManager(final File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void record(final AuditActionContext auditActionContext) {
+        record(Collections.singletonList(auditActionContext));
+    }
+
+    @Override
+    public synchronized void record(final List<AuditActionContext> auditActionContexts) {
+        try (BufferedWriter writer = Files.newBufferedWriter(this.file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (final AuditActionContext context : auditActionContexts) {
+                writer.write(String.join(this.separator,
+                        DateTimeFormatter.ISO_INSTANT.format(context.getWhenActionWasPerformed().toInstant()),
+                        context.getPrincipal(),
+                        context.getResourceOperatedUpon(),
+                        context.getActionPerformed(),
+                        context.getApplicationCode(),
+                        context.getClientIpAddress(),
+                        context.getServerIpAddress()));
+                writer.newLine();
+            }
+        } catch (final IOException e) {
+            LOGGER.error("Cannot write {} audit records to [{}]", auditActionContexts.size(), this.file, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void setSeparator(final String separator) {
+        this.separator = separator;
+    }
+}
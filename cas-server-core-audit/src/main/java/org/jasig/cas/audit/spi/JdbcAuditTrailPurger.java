@@ -0,0 +1,312 @@
+package org.jasig.cas.audit.spi;
+
+import org.jasig.cas.util.DateTimeUtils;
+import org.jasig.cas.web.support.WebUtils;
+
+import org.apache.commons.lang3.StringUtils;
+import org.quartz.Job;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.Scheduler;
+import org.quartz.SimpleScheduleBuilder;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.support.SpringBeanAutowiringSupport;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Purges audit records older than the maximum age from the Inspektr JDBC audit trail.
+ * <p>
+ * When the audit table is partitioned by time, with one partition per day or month, whole partitions whose records
+ * are all older than the maximum age are dropped or truncated with the configured SQL statement, rather than deleting
+ * their records one by one. Partitions for the current and next periods are also created ahead of time, when a
+ * statement to create them is configured. Statements may refer to the partition name suffix with {@code {partition}},
+ * and to the first day of the partition and of the next one with {@code {from}} and {@code {to}}.
+ * Without such statements, records are deleted on the indexed {@code AUD_DATE} column in batches of a bounded size,
+ * oldest first, so that each delete holds its locks and undo space briefly.
+ * </p>
+ * <p>
+ * This job replaces the cleanup criteria of the Inspektr {@code JdbcAuditTrailManager}, which nothing schedules,
+ * as the one way audit records are purged.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@Component("jdbcAuditTrailPurger")
+public class JdbcAuditTrailPurger implements Job {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JdbcAuditTrailPurger.class);
+
+    private static final String PARTITION_PLACEHOLDER = "{partition}";
+
+    private static final String FROM_PLACEHOLDER = "{from}";
+
+    private static final String TO_PLACEHOLDER = "{to}";
+
+    private static final String DELETE_SQL_TEMPLATE = "DELETE FROM %s WHERE AUD_DATE <= ?";
+
+    private static final String SELECT_BATCH_SQL_TEMPLATE = "SELECT AUD_DATE FROM %s WHERE AUD_DATE < ? ORDER BY AUD_DATE";
+
+    @Autowired(required = false)
+    @Qualifier("inspektrAuditTrailDataSource")
+    private DataSource dataSource;
+
+    @Autowired(required = false)
+    private ApplicationContext applicationContext;
+
+    @Autowired(required = false)
+    @Qualifier("scheduler")
+    private Scheduler scheduler;
+
+    @Value("${cas.audit.max.agedays:180}")
+    private int maxAgeDays = 180;
+
+    @Value("${cas.audit.purge.batchSize:1000}")
+    private int batchSize = 1000;
+
+    @Value("${cas.audit.purge.tableName:COM_AUDIT_TRAIL}")
+    private String tableName = "COM_AUDIT_TRAIL";
+
+    @Value("${cas.audit.purge.partition.unit:MONTHS}")
+    private ChronoUnit partitionUnit = ChronoUnit.MONTHS;
+
+    @Value("${cas.audit.purge.partition.pattern:yyyyMM}")
+    private String partitionPattern = "yyyyMM";
+
+    @Value("${cas.audit.purge.partition.dropSql:}")
+    private String dropPartitionSql;
+
+    @Value("${cas.audit.purge.partition.createSql:}")
+    private String createPartitionSql;
+
+    @Value("${cas.audit.purge.partition.lookback:12}")
+    private int lookbackPartitions = 12;
+
+    @Value("${cas.audit.purge.partition.ahead:1}")
+    private int aheadPartitions = 1;
+
+    @Value("${cas.audit.purge.repeatinterval:3600}")
+    private int refreshInterval = 3600;
+
+    @Value("${cas.audit.purge.startdelay:60}")
+    private int startDelay = 60;
+
+    /**
+     * Instantiates a new purger.
+     */
+    public JdbcAuditTrailPurger() {}
+
+    /**
+     * Instantiates a new purger.
+     *
+     * @param dataSource the data source of the audit trail
+     */
+    public JdbcAuditTrailPurger(final DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Schedule the purge job.
+     */
+    @PostConstruct
+    public void schedulePurgeJob() {
+        try {
+            if (shouldSchedulePurgeJob()) {
+                LOGGER.info("Preparing to schedule job to purge audit records...");
+
+                final JobDetail job = JobBuilder.newJob(this.getClass())
+                    .withIdentity(this.getClass().getSimpleName().concat(UUID.randomUUID().toString()))
+                    .build();
+
+                final Trigger trigger = TriggerBuilder.newTrigger()
+                    .withIdentity(this.getClass().getSimpleName().concat(UUID.randomUUID().toString()))
+                    .startAt(DateTimeUtils.dateOf(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(this.startDelay)))
+                    .withSchedule(SimpleScheduleBuilder.simpleSchedule()
+                        .withIntervalInSeconds(this.refreshInterval)
+                        .repeatForever()).build();
+
+                this.scheduler.scheduleJob(job, trigger);
+                LOGGER.info("{} will purge audit records older than {} days every {} seconds",
+                    this.getClass().getSimpleName(), this.maxAgeDays, this.refreshInterval);
+            }
+        } catch (final Exception e) {
+            LOGGER.warn(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void execute(final JobExecutionContext jobExecutionContext) throws JobExecutionException {
+        SpringBeanAutowiringSupport.processInjectionBasedOnCurrentContext(this);
+        try {
+            createPartitions();
+            purge();
+        } catch (final Exception e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates the partitions of the current and next periods, when a statement to create them is configured.
+     * Partitions that already exist are left as they are.
+     *
+     * @return the number of partitions created
+     */
+    public int createPartitions() {
+        if (StringUtils.isBlank(this.createPartitionSql)) {
+            return 0;
+        }
+        final LocalDate current = startOfPartition(LocalDate.now(ZoneOffset.UTC));
+        int created = 0;
+        for (int i = 0; i <= this.aheadPartitions; i++) {
+            if (execute(this.createPartitionSql, current.plus(i, this.partitionUnit))) {
+                created++;
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Purges audit records older than the maximum age, by dropping whole partitions when a statement to drop
+     * them is configured, and by deleting records otherwise.
+     *
+     * @return the number of partitions dropped, or of records deleted
+     */
+    public int purge() {
+        final LocalDate cutoff = LocalDate.now(ZoneOffset.UTC).minusDays(this.maxAgeDays);
+        if (StringUtils.isBlank(this.dropPartitionSql)) {
+            final int deleted = delete(Timestamp.valueOf(cutoff.atStartOfDay()));
+            LOGGER.info("Deleted {} audit records older than {}", deleted, cutoff);
+            return deleted;
+        }
+
+        final LocalDate newest = startOfPartition(cutoff).minus(1, this.partitionUnit);
+        int dropped = 0;
+        for (int i = 0; i < this.lookbackPartitions; i++) {
+            if (execute(this.dropPartitionSql, newest.minus(i, this.partitionUnit))) {
+                dropped++;
+            }
+        }
+        LOGGER.info("Dropped {} audit partitions older than {}", dropped, cutoff);
+        return dropped;
+    }
+
+    /**
+     * Deletes the records older than the cutoff in batches, each one up to the date of the oldest records.
+     * Records that share the date that ends a batch are deleted with it, so a batch may exceed the batch size
+     * by the number of records recorded at the same instant.
+     *
+     * @param cutoff the date of the oldest records to keep
+     * @return the number of records deleted
+     */
+    private int delete(final Timestamp cutoff) {
+        final JdbcTemplate selectTemplate = new JdbcTemplate(this.dataSource);
+        selectTemplate.setMaxRows(this.batchSize);
+        final JdbcTemplate deleteTemplate = new JdbcTemplate(this.dataSource);
+        int deleted = 0;
+        while (true) {
+            final List<Timestamp> dates = selectTemplate.queryForList(String.format(SELECT_BATCH_SQL_TEMPLATE, this.tableName),
+                    Timestamp.class, cutoff);
+            if (dates.isEmpty()) {
+                return deleted;
+            }
+            deleted += deleteTemplate.update(String.format(DELETE_SQL_TEMPLATE, this.tableName), dates.get(dates.size() - 1));
+            LOGGER.debug("Deleted {} audit records so far", deleted);
+            if (dates.size() < this.batchSize) {
+                return deleted;
+            }
+        }
+    }
+
+    /**
+     * Runs a partition statement, ignoring failures such as partitions that do not exist, or already exist.
+     *
+     * @param template the statement template
+     * @param from     the first day of the partition
+     * @return true if the statement succeeded
+     */
+    private boolean execute(final String template, final LocalDate from) {
+        final String sql = template
+                .replace(PARTITION_PLACEHOLDER, from.format(DateTimeFormatter.ofPattern(this.partitionPattern)))
+                .replace(FROM_PLACEHOLDER, from.toString())
+                .replace(TO_PLACEHOLDER, from.plus(1, this.partitionUnit).toString());
+        try {
+            new JdbcTemplate(this.dataSource).execute(sql);
+            LOGGER.debug("Executed [{}]", sql);
+            return true;
+        } catch (final DataAccessException e) {
+            LOGGER.debug("Statement [{}] failed: {}", sql, e.getMessage());
+            return false;
+        }
+    }
+
+    private LocalDate startOfPartition(final LocalDate date) {
+        return this.partitionUnit == ChronoUnit.MONTHS ? date.withDayOfMonth(1) : date;
+    }
+
+    private boolean shouldSchedulePurgeJob() {
+        if (this.dataSource == null) {
+            LOGGER.debug("No data source is defined for {}. Ignoring the audit purge job", this.getClass().getSimpleName());
+            return false;
+        }
+        return this.startDelay > 0 && this.scheduler != null && this.applicationContext != null
+                && this.applicationContext.getParent() == null && WebUtils.isCasServletInitializing(this.applicationContext);
+    }
+
+    public void setMaxAgeDays(final int maxAgeDays) {
+        this.maxAgeDays = maxAgeDays;
+    }
+
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setTableName(final String tableName) {
+        this.tableName = tableName;
+    }
+
+    public void setPartitionUnit(final ChronoUnit partitionUnit) {
+        this.partitionUnit = partitionUnit;
+    }
+
+    public void setPartitionPattern(final String partitionPattern) {
+        this.partitionPattern = partitionPattern;
+    }
+
+    public void setDropPartitionSql(final String dropPartitionSql) {
+        this.dropPartitionSql = dropPartitionSql;
+    }
+
+    public void setCreatePartitionSql(final String createPartitionSql) {
+        this.createPartitionSql = createPartitionSql;
+    }
+
+    public void setLookbackPartitions(final int lookbackPartitions) {
+        this.lookbackPartitions = lookbackPartitions;
+    }
+
+    public void setAheadPartitions(final int aheadPartitions) {
+        this.aheadPartitions = aheadPartitions;
+    }
+}
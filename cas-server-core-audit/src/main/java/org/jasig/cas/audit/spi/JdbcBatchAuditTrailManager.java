@@ -0,0 +1,85 @@
+package org.jasig.cas.audit.spi;
+
+import org.jasig.inspektr.audit.AuditActionContext;
+import org.jasig.inspektr.audit.support.JdbcAuditTrailManager;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * A {@link JdbcAuditTrailManager} that inserts batches of audit records with a single JDBC batch statement,
+ * inside one transaction, rather than one statement and transaction per record. Batches are inserted on the
+ * calling thread, unlike the records Inspektr hands to its own executor, so that a failure reaches the caller,
+ * such as the {@link AsynchronousAuditTrailManager}, which then keeps the batch in its overflow file.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class JdbcBatchAuditTrailManager extends JdbcAuditTrailManager implements BatchAuditTrailManager {
+
+    private static final String INSERT_SQL_TEMPLATE = "INSERT INTO %s "
+            + "(AUD_USER, AUD_CLIENT_IP, AUD_SERVER_IP, AUD_RESOURCE, AUD_ACTION, APPLIC_CD, AUD_DATE) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final int DEFAULT_COLUMN_LENGTH = 100;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private String tableName = "COM_AUDIT_TRAIL";
+
+    private int columnLength = DEFAULT_COLUMN_LENGTH;
+
+    /**
+     * Instantiates a new JDBC batch audit trail manager.
+     *
+     * @param transactionTemplate the transaction template
+     */
+    public JdbcBatchAuditTrailManager(final TransactionTemplate transactionTemplate) {
+        super(transactionTemplate);
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void record(final List<AuditActionContext> auditActionContexts) {
+        if (auditActionContexts.isEmpty()) {
+            return;
+        }
+        this.transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus transactionStatus) {
+                getJdbcTemplate().batchUpdate(String.format(INSERT_SQL_TEMPLATE, tableName), auditActionContexts,
+                        auditActionContexts.size(), (ps, context) -> {
+                            int index = 1;
+                            ps.setString(index++, truncate(context.getPrincipal()));
+                            ps.setString(index++, context.getClientIpAddress());
+                            ps.setString(index++, context.getServerIpAddress());
+                            ps.setString(index++, truncate(context.getResourceOperatedUpon()));
+                            ps.setString(index++, truncate(context.getActionPerformed()));
+                            ps.setString(index++, context.getApplicationCode());
+                            ps.setTimestamp(index, new Timestamp(context.getWhenActionWasPerformed().getTime()));
+                        });
+            }
+        });
+    }
+
+    private String truncate(final String value) {
+        return StringUtils.abbreviate(value, this.columnLength);
+    }
+
+    @Override
+    public void setTableName(final String tableName) {
+        super.setTableName(tableName);
+        this.tableName = tableName;
+    }
+
+    @Override
+    public void setColumnLength(final int columnLength) {
+        super.setColumnLength(columnLength);
+        this.columnLength = columnLength;
+    }
+}
@@ -0,0 +1,172 @@
+package org.jasig.cas.audit.spi;
+
+import org.jasig.inspektr.audit.AuditActionContext;
+import org.jasig.inspektr.audit.AuditPointRuntimeInfo;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link AsynchronousAuditTrailManager}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class AsynchronousAuditTrailManagerTests {
+
+    private static final long TIMEOUT_IN_MILLIS = 5000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    private final RecordingAuditTrailManager delegate = new RecordingAuditTrailManager();
+
+    private AsynchronousAuditTrailManager manager;
+
+    private File overflowFile;
+
+    @Before
+    public void setUp() {
+        this.overflowFile = new File(this.folder.getRoot(), "audit-overflow.log");
+        this.manager = new AsynchronousAuditTrailManager(this.delegate);
+        this.manager.setMetricRegistry(this.metricRegistry);
+        this.manager.setBufferSize(4);
+        this.manager.setBatchSize(10);
+        this.manager.setOverflowFile(this.overflowFile.getAbsolutePath());
+        this.manager.setReplayIntervalInMillis(50);
+    }
+
+    @After
+    public void tearDown() {
+        this.delegate.release.countDown();
+        this.manager.destroy();
+    }
+
+    @Test
+    public void verifyRecordsAreRecordedInBatches() throws Exception {
+        this.manager.initialize();
+        this.delegate.release.countDown();
+        for (int i = 0; i < 3; i++) {
+            this.manager.record(newAuditActionContext("casuser" + i));
+        }
+        await(() -> this.delegate.records.size() == 3);
+        assertTrue(this.delegate.batches.get() <= 3);
+        assertEquals(3, this.metricRegistry.timer(MetricRegistry.name(AsynchronousAuditTrailManager.METRIC_PREFIX, "lag")).getCount());
+    }
+
+    @Test
+    public void verifyRecordsOverflowToDiskAndAreRecordedLater() throws Exception {
+        this.manager.initialize();
+        for (int i = 0; i < 20; i++) {
+            this.manager.record(newAuditActionContext("casuser" + i));
+        }
+        assertTrue(this.overflowFile.exists());
+        assertTrue(this.metricRegistry.meter(MetricRegistry.name(AsynchronousAuditTrailManager.METRIC_PREFIX, "overflow"))
+                .getCount() > 0);
+
+        this.delegate.release.countDown();
+        await(() -> this.delegate.records.size() == 20);
+        assertFalse(this.overflowFile.exists());
+        assertTrue(this.delegate.records.stream().anyMatch(r -> "casuser19".equals(r.getPrincipal())));
+    }
+
+    @Test
+    public void verifyReplaysArePutOffWhileDelegateFails() throws Exception {
+        this.delegate.failing = true;
+        this.delegate.release.countDown();
+        this.manager.initialize();
+        for (int i = 0; i < 3; i++) {
+            this.manager.record(newAuditActionContext("casuser" + i));
+        }
+        await(() -> this.overflowFile.exists());
+        Thread.sleep(600);
+        assertTrue(this.delegate.attempts.get() < 8);
+        assertTrue(this.delegate.records.isEmpty());
+
+        this.delegate.failing = false;
+        this.manager.record(newAuditActionContext("casuser3"));
+        await(() -> this.delegate.records.size() == 4);
+        assertFalse(this.overflowFile.exists());
+    }
+
+    @Test
+    public void verifyRecordsAreDrainedOnShutdown() throws Exception {
+        this.manager.initialize();
+        this.delegate.release.countDown();
+        for (int i = 0; i < 4; i++) {
+            this.manager.record(newAuditActionContext("casuser" + i));
+        }
+        this.manager.destroy();
+        assertEquals(4, this.delegate.records.size());
+    }
+
+    @Test
+    public void verifyRecordsAreRecordedRightAwayWhenDisabled() {
+        this.manager.setEnabled(false);
+        this.manager.initialize();
+        this.delegate.release.countDown();
+        this.manager.record(newAuditActionContext("casuser"));
+        assertEquals(1, this.delegate.records.size());
+    }
+
+    private static AuditActionContext newAuditActionContext(final String principal) {
+        return new AuditActionContext(principal, "TGT-1", "TICKET_GRANTING_TICKET_CREATED", "CAS", new Date(),
+                "127.0.0.1", "127.0.0.1", (AuditPointRuntimeInfo) () -> "test");
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Audit records were not recorded in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static class RecordingAuditTrailManager implements BatchAuditTrailManager {
+        private final List<AuditActionContext> records = new CopyOnWriteArrayList<>();
+
+        private final AtomicInteger batches = new AtomicInteger();
+
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        private volatile boolean failing;
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void record(final List<AuditActionContext> auditActionContexts) {
+            try {
+                this.release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.attempts.incrementAndGet();
+            if (this.failing) {
+                throw new IllegalStateException("Audit database is down");
+            }
+            this.batches.incrementAndGet();
+            this.records.addAll(auditActionContexts);
+        }
+
+        @Override
+        public void record(final AuditActionContext auditActionContext) {
+            this.records.add(auditActionContext);
+        }
+    }
+}
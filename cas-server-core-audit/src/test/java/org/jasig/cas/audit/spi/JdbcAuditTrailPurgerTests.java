@@ -0,0 +1,104 @@
+package org.jasig.cas.audit.spi;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link JdbcAuditTrailPurger}, on HSQLDB.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class JdbcAuditTrailPurgerTests {
+
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private JdbcTemplate jdbcTemplate;
+
+    private JdbcAuditTrailPurger purger;
+
+    @Before
+    public void setUp() {
+        final DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:cas-audit-purge", "sa", "");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.execute("CREATE TABLE COM_AUDIT_TRAIL (AUD_USER VARCHAR(100), AUD_ACTION VARCHAR(100), "
+                + "AUD_DATE TIMESTAMP NOT NULL)");
+        this.jdbcTemplate.execute("CREATE INDEX COM_AUDIT_TRAIL_DATE_IDX ON COM_AUDIT_TRAIL (AUD_DATE)");
+        this.purger = new JdbcAuditTrailPurger(dataSource);
+        this.purger.setMaxAgeDays(60);
+    }
+
+    @After
+    public void tearDown() {
+        this.jdbcTemplate.execute("DROP SCHEMA PUBLIC CASCADE");
+    }
+
+    @Test
+    public void verifyOldRecordsAreDeleted() {
+        final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        insert(today.minusDays(90));
+        insert(today.minusDays(61));
+        insert(today.minusDays(10));
+        insert(today);
+
+        assertEquals(2, this.purger.purge());
+        assertEquals(2, this.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM COM_AUDIT_TRAIL", Integer.class).intValue());
+    }
+
+    @Test
+    public void verifyOldRecordsAreDeletedInBatches() {
+        final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        for (int i = 0; i < 5; i++) {
+            insert(today.minusDays(90 + i));
+        }
+        insert(today);
+        this.purger.setBatchSize(2);
+
+        assertEquals(5, this.purger.purge());
+        assertEquals(1, this.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM COM_AUDIT_TRAIL", Integer.class).intValue());
+    }
+
+    @Test
+    public void verifyWholePartitionsAreDropped() {
+        this.purger.setPartitionUnit(ChronoUnit.MONTHS);
+        this.purger.setCreatePartitionSql("CREATE TABLE AUDIT_P{partition} (AUD_DATE TIMESTAMP)");
+        this.purger.setDropPartitionSql("DROP TABLE AUDIT_P{partition} IF EXISTS");
+
+        final LocalDate thisMonth = LocalDate.now(ZoneOffset.UTC).withDayOfMonth(1);
+        for (int i = 1; i <= 6; i++) {
+            this.jdbcTemplate.execute("CREATE TABLE AUDIT_P" + thisMonth.minusMonths(i).format(PARTITION_FORMAT) + " (AUD_DATE TIMESTAMP)");
+        }
+        assertEquals(2, this.purger.createPartitions());
+        assertEquals(0, this.purger.createPartitions());
+        assertTrue(partitionExists(thisMonth.plusMonths(1)));
+
+        this.purger.purge();
+        final LocalDate cutoff = LocalDate.now(ZoneOffset.UTC).minusDays(60).withDayOfMonth(1);
+        for (int i = 1; i <= 6; i++) {
+            final LocalDate month = thisMonth.minusMonths(i);
+            assertEquals(!month.isBefore(cutoff), partitionExists(month));
+        }
+        assertTrue(partitionExists(thisMonth));
+    }
+
+    private void insert(final LocalDate date) {
+        this.jdbcTemplate.update("INSERT INTO COM_AUDIT_TRAIL (AUD_USER, AUD_ACTION, AUD_DATE) VALUES (?, ?, ?)",
+                "casuser", "AUTHENTICATION_FAILED", Timestamp.valueOf(date.atTime(12, 0)));
+    }
+
+    private boolean partitionExists(final LocalDate month) {
+        return this.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = ?",
+                Integer.class, "AUDIT_P" + month.format(PARTITION_FORMAT)) > 0;
+    }
+}
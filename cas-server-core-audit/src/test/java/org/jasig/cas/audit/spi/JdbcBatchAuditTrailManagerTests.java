@@ -0,0 +1,87 @@
+package org.jasig.cas.audit.spi;
+
+import org.jasig.inspektr.audit.AuditActionContext;
+import org.jasig.inspektr.audit.AuditPointRuntimeInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link JdbcBatchAuditTrailManager}, on HSQLDB.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class JdbcBatchAuditTrailManagerTests {
+
+    private static final long TIMEOUT_IN_MILLIS = 5000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private JdbcTemplate jdbcTemplate;
+
+    private JdbcBatchAuditTrailManager manager;
+
+    @Before
+    public void setUp() {
+        final DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:cas-audit-batch", "sa", "");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.execute("CREATE TABLE COM_AUDIT_TRAIL (AUD_USER VARCHAR(100), AUD_CLIENT_IP VARCHAR(15), "
+                + "AUD_SERVER_IP VARCHAR(15), AUD_RESOURCE VARCHAR(100), AUD_ACTION VARCHAR(100), APPLIC_CD VARCHAR(5), "
+                + "AUD_DATE TIMESTAMP NOT NULL)");
+        this.manager = new JdbcBatchAuditTrailManager(new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        this.manager.setDataSource(dataSource);
+    }
+
+    @After
+    public void tearDown() {
+        this.jdbcTemplate.execute("DROP SCHEMA PUBLIC CASCADE");
+    }
+
+    @Test
+    public void verifyBatchIsCommittedBeforeRecordReturns() {
+        this.manager.record(Arrays.asList(newAuditActionContext("casuser1"), newAuditActionContext("casuser2"),
+                newAuditActionContext("casuser3")));
+        assertEquals(3, this.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM COM_AUDIT_TRAIL", Integer.class).intValue());
+    }
+
+    @Test
+    public void verifyFailedBatchIsKeptInOverflowFile() throws Exception {
+        this.jdbcTemplate.execute("DROP TABLE COM_AUDIT_TRAIL");
+        final File overflowFile = new File(this.folder.getRoot(), "audit-overflow.log");
+        final AsynchronousAuditTrailManager asynchronousManager = new AsynchronousAuditTrailManager(this.manager);
+        asynchronousManager.setOverflowFile(overflowFile.getAbsolutePath());
+        asynchronousManager.setReplayIntervalInMillis(60000);
+        asynchronousManager.initialize();
+        try {
+            asynchronousManager.record(newAuditActionContext("casuser"));
+            final long deadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+            while (!overflowFile.exists()) {
+                assertTrue("Failed audit record was not kept in time", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        } finally {
+            asynchronousManager.destroy();
+        }
+        assertTrue(overflowFile.length() > 0);
+    }
+
+    private static AuditActionContext newAuditActionContext(final String principal) {
+        return new AuditActionContext(principal, "TGT-1", "TICKET_GRANTING_TICKET_CREATED", "CAS", new Date(),
+                "127.0.0.1", "127.0.0.1", (AuditPointRuntimeInfo) () -> "test");
+    }
+}
@@ -1,5 +1,7 @@
 package org.jasig.cas.authentication;
 
+import org.jasig.cas.util.http.SslContextProvider;
+
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.conn.ssl.TrustStrategy;
@@ -36,10 +38,12 @@ import java.util.List;
  * @since 4.1.0
  */
 @Component("trustStoreSslSocketFactory")
-public final class FileTrustStoreSslSocketFactory extends SSLConnectionSocketFactory {
+public final class FileTrustStoreSslSocketFactory extends SSLConnectionSocketFactory implements SslContextProvider {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FileTrustStoreSslSocketFactory.class);
 
+    private final SSLContext sslContext;
+
     /**
      * Instantiates a new trusted proxy authentication trust store ssl socket factory.
      * Defaults to {@code TLSv1} and {@link SSLConnectionSocketFactory#BROWSER_COMPATIBLE_HOSTNAME_VERIFIER}
@@ -65,7 +69,17 @@ public final class FileTrustStoreSslSocketFactory extends SSLConnectionSocketFac
      */
     public FileTrustStoreSslSocketFactory(final File trustStoreFile, final String trustStorePassword,
                                           final String trustStoreType) {
-        super(getTrustedSslContext(trustStoreFile, trustStorePassword, trustStoreType));
+        this(getTrustedSslContext(trustStoreFile, trustStorePassword, trustStoreType));
+    }
+
+    private FileTrustStoreSslSocketFactory(final SSLContext sslContext) {
+        super(sslContext);
+        this.sslContext = sslContext;
+    }
+
+    @Override
+    public SSLContext getSslContext() {
+        return this.sslContext;
     }
 
     /**
@@ -0,0 +1,284 @@
+package org.jasig.cas.support.events;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventTranslatorTwoArg;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.WorkHandler;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.SimpleApplicationEventMulticaster;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delivers CAS events to their listeners in the background, so that slow listeners do not add
+ * to the latency of the requests that publish the events.
+ * <p>
+ * Registered as the {@code applicationEventMulticaster} of the application context, this multicaster
+ * hands every {@link AbstractCasEvent} to each of its listeners through a bounded Disruptor ring buffer,
+ * which a pool of threads drains. Other application events, and listeners marked with
+ * {@link SynchronousEventListener}, are still delivered on the publishing thread. When the ring buffer
+ * is full, the {@link OverflowPolicy} decides whether the event is dropped, the publishing thread waits
+ * for room, or the publishing thread delivers the event itself.
+ * </p>
+ * <p>
+ * The latency and failures of each listener, the events dropped, and the backlog of the ring buffer
+ * are published into the Dropwizard {@link MetricRegistry} under {@code cas.events}.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@Component("applicationEventMulticaster")
+public class AsynchronousCasEventMulticaster extends SimpleApplicationEventMulticaster {
+
+    /** Root name of all metrics published by this multicaster. */
+    public static final String METRIC_PREFIX = "cas.events";
+
+    /**
+     * What to do with an event when the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** The event is not delivered to the listener. */
+        DROP,
+        /** The publishing thread waits until there is room in the ring buffer. */
+        BLOCK,
+        /** The publishing thread delivers the event to the listener itself. */
+        CALLER_RUNS
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsynchronousCasEventMulticaster.class);
+
+    private static final EventTranslatorTwoArg<ListenerInvocation, ApplicationListener<?>, ApplicationEvent> TRANSLATOR =
+            (invocation, sequence, listener, event) -> {
+                invocation.listener = listener;
+                invocation.event = event;
+            };
+
+    @Value("${events.async.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${events.async.bufferSize:4096}")
+    private int bufferSize = 4096;
+
+    @Value("${events.async.threads:4}")
+    private int threads = 4;
+
+    @Value("${events.async.overflowPolicy:DROP}")
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    @Value("${events.async.shutdownTimeoutInSeconds:10}")
+    private long shutdownTimeoutInSeconds = 10;
+
+    @Autowired(required = false)
+    @Qualifier("metrics")
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
+    private volatile Disruptor<ListenerInvocation> disruptor;
+
+    private RingBuffer<ListenerInvocation> ringBuffer;
+
+    /**
+     * Instantiates a new multicaster.
+     */
+    public AsynchronousCasEventMulticaster() {}
+
+    /**
+     * Starts the threads that deliver events.
+     */
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void initialize() {
+        if (!this.enabled) {
+            LOGGER.info("Asynchronous delivery of CAS events is disabled");
+            return;
+        }
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadFactory threadFactory = r -> {
+            final Thread thread = new Thread(r, "AsynchronousCasEventMulticaster-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.disruptor = new Disruptor<>(ListenerInvocation::new, ceilingPowerOfTwo(this.bufferSize), threadFactory,
+                ProducerType.MULTI, new BlockingWaitStrategy());
+        final WorkHandler<ListenerInvocation>[] handlers = new WorkHandler[this.threads];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = invocation -> {
+                final ApplicationListener<?> listener = invocation.listener;
+                final ApplicationEvent event = invocation.event;
+                invocation.listener = null;
+                invocation.event = null;
+                deliver(listener, event);
+            };
+        }
+        this.disruptor.setDefaultExceptionHandler(new LoggingExceptionHandler());
+        this.disruptor.handleEventsWithWorkerPool(handlers);
+        this.ringBuffer = this.disruptor.start();
+        this.metricRegistry.register(MetricRegistry.name(METRIC_PREFIX, "backlog"),
+                (Gauge<Long>) () -> this.ringBuffer.getBufferSize() - this.ringBuffer.remainingCapacity());
+    }
+
+    /**
+     * Delivers the events still in the ring buffer, for a while, and stops the threads that deliver events.
+     */
+    @PreDestroy
+    public void destroy() {
+        if (this.disruptor == null) {
+            return;
+        }
+        try {
+            this.disruptor.shutdown(this.shutdownTimeoutInSeconds, TimeUnit.SECONDS);
+        } catch (final TimeoutException e) {
+            LOGGER.warn("CAS events were not all delivered within {} seconds", this.shutdownTimeoutInSeconds);
+            this.disruptor.halt();
+        }
+        this.disruptor = null;
+        this.metricRegistry.removeMatching((name, metric) -> name.startsWith(METRIC_PREFIX + '.'));
+    }
+
+    @Override
+    public void multicastEvent(final ApplicationEvent event) {
+        multicastEvent(event, null);
+    }
+
+    @Override
+    public void multicastEvent(final ApplicationEvent event, final ResolvableType eventType) {
+        final ResolvableType type = eventType != null ? eventType : ResolvableType.forInstance(event);
+        for (final ApplicationListener<?> listener : getApplicationListeners(event, type)) {
+            if (this.disruptor == null || !(event instanceof AbstractCasEvent) || isSynchronous(listener)) {
+                deliver(listener, event);
+            } else {
+                publish(listener, event);
+            }
+        }
+    }
+
+    /**
+     * Hands an event over to the ring buffer, applying the overflow policy when it is full.
+     *
+     * @param listener the listener
+     * @param event    the event
+     */
+    private void publish(final ApplicationListener<?> listener, final ApplicationEvent event) {
+        if (this.ringBuffer.tryPublishEvent(TRANSLATOR, listener, event)) {
+            return;
+        }
+        switch (this.overflowPolicy) {
+            case BLOCK:
+                this.ringBuffer.publishEvent(TRANSLATOR, listener, event);
+                break;
+            case CALLER_RUNS:
+                deliver(listener, event);
+                break;
+            default:
+                this.metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "dropped")).mark();
+                LOGGER.warn("Event [{}] is not delivered to [{}]; the ring buffer of {} events is full",
+                        event, listener, this.ringBuffer.getBufferSize());
+                break;
+        }
+    }
+
+    /**
+     * Delivers an event to a listener, and records its latency and failures.
+     * Failures of listeners are rethrown, to the publishing thread or to the
+     * exception handler of the ring buffer.
+     *
+     * @param listener the listener
+     * @param event    the event
+     */
+    private void deliver(final ApplicationListener<?> listener, final ApplicationEvent event) {
+        final String name = MetricRegistry.name(METRIC_PREFIX, "listener", AopUtils.getTargetClass(listener).getName());
+        final Timer.Context timer = this.metricRegistry.timer(MetricRegistry.name(name, "latency")).time();
+        try {
+            invokeListener(listener, event);
+        } catch (final RuntimeException e) {
+            this.metricRegistry.meter(MetricRegistry.name(name, "failure")).mark();
+            throw e;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private static boolean isSynchronous(final ApplicationListener<?> listener) {
+        return AnnotationUtils.findAnnotation(AopUtils.getTargetClass(listener), SynchronousEventListener.class) != null;
+    }
+
+    private static int ceilingPowerOfTwo(final int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setBufferSize(final int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    public void setOverflowPolicy(final OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public void setShutdownTimeoutInSeconds(final long shutdownTimeoutInSeconds) {
+        this.shutdownTimeoutInSeconds = shutdownTimeoutInSeconds;
+    }
+
+    public void setMetricRegistry(final MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * Slot of the ring buffer, holding an event to deliver to a listener.
+     */
+    private static final class ListenerInvocation {
+
+        private ApplicationListener<?> listener;
+
+        private ApplicationEvent event;
+    }
+
+    /**
+     * Logs the failures of the threads that deliver events.
+     */
+    private static final class LoggingExceptionHandler implements ExceptionHandler<ListenerInvocation> {
+
+        @Override
+        public void handleEventException(final Throwable ex, final long sequence, final ListenerInvocation invocation) {
+            LOGGER.error("Failed to deliver CAS event", ex);
+        }
+
+        @Override
+        public void handleOnStartException(final Throwable ex) {
+            LOGGER.error("Failed to start delivering CAS events", ex);
+        }
+
+        @Override
+        public void handleOnShutdownException(final Throwable ex) {
+            LOGGER.error("Failed to stop delivering CAS events", ex);
+        }
+    }
+}
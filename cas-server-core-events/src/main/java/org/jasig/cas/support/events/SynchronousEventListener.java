@@ -0,0 +1,20 @@
+package org.jasig.cas.support.events;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an {@code ApplicationListener} whose CAS events must be delivered on the thread that publishes them,
+ * in the order they are published, rather than through the ring buffer of the {@link AsynchronousCasEventMulticaster}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface SynchronousEventListener {
+}
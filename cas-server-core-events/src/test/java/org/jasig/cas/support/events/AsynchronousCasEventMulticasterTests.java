@@ -0,0 +1,144 @@
+package org.jasig.cas.support.events;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link AsynchronousCasEventMulticaster}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class AsynchronousCasEventMulticasterTests {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    private AsynchronousCasEventMulticaster multicaster;
+
+    @Before
+    public void setUp() {
+        this.multicaster = new AsynchronousCasEventMulticaster();
+        this.multicaster.setMetricRegistry(this.metricRegistry);
+        this.multicaster.setBufferSize(4);
+        this.multicaster.setThreads(1);
+    }
+
+    @After
+    public void tearDown() {
+        this.multicaster.destroy();
+    }
+
+    @Test
+    public void verifyCasEventsAreDeliveredInTheBackground() throws Exception {
+        this.multicaster.initialize();
+        final RecordingListener listener = new RecordingListener();
+        this.multicaster.addApplicationListener(listener);
+
+        this.multicaster.multicastEvent(new TestCasEvent(this));
+        assertTrue(listener.delivered.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), listener.thread);
+        assertEquals(1, this.metricRegistry.timer(MetricRegistry.name(AsynchronousCasEventMulticaster.METRIC_PREFIX,
+                "listener", RecordingListener.class.getName(), "latency")).getCount());
+    }
+
+    @Test
+    public void verifySynchronousListenersAndOtherEventsAreDeliveredOnThePublishingThread() throws Exception {
+        this.multicaster.initialize();
+        final RecordingListener listener = new RecordingListener();
+        final SynchronousRecordingListener synchronousListener = new SynchronousRecordingListener();
+        this.multicaster.addApplicationListener(synchronousListener);
+
+        this.multicaster.multicastEvent(new TestCasEvent(this));
+        assertEquals(0, synchronousListener.delivered.getCount());
+        assertSame(Thread.currentThread(), synchronousListener.thread);
+
+        this.multicaster.removeAllListeners();
+        this.multicaster.addApplicationListener(listener);
+        this.multicaster.multicastEvent(new ApplicationEvent(this) {
+            private static final long serialVersionUID = 1L;
+        });
+        assertEquals(0, listener.delivered.getCount());
+        assertSame(Thread.currentThread(), listener.thread);
+    }
+
+    @Test
+    public void verifyEventsAreDroppedWhenTheBufferIsFull() throws Exception {
+        this.multicaster.setOverflowPolicy(AsynchronousCasEventMulticaster.OverflowPolicy.DROP);
+        this.multicaster.initialize();
+        final CountDownLatch release = new CountDownLatch(1);
+        this.multicaster.addApplicationListener(event -> {
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        for (int i = 0; i < 10; i++) {
+            this.multicaster.multicastEvent(new TestCasEvent(this));
+        }
+        release.countDown();
+        assertTrue(this.metricRegistry.meter(MetricRegistry.name(AsynchronousCasEventMulticaster.METRIC_PREFIX, "dropped"))
+                .getCount() >= 5);
+    }
+
+    @Test
+    public void verifyEventsAreDeliveredByTheCallerWhenTheBufferIsFull() throws Exception {
+        this.multicaster.setOverflowPolicy(AsynchronousCasEventMulticaster.OverflowPolicy.CALLER_RUNS);
+        this.multicaster.initialize();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch delivered = new CountDownLatch(10);
+        final Thread caller = Thread.currentThread();
+        this.multicaster.addApplicationListener(event -> {
+            try {
+                if (Thread.currentThread() != caller) {
+                    release.await();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.countDown();
+        });
+
+        for (int i = 0; i < 10; i++) {
+            this.multicaster.multicastEvent(new TestCasEvent(this));
+        }
+        release.countDown();
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(0, this.metricRegistry.meter(MetricRegistry.name(AsynchronousCasEventMulticaster.METRIC_PREFIX, "dropped"))
+                .getCount());
+    }
+
+    private static class TestCasEvent extends AbstractCasEvent {
+        private static final long serialVersionUID = -1986362476431366409L;
+
+        TestCasEvent(final Object source) {
+            super(source);
+        }
+    }
+
+    private static class RecordingListener implements ApplicationListener<ApplicationEvent> {
+        protected final CountDownLatch delivered = new CountDownLatch(1);
+
+        protected volatile Thread thread;
+
+        @Override
+        public void onApplicationEvent(final ApplicationEvent event) {
+            this.thread = Thread.currentThread();
+            this.delivered.countDown();
+        }
+    }
+
+    @SynchronousEventListener
+    private static class SynchronousRecordingListener extends RecordingListener {
+    }
+}
@@ -2,8 +2,10 @@ package org.jasig.cas.logout;
 
 import org.jasig.cas.services.LogoutType;
 import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.RegisteredServiceProperty;
 import org.jasig.cas.services.ServicesManager;
 import org.jasig.cas.util.http.HttpClient;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +15,11 @@ import org.springframework.stereotype.Component;
 
 import javax.validation.constraints.NotNull;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This is {@link DefaultSingleLogoutServiceMessageHandler} which handles the processing of logout messages
@@ -23,6 +30,13 @@ import java.net.URL;
  */
 @Component("defaultSingleLogoutServiceMessageHandler")
 public class DefaultSingleLogoutServiceMessageHandler implements SingleLogoutServiceMessageHandler {
+    /**
+     * Name of the registered service property that defines a URL accepting batches of logout requests.
+     * Logout requests of services that define the same URL are sent to it together, in a single message
+     * with one {@code logoutRequest} parameter per request.
+     */
+    public static final String BATCH_LOGOUT_URL_PROPERTY = "singleLogoutBatchUrl";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultSingleLogoutServiceMessageHandler.class);
 
     /** The services manager. */
@@ -53,6 +67,11 @@ public class DefaultSingleLogoutServiceMessageHandler implements SingleLogoutSer
     @Qualifier("defaultSingleLogoutServiceLogoutUrlBuilder")
     private SingleLogoutServiceLogoutUrlBuilder singleLogoutServiceLogoutUrlBuilder;
 
+    /** Sends asynchronous messages, with retries, when defined. */
+    @Autowired(required = false)
+    @Qualifier("singleLogoutMessageDispatcher")
+    private SingleLogoutMessageDispatcher singleLogoutMessageDispatcher;
+
     /**
      * Instantiates a new Single logout service message handler.
      */
@@ -82,23 +101,11 @@ public class DefaultSingleLogoutServiceMessageHandler implements SingleLogoutSer
             final RegisteredService registeredService = servicesManager.findServiceBy(singleLogoutService);
             if (serviceSupportsSingleLogout(registeredService)) {
 
-                final URL logoutUrl = singleLogoutServiceLogoutUrlBuilder.determineLogoutUrl(registeredService, singleLogoutService);
-                final DefaultLogoutRequest logoutRequest = new DefaultLogoutRequest(ticketId, singleLogoutService, logoutUrl);
-                final LogoutType type = registeredService.getLogoutType() == null
-                        ? LogoutType.BACK_CHANNEL : registeredService.getLogoutType();
-
-                switch (type) {
-                    case BACK_CHANNEL:
-                        if (performBackChannelLogout(logoutRequest)) {
-                            logoutRequest.setStatus(LogoutRequestStatus.SUCCESS);
-                        } else {
-                            logoutRequest.setStatus(LogoutRequestStatus.FAILURE);
-                            LOGGER.warn("Logout message not sent to [{}]; Continuing processing...", singleLogoutService.getId());
-                        }
-                        break;
-                    default:
-                        logoutRequest.setStatus(LogoutRequestStatus.NOT_ATTEMPTED);
-                        break;
+                final DefaultLogoutRequest logoutRequest = createLogoutRequest(registeredService, singleLogoutService, ticketId);
+                if (isBackChannel(registeredService)) {
+                    setStatus(logoutRequest, performBackChannelLogout(logoutRequest));
+                } else {
+                    logoutRequest.setStatus(LogoutRequestStatus.NOT_ATTEMPTED);
                 }
                 return logoutRequest;
             }
@@ -106,6 +113,56 @@ public class DefaultSingleLogoutServiceMessageHandler implements SingleLogoutSer
         return null;
     }
 
+    /**
+     * Handle logout for a number of slo services at once.
+     * Back channel logout requests of services that define the same {@link #BATCH_LOGOUT_URL_PROPERTY}
+     * are sent together, as a single message to that URL. All other back channel logout requests are
+     * sent at once rather than one after the other, so that the requests to the same host share
+     * the pooled keep-alive connections of the HTTP client.
+     *
+     * @param singleLogoutServices the services, keyed by their ticket id
+     * @return the logout requests
+     */
+    @Override
+    public List<LogoutRequest> handle(final Map<String, SingleLogoutService> singleLogoutServices) {
+        final List<LogoutRequest> logoutRequests = new ArrayList<>();
+        final Map<String, List<DefaultLogoutRequest>> batches = new LinkedHashMap<>();
+        final List<DefaultLogoutRequest> backChannelRequests = new ArrayList<>();
+
+        singleLogoutServices.forEach((ticketId, singleLogoutService) -> {
+            if (singleLogoutService.isLoggedOutAlready()) {
+                return;
+            }
+            final RegisteredService registeredService = servicesManager.findServiceBy(singleLogoutService);
+            if (!serviceSupportsSingleLogout(registeredService)) {
+                return;
+            }
+            final DefaultLogoutRequest logoutRequest = createLogoutRequest(registeredService, singleLogoutService, ticketId);
+            logoutRequests.add(logoutRequest);
+            if (!isBackChannel(registeredService)) {
+                logoutRequest.setStatus(LogoutRequestStatus.NOT_ATTEMPTED);
+                return;
+            }
+            final String batchLogoutUrl = getBatchLogoutUrl(registeredService);
+            if (batchLogoutUrl == null) {
+                backChannelRequests.add(logoutRequest);
+            } else {
+                batches.computeIfAbsent(batchLogoutUrl, url -> new ArrayList<>()).add(logoutRequest);
+            }
+        });
+
+        batches.forEach((batchLogoutUrl, batch) -> {
+            if (batch.size() == 1) {
+                backChannelRequests.add(batch.get(0));
+            } else {
+                final boolean sent = performBatchBackChannelLogout(batchLogoutUrl, batch);
+                batch.forEach(logoutRequest -> setStatus(logoutRequest, sent));
+            }
+        });
+        performBackChannelLogouts(backChannelRequests);
+        return logoutRequests;
+    }
+
     /**
      * Log out of a service through back channel.
      *
@@ -114,11 +171,10 @@ public class DefaultSingleLogoutServiceMessageHandler implements SingleLogoutSer
      */
     public boolean performBackChannelLogout(final LogoutRequest request) {
         try {
-            final String logoutRequest = this.logoutMessageBuilder.create(request);
-            final SingleLogoutService logoutService = request.getService();
-            logoutService.setLoggedOutAlready(true);
-
-            LOGGER.debug("Sending logout request for [{}] to [{}]", logoutService.getId(), request.getLogoutUrl());
+            final String logoutRequest = prepareBackChannelLogout(request);
+            if (this.asynchronous && this.singleLogoutMessageDispatcher != null) {
+                return this.singleLogoutMessageDispatcher.dispatch(request.getLogoutUrl(), logoutRequest);
+            }
             final LogoutHttpMessage msg = new LogoutHttpMessage(request.getLogoutUrl(), logoutRequest, this.asynchronous);
             LOGGER.debug("Prepared logout message to send is [{}]", msg);
             return this.httpClient.sendMessageToEndPoint(msg);
@@ -128,6 +184,109 @@ public class DefaultSingleLogoutServiceMessageHandler implements SingleLogoutSer
         return false;
     }
 
+    /**
+     * Log out of a number of services through back channel, sending all the logout messages
+     * at once and, when messages are sent synchronously, waiting for all the endpoints to answer.
+     *
+     * @param requests the logout requests.
+     */
+    private void performBackChannelLogouts(final List<DefaultLogoutRequest> requests) {
+        if (this.asynchronous) {
+            requests.forEach(request -> setStatus(request, performBackChannelLogout(request)));
+            return;
+        }
+        final Map<DefaultLogoutRequest, CompletableFuture<Boolean>> results = new LinkedHashMap<>();
+        for (final DefaultLogoutRequest request : requests) {
+            try {
+                final LogoutHttpMessage msg = new LogoutHttpMessage(request.getLogoutUrl(), prepareBackChannelLogout(request), false);
+                LOGGER.debug("Prepared logout message to send is [{}]", msg);
+                results.put(request, this.httpClient.sendMessageToEndPointAsync(msg));
+            } catch (final Exception e) {
+                LOGGER.error(e.getMessage(), e);
+                request.setStatus(LogoutRequestStatus.FAILURE);
+            }
+        }
+        results.forEach((request, result) -> {
+            try {
+                setStatus(request, result.join());
+            } catch (final Exception e) {
+                LOGGER.error(e.getMessage(), e);
+                setStatus(request, false);
+            }
+        });
+    }
+
+    /**
+     * Log out of a number of services through back channel, with a single message that carries
+     * all their logout requests.
+     *
+     * @param batchLogoutUrl the URL that accepts the batch of logout requests.
+     * @param requests the logout requests.
+     * @return if the logout has been performed.
+     */
+    private boolean performBatchBackChannelLogout(final String batchLogoutUrl, final List<DefaultLogoutRequest> requests) {
+        try {
+            final URL logoutUrl = new URL(batchLogoutUrl);
+            final List<String> logoutRequests = new ArrayList<>(requests.size());
+            for (final DefaultLogoutRequest request : requests) {
+                logoutRequests.add(prepareBackChannelLogout(request));
+            }
+            LOGGER.debug("Sending a batch of {} logout requests to [{}]", logoutRequests.size(), logoutUrl);
+            if (this.asynchronous && this.singleLogoutMessageDispatcher != null) {
+                return this.singleLogoutMessageDispatcher.dispatch(logoutUrl, logoutRequests);
+            }
+            return this.httpClient.sendMessageToEndPoint(new LogoutHttpMessage(logoutUrl, logoutRequests, this.asynchronous));
+        } catch (final Exception e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+        return false;
+    }
+
+    /**
+     * Builds the logout message of a request, and marks its service as logged out.
+     *
+     * @param request the logout request.
+     * @return the logout message.
+     */
+    private String prepareBackChannelLogout(final LogoutRequest request) {
+        final String logoutRequest = this.logoutMessageBuilder.create(request);
+        final SingleLogoutService logoutService = request.getService();
+        logoutService.setLoggedOutAlready(true);
+        LOGGER.debug("Sending logout request for [{}] to [{}]", logoutService.getId(), request.getLogoutUrl());
+        return logoutRequest;
+    }
+
+    private DefaultLogoutRequest createLogoutRequest(final RegisteredService registeredService,
+                                                     final SingleLogoutService singleLogoutService, final String ticketId) {
+        final URL logoutUrl = singleLogoutServiceLogoutUrlBuilder.determineLogoutUrl(registeredService, singleLogoutService);
+        return new DefaultLogoutRequest(ticketId, singleLogoutService, logoutUrl);
+    }
+
+    private static void setStatus(final DefaultLogoutRequest logoutRequest, final boolean sent) {
+        if (sent) {
+            logoutRequest.setStatus(LogoutRequestStatus.SUCCESS);
+        } else {
+            logoutRequest.setStatus(LogoutRequestStatus.FAILURE);
+            LOGGER.warn("Logout message not sent to [{}]; Continuing processing...", logoutRequest.getService().getId());
+        }
+    }
+
+    private static boolean isBackChannel(final RegisteredService registeredService) {
+        return registeredService.getLogoutType() == null || registeredService.getLogoutType() == LogoutType.BACK_CHANNEL;
+    }
+
+    /**
+     * Gets the URL that accepts batches of logout requests for the service, if any.
+     *
+     * @param registeredService the registered service
+     * @return the URL, or null if the service only accepts logout requests one at a time.
+     */
+    private static String getBatchLogoutUrl(final RegisteredService registeredService) {
+        final RegisteredServiceProperty property = registeredService.getProperties() == null
+                ? null : registeredService.getProperties().get(BATCH_LOGOUT_URL_PROPERTY);
+        return property == null ? null : StringUtils.trimToNull(property.getValue());
+    }
+
     /**
      * Service supports back channel single logout?
      * Service must be found in the registry. enabled and logout type must not be {@link LogoutType#NONE}.
@@ -156,6 +315,10 @@ public class DefaultSingleLogoutServiceMessageHandler implements SingleLogoutSer
         this.singleLogoutServiceLogoutUrlBuilder = singleLogoutServiceLogoutUrlBuilder;
     }
 
+    public void setSingleLogoutMessageDispatcher(final SingleLogoutMessageDispatcher singleLogoutMessageDispatcher) {
+        this.singleLogoutMessageDispatcher = singleLogoutMessageDispatcher;
+    }
+
     public ServicesManager getServicesManager() {
         return servicesManager;
     }
@@ -1,9 +1,12 @@
 package org.jasig.cas.logout;
 
+import org.jasig.cas.util.EncodingUtils;
 import org.jasig.cas.util.http.HttpMessage;
 import org.springframework.http.MediaType;
 
 import java.net.URL;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * A logout http message that is accompanied by a special content type
@@ -16,6 +19,9 @@ public class LogoutHttpMessage extends HttpMessage {
     /** The parameter name that contains the logout request. */
     private static final String LOGOUT_PARAMETER_NAME = "logoutRequest";
 
+    /** Whether this message carries a batch of logout requests, already formatted. */
+    private final boolean batch;
+
     /**
      * Constructs a logout message.
      *
@@ -24,15 +30,35 @@ public class LogoutHttpMessage extends HttpMessage {
      */
     LogoutHttpMessage(final URL url, final String message, final boolean asynchronous) {
         super(url, message, asynchronous);
+        this.batch = false;
+        setContentType(MediaType.APPLICATION_FORM_URLENCODED_VALUE);
+    }
+
+    /**
+     * Constructs a logout message that carries several logout requests,
+     * each one in its own {@code logoutRequest} parameter.
+     *
+     * @param url The url to send the message to
+     * @param messages Messages to send to the url
+     */
+    LogoutHttpMessage(final URL url, final List<String> messages, final boolean asynchronous) {
+        super(url, messages.stream()
+                .map(message -> LOGOUT_PARAMETER_NAME + '=' + EncodingUtils.urlEncode(message))
+                .collect(Collectors.joining("&")), asynchronous);
+        this.batch = true;
         setContentType(MediaType.APPLICATION_FORM_URLENCODED_VALUE);
     }
 
     /**
      * {@inheritDoc}.
-     * Prepends the string "{@code logoutRequest=}" to the message body.
+     * Prepends the string "{@code logoutRequest=}" to the message body,
+     * unless the message is a batch whose parameters are already formatted.
      */
     @Override
     protected String formatOutputMessageInternal(final String message) {
+        if (this.batch) {
+            return message;
+        }
         return LOGOUT_PARAMETER_NAME + '=' + super.formatOutputMessageInternal(message);
     }
 }
@@ -15,7 +15,9 @@ import org.springframework.stereotype.Component;
 import javax.validation.constraints.NotNull;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This logout manager handles the Single Log Out process.
@@ -33,6 +35,14 @@ public final class LogoutManagerImpl implements LogoutManager {
     @Value("${slo.callbacks.disabled:false}")
     private boolean singleLogoutCallbacksDisabled;
 
+    /**
+     * Whether the logout requests of a ticket granting ticket and its proxy granting tickets
+     * are handed over to the {@link SingleLogoutServiceMessageHandler} all at once, so that
+     * the messages sent to the same endpoints can be coalesced.
+     */
+    @Value("${slo.callbacks.batch.enabled:false}")
+    private boolean batchEnabled;
+
     @NotNull
     @Autowired
     @Qualifier("logoutBuilder")
@@ -71,7 +81,14 @@ public final class LogoutManagerImpl implements LogoutManager {
             LOGGER.info("Single logout callbacks are disabled");
             return logoutRequests;
         }
-        performLogoutForTicket(ticket, logoutRequests);
+        if (this.batchEnabled) {
+            final Map<String, SingleLogoutService> singleLogoutServices = new LinkedHashMap<>();
+            collectSingleLogoutServices(ticket, singleLogoutServices);
+            LOGGER.debug("Handling {} single logout callbacks in batch", singleLogoutServices.size());
+            logoutRequests.addAll(this.singleLogoutServiceMessageHandler.handle(singleLogoutServices));
+        } else {
+            performLogoutForTicket(ticket, logoutRequests);
+        }
         LOGGER.info("{} logout requests were processed", logoutRequests.size());
         return logoutRequests;
     }
@@ -98,6 +115,14 @@ public final class LogoutManagerImpl implements LogoutManager {
 
     }
 
+    private void collectSingleLogoutServices(final TicketGrantingTicket ticket,
+                                             final Map<String, SingleLogoutService> singleLogoutServices) {
+        ticket.getServices().entrySet().stream().filter(entry -> entry.getValue() instanceof SingleLogoutService)
+                .forEach(entry -> singleLogoutServices.put(entry.getKey(), (SingleLogoutService) entry.getValue()));
+        ticket.getProxyGrantingTickets().stream()
+                .forEach(proxyGrantingTicket -> collectSingleLogoutServices(proxyGrantingTicket, singleLogoutServices));
+    }
+
     /**
      * Create a logout message for front channel logout.
      *
@@ -120,6 +145,10 @@ public final class LogoutManagerImpl implements LogoutManager {
         this.singleLogoutCallbacksDisabled = singleLogoutCallbacksDisabled;
     }
 
+    public void setBatchEnabled(final boolean batchEnabled) {
+        this.batchEnabled = batchEnabled;
+    }
+
     public void setLogoutMessageBuilder(final LogoutMessageCreator logoutMessageBuilder) {
         this.logoutMessageBuilder = logoutMessageBuilder;
     }
@@ -23,19 +23,37 @@ public final class SamlCompliantLogoutMessageCreator implements LogoutMessageCre
     /** A ticket Id generator. */
     private static final UniqueTicketIdGenerator GENERATOR = new DefaultUniqueTicketIdGenerator();
 
-    /** The logout request template. */
-    private static final String LOGOUT_REQUEST_TEMPLATE =
-            "<samlp:LogoutRequest xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"%s\" Version=\"2.0\" "
-            + "IssueInstant=\"%s\"><saml:NameID xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\">@NOT_USED@"
-            + "</saml:NameID><samlp:SessionIndex>%s</samlp:SessionIndex></samlp:LogoutRequest>";
+    /** Shared formatter of issue instants; {@link ISOStandardDateFormat} is thread-safe. */
+    private static final ISOStandardDateFormat DATE_FORMAT = new ISOStandardDateFormat();
+
+    /**
+     * The logout request template, split around its {@code ID}, {@code IssueInstant} and {@code SessionIndex}
+     * values so that messages are built by concatenation rather than parsed with {@link String#format}.
+     */
+    private static final String LOGOUT_REQUEST_ID_PREFIX =
+            "<samlp:LogoutRequest xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"";
+
+    private static final String LOGOUT_REQUEST_ISSUE_INSTANT_PREFIX = "\" Version=\"2.0\" IssueInstant=\"";
+
+    private static final String LOGOUT_REQUEST_SESSION_INDEX_PREFIX =
+            "\"><saml:NameID xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\">@NOT_USED@"
+            + "</saml:NameID><samlp:SessionIndex>";
+
+    private static final String LOGOUT_REQUEST_SUFFIX = "</samlp:SessionIndex></samlp:LogoutRequest>";
+
+    private static final int LOGOUT_REQUEST_LENGTH = 384;
 
     @Override
     public String create(final LogoutRequest request) {
-        final String logoutRequest = String.format(LOGOUT_REQUEST_TEMPLATE, GENERATOR.getNewTicketId("LR"),
-                new ISOStandardDateFormat().getCurrentDateAndTime(), request.getTicketId());
-        
+        final String logoutRequest = new StringBuilder(LOGOUT_REQUEST_LENGTH)
+                .append(LOGOUT_REQUEST_ID_PREFIX).append(GENERATOR.getNewTicketId("LR"))
+                .append(LOGOUT_REQUEST_ISSUE_INSTANT_PREFIX).append(DATE_FORMAT.getCurrentDateAndTime())
+                .append(LOGOUT_REQUEST_SESSION_INDEX_PREFIX).append(request.getTicketId())
+                .append(LOGOUT_REQUEST_SUFFIX)
+                .toString();
+
         LOGGER.debug("Generated logout message: [{}]", logoutRequest);
         return logoutRequest;
     }
-    
+
 }
@@ -0,0 +1,576 @@
+package org.jasig.cas.logout;
+
+import org.jasig.cas.CipherExecutor;
+import org.jasig.cas.util.http.HttpClient;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotNull;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends back-channel logout messages on behalf of the {@link DefaultSingleLogoutServiceMessageHandler},
+ * so that neither logout requests nor the ticket registry cleaner wait on service callbacks.
+ * <p>
+ * Messages are queued in a bounded queue and sent by a fixed pool of threads, with at most a given number
+ * of messages sent to the same host at once. Messages to a busy host are deferred briefly, and count against
+ * the bound of the queue while they wait. Messages that fail are retried with an exponential backoff.
+ * Each retry is appended to a retry log when it is scheduled, and the log is rewritten without it once it is
+ * sent or given up, so that retries survive a crash as well as a shutdown; the log is replayed on startup.
+ * Messages that are queued or deferred, but have not failed yet, are only written to the log when the server
+ * stops, and are lost if it crashes. Logout messages carry service ticket ids, so they are only written to the
+ * retry log encrypted with the {@code ticketCipherExecutor}, when one is defined.
+ * </p>
+ * <p>
+ * Queue depth, deferred messages, pending retries, dropped messages, and the latency, successes and failures
+ * of each host are published into the Dropwizard {@link MetricRegistry} under {@code slo.dispatcher}. Hosts are
+ * named with their dots replaced by underscores, and hosts beyond the configured number share the
+ * {@code other} name, so that the number of metrics stays bounded.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@Component("singleLogoutMessageDispatcher")
+public class SingleLogoutMessageDispatcher {
+
+    /** Root name of all metrics published by this dispatcher. */
+    public static final String METRIC_PREFIX = "slo.dispatcher";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SingleLogoutMessageDispatcher.class);
+
+    private static final long HOST_BUSY_DELAY_IN_MILLIS = 50;
+
+    private static final String RETRY_LOG_SEPARATOR = " ";
+
+    private static final int RETRY_LOG_MIN_FIELDS = 3;
+
+    private static final String OTHER_HOSTS_METRIC_NAME = "other";
+
+    /** An HTTP client. */
+    @NotNull
+    @Autowired
+    @Qualifier("noRedirectHttpClient")
+    private HttpClient httpClient;
+
+    @Autowired(required = false)
+    @Qualifier("metrics")
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
+    @Nullable
+    @Autowired(required = false)
+    @Qualifier("ticketCipherExecutor")
+    private CipherExecutor<byte[], byte[]> cipherExecutor;
+
+    @Value("${slo.dispatcher.threads:8}")
+    private int threads = 8;
+
+    @Value("${slo.dispatcher.queue.size:10000}")
+    private int queueSize = 10000;
+
+    @Value("${slo.dispatcher.maxConcurrentPerHost:4}")
+    private int maxConcurrentPerHost = 4;
+
+    @Value("${slo.dispatcher.retry.maxAttempts:5}")
+    private int maxAttempts = 5;
+
+    @Value("${slo.dispatcher.retry.initialDelayInMillis:1000}")
+    private long initialRetryDelayInMillis = 1000;
+
+    @Value("${slo.dispatcher.retry.maxDelayInMillis:60000}")
+    private long maxRetryDelayInMillis = 60000;
+
+    @Value("${slo.dispatcher.retry.log:}")
+    private String retryLog;
+
+    @Value("${slo.dispatcher.metrics.maxHosts:100}")
+    private int maxHostsWithMetrics = 100;
+
+    /** Number of messages being sent to each host; hosts without messages in flight have no entry. */
+    private final ConcurrentMap<String, Integer> hostSends = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, String> hostMetricNames = new ConcurrentHashMap<>();
+
+    private final Set<Delivery> pendingRetries = ConcurrentHashMap.newKeySet();
+
+    private final Set<Delivery> deferredDeliveries = ConcurrentHashMap.newKeySet();
+
+    /** Retries written to the retry log and not sent yet; also the lock of the retry log. */
+    private final Set<Delivery> loggedRetries = new LinkedHashSet<>();
+
+    private ThreadPoolExecutor executor;
+
+    private ScheduledExecutorService retryScheduler;
+
+    private volatile boolean stopped;
+
+    /**
+     * Instantiates a new dispatcher.
+     */
+    public SingleLogoutMessageDispatcher() {}
+
+    /**
+     * Starts the sending threads and replays the retry log, if any.
+     */
+    @PostConstruct
+    public void initialize() {
+        this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.queueSize), r -> {
+                    final Thread thread = new Thread(r, "SingleLogoutMessageDispatcher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "SingleLogoutMessageDispatcherRetry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.metricRegistry.register(MetricRegistry.name(METRIC_PREFIX, "queue"),
+                (Gauge<Integer>) () -> this.executor.getQueue().size());
+        this.metricRegistry.register(MetricRegistry.name(METRIC_PREFIX, "deferred"),
+                (Gauge<Integer>) this.deferredDeliveries::size);
+        this.metricRegistry.register(MetricRegistry.name(METRIC_PREFIX, "retries"),
+                (Gauge<Integer>) this.pendingRetries::size);
+        replayRetryLog();
+    }
+
+    /**
+     * Stops sending and writes the messages that are still queued, deferred or waiting for a retry to the retry log.
+     */
+    @PreDestroy
+    public void destroy() {
+        this.stopped = true;
+        this.retryScheduler.shutdownNow();
+        final Set<Delivery> unsent = new LinkedHashSet<>();
+        synchronized (this.loggedRetries) {
+            unsent.addAll(this.loggedRetries);
+        }
+        unsent.addAll(this.pendingRetries);
+        unsent.addAll(this.deferredDeliveries);
+        this.executor.shutdownNow().stream()
+                .filter(Delivery.class::isInstance)
+                .map(Delivery.class::cast)
+                .forEach(unsent::add);
+        writeRetryLog(unsent);
+        this.metricRegistry.removeMatching((name, metric) -> name.startsWith(METRIC_PREFIX + '.'));
+    }
+
+    /**
+     * Queues a logout message to be sent.
+     *
+     * @param logoutUrl     the URL to send the message to
+     * @param logoutMessage the logout message
+     * @return true if the message is queued, false if the queue is full
+     */
+    public boolean dispatch(final URL logoutUrl, final String logoutMessage) {
+        return dispatch(logoutUrl, Collections.singletonList(logoutMessage));
+    }
+
+    /**
+     * Queues a batch of logout messages to be sent together, in a single request.
+     *
+     * @param logoutUrl      the URL to send the messages to
+     * @param logoutMessages the logout messages
+     * @return true if the messages are queued, false if the queue is full
+     */
+    public boolean dispatch(final URL logoutUrl, final List<String> logoutMessages) {
+        if (getQueueDepth() + this.deferredDeliveries.size() >= this.queueSize) {
+            drop(logoutUrl);
+            return false;
+        }
+        return submit(new Delivery(logoutUrl, logoutMessages, 1));
+    }
+
+    /**
+     * Gets the number of messages waiting to be sent.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * Gets the number of failed messages waiting to be retried.
+     *
+     * @return the number of pending retries
+     */
+    public int getPendingRetries() {
+        return this.pendingRetries.size();
+    }
+
+    private boolean submit(final Delivery delivery) {
+        try {
+            this.executor.execute(delivery);
+            return true;
+        } catch (final RejectedExecutionException e) {
+            drop(delivery.logoutUrl);
+            return false;
+        }
+    }
+
+    private void drop(final URL logoutUrl) {
+        this.metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "dropped")).mark();
+        LOGGER.warn("Logout message to [{}] is dropped; the queue of {} messages is full", logoutUrl, this.queueSize);
+    }
+
+    private void send(final Delivery delivery) {
+        final String host = delivery.logoutUrl.getHost();
+        if (!tryAcquireHost(host)) {
+            schedule(delivery, HOST_BUSY_DELAY_IN_MILLIS, this.deferredDeliveries);
+            return;
+        }
+
+        final String metricName = getHostMetricName(host);
+        final Timer.Context timer = this.metricRegistry.timer(MetricRegistry.name(METRIC_PREFIX, metricName, "latency")).time();
+        final LogoutHttpMessage message = delivery.logoutMessages.size() == 1
+                ? new LogoutHttpMessage(delivery.logoutUrl, delivery.logoutMessages.get(0), false)
+                : new LogoutHttpMessage(delivery.logoutUrl, delivery.logoutMessages, false);
+        this.httpClient.sendMessageToEndPointAsync(message).whenComplete((sent, e) -> {
+            timer.stop();
+            releaseHost(host);
+            if (sent != null && sent) {
+                this.metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, metricName, "success")).mark();
+                LOGGER.debug("Sent logout message to [{}] after {} attempt(s)", delivery.logoutUrl, delivery.attempt);
+                forgetRetry(delivery);
+            } else {
+                this.metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, metricName, "failure")).mark();
+                retry(delivery);
+            }
+        });
+    }
+
+    private void retry(final Delivery delivery) {
+        if (delivery.attempt >= this.maxAttempts) {
+            LOGGER.warn("Logout message not sent to [{}] after {} attempts; giving up", delivery.logoutUrl, delivery.attempt);
+            forgetRetry(delivery);
+            return;
+        }
+        final int shift = Math.min(delivery.attempt - 1, Long.SIZE - 2);
+        final long delay = Math.min(this.maxRetryDelayInMillis, this.initialRetryDelayInMillis << shift);
+        LOGGER.debug("Logout message not sent to [{}]; retrying in {} ms", delivery.logoutUrl, delay);
+        final Delivery next = new Delivery(delivery.logoutUrl, delivery.logoutMessages, delivery.attempt + 1);
+        logRetry(delivery, next);
+        schedule(next, delay, this.pendingRetries);
+    }
+
+    /**
+     * Takes one of the sends allowed to a host at once, if any is left.
+     *
+     * @param host the host
+     * @return true if the message may be sent now
+     */
+    private boolean tryAcquireHost(final String host) {
+        final boolean[] acquired = new boolean[1];
+        this.hostSends.compute(host, (h, count) -> {
+            final int sends = count == null ? 0 : count;
+            acquired[0] = sends < this.maxConcurrentPerHost;
+            return acquired[0] ? Integer.valueOf(sends + 1) : count;
+        });
+        return acquired[0];
+    }
+
+    /**
+     * Gives back a send to a host, forgetting the host once no message is sent to it,
+     * so that only hosts with messages in flight are tracked.
+     *
+     * @param host the host
+     */
+    private void releaseHost(final String host) {
+        this.hostSends.computeIfPresent(host, (h, count) -> count > 1 ? Integer.valueOf(count - 1) : null);
+    }
+
+    private boolean isRetryLogEnabled() {
+        return StringUtils.isNotBlank(this.retryLog) && this.cipherExecutor != null && !this.stopped;
+    }
+
+    /**
+     * Records a retry in the retry log. The next attempt of a retry that is already
+     * in the log replaces it; other retries are appended.
+     *
+     * @param failed the delivery that failed
+     * @param next   the retry of the delivery
+     */
+    private void logRetry(final Delivery failed, final Delivery next) {
+        if (!isRetryLogEnabled()) {
+            return;
+        }
+        synchronized (this.loggedRetries) {
+            if (this.loggedRetries.remove(failed)) {
+                this.loggedRetries.add(next);
+                compactRetryLog();
+            } else {
+                this.loggedRetries.add(next);
+                appendRetryLog(next);
+            }
+        }
+    }
+
+    /**
+     * Removes a retry that was sent or given up from the retry log.
+     *
+     * @param delivery the delivery
+     */
+    private void forgetRetry(final Delivery delivery) {
+        if (!isRetryLogEnabled()) {
+            return;
+        }
+        synchronized (this.loggedRetries) {
+            if (this.loggedRetries.remove(delivery)) {
+                compactRetryLog();
+            }
+        }
+    }
+
+    private void appendRetryLog(final Delivery delivery) {
+        try (BufferedWriter writer = Files.newBufferedWriter(new File(this.retryLog).toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(toRetryLogLine(delivery));
+            writer.newLine();
+        } catch (final IOException e) {
+            LOGGER.error("Cannot keep the retry of a logout message to [{}] in [{}]", delivery.logoutUrl, this.retryLog, e);
+        }
+    }
+
+    /**
+     * Rewrites the retry log with the retries that are not sent yet, replacing it at once,
+     * or removes it if there are none.
+     */
+    private void compactRetryLog() {
+        final Path path = new File(this.retryLog).toPath();
+        try {
+            if (this.loggedRetries.isEmpty()) {
+                Files.deleteIfExists(path);
+                return;
+            }
+            final Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+            writeRetryLines(compacted, this.loggedRetries);
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            LOGGER.error("Cannot compact the retry log [{}]", path, e);
+        }
+    }
+
+    private void schedule(final Delivery delivery, final long delayInMillis, final Set<Delivery> pending) {
+        pending.add(delivery);
+        try {
+            this.retryScheduler.schedule(() -> {
+                pending.remove(delivery);
+                submit(delivery);
+            }, delayInMillis, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            LOGGER.debug("Dispatcher is stopped; logout message to [{}] is kept in the retry log", delivery.logoutUrl);
+        }
+    }
+
+    /**
+     * Gets the name of a host in metrics. The first hosts get a name of their own, and
+     * further hosts share a single name.
+     *
+     * @param host the host
+     * @return the name of the host in metrics
+     */
+    private String getHostMetricName(final String host) {
+        final String name = this.hostMetricNames.get(host);
+        if (name != null) {
+            return name;
+        }
+        if (this.hostMetricNames.size() >= this.maxHostsWithMetrics) {
+            return OTHER_HOSTS_METRIC_NAME;
+        }
+        return this.hostMetricNames.computeIfAbsent(host, h -> h.replace('.', '_'));
+    }
+
+    private void replayRetryLog() {
+        if (StringUtils.isBlank(this.retryLog)) {
+            return;
+        }
+        final File file = new File(this.retryLog);
+        if (!file.exists()) {
+            return;
+        }
+        if (this.cipherExecutor == null) {
+            LOGGER.warn("Logout messages in [{}] cannot be decrypted, since no ticketCipherExecutor is defined", file);
+            return;
+        }
+        try {
+            final List<Delivery> replayed = new ArrayList<>();
+            for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                final String[] fields = StringUtils.split(line, RETRY_LOG_SEPARATOR);
+                if (fields.length >= RETRY_LOG_MIN_FIELDS) {
+                    final List<String> messages = new ArrayList<>(fields.length - 2);
+                    Arrays.stream(fields, 2, fields.length)
+                            .map(field -> new String(this.cipherExecutor.decode(Base64.getDecoder().decode(field)),
+                                    StandardCharsets.UTF_8))
+                            .forEach(messages::add);
+                    replayed.add(new Delivery(new URL(fields[1]), messages, Integer.parseInt(fields[0])));
+                }
+            }
+            // the replayed messages stay in the log until they are sent or given up
+            synchronized (this.loggedRetries) {
+                this.loggedRetries.addAll(replayed);
+                compactRetryLog();
+            }
+            replayed.forEach(this::submit);
+            LOGGER.info("Replayed {} logout messages from [{}]", replayed.size(), file);
+        } catch (final Exception e) {
+            LOGGER.error("Cannot replay logout messages from [{}]: {}", file, e.getMessage(), e);
+        }
+    }
+
+    private void writeRetryLog(final Collection<Delivery> unsent) {
+        if (unsent.isEmpty()) {
+            return;
+        }
+        if (StringUtils.isBlank(this.retryLog)) {
+            LOGGER.warn("{} logout messages were not sent, and no retry log is defined to keep them", unsent.size());
+            return;
+        }
+        if (this.cipherExecutor == null) {
+            LOGGER.warn("{} logout messages were not sent, and cannot be kept in the retry log since no ticketCipherExecutor "
+                    + "is defined to encrypt the service tickets they carry", unsent.size());
+            return;
+        }
+        final File file = new File(this.retryLog);
+        try {
+            writeRetryLines(file.toPath(), unsent);
+            LOGGER.info("Kept {} logout messages that were not sent in [{}]", unsent.size(), file);
+        } catch (final IOException e) {
+            LOGGER.error("Cannot keep {} logout messages that were not sent in [{}]", unsent.size(), file, e);
+        }
+    }
+
+    private void writeRetryLines(final Path path, final Collection<Delivery> deliveries) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (final Delivery delivery : deliveries) {
+                writer.write(toRetryLogLine(delivery));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Formats a delivery as a line of the retry log, encrypting its messages once.
+     *
+     * @param delivery the delivery
+     * @return the line
+     */
+    private String toRetryLogLine(final Delivery delivery) {
+        if (delivery.retryLogLine == null) {
+            final StringBuilder line = new StringBuilder()
+                    .append(delivery.attempt).append(RETRY_LOG_SEPARATOR).append(delivery.logoutUrl.toExternalForm());
+            for (final String logoutMessage : delivery.logoutMessages) {
+                final byte[] encrypted = this.cipherExecutor.encode(logoutMessage.getBytes(StandardCharsets.UTF_8));
+                line.append(RETRY_LOG_SEPARATOR).append(Base64.getEncoder().encodeToString(encrypted));
+            }
+            delivery.retryLogLine = line.toString();
+        }
+        return delivery.retryLogLine;
+    }
+
+    public void setHttpClient(final HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    public void setMetricRegistry(final MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    public void setCipherExecutor(final CipherExecutor<byte[], byte[]> cipherExecutor) {
+        this.cipherExecutor = cipherExecutor;
+    }
+
+    public void setMaxHostsWithMetrics(final int maxHostsWithMetrics) {
+        this.maxHostsWithMetrics = maxHostsWithMetrics;
+    }
+
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    public void setQueueSize(final int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public void setMaxConcurrentPerHost(final int maxConcurrentPerHost) {
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+    }
+
+    public void setMaxAttempts(final int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public void setInitialRetryDelayInMillis(final long initialRetryDelayInMillis) {
+        this.initialRetryDelayInMillis = initialRetryDelayInMillis;
+    }
+
+    public void setMaxRetryDelayInMillis(final long maxRetryDelayInMillis) {
+        this.maxRetryDelayInMillis = maxRetryDelayInMillis;
+    }
+
+    public void setRetryLog(final String retryLog) {
+        this.retryLog = retryLog;
+    }
+
+    /**
+     * Attempt to send a logout message, or a batch of them.
+     */
+    private final class Delivery implements Runnable {
+
+        private final URL logoutUrl;
+
+        private final List<String> logoutMessages;
+
+        private final int attempt;
+
+        /** The line of this delivery in the retry log, once formatted. */
+        private volatile String retryLogLine;
+
+        Delivery(final URL logoutUrl, final List<String> logoutMessages, final int attempt) {
+            this.logoutUrl = logoutUrl;
+            this.logoutMessages = logoutMessages;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void run() {
+            send(this);
+        }
+    }
+}
@@ -3,7 +3,9 @@ package org.jasig.cas.logout;
 import org.jasig.cas.authentication.principal.AbstractWebApplicationService;
 import org.jasig.cas.authentication.principal.Service;
 import org.jasig.cas.services.AbstractRegisteredService;
+import org.jasig.cas.services.DefaultRegisteredServiceProperty;
 import org.jasig.cas.services.LogoutType;
+import org.jasig.cas.services.RegisteredServiceProperty;
 import org.jasig.cas.services.ServicesManager;
 import org.jasig.cas.ticket.TicketGrantingTicket;
 import org.jasig.cas.util.http.HttpClient;
@@ -17,9 +19,12 @@ import org.mockito.MockitoAnnotations;
 
 import java.net.URL;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
@@ -158,4 +163,48 @@ public class LogoutManagerImplTests {
         final Collection<LogoutRequest> logoutRequests = this.logoutManager.performLogout(tgt);
         assertEquals(1, logoutRequests.size());
     }
+
+    @Test
+    public void verifyBatchLogoutSendsOneMessagePerBatchUrl() {
+        final AbstractRegisteredService otherRegisteredService = addService("ID2", "http://www.github.com/other");
+        setBatchLogoutUrl(this.registeredService, "https://www.github.com/slo");
+        setBatchLogoutUrl(otherRegisteredService, "https://www.github.com/slo");
+        this.logoutManager.setBatchEnabled(true);
+
+        final Collection<LogoutRequest> logoutRequests = this.logoutManager.performLogout(tgt);
+        assertEquals(2, logoutRequests.size());
+        logoutRequests.forEach(request -> assertEquals(LogoutRequestStatus.SUCCESS, request.getStatus()));
+        verify(this.client, times(1)).sendMessageToEndPoint(any(HttpMessage.class));
+    }
+
+    @Test
+    public void verifyBatchLogoutSendsMessagesWithoutBatchUrlTogether() {
+        when(this.client.sendMessageToEndPointAsync(any(HttpMessage.class))).thenReturn(completedFuture(true));
+        addService("ID2", "http://www.github.com/other");
+        DefaultSingleLogoutServiceMessageHandler.class.cast(this.logoutManager.getSingleLogoutServiceMessageHandler()).
+                setAsynchronous(false);
+        this.logoutManager.setBatchEnabled(true);
+
+        final Collection<LogoutRequest> logoutRequests = this.logoutManager.performLogout(tgt);
+        assertEquals(2, logoutRequests.size());
+        logoutRequests.forEach(request -> assertEquals(LogoutRequestStatus.SUCCESS, request.getStatus()));
+        verify(this.client, times(2)).sendMessageToEndPointAsync(any(HttpMessage.class));
+        verify(this.client, never()).sendMessageToEndPoint(any(HttpMessage.class));
+    }
+
+    private AbstractRegisteredService addService(final String ticketId, final String url) {
+        final AbstractWebApplicationService service = org.jasig.cas.services.TestUtils.getService(url);
+        this.services.put(ticketId, service);
+        final AbstractRegisteredService otherRegisteredService = org.jasig.cas.services.TestUtils.getRegisteredService(url);
+        when(servicesManager.findServiceBy(service)).thenReturn(otherRegisteredService);
+        return otherRegisteredService;
+    }
+
+    private static void setBatchLogoutUrl(final AbstractRegisteredService service, final String url) {
+        final DefaultRegisteredServiceProperty property = new DefaultRegisteredServiceProperty();
+        property.setValues(new HashSet<>(Collections.singleton(url)));
+        final Map<String, RegisteredServiceProperty> properties = new HashMap<>();
+        properties.put(DefaultSingleLogoutServiceMessageHandler.BATCH_LOGOUT_URL_PROPERTY, property);
+        service.setProperties(properties);
+    }
 }
@@ -45,5 +45,8 @@ public class SamlCompliantLogoutMessageCreatorTests {
         assertEquals(list.getLength(), 1);
         
         assertEquals(list.item(0).getTextContent(), request.getTicketId());
+        assertTrue(document.getDocumentElement().getAttribute("ID").startsWith("LR-"));
+        assertTrue(document.getDocumentElement().getAttribute("IssueInstant")
+                .matches("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}Z"));
     }
 }
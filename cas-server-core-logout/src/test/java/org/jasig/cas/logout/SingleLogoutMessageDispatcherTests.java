@@ -0,0 +1,202 @@
+package org.jasig.cas.logout;
+
+import org.jasig.cas.util.AesGcmCipherExecutor;
+import org.jasig.cas.util.http.HttpClient;
+import org.jasig.cas.util.http.HttpMessage;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link SingleLogoutMessageDispatcher}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class SingleLogoutMessageDispatcherTests {
+
+    private static final long TIMEOUT_IN_MILLIS = 5000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final HttpClient client = mock(HttpClient.class);
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    private SingleLogoutMessageDispatcher dispatcher;
+
+    private File retryLog;
+
+    @Before
+    public void setUp() throws Exception {
+        this.retryLog = new File(this.folder.getRoot(), "slo-retry.log");
+        this.dispatcher = newDispatcher();
+    }
+
+    @After
+    public void tearDown() {
+        this.dispatcher.destroy();
+    }
+
+    @Test
+    public void verifyMessageIsSentInTheBackground() throws Exception {
+        when(this.client.sendMessageToEndPointAsync(any(HttpMessage.class))).thenReturn(completedFuture(true));
+
+        assertTrue(this.dispatcher.dispatch(new URL("https://app.example.org/logout"), "<samlp:LogoutRequest/>"));
+        await(() -> this.metricRegistry.meter("slo.dispatcher.app_example_org.success").getCount() == 1);
+        verify(this.client, times(1)).sendMessageToEndPointAsync(any(HttpMessage.class));
+        assertEquals(1, this.metricRegistry.timer("slo.dispatcher.app_example_org.latency").getCount());
+    }
+
+    @Test
+    public void verifyFailedMessageIsRetried() throws Exception {
+        when(this.client.sendMessageToEndPointAsync(any(HttpMessage.class))).thenReturn(
+                completedFuture(false), completedFuture(false), completedFuture(true));
+
+        assertTrue(this.dispatcher.dispatch(new URL("https://app.example.org/logout"), "<samlp:LogoutRequest/>"));
+        await(() -> this.metricRegistry.meter("slo.dispatcher.app_example_org.success").getCount() == 1);
+        verify(this.client, times(3)).sendMessageToEndPointAsync(any(HttpMessage.class));
+        assertEquals(2, this.metricRegistry.meter("slo.dispatcher.app_example_org.failure").getCount());
+        assertEquals(0, this.dispatcher.getPendingRetries());
+    }
+
+    @Test
+    public void verifyRetriesStopAfterMaxAttempts() throws Exception {
+        when(this.client.sendMessageToEndPointAsync(any(HttpMessage.class))).thenReturn(completedFuture(false));
+
+        assertTrue(this.dispatcher.dispatch(new URL("https://app.example.org/logout"), "<samlp:LogoutRequest/>"));
+        await(() -> this.metricRegistry.meter("slo.dispatcher.app_example_org.failure").getCount() == 3);
+        Thread.sleep(100);
+        verify(this.client, times(3)).sendMessageToEndPointAsync(any(HttpMessage.class));
+        assertEquals(0, this.dispatcher.getPendingRetries());
+    }
+
+    @Test
+    public void verifyPendingRetriesAreKeptAcrossRestarts() throws Exception {
+        when(this.client.sendMessageToEndPointAsync(any(HttpMessage.class))).thenReturn(
+                completedFuture(false), completedFuture(true));
+        this.dispatcher.setInitialRetryDelayInMillis(60000);
+        this.dispatcher.dispatch(new URL("https://app.example.org/logout"), "<samlp:LogoutRequest/>");
+        await(() -> this.dispatcher.getPendingRetries() == 1);
+
+        this.dispatcher.destroy();
+        assertTrue(this.retryLog.exists());
+        assertFalse(new String(Files.readAllBytes(this.retryLog.toPath()), StandardCharsets.UTF_8).contains("LogoutRequest"));
+
+        this.dispatcher = newDispatcher();
+        await(() -> this.metricRegistry.meter("slo.dispatcher.app_example_org.success").getCount() == 1);
+        assertFalse(this.retryLog.exists());
+    }
+
+    @Test
+    public void verifyRetriesAreLoggedUntilSent() throws Exception {
+        final CompletableFuture<Boolean> retried = new CompletableFuture<>();
+        when(this.client.sendMessageToEndPointAsync(any(HttpMessage.class))).thenReturn(completedFuture(false), retried);
+
+        this.dispatcher.dispatch(new URL("https://app.example.org/logout"), "<samlp:LogoutRequest/>");
+        verify(this.client, timeout(TIMEOUT_IN_MILLIS).times(2)).sendMessageToEndPointAsync(any(HttpMessage.class));
+        assertTrue(this.retryLog.exists());
+        assertEquals(1, Files.readAllLines(this.retryLog.toPath(), StandardCharsets.UTF_8).size());
+
+        retried.complete(true);
+        await(() -> this.metricRegistry.meter("slo.dispatcher.app_example_org.success").getCount() == 1);
+        await(() -> !this.retryLog.exists());
+    }
+
+    @Test
+    public void verifyPendingRetriesAreNotKeptWithoutCipher() throws Exception {
+        when(this.client.sendMessageToEndPointAsync(any(HttpMessage.class))).thenReturn(completedFuture(false));
+        this.dispatcher.destroy();
+        this.dispatcher = newDispatcher();
+        this.dispatcher.setCipherExecutor(null);
+        this.dispatcher.setInitialRetryDelayInMillis(60000);
+        this.dispatcher.dispatch(new URL("https://app.example.org/logout"), "<samlp:LogoutRequest/>");
+        await(() -> this.dispatcher.getPendingRetries() == 1);
+
+        this.dispatcher.destroy();
+        assertFalse(this.retryLog.exists());
+        this.dispatcher = newDispatcher();
+    }
+
+    @Test
+    public void verifyDeferredMessagesCountAgainstTheQueue() throws Exception {
+        final CompletableFuture<Boolean> response = new CompletableFuture<>();
+        when(this.client.sendMessageToEndPointAsync(any(HttpMessage.class))).thenReturn(response, completedFuture(true));
+        this.dispatcher.destroy();
+        this.dispatcher = newDispatcher(2);
+        final URL logoutUrl = new URL("https://app.example.org/logout");
+
+        assertTrue(this.dispatcher.dispatch(logoutUrl, "<samlp:LogoutRequest/>"));
+        verify(this.client, timeout(TIMEOUT_IN_MILLIS)).sendMessageToEndPointAsync(any(HttpMessage.class));
+        assertTrue(this.dispatcher.dispatch(logoutUrl, "<samlp:LogoutRequest/>"));
+        await(() -> getDeferred() == 1);
+        assertTrue(this.dispatcher.dispatch(logoutUrl, "<samlp:LogoutRequest/>"));
+        await(() -> getDeferred() == 2);
+        assertFalse(this.dispatcher.dispatch(logoutUrl, "<samlp:LogoutRequest/>"));
+        assertEquals(1, this.metricRegistry.meter("slo.dispatcher.dropped").getCount());
+        assertEquals(0, this.dispatcher.getPendingRetries());
+
+        response.complete(true);
+        await(() -> this.metricRegistry.meter("slo.dispatcher.app_example_org.success").getCount() == 3);
+        assertEquals(0, getDeferred());
+    }
+
+    @Test
+    public void verifyHostMetricsAreBounded() throws Exception {
+        when(this.client.sendMessageToEndPointAsync(any(HttpMessage.class))).thenReturn(completedFuture(true));
+        this.dispatcher.setMaxHostsWithMetrics(1);
+
+        this.dispatcher.dispatch(new URL("https://app.example.org/logout"), "<samlp:LogoutRequest/>");
+        await(() -> this.metricRegistry.meter("slo.dispatcher.app_example_org.success").getCount() == 1);
+        this.dispatcher.dispatch(new URL("https://other.example.org/logout"), "<samlp:LogoutRequest/>");
+        await(() -> this.metricRegistry.meter("slo.dispatcher.other.success").getCount() == 1);
+        assertFalse(this.metricRegistry.getMeters().containsKey("slo.dispatcher.other_example_org.success"));
+    }
+
+    private int getDeferred() {
+        return (Integer) this.metricRegistry.getGauges().get("slo.dispatcher.deferred").getValue();
+    }
+
+    private SingleLogoutMessageDispatcher newDispatcher() {
+        return newDispatcher(100);
+    }
+
+    private SingleLogoutMessageDispatcher newDispatcher(final int queueSize) {
+        final SingleLogoutMessageDispatcher newDispatcher = new SingleLogoutMessageDispatcher();
+        newDispatcher.setHttpClient(this.client);
+        newDispatcher.setMetricRegistry(this.metricRegistry);
+        newDispatcher.setThreads(2);
+        newDispatcher.setMaxAttempts(3);
+        newDispatcher.setInitialRetryDelayInMillis(10);
+        newDispatcher.setQueueSize(queueSize);
+        newDispatcher.setMaxConcurrentPerHost(1);
+        newDispatcher.setRetryLog(this.retryLog.getAbsolutePath());
+        newDispatcher.setCipherExecutor(new AesGcmCipherExecutor("1234567890123456", "1234567890123456"));
+        newDispatcher.initialize();
+        return newDispatcher;
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Logout messages were not processed in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
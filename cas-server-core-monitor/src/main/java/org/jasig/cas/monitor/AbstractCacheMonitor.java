@@ -58,7 +58,7 @@ public abstract class AbstractCacheMonitor extends AbstractNamedMonitor<CacheSta
             Arrays.stream(statistics).map(this::status)
                     .filter(code -> code.value() > overall[0].value())
                     .forEach(code -> overall[0] = code);
-            status = new CacheStatus(overall[0], null, statistics);
+            status = new CacheStatus(overall[0], getDescription(), statistics);
         } catch (final Exception e) {
             status = new CacheStatus(e);
         }
@@ -74,6 +74,16 @@ public abstract class AbstractCacheMonitor extends AbstractNamedMonitor<CacheSta
     protected abstract CacheStatistics[] getStatistics();
 
 
+    /**
+     * Gets an optional description of the cache that precedes its statistics in the observed status.
+     *
+     * @return the description, or null
+     */
+    protected String getDescription() {
+        return null;
+    }
+
+
     /**
      * Computes the status code for a given set of cache statistics.
      *
@@ -0,0 +1,60 @@
+package org.jasig.cas.monitor;
+
+import org.jasig.cas.util.http.CircuitBreaker;
+import org.jasig.cas.util.http.CircuitBreakerRegistry;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Reports the endpoint hosts, such as single logout and proxy callback URLs, whose circuit is open
+ * because they failed to answer the HTTP clients of CAS. A warning is issued while any circuit is open.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@Component("circuitBreakerMonitor")
+public class CircuitBreakerMonitor extends AbstractNamedMonitor<Status> {
+
+    @Nullable
+    @Autowired(required = false)
+    @Qualifier("circuitBreakerRegistry")
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    /**
+     * Instantiates a new monitor.
+     */
+    public CircuitBreakerMonitor() {}
+
+    /**
+     * Instantiates a new monitor.
+     *
+     * @param circuitBreakerRegistry the circuit breakers
+     */
+    public CircuitBreakerMonitor(final CircuitBreakerRegistry circuitBreakerRegistry) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+    }
+
+    @Override
+    public Status observe() {
+        if (this.circuitBreakerRegistry == null || !this.circuitBreakerRegistry.isEnabled()) {
+            return new Status(StatusCode.UNKNOWN, "Circuit breakers are not enabled.");
+        }
+
+        final Map<String, CircuitBreaker> circuitBreakers = this.circuitBreakerRegistry.getCircuitBreakers();
+        final String failing = circuitBreakers.entrySet().stream()
+                .filter(entry -> entry.getValue().getState() != CircuitBreaker.State.CLOSED)
+                .map(entry -> String.format("%s (%s after %s failures)", entry.getKey(),
+                        entry.getValue().getState(), entry.getValue().getConsecutiveFailures()))
+                .collect(Collectors.joining(", "));
+        if (failing.isEmpty()) {
+            return new Status(StatusCode.OK, circuitBreakers.size() + " endpoint hosts are available.");
+        }
+        return new Status(StatusCode.WARN, "Requests are not sent to failing endpoint hosts: " + failing);
+    }
+}
@@ -0,0 +1,106 @@
+package org.jasig.cas.monitor;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monitors the ticket registry latency and error metrics that are published
+ * by an instrumented ticket registry into the metric registry.
+ * A warning is issued when the 99th percentile latency of any registry operation
+ * exceeds the configured threshold, and an error is issued when any operation
+ * reports failures above the configured rate.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@Component("ticketRegistryMetricsMonitor")
+public class TicketRegistryMetricsMonitor extends AbstractNamedMonitor<Status> {
+
+    /** Root name of the ticket registry metrics. */
+    public static final String METRIC_PREFIX = "ticket.registry.";
+
+    @Nullable
+    @Autowired(required = false)
+    @Qualifier("metrics")
+    private MetricRegistry metricRegistry;
+
+    /** Latency threshold in milliseconds above which warnings are issued. */
+    @Value("${cas.monitor.ticket.registry.latency.warn.threshold:500}")
+    private long latencyWarnThreshold = 500;
+
+    /** One-minute error rate per second above which errors are issued. */
+    @Value("${cas.monitor.ticket.registry.error.rate.threshold:0.1}")
+    private double errorRateThreshold = 0.1;
+
+    /**
+     * Instantiates a new monitor.
+     */
+    public TicketRegistryMetricsMonitor() {}
+
+    /**
+     * Instantiates a new monitor.
+     *
+     * @param metricRegistry the metric registry
+     */
+    public TicketRegistryMetricsMonitor(final MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    public void setLatencyWarnThreshold(final long latencyWarnThreshold) {
+        this.latencyWarnThreshold = latencyWarnThreshold;
+    }
+
+    public void setErrorRateThreshold(final double errorRateThreshold) {
+        this.errorRateThreshold = errorRateThreshold;
+    }
+
+    @Override
+    public Status observe() {
+        if (this.metricRegistry == null) {
+            return new Status(StatusCode.UNKNOWN, "No metric registry is available.");
+        }
+
+        final SortedMap<String, Timer> timers = this.metricRegistry.getTimers(
+                (name, metric) -> name.startsWith(METRIC_PREFIX));
+        if (timers.isEmpty()) {
+            return new Status(StatusCode.UNKNOWN, "Ticket registry is not instrumented or has not been used yet.");
+        }
+
+        StatusCode code = StatusCode.OK;
+        final StringBuilder msg = new StringBuilder();
+        for (final Map.Entry<String, Timer> entry : timers.entrySet()) {
+            final double p99 = TimeUnit.NANOSECONDS.toMillis((long) entry.getValue().getSnapshot().get99thPercentile());
+            if (p99 > this.latencyWarnThreshold) {
+                code = code.value() > StatusCode.WARN.value() ? code : StatusCode.WARN;
+                msg.append(String.format("%s 99th percentile latency (%s ms) is above threshold %s ms. ",
+                        entry.getKey(), p99, this.latencyWarnThreshold));
+            }
+        }
+
+        final SortedMap<String, Meter> errors = this.metricRegistry.getMeters(
+                (name, metric) -> name.startsWith(METRIC_PREFIX) && name.endsWith(".errors"));
+        for (final Map.Entry<String, Meter> entry : errors.entrySet()) {
+            final double rate = entry.getValue().getOneMinuteRate();
+            if (rate > this.errorRateThreshold) {
+                code = StatusCode.ERROR;
+                msg.append(String.format("%s error rate (%.3f/s) is above threshold %s/s. ",
+                        entry.getKey(), rate, this.errorRateThreshold));
+            }
+        }
+
+        if (code == StatusCode.OK) {
+            msg.append(timers.size()).append(" ticket registry operations within thresholds.");
+        }
+        return new Status(code, msg.toString().trim());
+    }
+}
@@ -0,0 +1,55 @@
+package org.jasig.cas.monitor;
+
+import org.jasig.cas.util.http.CircuitBreakerRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link CircuitBreakerMonitor} class.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class CircuitBreakerMonitorTests {
+
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    private CircuitBreakerMonitor monitor;
+
+    @Before
+    public void setUp() {
+        this.circuitBreakerRegistry = new CircuitBreakerRegistry();
+        this.circuitBreakerRegistry.setEnabled(true);
+        this.circuitBreakerRegistry.setFailureThreshold(2);
+        this.monitor = new CircuitBreakerMonitor(this.circuitBreakerRegistry);
+    }
+
+    @Test
+    public void verifyUnknownWithoutRegistry() {
+        assertEquals(StatusCode.UNKNOWN, new CircuitBreakerMonitor().observe().getCode());
+    }
+
+    @Test
+    public void verifyObserveOk() {
+        this.circuitBreakerRegistry.recordOutcome(URI.create("https://app.example.org/logout"), true);
+        this.circuitBreakerRegistry.recordOutcome(URI.create("https://app.example.org/logout"), false);
+        assertEquals(StatusCode.OK, this.monitor.observe().getCode());
+    }
+
+    @Test
+    public void verifyObserveWarnWhenCircuitIsOpen() {
+        final URI uri = URI.create("https://app.example.org/logout");
+        this.circuitBreakerRegistry.recordOutcome(uri, false);
+        this.circuitBreakerRegistry.recordOutcome(uri, false);
+        assertFalse(this.circuitBreakerRegistry.allowRequest(uri));
+
+        final Status status = this.monitor.observe();
+        assertEquals(StatusCode.WARN, status.getCode());
+        assertTrue(status.getDescription().contains("https://app.example.org:443"));
+    }
+}
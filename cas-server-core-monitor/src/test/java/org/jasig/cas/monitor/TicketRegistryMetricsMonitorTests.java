@@ -0,0 +1,55 @@
+package org.jasig.cas.monitor;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link TicketRegistryMetricsMonitor} class.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class TicketRegistryMetricsMonitorTests {
+
+    private MetricRegistry metricRegistry;
+    private TicketRegistryMetricsMonitor monitor;
+
+    @Before
+    public void setUp() {
+        this.metricRegistry = new MetricRegistry();
+        this.monitor = new TicketRegistryMetricsMonitor(this.metricRegistry);
+    }
+
+    @Test
+    public void verifyUnknownWithoutMetrics() {
+        assertEquals(StatusCode.UNKNOWN, this.monitor.observe().getCode());
+    }
+
+    @Test
+    public void verifyObserveOk() {
+        this.metricRegistry.timer("ticket.registry.get.TGT.timer").update(1, TimeUnit.MILLISECONDS);
+        assertEquals(StatusCode.OK, this.monitor.observe().getCode());
+    }
+
+    @Test
+    public void verifyObserveWarnLatencyExceeded() {
+        this.metricRegistry.timer("ticket.registry.get.TGT.timer").update(1, TimeUnit.SECONDS);
+        this.monitor.setLatencyWarnThreshold(10);
+        final Status status = this.monitor.observe();
+        assertEquals(StatusCode.WARN, status.getCode());
+        assertTrue(status.getDescription().contains("ticket.registry.get.TGT.timer"));
+    }
+
+    @Test
+    public void verifyObserveErrorRateExceeded() {
+        this.metricRegistry.timer("ticket.registry.add.ST.timer").update(1, TimeUnit.MILLISECONDS);
+        this.metricRegistry.meter("ticket.registry.add.ST.errors").mark(100);
+        this.monitor.setErrorRateThreshold(-1);
+        assertEquals(StatusCode.ERROR, this.monitor.observe().getCode());
+    }
+}
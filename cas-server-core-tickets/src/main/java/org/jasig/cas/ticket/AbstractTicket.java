@@ -1,5 +1,7 @@
 package org.jasig.cas.ticket;
 
+import org.jasig.cas.ticket.support.AbstractCasExpirationPolicy;
+
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.springframework.util.Assert;
 
@@ -7,6 +9,10 @@ import javax.persistence.Column;
 import javax.persistence.Id;
 import javax.persistence.Lob;
 import javax.persistence.MappedSuperclass;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Version;
+import java.time.Duration;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 
@@ -59,6 +65,18 @@ public abstract class AbstractTicket implements Ticket, TicketState {
     @Column(name="NUMBER_OF_TIMES_USED")
     private int countOfUses;
 
+    /**
+     * The time after which the ticket is expired unless it is used again, as reported by
+     * the expiration policy when the ticket was last stored; null if the policy cannot tell.
+     */
+    @Column(name="EXPIRATION_TIME")
+    private ZonedDateTime expirationTime;
+
+    /** Optimistic locking version, incremented whenever the ticket is stored. */
+    @Version
+    @Column(name="VERSION", nullable=false)
+    private long version;
+
     /**
      * Instantiates a new abstract ticket.
      */
@@ -139,6 +157,39 @@ public abstract class AbstractTicket implements Ticket, TicketState {
         return false;
     }
 
+    /**
+     * Gets the time this ticket expires at according to its expiration policy, given its current state.
+     *
+     * @return the expiration time, or null if the expiration policy cannot tell
+     */
+    public final ZonedDateTime getExpirationTime() {
+        if (this.expirationPolicy instanceof AbstractCasExpirationPolicy) {
+            return ((AbstractCasExpirationPolicy) this.expirationPolicy).getExpirationTime(this);
+        }
+        return null;
+    }
+
+    /**
+     * Gets how long this ticket may stay unused before it expires according to its expiration policy.
+     *
+     * @return the idle timeout, or null if the ticket does not expire for being idle
+     */
+    public final Duration getTimeToIdle() {
+        if (this.expirationPolicy instanceof AbstractCasExpirationPolicy) {
+            return ((AbstractCasExpirationPolicy) this.expirationPolicy).getTimeToIdle(this);
+        }
+        return null;
+    }
+
+    /**
+     * Records the expiration time reported by the expiration policy, before the ticket is stored.
+     */
+    @PrePersist
+    @PreUpdate
+    protected void updateExpirationTime() {
+        this.expirationTime = getExpirationTime();
+    }
+
     @Override
     public final int hashCode() {
         return new HashCodeBuilder(13, 133).append(this.getId()).toHashCode();
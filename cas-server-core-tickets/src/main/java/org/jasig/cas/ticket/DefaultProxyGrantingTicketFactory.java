@@ -5,6 +5,7 @@ import org.jasig.cas.ticket.proxy.ProxyGrantingTicket;
 import org.jasig.cas.ticket.proxy.ProxyGrantingTicketFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
@@ -35,11 +36,18 @@ public class DefaultProxyGrantingTicketFactory implements ProxyGrantingTicketFac
     @Resource(name="grantingTicketExpirationPolicy")
     protected ExpirationPolicy ticketGrantingTicketExpirationPolicy;
 
+    /** Whether ticket ids carry an affinity key; see {@link TicketAffinity}. */
+    @Value("${ticket.affinity.enabled:false}")
+    protected boolean affinityEnabled;
+
     @Override
     public <T extends ProxyGrantingTicket> T create(final ServiceTicket serviceTicket,
                                                     final Authentication authentication) {
-        final String pgtId = this.ticketGrantingTicketUniqueTicketIdGenerator.getNewTicketId(
+        String pgtId = this.ticketGrantingTicketUniqueTicketIdGenerator.getNewTicketId(
                 ProxyGrantingTicket.PROXY_GRANTING_TICKET_PREFIX);
+        if (this.affinityEnabled) {
+            pgtId = TicketAffinity.inheritAffinityId(ProxyGrantingTicket.PROXY_GRANTING_TICKET_PREFIX, pgtId, serviceTicket);
+        }
         final ProxyGrantingTicket proxyGrantingTicket = serviceTicket.grantProxyGrantingTicket(pgtId,
                 authentication, this.ticketGrantingTicketExpirationPolicy);
         return (T) proxyGrantingTicket;
@@ -57,4 +65,8 @@ public class DefaultProxyGrantingTicketFactory implements ProxyGrantingTicketFac
     public void setTicketGrantingTicketExpirationPolicy(final ExpirationPolicy ticketGrantingTicketExpirationPolicy) {
         this.ticketGrantingTicketExpirationPolicy = ticketGrantingTicketExpirationPolicy;
     }
+
+    public void setAffinityEnabled(final boolean affinityEnabled) {
+        this.affinityEnabled = affinityEnabled;
+    }
 }
@@ -38,6 +38,10 @@ public class DefaultProxyTicketFactory implements ProxyTicketFactory {
     @Value("${tgt.onlyTrackMostRecentSession:true}")
     protected boolean onlyTrackMostRecentSession = true;
 
+    /** Whether ticket ids carry an affinity key; see {@link TicketAffinity}. */
+    @Value("${ticket.affinity.enabled:false}")
+    protected boolean affinityEnabled;
+
     /** ExpirationPolicy for Service Tickets. */
     @NotNull
     @Resource(name="serviceTicketExpirationPolicy")
@@ -56,7 +60,10 @@ public class DefaultProxyTicketFactory implements ProxyTicketFactory {
                     uniqueTicketIdGenKey);
         }
 
-        final String ticketId = serviceTicketUniqueTicketIdGenerator.getNewTicketId(ProxyTicket.PROXY_TICKET_PREFIX);
+        String ticketId = serviceTicketUniqueTicketIdGenerator.getNewTicketId(ProxyTicket.PROXY_TICKET_PREFIX);
+        if (this.affinityEnabled) {
+            ticketId = TicketAffinity.inheritAffinityId(ProxyTicket.PROXY_TICKET_PREFIX, ticketId, proxyGrantingTicket);
+        }
         final ProxyTicket serviceTicket = proxyGrantingTicket.grantProxyTicket(
                 ticketId,
                 service,
@@ -85,4 +92,8 @@ public class DefaultProxyTicketFactory implements ProxyTicketFactory {
     public void setServiceTicketExpirationPolicy(final ExpirationPolicy serviceTicketExpirationPolicy) {
         this.serviceTicketExpirationPolicy = serviceTicketExpirationPolicy;
     }
+
+    public void setAffinityEnabled(final boolean affinityEnabled) {
+        this.affinityEnabled = affinityEnabled;
+    }
 }
@@ -36,6 +36,10 @@ public class DefaultServiceTicketFactory implements ServiceTicketFactory {
     @Value("${tgt.onlyTrackMostRecentSession:true}")
     protected boolean onlyTrackMostRecentSession = true;
 
+    /** Whether ticket ids carry an affinity key; see {@link TicketAffinity}. */
+    @Value("${ticket.affinity.enabled:false}")
+    protected boolean affinityEnabled;
+
     /** ExpirationPolicy for Service Tickets. */
     @NotNull
     @Resource(name="serviceTicketExpirationPolicy")
@@ -58,7 +62,10 @@ public class DefaultServiceTicketFactory implements ServiceTicketFactory {
                     uniqueTicketIdGenKey);
         }
 
-        final String ticketId = serviceTicketUniqueTicketIdGenerator.getNewTicketId(ServiceTicket.PREFIX);
+        String ticketId = serviceTicketUniqueTicketIdGenerator.getNewTicketId(ServiceTicket.PREFIX);
+        if (this.affinityEnabled) {
+            ticketId = TicketAffinity.inheritAffinityId(ServiceTicket.PREFIX, ticketId, ticketGrantingTicket);
+        }
         final ServiceTicket serviceTicket = ticketGrantingTicket.grantServiceTicket(
                 ticketId,
                 service,
@@ -92,4 +99,8 @@ public class DefaultServiceTicketFactory implements ServiceTicketFactory {
     public void setDefaultServiceTicketIdGenerator(final UniqueTicketIdGenerator defaultServiceTicketIdGenerator) {
         this.defaultServiceTicketIdGenerator = defaultServiceTicketIdGenerator;
     }
+
+    public void setAffinityEnabled(final boolean affinityEnabled) {
+        this.affinityEnabled = affinityEnabled;
+    }
 }
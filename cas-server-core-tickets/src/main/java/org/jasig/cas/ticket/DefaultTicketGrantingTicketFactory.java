@@ -3,6 +3,7 @@ package org.jasig.cas.ticket;
 import org.jasig.cas.authentication.Authentication;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
@@ -33,11 +34,18 @@ public class DefaultTicketGrantingTicketFactory implements TicketGrantingTicketF
     @Resource(name="grantingTicketExpirationPolicy")
     protected ExpirationPolicy ticketGrantingTicketExpirationPolicy;
 
+    /** Whether ticket ids carry an affinity key; see {@link TicketAffinity}. */
+    @Value("${ticket.affinity.enabled:false}")
+    protected boolean affinityEnabled;
+
     @Override
     public <T extends TicketGrantingTicket> T create(final Authentication authentication) {
+        String ticketId = this.ticketGrantingTicketUniqueTicketIdGenerator.getNewTicketId(TicketGrantingTicket.PREFIX);
+        if (this.affinityEnabled) {
+            ticketId = TicketAffinity.newAffinityId(TicketGrantingTicket.PREFIX, ticketId);
+        }
         final TicketGrantingTicket ticketGrantingTicket = new TicketGrantingTicketImpl(
-                this.ticketGrantingTicketUniqueTicketIdGenerator.getNewTicketId(TicketGrantingTicket.PREFIX),
-                authentication, ticketGrantingTicketExpirationPolicy);
+                ticketId, authentication, ticketGrantingTicketExpirationPolicy);
         return (T) ticketGrantingTicket;
     }
 
@@ -53,4 +61,8 @@ public class DefaultTicketGrantingTicketFactory implements TicketGrantingTicketF
     public void setTicketGrantingTicketExpirationPolicy(final ExpirationPolicy ticketGrantingTicketExpirationPolicy) {
         this.ticketGrantingTicketExpirationPolicy = ticketGrantingTicketExpirationPolicy;
     }
+
+    public void setAffinityEnabled(final boolean affinityEnabled) {
+        this.affinityEnabled = affinityEnabled;
+    }
 }
@@ -0,0 +1,80 @@
+package org.jasig.cas.ticket;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Builds ticket ids that carry an affinity key, so that distributed ticket registries
+ * can store a ticket-granting ticket and all tickets granted from it on the same partition.
+ * <p>
+ * The affinity key follows the last {@value #SEPARATOR} of a ticket id. A new ticket-granting
+ * ticket is given a key of its own, derived from its id, and tickets granted from it inherit it,
+ * so that proxy-granting tickets and proxy tickets share the key of the ticket-granting ticket
+ * at the root of their chain. The separator matches the convention of Hazelcast's
+ * {@code StringPartitioningStrategy}, which partitions such keys by the text after it.
+ * It lies outside the characters {@code [A-Za-z0-9-]} the CAS protocol recommends for tickets,
+ * so clients that check ticket ids against them may reject service and proxy tickets that carry a key.
+ * </p>
+ * <p>
+ * Only ids of the form [PREFIX]-... produced by {@link org.jasig.cas.util.DefaultUniqueTicketIdGenerator}
+ * are changed; ids that follow another format, such as SAML artifacts, are kept as they are.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class TicketAffinity {
+
+    /** Separates the affinity key from the rest of a ticket id. */
+    public static final char SEPARATOR = '@';
+
+    private TicketAffinity() {}
+
+    /**
+     * Gets the affinity key of a ticket id.
+     *
+     * @param ticketId the ticket id
+     * @return the affinity key, or null if the id carries none
+     */
+    public static String getAffinityKey(final String ticketId) {
+        if (ticketId == null) {
+            return null;
+        }
+        final int index = ticketId.lastIndexOf(SEPARATOR);
+        return index < 0 || index == ticketId.length() - 1 ? null : ticketId.substring(index + 1);
+    }
+
+    /**
+     * Gets the id of a new ticket-granting ticket, with an affinity key derived from the id.
+     *
+     * @param prefix   the prefix of the ticket type
+     * @param ticketId the generated id
+     * @return the id with its affinity key
+     */
+    public static String newAffinityId(final String prefix, final String ticketId) {
+        if (!isDefaultFormat(prefix, ticketId)) {
+            return ticketId;
+        }
+        return ticketId + SEPARATOR + Integer.toString(ticketId.hashCode() & Integer.MAX_VALUE, Character.MAX_RADIX);
+    }
+
+    /**
+     * Gets the id of a ticket granted from another, with the affinity key of the granting ticket.
+     *
+     * @param prefix         the prefix of the ticket type
+     * @param ticketId       the generated id
+     * @param grantingTicket the ticket the new ticket is granted from
+     * @return the id with the affinity key of the granting ticket, or the generated id
+     * if the granting ticket has no affinity key
+     */
+    public static String inheritAffinityId(final String prefix, final String ticketId, final Ticket grantingTicket) {
+        final String affinityKey = getAffinityKey(grantingTicket.getId());
+        if (affinityKey == null || !isDefaultFormat(prefix, ticketId)) {
+            return ticketId;
+        }
+        return ticketId + SEPARATOR + affinityKey;
+    }
+
+    private static boolean isDefaultFormat(final String prefix, final String ticketId) {
+        return StringUtils.startsWith(ticketId, prefix + '-') && ticketId.indexOf(SEPARATOR) < 0;
+    }
+}
@@ -16,6 +16,7 @@ import javax.persistence.DiscriminatorColumn;
 import javax.persistence.DiscriminatorValue;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
@@ -41,7 +42,7 @@ import java.util.Set;
  * @since 3.0.0
  */
 @Entity
-@Table(name="TICKETGRANTINGTICKET")
+@Table(name="TICKETGRANTINGTICKET", indexes = @Index(name="TICKETGRANTINGTICKET_EXPIRATION_IDX", columnList="EXPIRATION_TIME"))
 @DiscriminatorColumn(name = "TYPE")
 @DiscriminatorValue(TicketGrantingTicket.PREFIX)
 public class TicketGrantingTicketImpl extends AbstractTicket implements TicketGrantingTicket {
@@ -6,6 +6,7 @@ import org.jasig.cas.ticket.TicketGrantingTicket;
 import java.time.ZonedDateTime;
 
 import java.lang.reflect.Constructor;
+import java.util.function.Consumer;
 
 
 /**
@@ -42,7 +43,19 @@ public abstract class AbstractTicketDelegator<T extends Ticket> implements Ticke
      * Update ticket by the delegated registry.
      */
     protected void updateTicket() {
-        this.ticketRegistry.updateTicket(this.ticket);
+        this.ticketRegistry.updateTicketFromDelegator(this.ticket);
+    }
+
+    /**
+     * Update ticket-granting ticket by the delegated registry, which may apply the change
+     * again to the latest version of the ticket if it was updated concurrently.
+     *
+     * @param change the change, already applied to the ticket
+     * @param <G>    the type of the ticket-granting ticket
+     */
+    @SuppressWarnings("unchecked")
+    protected <G extends TicketGrantingTicket> void updateTicket(final Consumer<G> change) {
+        this.ticketRegistry.updateTicketFromDelegator((G) this.ticket, change);
     }
 
     protected T getTicket() {
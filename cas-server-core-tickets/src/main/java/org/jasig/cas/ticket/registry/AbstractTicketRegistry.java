@@ -10,6 +10,11 @@ import org.jasig.cas.ticket.proxy.ProxyTicket;
 import org.jasig.cas.util.DigestUtils;
 import org.jasig.cas.util.SerializationUtils;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.io.ByteSource;
 import org.apache.commons.lang3.StringUtils;
 import org.jasig.cas.util.Pair;
@@ -17,6 +22,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.util.Assert;
 
 import javax.annotation.Nullable;
@@ -25,6 +33,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -33,8 +42,21 @@ import java.util.stream.Collectors;
  * <p>
  * This is a published and supported CAS Server 3 API.
  * </p>
+ * <p>
+ * Updates of ticket-granting tickets made through ticket delegators, such as granting a service ticket,
+ * may be deferred to a {@link TicketUpdateBuffer} by setting {@code ticketreg.writebehind.windowInMillis}.
+ * Updates are then coalesced per ticket and written once per window; tickets read from this registry
+ * reflect their pending updates. Pending updates are written when the application context closes.
+ * </p>
  */
-public abstract class AbstractTicketRegistry implements TicketRegistry, TicketRegistryState {
+public abstract class AbstractTicketRegistry implements TicketRegistry, TicketRegistryState,
+        ApplicationListener<ContextClosedEvent> {
+
+    /** Root name of the write-behind metrics, followed by the registry type. */
+    public static final String WRITE_BEHIND_METRIC_PREFIX = "ticket.registry.writeBehind";
+
+    /** Number of ticket id digests kept by a registry. */
+    private static final int MAX_ENCODED_TICKET_IDS = 10000;
 
     /** The Slf4j logger instance. */
     protected final Logger logger = LoggerFactory.getLogger(getClass());
@@ -43,6 +65,23 @@ public abstract class AbstractTicketRegistry implements TicketRegistry, TicketRe
     @Qualifier("ticketCipherExecutor")
     private CipherExecutor<byte[], byte[]> cipherExecutor;
 
+    @Nullable
+    @Autowired(required = false)
+    @Qualifier("metrics")
+    private MetricRegistry metricRegistry;
+
+    @Value("${ticketreg.writebehind.windowInMillis:0}")
+    private long writeBehindWindowInMillis;
+
+    @Value("${ticketreg.writebehind.maxSize:10000}")
+    private int writeBehindMaxSize = 10000;
+
+    private volatile TicketUpdateBuffer ticketUpdateBuffer;
+
+    private final LoadingCache<String, String> encodedTicketIds = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ENCODED_TICKET_IDS)
+            .build(CacheLoader.from(DigestUtils::sha512));
+
     private List<Pair<Class<? extends Ticket>, Constructor<? extends AbstractTicketDelegator>>> ticketDelegators = new ArrayList<>();
 
     /**
@@ -124,6 +163,9 @@ public abstract class AbstractTicketRegistry implements TicketRegistry, TicketRe
             proxyGrantingTickets.stream().map(Ticket::getId).forEach(this::deleteTicket);
         }
         logger.debug("Removing ticket [{}] from the registry.", ticket);
+        if (this.ticketUpdateBuffer != null) {
+            this.ticketUpdateBuffer.discard(ticketId);
+        }
         return deleteSingleTicket(ticketId);
     }
 
@@ -172,6 +214,97 @@ public abstract class AbstractTicketRegistry implements TicketRegistry, TicketRe
      */
     protected abstract void updateTicket(Ticket ticket);
 
+    /**
+     * Update a ticket changed through its delegator. Updates of ticket-granting tickets
+     * that are not expired are deferred to the write-behind buffer, when it is enabled.
+     *
+     * @param ticket the ticket
+     */
+    protected final void updateTicketFromDelegator(final Ticket ticket) {
+        final TicketUpdateBuffer buffer = getTicketUpdateBuffer();
+        if (buffer != null && ticket instanceof TicketGrantingTicket) {
+            if (!ticket.isExpired() && buffer.offer(ticket)) {
+                return;
+            }
+            buffer.discard(ticket.getId());
+        }
+        updateTicket(ticket);
+    }
+
+    /**
+     * Update a ticket-granting ticket changed through its delegator, given the change that was applied to it.
+     * Registries that detect concurrent updates of a ticket override this to apply the change again to the
+     * latest version of the ticket; by default, the ticket is updated as changed.
+     *
+     * @param ticket the ticket, with the change applied
+     * @param change the change
+     * @param <T>    the type of the ticket
+     */
+    protected <T extends TicketGrantingTicket> void updateTicketFromDelegator(final T ticket, final Consumer<T> change) {
+        updateTicketFromDelegator(ticket);
+    }
+
+    /**
+     * Write a ticket update that was deferred to the write-behind buffer.
+     * Registries that write tickets within transactions override this
+     * to start one, since the buffer writes from its own thread.
+     *
+     * @param ticket the ticket
+     */
+    protected void writeBufferedTicketUpdate(final Ticket ticket) {
+        updateTicket(ticket);
+    }
+
+    /**
+     * Write all pending ticket updates and stop deferring updates.
+     */
+    public final void flushTicketUpdates() {
+        final TicketUpdateBuffer buffer = this.ticketUpdateBuffer;
+        if (buffer != null) {
+            buffer.shutdown();
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(final ContextClosedEvent event) {
+        flushTicketUpdates();
+    }
+
+    /**
+     * Gets the write-behind buffer, creating it on first use.
+     *
+     * @return the buffer, or null if updates are written directly
+     */
+    protected final TicketUpdateBuffer getTicketUpdateBuffer() {
+        if (this.ticketUpdateBuffer == null && this.writeBehindWindowInMillis > 0) {
+            synchronized (this) {
+                if (this.ticketUpdateBuffer == null) {
+                    this.ticketUpdateBuffer = newTicketUpdateBuffer();
+                }
+            }
+        }
+        return this.ticketUpdateBuffer;
+    }
+
+    private TicketUpdateBuffer newTicketUpdateBuffer() {
+        logger.info("Deferring ticket-granting ticket updates by {} ms, for up to {} tickets",
+                this.writeBehindWindowInMillis, this.writeBehindMaxSize);
+        final TicketUpdateBuffer buffer = new TicketUpdateBuffer(this::writeBufferedTicketUpdate,
+                this.writeBehindWindowInMillis, this.writeBehindMaxSize);
+        if (this.metricRegistry != null) {
+            final String prefix = MetricRegistry.name(WRITE_BEHIND_METRIC_PREFIX, getClass().getSimpleName());
+            this.metricRegistry.register(MetricRegistry.name(prefix, "pending"), (Gauge<Integer>) buffer::getPendingCount);
+            this.metricRegistry.register(MetricRegistry.name(prefix, "oldestPendingAge"),
+                    (Gauge<Long>) buffer::getOldestPendingAgeInMillis);
+            this.metricRegistry.register(MetricRegistry.name(prefix, "buffered"), (Gauge<Long>) buffer::getBufferedCount);
+            this.metricRegistry.register(MetricRegistry.name(prefix, "coalesced"), (Gauge<Long>) buffer::getCoalescedCount);
+            this.metricRegistry.register(MetricRegistry.name(prefix, "flushed"), (Gauge<Long>) buffer::getFlushedCount);
+            this.metricRegistry.register(MetricRegistry.name(prefix, "writtenThrough"), (Gauge<Long>) buffer::getWrittenThroughCount);
+            this.metricRegistry.register(MetricRegistry.name(prefix, "failed"), (Gauge<Long>) buffer::getFailedCount);
+        }
+        return buffer;
+    }
+
     /**
      * Whether or not a callback to the TGT is required when checking for expiration.
      *
@@ -190,12 +323,16 @@ public abstract class AbstractTicketRegistry implements TicketRegistry, TicketRe
             return null;
         }
 
+        final TicketUpdateBuffer buffer = this.ticketUpdateBuffer;
+        final Ticket pending = buffer == null ? null : buffer.getPendingTicket(ticket.getId());
+        final Ticket latest = pending == null ? ticket : pending;
+
         for (final Pair<Class<? extends Ticket>, Constructor<? extends AbstractTicketDelegator>> ticketDelegator: ticketDelegators) {
             final Class<? extends Ticket> clazz = ticketDelegator.getFirst();
-            if (clazz.isAssignableFrom(ticket.getClass())) {
+            if (clazz.isAssignableFrom(latest.getClass())) {
                 final Constructor<? extends AbstractTicketDelegator> constructor = ticketDelegator.getSecond();
                 try {
-                    return constructor.newInstance(this, ticket, needsCallback());
+                    return constructor.newInstance(this, latest, needsCallback());
                 } catch (final Exception e) {
                     throw new RuntimeException(e);
                 }
@@ -209,8 +346,31 @@ public abstract class AbstractTicketRegistry implements TicketRegistry, TicketRe
         this.cipherExecutor = cipherExecutor;
     }
 
+    public void setMetricRegistry(final MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    public void setWriteBehindWindowInMillis(final long writeBehindWindowInMillis) {
+        this.writeBehindWindowInMillis = writeBehindWindowInMillis;
+    }
+
+    public void setWriteBehindMaxSize(final int writeBehindMaxSize) {
+        this.writeBehindMaxSize = writeBehindMaxSize;
+    }
+
+    /**
+     * Whether tickets are encoded by a cipher before they are stored.
+     *
+     * @return true if tickets are stored encoded
+     */
+    protected final boolean isCipherExecutorEnabled() {
+        return this.cipherExecutor != null;
+    }
+
     /**
-     * Encode ticket id into a SHA-512.
+     * Encode ticket id into a SHA-512. The digests of recently encoded ids are
+     * kept in a bounded cache, since a request usually looks up, updates and
+     * removes the same tickets more than once.
      *
      * @param ticketId the ticket id
      * @return the ticket
@@ -224,7 +384,7 @@ public abstract class AbstractTicketRegistry implements TicketRegistry, TicketRe
             return ticketId;
         }
 
-        return DigestUtils.sha512(ticketId);
+        return this.encodedTicketIds.getUnchecked(ticketId);
     }
 
     /**
@@ -243,13 +403,13 @@ public abstract class AbstractTicketRegistry implements TicketRegistry, TicketRe
             return ticket;
         }
 
-        logger.info("Encoding [{}]", ticket);
+        logger.debug("Encoding [{}]", ticket);
         final byte[] encodedTicketObject = SerializationUtils.serializeAndEncodeObject(
                 this.cipherExecutor, ticket);
         final String encodedTicketId = encodeTicketId(ticket.getId());
         final Ticket encodedTicket = new EncodedTicket(
                 ByteSource.wrap(encodedTicketObject), encodedTicketId);
-        logger.info("Created [{}]", encodedTicket);
+        logger.debug("Created [{}]", encodedTicket);
         return encodedTicket;
     }
 
@@ -269,12 +429,12 @@ public abstract class AbstractTicketRegistry implements TicketRegistry, TicketRe
             return result;
         }
 
-        logger.info("Attempting to decode {}", result);
+        logger.debug("Attempting to decode {}", result);
         final EncodedTicket encodedTicket = (EncodedTicket) result;
 
         final Ticket ticket = SerializationUtils.decodeAndSerializeObject(
                 encodedTicket.getEncoded(), this.cipherExecutor, Ticket.class);
-        logger.info("Decoded {}",  ticket);
+        logger.debug("Decoded {}",  ticket);
         return ticket;
     }
 
@@ -0,0 +1,83 @@
+package org.jasig.cas.ticket.registry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+
+/**
+ * Caches a ticket count computed by a ticket registry for a short time.
+ * <p>Counting tickets is a query against the backend of the registry, while the
+ * statistics pages and monitors that report these counts may ask for them often.
+ * The count is recomputed by a single caller once it is older than the time to live;
+ * callers asking in the meantime are given the expired count rather than waiting for
+ * the query. Only callers asking before any count was computed, or after it was
+ * invalidated, wait for the count.</p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class CachedTicketCount {
+
+    /** Default time to live of a cached count, in seconds. */
+    public static final int DEFAULT_TTL_SECONDS = 5;
+
+    private final IntSupplier counter;
+
+    private final long ttlInNanos;
+
+    private final Lock lock = new ReentrantLock();
+
+    private volatile int count;
+
+    private volatile long expiresAt;
+
+    private volatile boolean computed;
+
+    /**
+     * Instantiates a new cached count.
+     *
+     * @param counter    computes the count from the backend
+     * @param ttlSeconds time to live of the cached count in seconds; 0 disables caching
+     */
+    public CachedTicketCount(final IntSupplier counter, final long ttlSeconds) {
+        this.counter = counter;
+        this.ttlInNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    /**
+     * Gets the count, computing it if the cached count has expired and no other
+     * caller is computing it already.
+     *
+     * @return the count
+     */
+    public int get() {
+        if (this.computed && System.nanoTime() - this.expiresAt < 0) {
+            return this.count;
+        }
+        if (this.computed) {
+            if (!this.lock.tryLock()) {
+                return this.count;
+            }
+        } else {
+            this.lock.lock();
+        }
+        try {
+            if (!this.computed || System.nanoTime() - this.expiresAt >= 0) {
+                this.count = this.counter.getAsInt();
+                this.expiresAt = System.nanoTime() + this.ttlInNanos;
+                this.computed = true;
+            }
+            return this.count;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Discards the cached count, so that the next call computes it again.
+     */
+    public void invalidate() {
+        this.computed = false;
+    }
+}
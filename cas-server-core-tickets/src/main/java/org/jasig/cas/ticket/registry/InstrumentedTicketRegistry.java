@@ -0,0 +1,289 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.util.SerializationUtils;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.validation.constraints.NotNull;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Decorator that instruments any {@link TicketRegistry} and publishes latency, error
+ * and payload size metrics for each registry operation and ticket type into the
+ * Dropwizard {@link MetricRegistry}. Metrics are named
+ * {@code ticket.registry.<operation>.<ticketType>.[timer|errors|payload]}.
+ * <p>
+ * When disabled, every call is handed straight to the wrapped registry
+ * and no metric is looked up or updated.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class InstrumentedTicketRegistry extends AbstractTicketRegistry {
+
+    /** Root name of all metrics published by this registry. */
+    public static final String METRIC_PREFIX = "ticket.registry";
+
+    /** Ticket type used for operations that do not target a single ticket. */
+    public static final String TICKET_TYPE_ALL = "ALL";
+
+    /** Ticket type used when the type cannot be determined from the ticket id. */
+    public static final String TICKET_TYPE_OTHER = "OTHER";
+
+    private static final int MAX_PREFIX_LENGTH = 8;
+
+    /**
+     * Registry operations that are instrumented.
+     */
+    public enum Operation {
+        /** Add ticket. */
+        ADD,
+        /** Get ticket. */
+        GET,
+        /** Update ticket. */
+        UPDATE,
+        /** Delete ticket. */
+        DELETE,
+        /** Count tickets. */
+        COUNT
+    }
+
+    @NotNull
+    private final TicketRegistry ticketRegistry;
+
+    @NotNull
+    private final MetricRegistry metricRegistry;
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Meter> errors = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Histogram> payloads = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled = true;
+
+    private boolean payloadSizeRecorded;
+
+    /**
+     * Instantiates a new instrumented ticket registry.
+     *
+     * @param ticketRegistry the ticket registry to instrument
+     * @param metricRegistry the metric registry
+     */
+    public InstrumentedTicketRegistry(final TicketRegistry ticketRegistry, final MetricRegistry metricRegistry) {
+        this.ticketRegistry = ticketRegistry;
+        this.metricRegistry = metricRegistry;
+    }
+
+    @Override
+    public void addTicket(final Ticket ticket) {
+        if (!this.enabled) {
+            this.ticketRegistry.addTicket(ticket);
+            return;
+        }
+        recordPayloadSize(Operation.ADD, ticket);
+        instrument(Operation.ADD, ticketType(ticket), () -> {
+            this.ticketRegistry.addTicket(ticket);
+            return null;
+        });
+    }
+
+    @Override
+    public Ticket getTicket(final String ticketId) {
+        final Ticket ticket;
+        if (this.enabled) {
+            ticket = instrument(Operation.GET, ticketType(ticketId), () -> this.ticketRegistry.getTicket(ticketId));
+        } else {
+            ticket = this.ticketRegistry.getTicket(ticketId);
+        }
+        return reproxy(ticket);
+    }
+
+    @Override
+    public Collection<Ticket> getTickets() {
+        return this.ticketRegistry.getTickets();
+    }
+
+    @Override
+    public boolean deleteSingleTicket(final String ticketId) {
+        if (!this.enabled) {
+            return doDeleteSingleTicket(ticketId);
+        }
+        return instrument(Operation.DELETE, ticketType(ticketId), () -> doDeleteSingleTicket(ticketId));
+    }
+
+    @Override
+    public int sessionCount() {
+        if (!(this.ticketRegistry instanceof TicketRegistryState)) {
+            return super.sessionCount();
+        }
+        final TicketRegistryState state = (TicketRegistryState) this.ticketRegistry;
+        if (!this.enabled) {
+            return state.sessionCount();
+        }
+        return instrument(Operation.COUNT, TICKET_TYPE_ALL, state::sessionCount);
+    }
+
+    @Override
+    public int serviceTicketCount() {
+        if (!(this.ticketRegistry instanceof TicketRegistryState)) {
+            return super.serviceTicketCount();
+        }
+        final TicketRegistryState state = (TicketRegistryState) this.ticketRegistry;
+        if (!this.enabled) {
+            return state.serviceTicketCount();
+        }
+        return instrument(Operation.COUNT, TICKET_TYPE_ALL, state::serviceTicketCount);
+    }
+
+    @Override
+    protected void updateTicket(final Ticket ticket) {
+        if (!this.enabled) {
+            doUpdateTicket(ticket);
+            return;
+        }
+        recordPayloadSize(Operation.UPDATE, ticket);
+        instrument(Operation.UPDATE, ticketType(ticket), () -> {
+            doUpdateTicket(ticket);
+            return null;
+        });
+    }
+
+    @Override
+    protected boolean needsCallback() {
+        if (this.ticketRegistry instanceof AbstractTicketRegistry) {
+            return ((AbstractTicketRegistry) this.ticketRegistry).needsCallback();
+        }
+        return false;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Turns instrumentation on or off at runtime.
+     *
+     * @param enabled whether metrics should be recorded
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Records the serialized size of tickets that are added or updated.
+     * Disabled by default since it requires serializing the ticket once more.
+     *
+     * @param payloadSizeRecorded whether payload sizes should be recorded
+     */
+    public void setPayloadSizeRecorded(final boolean payloadSizeRecorded) {
+        this.payloadSizeRecorded = payloadSizeRecorded;
+    }
+
+    public TicketRegistry getTicketRegistry() {
+        return this.ticketRegistry;
+    }
+
+    /**
+     * Builds the metric name for the given operation and ticket type.
+     *
+     * @param operation  the operation
+     * @param ticketType the ticket type
+     * @param suffix     the metric suffix
+     * @return the metric name
+     */
+    public static String metricName(final Operation operation, final String ticketType, final String suffix) {
+        return MetricRegistry.name(METRIC_PREFIX, operation.name().toLowerCase(), ticketType, suffix);
+    }
+
+    private <T> T instrument(final Operation operation, final String ticketType, final Supplier<T> action) {
+        final Timer.Context context = timer(operation, ticketType).time();
+        try {
+            return action.get();
+        } catch (final RuntimeException e) {
+            error(operation, ticketType).mark();
+            throw e;
+        } finally {
+            context.stop();
+        }
+    }
+
+    private boolean doDeleteSingleTicket(final String ticketId) {
+        if (this.ticketRegistry instanceof AbstractTicketRegistry) {
+            return ((AbstractTicketRegistry) this.ticketRegistry).deleteSingleTicket(ticketId);
+        }
+        return this.ticketRegistry.deleteTicket(ticketId);
+    }
+
+    private void doUpdateTicket(final Ticket ticket) {
+        if (this.ticketRegistry instanceof AbstractTicketRegistry) {
+            ((AbstractTicketRegistry) this.ticketRegistry).updateTicket(ticket);
+        } else {
+            this.ticketRegistry.addTicket(ticket);
+        }
+    }
+
+    /**
+     * Re-wraps tickets handed out by the underlying registry so that updates
+     * made through the returned ticket are routed back through this registry.
+     *
+     * @param ticket the ticket
+     * @return the ticket
+     */
+    private Ticket reproxy(final Ticket ticket) {
+        if (ticket instanceof AbstractTicketDelegator) {
+            return getProxiedTicketInstance(((AbstractTicketDelegator<?>) ticket).getTicket());
+        }
+        return ticket;
+    }
+
+    private void recordPayloadSize(final Operation operation, final Ticket ticket) {
+        if (this.payloadSizeRecorded && ticket != null) {
+            try {
+                final int size = SerializationUtils.serialize(ticket).length;
+                this.payloads.computeIfAbsent(metricName(operation, ticketType(ticket), "payload"),
+                        this.metricRegistry::histogram).update(size);
+            } catch (final Exception e) {
+                logger.trace("Unable to determine payload size of ticket [{}]", ticket.getId(), e);
+            }
+        }
+    }
+
+    private Timer timer(final Operation operation, final String ticketType) {
+        return this.timers.computeIfAbsent(metricName(operation, ticketType, "timer"), this.metricRegistry::timer);
+    }
+
+    private Meter error(final Operation operation, final String ticketType) {
+        return this.errors.computeIfAbsent(metricName(operation, ticketType, "errors"), this.metricRegistry::meter);
+    }
+
+    private static String ticketType(final Ticket ticket) {
+        return ticket == null ? TICKET_TYPE_OTHER : ticketType(ticket.getId());
+    }
+
+    /**
+     * Determines the ticket type from the ticket id prefix, i.e. {@code TGT}, {@code ST}, {@code PGT}.
+     * Encoded ticket ids carry no prefix and are reported as {@link #TICKET_TYPE_OTHER}.
+     *
+     * @param ticketId the ticket id
+     * @return the ticket type
+     */
+    private static String ticketType(final String ticketId) {
+        if (StringUtils.isBlank(ticketId)) {
+            return TICKET_TYPE_OTHER;
+        }
+        final int index = ticketId.indexOf('-');
+        if (index <= 0 || index > MAX_PREFIX_LENGTH) {
+            return TICKET_TYPE_OTHER;
+        }
+        return ticketId.substring(0, index);
+    }
+}
@@ -33,7 +33,8 @@ public final class ProxyGrantingTicketDelegator extends TicketGrantingTicketDele
                                         final boolean onlyTrackMostRecentSession) {
         final ProxyTicket t = this.getTicket().grantProxyTicket(id, service, expirationPolicy,
                 onlyTrackMostRecentSession);
-        updateTicket();
+        updateTicket((ProxyGrantingTicket ticket) -> ticket.grantProxyTicket(id, service, expirationPolicy,
+                onlyTrackMostRecentSession));
         return t;
     }
 }
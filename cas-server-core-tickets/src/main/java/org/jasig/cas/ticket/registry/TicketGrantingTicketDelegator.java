@@ -55,14 +55,15 @@ public class TicketGrantingTicketDelegator<T extends TicketGrantingTicket> exten
                                             final boolean onlyTrackMostRecentSession) {
         final ServiceTicket t = this.getTicket().grantServiceTicket(id, service,
                 expirationPolicy, credentialsProvided, onlyTrackMostRecentSession);
-        updateTicket();
+        updateTicket((T ticket) -> ticket.grantServiceTicket(id, service,
+                expirationPolicy, credentialsProvided, onlyTrackMostRecentSession));
         return t;
     }
 
     @Override
     public void markTicketExpired() {
         this.getTicket().markTicketExpired();
-        updateTicket();
+        updateTicket(TicketGrantingTicket::markTicketExpired);
     }
 
     @Override
@@ -0,0 +1,254 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.util.SerializationUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind buffer for ticket updates. Updates are collected per ticket id, and only the
+ * latest state of each ticket is written once per flush window, so that a burst of updates of the
+ * same ticket results in a single write to the registry.
+ * <p>
+ * Buffered tickets stay visible through {@link #getPendingTicket(String)} until they are written.
+ * Each update is serialized when it is buffered, on the thread of the caller, so that the flusher
+ * and later readers work on copies of their own rather than on a ticket that requests keep changing.
+ * Discarding the update of a ticket waits for a write of that ticket in progress, so that a ticket
+ * being removed is not written back afterwards.
+ * The buffer holds at most {@code maxSize} tickets; updates of other tickets are refused while it
+ * is full, and must then be written directly. Updates that are pending when the node stops
+ * abruptly are lost; {@link #getPendingCount()} and {@link #getOldestPendingAgeInMillis()} tell how
+ * many updates, and how much time, are at risk at any moment.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class TicketUpdateBuffer {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<String, PendingUpdate> pending = new ConcurrentHashMap<>();
+
+    private final Consumer<Ticket> writer;
+
+    private final int maxSize;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "TicketUpdateBufferFlusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong bufferedCount = new AtomicLong();
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    private final AtomicLong flushedCount = new AtomicLong();
+
+    private final AtomicLong writtenThroughCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private volatile boolean shutdown;
+
+    /**
+     * Instantiates a new buffer and schedules its flushes.
+     *
+     * @param writer           writes the latest state of a ticket to the registry
+     * @param windowInMillis   how long updates are collected before they are written
+     * @param maxSize          the maximum number of tickets with pending updates
+     */
+    public TicketUpdateBuffer(final Consumer<Ticket> writer, final long windowInMillis, final int maxSize) {
+        this.writer = writer;
+        this.maxSize = maxSize;
+        this.flusher.scheduleWithFixedDelay(this::flush, windowInMillis, windowInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffers the update of a ticket, replacing any pending update of the same ticket.
+     *
+     * @param ticket the ticket, in its latest state
+     * @return true if the update is buffered; false if it must be written directly,
+     * because the buffer is full or shut down
+     */
+    public boolean offer(final Ticket ticket) {
+        final String ticketId = ticket.getId();
+        final PendingUpdate previous = this.pending.get(ticketId);
+        if (this.shutdown || previous == null && this.pending.size() >= this.maxSize) {
+            this.writtenThroughCount.incrementAndGet();
+            return false;
+        }
+        final byte[] data = SerializationUtils.serialize(ticket);
+        final PendingUpdate replaced = this.pending.put(ticketId, previous == null
+                ? new PendingUpdate(data, System.currentTimeMillis(), new WriteGuard())
+                : new PendingUpdate(data, previous.getSince(), previous.getGuard()));
+        if (replaced != null) {
+            this.coalescedCount.incrementAndGet();
+        }
+        this.bufferedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Gets the latest state of a ticket whose update is not written yet.
+     *
+     * @param ticketId the ticket id
+     * @return a copy of the pending ticket, or null
+     */
+    public Ticket getPendingTicket(final String ticketId) {
+        final PendingUpdate update = this.pending.get(ticketId);
+        return update == null ? null : update.getTicket();
+    }
+
+    /**
+     * Drops the pending update of a ticket, typically because the ticket is removed.
+     * A write of the ticket in progress is waited for, and no earlier update of the
+     * ticket is written afterwards.
+     *
+     * @param ticketId the ticket id
+     */
+    public void discard(final String ticketId) {
+        final PendingUpdate update = this.pending.remove(ticketId);
+        if (update != null) {
+            final WriteGuard guard = update.getGuard();
+            synchronized (guard) {
+                guard.discarded = true;
+            }
+        }
+    }
+
+    /**
+     * Writes the latest state of all tickets with pending updates. A ticket stays pending
+     * until it is written, and remains pending if it is updated again in the meantime.
+     * Updates that fail to be written are dropped, and counted as failed.
+     */
+    public void flush() {
+        for (final Map.Entry<String, PendingUpdate> entry : this.pending.entrySet()) {
+            final PendingUpdate update = entry.getValue();
+            final WriteGuard guard = update.getGuard();
+            synchronized (guard) {
+                if (!guard.discarded) {
+                    write(entry.getKey(), update);
+                }
+            }
+            this.pending.remove(entry.getKey(), update);
+        }
+    }
+
+    private void write(final String ticketId, final PendingUpdate update) {
+        try {
+            this.writer.accept(update.getTicket());
+            this.flushedCount.incrementAndGet();
+        } catch (final Exception e) {
+            this.failedCount.incrementAndGet();
+            logger.error("Failed to write the pending update of ticket [{}]", ticketId, e);
+        }
+    }
+
+    /**
+     * Stops the scheduled flushes and writes all pending updates. Later updates
+     * are refused, and must be written directly.
+     */
+    public void shutdown() {
+        this.shutdown = true;
+        this.flusher.shutdown();
+        try {
+            this.flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Writing {} pending ticket update(s) before shutdown", this.pending.size());
+        flush();
+    }
+
+    /**
+     * Gets the number of tickets whose latest state is not written yet,
+     * i.e. the updates that are lost if the node stops abruptly.
+     *
+     * @return the pending count
+     */
+    public int getPendingCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * Gets how long the oldest pending update has waited to be written,
+     * i.e. the span of updates that are lost if the node stops abruptly.
+     *
+     * @return the age in milliseconds, or 0 if nothing is pending
+     */
+    public long getOldestPendingAgeInMillis() {
+        final long now = System.currentTimeMillis();
+        return this.pending.values().stream().mapToLong(u -> now - u.getSince()).max().orElse(0);
+    }
+
+    public long getBufferedCount() {
+        return this.bufferedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return this.coalescedCount.get();
+    }
+
+    public long getFlushedCount() {
+        return this.flushedCount.get();
+    }
+
+    public long getWrittenThroughCount() {
+        return this.writtenThroughCount.get();
+    }
+
+    public long getFailedCount() {
+        return this.failedCount.get();
+    }
+
+    /**
+     * Latest state of a ticket, serialized, and when its first update that is not written yet was buffered.
+     */
+    private static final class PendingUpdate {
+
+        private final byte[] data;
+
+        private final long since;
+
+        private final WriteGuard guard;
+
+        PendingUpdate(final byte[] data, final long since, final WriteGuard guard) {
+            this.data = data;
+            this.since = since;
+            this.guard = guard;
+        }
+
+        Ticket getTicket() {
+            return SerializationUtils.deserialize(this.data);
+        }
+
+        long getSince() {
+            return this.since;
+        }
+
+        WriteGuard getGuard() {
+            return this.guard;
+        }
+    }
+
+    /**
+     * Lock shared by the successive pending updates of a ticket, held while one of them is written,
+     * and marked when the ticket is discarded so that none of them is written afterwards.
+     */
+    private static final class WriteGuard {
+
+        private boolean discarded;
+    }
+}
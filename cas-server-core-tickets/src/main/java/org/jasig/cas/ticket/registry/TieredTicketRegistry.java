@@ -0,0 +1,299 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.proxy.ProxyTicket;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.aop.framework.Advised;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ticket registry that keeps tickets in two tiers: a fast, in-memory hot tier, and a
+ * durable tier such as the {@code JpaTicketRegistry}.
+ * <p>
+ * Short-lived tickets, identified by the prefixes of their ids, are kept only in the hot tier;
+ * by default these are service tickets and proxy tickets, and deployments that issue OAuth codes
+ * may add their prefix. All other tickets, such as ticket-granting and proxy-granting tickets, are
+ * kept in the durable tier, which is their only source of truth. Expired tickets are removed from
+ * the hot tier periodically; the durable tier is cleaned by its own means.
+ * </p>
+ * <p>
+ * Durable tickets may also be cached in the hot tier, and read from the durable tier only when
+ * missing from it. Since the hot tier of a node does not learn about tickets changed or removed by
+ * other nodes, a cached ticket-granting ticket would outlive a logout handled elsewhere; caching is
+ * therefore off by default, and only suited to a single node.
+ * </p>
+ * <p>
+ * Tickets are added to, read from and removed from each tier through the registry bean, so that
+ * transactions configured around it apply. Changes and single removals, which proxies do not expose,
+ * are applied to the registry behind the proxy, which must then demarcate its own transactions for
+ * them, as the {@code JpaTicketRegistry} does.
+ * </p>
+ * <p>
+ * The hot tier is typically a {@link DefaultTicketRegistry}, which is local to the node. In a cluster,
+ * requests for short-lived tickets must then reach the node that issued them, or the hot tier must be
+ * a replicated registry.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class TieredTicketRegistry extends AbstractTicketRegistry {
+
+    /** Default prefixes of the tickets that are kept only in the hot tier. */
+    public static final Set<String> DEFAULT_HOT_TIER_PREFIXES = new HashSet<>(Arrays.asList(
+            ServiceTicket.PREFIX, ProxyTicket.PROXY_TICKET_PREFIX));
+
+    private final Tier hotTier;
+
+    private final Tier durableTier;
+
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "TieredTicketRegistryCleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Set<String> hotTierPrefixes = DEFAULT_HOT_TIER_PREFIXES;
+
+    private long cleanerIntervalInSeconds = 60;
+
+    private boolean durableTicketsCached;
+
+    /**
+     * Instantiates a new tiered ticket registry.
+     *
+     * @param hotTier     the registry that keeps all tickets in memory
+     * @param durableTier the registry that tickets which outlive the hot tier are written to
+     */
+    public TieredTicketRegistry(final TicketRegistry hotTier, final TicketRegistry durableTier) {
+        this.hotTier = new Tier(hotTier);
+        this.durableTier = new Tier(durableTier);
+    }
+
+    /**
+     * Schedules the removal of expired tickets from the hot tier.
+     */
+    @PostConstruct
+    public void init() {
+        logger.info("Keeping tickets with prefixes {} only in the hot tier [{}]; other tickets are written to [{}]",
+                this.hotTierPrefixes, this.hotTier.getName(), this.durableTier.getName());
+        if (this.durableTicketsCached) {
+            logger.warn("Durable tickets are cached in the hot tier; tickets changed or removed by other nodes may still be "
+                    + "served from it, so this is only suited to a single node");
+        }
+        if (this.cleanerIntervalInSeconds > 0) {
+            this.cleaner.scheduleWithFixedDelay(this::cleanHotTier, this.cleanerIntervalInSeconds,
+                    this.cleanerIntervalInSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops the removal of expired tickets.
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.cleaner.shutdown();
+    }
+
+    @Override
+    public void addTicket(final Ticket ticket) {
+        final boolean durable = isDurable(ticket.getId());
+        if (durable) {
+            this.durableTier.registry.addTicket(ticket);
+        }
+        if (!durable || this.durableTicketsCached) {
+            this.hotTier.registry.addTicket(ticket);
+        }
+    }
+
+    @Override
+    public Ticket getTicket(final String ticketId) {
+        if (ticketId == null) {
+            return null;
+        }
+        if (!isDurable(ticketId)) {
+            return getProxiedTicketInstance(unwrap(this.hotTier.registry.getTicket(ticketId)));
+        }
+        if (!this.durableTicketsCached) {
+            return getProxiedTicketInstance(unwrap(this.durableTier.registry.getTicket(ticketId)));
+        }
+        Ticket ticket = unwrap(this.hotTier.registry.getTicket(ticketId));
+        if (ticket == null) {
+            ticket = unwrap(this.durableTier.registry.getTicket(ticketId));
+            if (ticket != null) {
+                logger.debug("Promoting ticket [{}] to the hot tier", ticketId);
+                this.hotTier.registry.addTicket(ticket);
+            }
+        }
+        return getProxiedTicketInstance(ticket);
+    }
+
+    @Override
+    public boolean deleteSingleTicket(final String ticketId) {
+        final boolean durable = isDurable(ticketId);
+        final boolean removedFromHotTier = (!durable || this.durableTicketsCached) && this.hotTier.deleteSingleTicket(ticketId);
+        if (durable) {
+            return this.durableTier.deleteSingleTicket(ticketId) || removedFromHotTier;
+        }
+        return removedFromHotTier;
+    }
+
+    @Override
+    public Collection<Ticket> getTickets() {
+        final Map<String, Ticket> tickets = new LinkedHashMap<>();
+        this.durableTier.registry.getTickets().forEach(t -> tickets.put(t.getId(), t));
+        this.hotTier.registry.getTickets().stream()
+                .filter(t -> !isDurable(t.getId()))
+                .forEach(t -> tickets.put(t.getId(), t));
+        return tickets.values();
+    }
+
+    @Override
+    public int sessionCount() {
+        return this.durableTier.registry.sessionCount();
+    }
+
+    @Override
+    public int serviceTicketCount() {
+        return isDurable(ServiceTicket.PREFIX) ? this.durableTier.registry.serviceTicketCount()
+                : this.hotTier.registry.serviceTicketCount();
+    }
+
+    @Override
+    protected void updateTicket(final Ticket ticket) {
+        final boolean durable = isDurable(ticket.getId());
+        if (durable) {
+            this.durableTier.updateTicket(ticket);
+        }
+        if (!durable || this.durableTicketsCached) {
+            this.hotTier.updateTicket(ticket);
+        }
+    }
+
+    /**
+     * Tickets kept in the hot tier may hold copies of their granting tickets, so these are
+     * looked up again to check whether the granting ticket has expired.
+     *
+     * @return true
+     */
+    @Override
+    protected boolean needsCallback() {
+        return true;
+    }
+
+    /**
+     * Removes expired tickets from the hot tier. Expired durable tickets are only evicted
+     * from the hot tier, and left for the durable tier to clean up.
+     */
+    public void cleanHotTier() {
+        try {
+            this.hotTier.registry.getTickets().stream()
+                    .filter(Ticket::isExpired)
+                    .map(Ticket::getId)
+                    .forEach(ticketId -> {
+                        logger.debug("Removing expired ticket [{}] from the hot tier", ticketId);
+                        this.hotTier.deleteSingleTicket(ticketId);
+                    });
+        } catch (final Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sets the prefixes of the ids of tickets that are kept only in the hot tier, such as
+     * {@code ST}, {@code PT} and the {@code OC} prefix of OAuth codes.
+     *
+     * @param hotTierPrefixes the ticket id prefixes
+     */
+    public void setHotTierPrefixes(final Set<String> hotTierPrefixes) {
+        this.hotTierPrefixes = new HashSet<>(hotTierPrefixes);
+    }
+
+    /**
+     * Sets how often expired tickets are removed from the hot tier.
+     *
+     * @param cleanerIntervalInSeconds the interval in seconds; 0 disables the removal
+     */
+    public void setCleanerIntervalInSeconds(final long cleanerIntervalInSeconds) {
+        this.cleanerIntervalInSeconds = cleanerIntervalInSeconds;
+    }
+
+    /**
+     * Sets whether durable tickets are cached in the hot tier. Only suited to a single node,
+     * since the hot tier does not learn about tickets changed or removed by other nodes.
+     *
+     * @param durableTicketsCached true to cache durable tickets in the hot tier
+     */
+    public void setDurableTicketsCached(final boolean durableTicketsCached) {
+        this.durableTicketsCached = durableTicketsCached;
+    }
+
+    private boolean isDurable(final String ticketId) {
+        return !this.hotTierPrefixes.contains(StringUtils.substringBefore(ticketId, "-"));
+    }
+
+    private static Ticket unwrap(final Ticket ticket) {
+        if (ticket instanceof AbstractTicketDelegator) {
+            return ((AbstractTicketDelegator<?>) ticket).getTicket();
+        }
+        return ticket;
+    }
+
+    /**
+     * A tier of the registry: the registry bean, and the registry behind its proxy, if any.
+     * Changes and single removals are not exposed by proxies, so they are applied to the registry
+     * behind the proxy, which owns the transactions they need.
+     */
+    private static final class Tier {
+
+        private final TicketRegistry registry;
+
+        private final AbstractTicketRegistry target;
+
+        /**
+         * Instantiates a new tier.
+         *
+         * @param registry the registry bean
+         */
+        Tier(final TicketRegistry registry) {
+            this.registry = registry;
+            Object target = registry;
+            try {
+                while (target instanceof Advised) {
+                    target = ((Advised) target).getTargetSource().getTarget();
+                }
+            } catch (final Exception e) {
+                throw new IllegalArgumentException("Cannot resolve the ticket registry behind " + registry, e);
+            }
+            if (!(target instanceof AbstractTicketRegistry)) {
+                throw new IllegalArgumentException("Ticket registry tiers must extend AbstractTicketRegistry: " + target);
+            }
+            this.target = (AbstractTicketRegistry) target;
+        }
+
+        String getName() {
+            return this.target.getClass().getSimpleName();
+        }
+
+        void updateTicket(final Ticket ticket) {
+            this.target.updateTicket(ticket);
+        }
+
+        boolean deleteSingleTicket(final String ticketId) {
+            return this.target.deleteSingleTicket(ticketId);
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package org.jasig.cas.ticket.support;
 
 import org.jasig.cas.ticket.ExpirationPolicy;
+import org.jasig.cas.ticket.TicketState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 
 /**
  * This is an {@link org.jasig.cas.ticket.support.AbstractCasExpirationPolicy}
@@ -19,6 +23,12 @@ import javax.servlet.http.HttpServletRequest;
  */
 public abstract class AbstractCasExpirationPolicy implements ExpirationPolicy {
 
+    /**
+     * Expiration time of tickets that never expire. It is a point in time rather than null,
+     * so that such tickets can be told apart from tickets whose expiration time is unknown.
+     */
+    public static final ZonedDateTime NEVER = ZonedDateTime.of(9999, 12, 31, 23, 59, 59, 0, ZoneOffset.UTC);
+
     private static final long serialVersionUID = 8042104336580063690L;
 
     /**
@@ -28,6 +38,32 @@ public abstract class AbstractCasExpirationPolicy implements ExpirationPolicy {
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractCasExpirationPolicy.class);
 
+    /**
+     * Gets the time after which a ticket in the given state is expired, unless it is used again.
+     * Ticket registries may store this time to find expired tickets without loading them,
+     * or to let entries lapse on their own. Every policy shipped with CAS reports a time, and
+     * tickets that never expire report {@link #NEVER}. Custom policies that do not override this
+     * method return null, in which case expiration can only be determined by {@link #isExpired(TicketState)}.
+     *
+     * @param ticketState the ticket state
+     * @return the expiration time, or null if unknown
+     */
+    public ZonedDateTime getExpirationTime(final TicketState ticketState) {
+        return null;
+    }
+
+    /**
+     * Gets how long a ticket in the given state may stay unused before it expires.
+     * Ticket registries may let idle entries lapse on their own after this time.
+     * Policies that do not expire idle tickets return null.
+     *
+     * @param ticketState the ticket state
+     * @return the idle timeout, or null if tickets do not expire for being idle
+     */
+    public Duration getTimeToIdle(final TicketState ticketState) {
+        return null;
+    }
+
     /**
      * Gets the http request based on the
      * {@link org.springframework.web.context.request.RequestContextHolder}.
@@ -3,6 +3,8 @@ package org.jasig.cas.ticket.support;
 import org.jasig.cas.ticket.TicketState;
 import org.springframework.stereotype.Component;
 
+import java.time.ZonedDateTime;
+
 /**
  * AlwaysExpiresExpirationPolicy always answers true when asked if a Ticket is
  * expired.
@@ -26,4 +28,9 @@ public final class AlwaysExpiresExpirationPolicy extends AbstractCasExpirationPo
     public boolean isExpired(final TicketState ticketState) {
         return true;
     }
+
+    @Override
+    public ZonedDateTime getExpirationTime(final TicketState ticketState) {
+        return ticketState.getCreationTime();
+    }
 }
@@ -65,4 +65,9 @@ public final class HardTimeoutExpirationPolicy extends AbstractCasExpirationPoli
         return (ticketState == null) || ticketState.getCreationTime()
           .plus(this.timeToKillInMilliSeconds, ChronoUnit.MILLIS).isAfter(ZonedDateTime.now(ZoneOffset.UTC));
     }
+
+    @Override
+    public ZonedDateTime getExpirationTime(final TicketState ticketState) {
+        return ticketState.getCreationTime().plus(this.timeToKillInMilliSeconds, ChronoUnit.MILLIS);
+    }
 }
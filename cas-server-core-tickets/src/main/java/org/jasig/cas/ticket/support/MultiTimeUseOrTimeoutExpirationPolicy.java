@@ -100,4 +100,12 @@ public final class MultiTimeUseOrTimeoutExpirationPolicy extends AbstractCasExpi
         }
         return false;
     }
+
+    @Override
+    public ZonedDateTime getExpirationTime(final TicketState ticketState) {
+        if (ticketState.getCountOfUses() >= this.numberOfUses) {
+            return ticketState.getLastTimeUsed();
+        }
+        return ticketState.getLastTimeUsed().plus(this.timeToKillInMilliSeconds, ChronoUnit.MILLIS);
+    }
 }
@@ -3,6 +3,8 @@ package org.jasig.cas.ticket.support;
 import org.jasig.cas.ticket.TicketState;
 import org.springframework.stereotype.Component;
 
+import java.time.ZonedDateTime;
+
 /**
  * NeverExpiresExpirationPolicy always answers false when asked if a Ticket is
  * expired. Use this policy when you want a Ticket to live forever, or at least
@@ -26,4 +28,9 @@ public final class NeverExpiresExpirationPolicy extends AbstractCasExpirationPol
     public boolean isExpired(final TicketState ticketState) {
         return false;
     }
+
+    @Override
+    public ZonedDateTime getExpirationTime(final TicketState ticketState) {
+        return NEVER;
+    }
 }
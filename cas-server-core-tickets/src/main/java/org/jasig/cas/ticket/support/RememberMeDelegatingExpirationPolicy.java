@@ -11,6 +11,8 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.ZonedDateTime;
 
 /**
  * Delegates to different expiration policies depending on whether remember me
@@ -60,6 +62,39 @@ public final class RememberMeDelegatingExpirationPolicy extends AbstractCasExpir
 
     @Override
     public boolean isExpired(final TicketState ticketState) {
+        final ExpirationPolicy policy = getDelegate(ticketState);
+        if (policy == null) {
+            LOGGER.warn("No expiration policy settings are defined");
+            return false;
+        }
+        return policy.isExpired(ticketState);
+    }
+
+    @Override
+    public ZonedDateTime getExpirationTime(final TicketState ticketState) {
+        final ExpirationPolicy policy = getDelegate(ticketState);
+        if (policy instanceof AbstractCasExpirationPolicy) {
+            return ((AbstractCasExpirationPolicy) policy).getExpirationTime(ticketState);
+        }
+        return null;
+    }
+
+    @Override
+    public Duration getTimeToIdle(final TicketState ticketState) {
+        final ExpirationPolicy policy = getDelegate(ticketState);
+        if (policy instanceof AbstractCasExpirationPolicy) {
+            return ((AbstractCasExpirationPolicy) policy).getTimeToIdle(ticketState);
+        }
+        return null;
+    }
+
+    /**
+     * Selects the policy that applies to the ticket, based on whether it is associated with a remember-me authentication.
+     *
+     * @param ticketState the ticket state
+     * @return the policy, or null if the policies are not defined
+     */
+    private ExpirationPolicy getDelegate(final TicketState ticketState) {
         if (this.rememberMeExpirationPolicy != null && this.sessionExpirationPolicy != null) {
 
             final Boolean b = (Boolean) ticketState.getAuthentication().getAttributes().
@@ -67,14 +102,13 @@ public final class RememberMeDelegatingExpirationPolicy extends AbstractCasExpir
 
             if (b == null || b.equals(Boolean.FALSE)) {
                 LOGGER.debug("Ticket is not associated with a remember-me authentication. Invoking {}", sessionExpirationPolicy);
-                return this.sessionExpirationPolicy.isExpired(ticketState);
+                return this.sessionExpirationPolicy;
             }
 
             LOGGER.debug("Ticket is associated with a remember-me authentication. Invoking {}", rememberMeExpirationPolicy);
-            return this.rememberMeExpirationPolicy.isExpired(ticketState);
+            return this.rememberMeExpirationPolicy;
         }
-        LOGGER.warn("No expiration policy settings are defined");
-        return false;
+        return null;
     }
 
     public void setRememberMeExpirationPolicy(
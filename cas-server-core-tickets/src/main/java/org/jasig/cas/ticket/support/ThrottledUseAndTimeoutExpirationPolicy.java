@@ -79,4 +79,15 @@ public final class ThrottledUseAndTimeoutExpirationPolicy extends AbstractCasExp
 
         return false;
     }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Tickets used too soon after their previous use are rejected until the waiting period is over,
+     * but they are only expired for good once they have not been used for the time to kill.
+     */
+    @Override
+    public ZonedDateTime getExpirationTime(final TicketState ticketState) {
+        return ticketState.getLastTimeUsed().plus(this.timeToKillInMilliSeconds, ChronoUnit.MILLIS);
+    }
 }
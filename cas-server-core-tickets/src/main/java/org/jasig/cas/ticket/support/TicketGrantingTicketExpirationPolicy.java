@@ -9,6 +9,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
+import java.time.Duration;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
@@ -84,4 +85,17 @@ public final class TicketGrantingTicketExpirationPolicy extends AbstractCasExpir
         return false;
     }
 
+    @Override
+    public ZonedDateTime getExpirationTime(final TicketState ticketState) {
+        final ZonedDateTime creationTime = ticketState.getCreationTime();
+        if (ticketState.getLastTimeUsed().isAfter(creationTime.plus(timeToKillInMilliSeconds, ChronoUnit.MILLIS))) {
+            return ticketState.getLastTimeUsed();
+        }
+        return creationTime.plus(maxTimeToLiveInMilliSeconds, ChronoUnit.MILLIS);
+    }
+
+    @Override
+    public Duration getTimeToIdle(final TicketState ticketState) {
+        return Duration.ofMillis(this.timeToKillInMilliSeconds);
+    }
 }
@@ -5,6 +5,7 @@ import org.jasig.cas.ticket.TicketState;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
@@ -62,4 +63,14 @@ public final class TimeoutExpirationPolicy extends AbstractCasExpirationPolicy {
         return (ticketState == null)
             || (now.isAfter(expirationTime));
     }
+
+    @Override
+    public ZonedDateTime getExpirationTime(final TicketState ticketState) {
+        return ticketState.getLastTimeUsed().plus(this.timeToKillInMilliSeconds, ChronoUnit.MILLIS);
+    }
+
+    @Override
+    public Duration getTimeToIdle(final TicketState ticketState) {
+        return Duration.ofMillis(this.timeToKillInMilliSeconds);
+    }
 }
@@ -0,0 +1,49 @@
+package org.jasig.cas.ticket;
+
+import org.jasig.cas.authentication.TestUtils;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+import org.jasig.cas.util.DefaultUniqueTicketIdGenerator;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link TicketAffinity}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class TicketAffinityTests {
+
+    private final UniqueTicketIdGenerator uniqueTicketIdGenerator = new DefaultUniqueTicketIdGenerator(20, "cas01.example.org");
+
+    @Test
+    public void verifyChildTicketsInheritAffinityKey() {
+        final String tgtId = TicketAffinity.newAffinityId(TicketGrantingTicket.PREFIX,
+                this.uniqueTicketIdGenerator.getNewTicketId(TicketGrantingTicket.PREFIX));
+        final String affinityKey = TicketAffinity.getAffinityKey(tgtId);
+        assertNotNull(affinityKey);
+        assertTrue(tgtId.endsWith(TicketAffinity.SEPARATOR + affinityKey));
+
+        final TicketGrantingTicket tgt = new TicketGrantingTicketImpl(tgtId,
+                TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy());
+        final String stId = TicketAffinity.inheritAffinityId(ServiceTicket.PREFIX,
+                this.uniqueTicketIdGenerator.getNewTicketId(ServiceTicket.PREFIX), tgt);
+        assertTrue(stId.startsWith(ServiceTicket.PREFIX + '-'));
+        assertEquals(affinityKey, TicketAffinity.getAffinityKey(stId));
+    }
+
+    @Test
+    public void verifyIdsWithoutAffinityAreKept() {
+        final TicketGrantingTicket tgt = new TicketGrantingTicketImpl("TGT-1-plain",
+                TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy());
+        assertNull(TicketAffinity.getAffinityKey(tgt.getId()));
+        assertEquals("ST-1-plain", TicketAffinity.inheritAffinityId(ServiceTicket.PREFIX, "ST-1-plain", tgt));
+    }
+
+    @Test
+    public void verifyIdsOfOtherFormatsAreKept() {
+        final String artifact = "AAQBAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=";
+        assertEquals(artifact, TicketAffinity.newAffinityId(TicketGrantingTicket.PREFIX, artifact));
+    }
+}
@@ -0,0 +1,84 @@
+package org.jasig.cas.ticket.registry;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link CachedTicketCount}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class CachedTicketCountTests {
+
+    @Test
+    public void verifyCountIsCachedUntilExpired() throws Exception {
+        final AtomicInteger queries = new AtomicInteger();
+        final CachedTicketCount count = new CachedTicketCount(queries::incrementAndGet, 1);
+
+        assertEquals(1, count.get());
+        assertEquals(1, count.get());
+        assertEquals(1, queries.get());
+
+        Thread.sleep(1100);
+        assertEquals(2, count.get());
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void verifyInvalidatedCountIsComputedAgain() {
+        final AtomicInteger queries = new AtomicInteger();
+        final CachedTicketCount count = new CachedTicketCount(queries::incrementAndGet, 60);
+
+        assertEquals(1, count.get());
+        count.invalidate();
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void verifyExpiredCountIsReturnedWhileRecomputed() throws Exception {
+        final AtomicInteger queries = new AtomicInteger();
+        final CountDownLatch querying = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CachedTicketCount count = new CachedTicketCount(() -> {
+            if (queries.incrementAndGet() > 1) {
+                querying.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return queries.get();
+        }, 0);
+        assertEquals(1, count.get());
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Integer> recomputed = executor.submit(count::get);
+            assertTrue(querying.await(5, TimeUnit.SECONDS));
+            assertEquals(1, count.get());
+            release.countDown();
+            assertEquals(2, recomputed.get().intValue());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void verifyZeroTtlDisablesCaching() {
+        final AtomicInteger queries = new AtomicInteger();
+        final CachedTicketCount count = new CachedTicketCount(queries::incrementAndGet, 0);
+
+        assertEquals(1, count.get());
+        assertEquals(2, count.get());
+    }
+}
@@ -0,0 +1,71 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case to test the {@link InstrumentedTicketRegistry} based on test cases to test all
+ * Ticket Registries.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class InstrumentedTicketRegistryTests extends AbstractTicketRegistryTests {
+
+    private MetricRegistry metricRegistry;
+
+    @Override
+    public TicketRegistry getNewTicketRegistry() throws Exception {
+        this.metricRegistry = new MetricRegistry();
+        return new InstrumentedTicketRegistry(new DefaultTicketRegistry(), this.metricRegistry);
+    }
+
+    @Test
+    public void verifyOperationsAreTimed() {
+        final InstrumentedTicketRegistry registry = new InstrumentedTicketRegistry(new DefaultTicketRegistry(), this.metricRegistry);
+        registry.setPayloadSizeRecorded(true);
+
+        final TicketGrantingTicket tgt = new TicketGrantingTicketImpl("TGT-1-instrumented",
+                org.jasig.cas.authentication.TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy());
+        registry.addTicket(tgt);
+
+        final TicketGrantingTicket returned = registry.getTicket(tgt.getId(), TicketGrantingTicket.class);
+        final ServiceTicket st = returned.grantServiceTicket("ST-1-instrumented",
+                org.jasig.cas.services.TestUtils.getService(), new NeverExpiresExpirationPolicy(), false, true);
+        registry.addTicket(st);
+        assertEquals(1, registry.sessionCount());
+        assertTrue(registry.deleteTicket(tgt.getId()));
+
+        assertEquals(1, timerCount(InstrumentedTicketRegistry.Operation.ADD, "TGT"));
+        assertEquals(1, timerCount(InstrumentedTicketRegistry.Operation.ADD, "ST"));
+        assertEquals(1, timerCount(InstrumentedTicketRegistry.Operation.UPDATE, "TGT"));
+        assertEquals(1, timerCount(InstrumentedTicketRegistry.Operation.DELETE, "ST"));
+        assertEquals(1, timerCount(InstrumentedTicketRegistry.Operation.COUNT, InstrumentedTicketRegistry.TICKET_TYPE_ALL));
+        assertTrue(timerCount(InstrumentedTicketRegistry.Operation.GET, "TGT") >= 1);
+        assertEquals(1, this.metricRegistry.histogram(InstrumentedTicketRegistry.metricName(
+                InstrumentedTicketRegistry.Operation.ADD, "TGT", "payload")).getCount());
+    }
+
+    @Test
+    public void verifyNothingRecordedWhenDisabled() {
+        final MetricRegistry metrics = new MetricRegistry();
+        final InstrumentedTicketRegistry registry = new InstrumentedTicketRegistry(new DefaultTicketRegistry(), metrics);
+        registry.setEnabled(false);
+
+        registry.addTicket(new TicketGrantingTicketImpl("TGT-1-disabled",
+                org.jasig.cas.authentication.TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy()));
+        assertNotNull(registry.getTicket("TGT-1-disabled"));
+        assertTrue(metrics.getMetrics().isEmpty());
+    }
+
+    private long timerCount(final InstrumentedTicketRegistry.Operation operation, final String type) {
+        return this.metricRegistry.timer(InstrumentedTicketRegistry.metricName(operation, type, "timer")).getCount();
+    }
+}
@@ -0,0 +1,113 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.support.AlwaysExpiresExpirationPolicy;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the {@link TieredTicketRegistry}, composed of two {@link DefaultTicketRegistry} tiers.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class TieredTicketRegistryTests extends AbstractTicketRegistryTests {
+
+    private DefaultTicketRegistry hotTier;
+
+    private DefaultTicketRegistry durableTier;
+
+    private TieredTicketRegistry registry;
+
+    @Override
+    public TicketRegistry getNewTicketRegistry() throws Exception {
+        this.hotTier = new DefaultTicketRegistry();
+        this.durableTier = new DefaultTicketRegistry();
+        this.registry = new TieredTicketRegistry(this.hotTier, this.durableTier);
+        return this.registry;
+    }
+
+    @Test
+    public void verifyServiceTicketsAreKeptInHotTierOnly() {
+        final TicketGrantingTicket tgt = addTicketGrantingTicket("TGT-1-tiered");
+        final ServiceTicket st = tgt.grantServiceTicket("ST-1-tiered",
+                org.jasig.cas.services.TestUtils.getService(), new NeverExpiresExpirationPolicy(), true, false);
+        this.registry.addTicket(st);
+
+        assertNotNull(this.hotTier.getTicket(st.getId()));
+        assertNull(this.durableTier.getTicket(st.getId()));
+        assertNotNull(this.durableTier.getTicket(tgt.getId()));
+        assertTrue(this.durableTier.getTicket(tgt.getId(), TicketGrantingTicket.class).getServices().containsKey(st.getId()));
+        assertEquals(st, this.registry.getTicket(st.getId()));
+    }
+
+    @Test
+    public void verifyDurableTicketsAreReadFromDurableTier() {
+        final TicketGrantingTicket tgt = addTicketGrantingTicket("TGT-1-tiered");
+        assertNull(this.hotTier.getTicket(tgt.getId()));
+
+        this.durableTier.deleteSingleTicket(tgt.getId());
+        assertNull(this.registry.getTicket(tgt.getId()));
+    }
+
+    @Test
+    public void verifyDurableTicketIsPromotedOnReadWhenCached() {
+        this.registry.setDurableTicketsCached(true);
+        final TicketGrantingTicket tgt = addTicketGrantingTicket("TGT-1-tiered");
+        assertNotNull(this.hotTier.getTicket(tgt.getId()));
+        this.hotTier.deleteSingleTicket(tgt.getId());
+
+        assertEquals(tgt, this.registry.getTicket(tgt.getId()));
+        assertNotNull(this.hotTier.getTicket(tgt.getId()));
+    }
+
+    @Test
+    public void verifyDeleteRemovesTicketsFromBothTiers() {
+        final TicketGrantingTicket tgt = addTicketGrantingTicket("TGT-1-tiered");
+        final ServiceTicket st = tgt.grantServiceTicket("ST-1-tiered",
+                org.jasig.cas.services.TestUtils.getService(), new NeverExpiresExpirationPolicy(), true, false);
+        this.registry.addTicket(st);
+
+        assertTrue(this.registry.deleteTicket(tgt.getId()));
+        assertNull(this.hotTier.getTicket(tgt.getId()));
+        assertNull(this.durableTier.getTicket(tgt.getId()));
+        assertNull(this.hotTier.getTicket(st.getId()));
+    }
+
+    @Test
+    public void verifyExpiredTicketsAreRemovedFromHotTier() {
+        final TicketGrantingTicket tgt = addTicketGrantingTicket("TGT-1-tiered");
+        final ServiceTicket st = tgt.grantServiceTicket("ST-1-tiered",
+                org.jasig.cas.services.TestUtils.getService(), new AlwaysExpiresExpirationPolicy(), true, false);
+        this.registry.addTicket(st);
+
+        this.registry.cleanHotTier();
+        assertNull(this.hotTier.getTicket(st.getId()));
+        assertNotNull(this.durableTier.getTicket(tgt.getId()));
+    }
+
+    @Test
+    public void verifyChangesAndRemovalsReachTheRegistryBehindAProxy() {
+        this.registry = new TieredTicketRegistry(this.hotTier, (TicketRegistry) new ProxyFactory(this.durableTier).getProxy());
+
+        final TicketGrantingTicket tgt = addTicketGrantingTicket("TGT-1-tiered");
+        tgt.grantServiceTicket("ST-1-tiered", org.jasig.cas.services.TestUtils.getService(),
+                new NeverExpiresExpirationPolicy(), true, false);
+        assertEquals(1, this.durableTier.getTicket(tgt.getId(), TicketGrantingTicket.class).getServices().size());
+
+        assertTrue(this.registry.deleteTicket(tgt.getId()));
+        assertNull(this.durableTier.getTicket(tgt.getId()));
+    }
+
+    private TicketGrantingTicket addTicketGrantingTicket(final String id) {
+        this.registry.addTicket(new TicketGrantingTicketImpl(id,
+                org.jasig.cas.authentication.TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy()));
+        return this.registry.getTicket(id, TicketGrantingTicket.class);
+    }
+}
@@ -0,0 +1,200 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the write-behind buffer of {@link AbstractTicketRegistry}, against a registry
+ * that stores copies of tickets the way remote registries do.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class WriteBehindTicketRegistryTests {
+
+    private CopyingTicketRegistry registry;
+
+    @Before
+    public void setUp() {
+        this.registry = new CopyingTicketRegistry();
+        this.registry.setWriteBehindWindowInMillis(60000);
+        this.registry.setWriteBehindMaxSize(2);
+    }
+
+    @After
+    public void tearDown() {
+        this.registry.flushTicketUpdates();
+    }
+
+    @Test
+    public void verifyUpdatesAreCoalescedAndVisibleBeforeFlush() {
+        final TicketGrantingTicket tgt = addTicketGrantingTicket("TGT-1");
+        for (int i = 0; i < 20; i++) {
+            tgt.grantServiceTicket("ST-" + i, org.jasig.cas.services.TestUtils.getService(),
+                    new NeverExpiresExpirationPolicy(), false, false);
+        }
+        assertEquals(0, this.registry.updates.get());
+        assertEquals(20, this.registry.getTicket(tgt.getId(), TicketGrantingTicket.class).getServices().size());
+
+        final TicketUpdateBuffer buffer = this.registry.getTicketUpdateBuffer();
+        assertEquals(1, buffer.getPendingCount());
+        assertEquals(19, buffer.getCoalescedCount());
+
+        buffer.flush();
+        assertEquals(1, this.registry.updates.get());
+        assertEquals(0, buffer.getPendingCount());
+        assertEquals(20, ((TicketGrantingTicket) this.registry.tickets.get(tgt.getId())).getServices().size());
+    }
+
+    @Test
+    public void verifyUpdatesAreWrittenThroughWhenBufferIsFull() {
+        for (int i = 0; i < 3; i++) {
+            addTicketGrantingTicket("TGT-" + i).grantServiceTicket("ST-" + i, org.jasig.cas.services.TestUtils.getService(),
+                    new NeverExpiresExpirationPolicy(), false, false);
+        }
+        assertEquals(1, this.registry.updates.get());
+        assertEquals(2, this.registry.getTicketUpdateBuffer().getPendingCount());
+        assertEquals(1, this.registry.getTicketUpdateBuffer().getWrittenThroughCount());
+    }
+
+    @Test
+    public void verifyExpiredTicketIsWrittenDirectly() {
+        final TicketGrantingTicket tgt = addTicketGrantingTicket("TGT-1");
+        tgt.grantServiceTicket("ST-1", org.jasig.cas.services.TestUtils.getService(),
+                new NeverExpiresExpirationPolicy(), false, false);
+        tgt.markTicketExpired();
+
+        assertEquals(1, this.registry.updates.get());
+        assertEquals(0, this.registry.getTicketUpdateBuffer().getPendingCount());
+        assertTrue(this.registry.tickets.get(tgt.getId()).isExpired());
+    }
+
+    @Test
+    public void verifyPendingUpdatesAreFlushedOnShutdownAndDroppedOnDelete() {
+        final TicketGrantingTicket tgt1 = addTicketGrantingTicket("TGT-1");
+        final TicketGrantingTicket tgt2 = addTicketGrantingTicket("TGT-2");
+        tgt1.grantServiceTicket("ST-1", org.jasig.cas.services.TestUtils.getService(),
+                new NeverExpiresExpirationPolicy(), false, false);
+        tgt2.grantServiceTicket("ST-2", org.jasig.cas.services.TestUtils.getService(),
+                new NeverExpiresExpirationPolicy(), false, false);
+        assertTrue(this.registry.deleteTicket(tgt2.getId()));
+
+        this.registry.flushTicketUpdates();
+        assertEquals(1, this.registry.updates.get());
+        assertNull(this.registry.tickets.get(tgt2.getId()));
+
+        tgt1.grantServiceTicket("ST-3", org.jasig.cas.services.TestUtils.getService(),
+                new NeverExpiresExpirationPolicy(), false, false);
+        assertEquals(2, this.registry.updates.get());
+    }
+
+    @Test
+    public void verifyPendingTicketIsASnapshot() {
+        final TicketGrantingTicket tgt = addTicketGrantingTicket("TGT-1");
+        tgt.grantServiceTicket("ST-1", org.jasig.cas.services.TestUtils.getService(),
+                new NeverExpiresExpirationPolicy(), false, false);
+        final TicketUpdateBuffer buffer = this.registry.getTicketUpdateBuffer();
+        final TicketGrantingTicket pending = (TicketGrantingTicket) buffer.getPendingTicket(tgt.getId());
+        assertNotSame(pending, buffer.getPendingTicket(tgt.getId()));
+
+        pending.grantServiceTicket("ST-2", org.jasig.cas.services.TestUtils.getService(),
+                new NeverExpiresExpirationPolicy(), false, false);
+        assertEquals(1, ((TicketGrantingTicket) buffer.getPendingTicket(tgt.getId())).getServices().size());
+    }
+
+    @Test
+    public void verifyDiscardWaitsForWriteInProgress() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger writes = new AtomicInteger();
+        final TicketUpdateBuffer buffer = new TicketUpdateBuffer(ticket -> {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writes.incrementAndGet();
+        }, 60000, 10);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            buffer.offer(new TicketGrantingTicketImpl("TGT-1",
+                    org.jasig.cas.authentication.TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy()));
+            executor.submit(buffer::flush);
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+            final Future<?> discarded = executor.submit(() -> buffer.discard("TGT-1"));
+            Thread.sleep(200);
+            assertFalse(discarded.isDone());
+            release.countDown();
+            discarded.get(5, TimeUnit.SECONDS);
+            assertEquals(1, writes.get());
+            assertNull(buffer.getPendingTicket("TGT-1"));
+        } finally {
+            executor.shutdownNow();
+            buffer.shutdown();
+        }
+    }
+
+    private TicketGrantingTicket addTicketGrantingTicket(final String id) {
+        this.registry.addTicket(new TicketGrantingTicketImpl(id,
+                org.jasig.cas.authentication.TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy()));
+        return this.registry.getTicket(id, TicketGrantingTicket.class);
+    }
+
+    private static class CopyingTicketRegistry extends AbstractTicketRegistry {
+        private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+        private final AtomicInteger updates = new AtomicInteger();
+
+        @Override
+        protected void updateTicket(final Ticket ticket) {
+            this.updates.incrementAndGet();
+            addTicket(ticket);
+        }
+
+        @Override
+        public void addTicket(final Ticket ticket) {
+            this.tickets.put(ticket.getId(), SerializationUtils.clone(ticket));
+        }
+
+        @Override
+        public Ticket getTicket(final String ticketId) {
+            final Ticket ticket = this.tickets.get(ticketId);
+            return getProxiedTicketInstance(ticket == null ? null : SerializationUtils.clone(ticket));
+        }
+
+        @Override
+        public Collection<Ticket> getTickets() {
+            return this.tickets.values();
+        }
+
+        @Override
+        protected boolean needsCallback() {
+            return false;
+        }
+
+        @Override
+        public boolean deleteSingleTicket(final String ticketId) {
+            return this.tickets.remove(ticketId) != null;
+        }
+    }
+}
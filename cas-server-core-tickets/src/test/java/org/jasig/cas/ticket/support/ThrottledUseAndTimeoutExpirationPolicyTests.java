@@ -5,6 +5,8 @@ import org.jasig.cas.ticket.TicketGrantingTicketImpl;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.temporal.ChronoUnit;
+
 import static org.junit.Assert.*;
 
 /**
@@ -32,6 +34,12 @@ public class ThrottledUseAndTimeoutExpirationPolicyTests  {
 
     }
 
+    @Test
+    public void verifyExpirationTimeFollowsLastUse() {
+        final TicketGrantingTicketImpl tgt = (TicketGrantingTicketImpl) this.ticket;
+        assertEquals(tgt.getLastTimeUsed().plus(TIMEOUT, ChronoUnit.MILLIS), tgt.getExpirationTime());
+    }
+
     @Test
     public void verifyTicketIsNotExpired() {
         assertFalse(this.ticket.isExpired());
@@ -7,6 +7,8 @@ import org.jasig.cas.ticket.TicketGrantingTicketImpl;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.temporal.ChronoUnit;
+
 import static org.junit.Assert.*;
 
 
@@ -46,4 +48,10 @@ public class TimeoutExpirationPolicyTests {
         ticket = new TicketGrantingTicketImpl("test", TestUtils.getAuthentication(), new TimeoutExpirationPolicy(-100));
         assertTrue(ticket.isExpired());
     }
+
+    @Test
+    public void verifyExpirationTimeFollowsLastUse() {
+        final TicketGrantingTicketImpl tgt = (TicketGrantingTicketImpl) this.ticket;
+        assertEquals(tgt.getLastTimeUsed().plus(TIMEOUT, ChronoUnit.MILLIS), tgt.getExpirationTime());
+    }
 }
@@ -0,0 +1,151 @@
+package org.jasig.cas.util;
+
+import org.jasig.cas.CipherExecutor;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Cipher executor that encrypts and authenticates values with AES-GCM into a compact binary envelope:
+ * a version byte, a random 96-bit IV, and the ciphertext followed by its 128-bit authentication tag.
+ * No separate signature is needed, since the tag authenticates the value.
+ * <p>
+ * {@link Cipher} instances are costly to look up, and are kept per thread and initialized again for
+ * each value. Values that are not in the envelope, such as tickets encoded by a {@link ShiroCipherExecutor}
+ * with the same keys before this executor was configured, are decoded by that executor.
+ * </p>
+ * <p>
+ * The encryption key is the secret as is when it is 16, 24 or 32 bytes long, and is otherwise
+ * derived from the secret with HKDF-SHA256 (RFC 5869) into a 128-bit key. Deriving a key does not make
+ * a short secret any harder to guess, so a random secret of one of these lengths should be configured.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@Component("aesGcmCipherExecutor")
+public final class AesGcmCipherExecutor extends AbstractCipherExecutor<byte[], byte[]> {
+
+    /** First byte of the values encoded by this executor. */
+    public static final byte ENVELOPE_VERSION = 1;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int TAG_LENGTH_IN_BITS = 128;
+
+    private static final int TAG_LENGTH = TAG_LENGTH_IN_BITS / 8;
+
+    private static final int DERIVED_KEY_LENGTH = 16;
+
+    private static final String HKDF_MAC_ALGORITHM = "HmacSHA256";
+
+    /** HKDF salt; RFC 5869 uses a string of zeros as long as the hash when no salt is provided. */
+    private static final byte[] HKDF_SALT = new byte[32];
+
+    private static final byte[] HKDF_INFO = "CAS ticket encryption key".getBytes(StandardCharsets.UTF_8);
+
+    private static final Set<Integer> AES_KEY_LENGTHS = new HashSet<>(Arrays.asList(16, 24, 32));
+
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final SecretKeySpec key;
+
+    private final CipherExecutor<byte[], byte[]> legacyCipherExecutor;
+
+    /**
+     * Instantiates a new AES-GCM cipher executor.
+     *
+     * @param encryptionSecretKey the encryption secret key
+     * @param signingSecretKey    the signing key, used only to decode values encoded by a {@link ShiroCipherExecutor}
+     */
+    @Autowired
+    public AesGcmCipherExecutor(@Value("${ticket.encryption.secretkey:N0$ecr3T}")
+                                final String encryptionSecretKey,
+                                @Value("${ticket.signing.secretkey:N0$ecr3T}")
+                                final String signingSecretKey) {
+        this.key = new SecretKeySpec(deriveKey(encryptionSecretKey), "AES");
+        this.legacyCipherExecutor = new ShiroCipherExecutor(encryptionSecretKey, signingSecretKey);
+    }
+
+    @Override
+    public byte[] encode(final byte[] value) {
+        try {
+            final byte[] iv = new byte[IV_LENGTH];
+            this.random.nextBytes(iv);
+            final Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.ENCRYPT_MODE, this.key, new GCMParameterSpec(TAG_LENGTH_IN_BITS, iv));
+
+            final byte[] result = new byte[1 + IV_LENGTH + cipher.getOutputSize(value.length)];
+            result[0] = ENVELOPE_VERSION;
+            System.arraycopy(iv, 0, result, 1, IV_LENGTH);
+            cipher.doFinal(value, 0, value.length, result, 1 + IV_LENGTH);
+            return result;
+        } catch (final GeneralSecurityException e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public byte[] decode(final byte[] value) {
+        if (value.length == 0 || value[0] != ENVELOPE_VERSION) {
+            logger.debug("Value is not encoded with AES-GCM; decoding it with [{}]", this.legacyCipherExecutor.getClass().getSimpleName());
+            return this.legacyCipherExecutor.decode(value);
+        }
+        if (value.length < 1 + IV_LENGTH + TAG_LENGTH) {
+            final String message = "Value of " + value.length + " bytes is too short to be encoded with AES-GCM";
+            logger.error(message);
+            throw new RuntimeException(message);
+        }
+        try {
+            final Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.DECRYPT_MODE, this.key, new GCMParameterSpec(TAG_LENGTH_IN_BITS, value, 1, IV_LENGTH));
+            return cipher.doFinal(value, 1 + IV_LENGTH, value.length - 1 - IV_LENGTH);
+        } catch (final GeneralSecurityException e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private byte[] deriveKey(final String secret) {
+        final byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (AES_KEY_LENGTHS.contains(bytes.length)) {
+            return bytes;
+        }
+        logger.warn("Encryption secret of {} bytes is not an AES key; deriving a key from it. Configure a random secret "
+                + "of 16, 24 or 32 bytes instead.", bytes.length);
+        try {
+            final Mac mac = Mac.getInstance(HKDF_MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(HKDF_SALT, HKDF_MAC_ALGORITHM));
+            final byte[] pseudoRandomKey = mac.doFinal(bytes);
+            mac.init(new SecretKeySpec(pseudoRandomKey, HKDF_MAC_ALGORITHM));
+            mac.update(HKDF_INFO);
+            mac.update((byte) 1);
+            return Arrays.copyOf(mac.doFinal(), DERIVED_KEY_LENGTH);
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
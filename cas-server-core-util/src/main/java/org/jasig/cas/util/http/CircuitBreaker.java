@@ -0,0 +1,102 @@
+package org.jasig.cas.util.http;
+
+/**
+ * Circuit breaker of a single endpoint host. The circuit opens after a number of consecutive failures,
+ * so that no further requests are sent to the host. Once it has been open for a while, a single
+ * probe request is let through: the circuit closes if the probe succeeds, and opens again otherwise.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class CircuitBreaker {
+
+    /**
+     * States of a circuit.
+     */
+    public enum State {
+        /** Requests are sent. */
+        CLOSED,
+        /** Requests are not sent. */
+        OPEN,
+        /** A single probe request is sent. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+
+    private final long openDurationInMillis;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openedAt;
+
+    private long probeSentAt;
+
+    /**
+     * Instantiates a new circuit breaker.
+     *
+     * @param failureThreshold     the number of consecutive failures that open the circuit
+     * @param openDurationInMillis how long the circuit stays open before a probe is sent
+     */
+    public CircuitBreaker(final int failureThreshold, final long openDurationInMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationInMillis = openDurationInMillis;
+    }
+
+    /**
+     * Whether a request may be sent. Moves an open circuit to half-open, and lets the request
+     * through as a probe, once it has been open long enough.
+     *
+     * @return true if the request may be sent
+     */
+    public synchronized boolean allowRequest() {
+        final long now = System.currentTimeMillis();
+        switch (this.state) {
+            case OPEN:
+                if (now - this.openedAt < this.openDurationInMillis) {
+                    return false;
+                }
+                this.state = State.HALF_OPEN;
+                this.probeSentAt = now;
+                return true;
+            case HALF_OPEN:
+                if (now - this.probeSentAt < this.openDurationInMillis) {
+                    return false;
+                }
+                this.probeSentAt = now;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Records a successful request, which closes the circuit.
+     */
+    public synchronized void recordSuccess() {
+        this.consecutiveFailures = 0;
+        this.state = State.CLOSED;
+    }
+
+    /**
+     * Records a failed request, which opens the circuit if the probe failed
+     * or too many requests failed in a row.
+     */
+    public synchronized void recordFailure() {
+        this.consecutiveFailures++;
+        if (this.state == State.HALF_OPEN || this.consecutiveFailures >= this.failureThreshold) {
+            this.state = State.OPEN;
+            this.openedAt = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return this.consecutiveFailures;
+    }
+}
@@ -0,0 +1,130 @@
+package org.jasig.cas.util.http;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the {@link CircuitBreaker} of every endpoint host that the HTTP clients of CAS call,
+ * such as single logout and proxy callback URLs, so that hosts known to be failing are not
+ * sent requests until they recover. Circuit breakers are disabled by default.
+ * <p>
+ * Hosts are identified by scheme, host and port, with implicit ports resolved to the default
+ * port of the scheme. At most {@value #MAX_HOSTS} hosts are kept, and hosts that have not been
+ * called for {@value #IDLE_EXPIRY_IN_MINUTES} minutes are forgotten.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@Component("circuitBreakerRegistry")
+public class CircuitBreakerRegistry {
+
+    /** Max number of hosts whose circuit breakers are kept. */
+    public static final int MAX_HOSTS = 10000;
+
+    /** Minutes after which the circuit breaker of a host that is not called is forgotten. */
+    public static final int IDLE_EXPIRY_IN_MINUTES = 60;
+
+    private static final int HTTP_PORT = 80;
+
+    private static final int HTTPS_PORT = 443;
+
+    private final LoadingCache<String, CircuitBreaker> circuitBreakers = CacheBuilder.newBuilder()
+            .maximumSize(MAX_HOSTS)
+            .expireAfterAccess(IDLE_EXPIRY_IN_MINUTES, TimeUnit.MINUTES)
+            .build(CacheLoader.from(
+                h -> new CircuitBreaker(this.failureThreshold, TimeUnit.SECONDS.toMillis(this.openDurationInSeconds))));
+
+    @Value("${http.client.circuitbreaker.enabled:false}")
+    private boolean enabled;
+
+    @Value("${http.client.circuitbreaker.failureThreshold:5}")
+    private int failureThreshold = 5;
+
+    @Value("${http.client.circuitbreaker.openDurationInSeconds:30}")
+    private long openDurationInSeconds = 30;
+
+    /**
+     * Whether a request may be sent to the host of the given URI.
+     *
+     * @param uri the URI of the request
+     * @return true if the request may be sent
+     */
+    public boolean allowRequest(final URI uri) {
+        return !this.enabled || getCircuitBreaker(uri).allowRequest();
+    }
+
+    /**
+     * Records the outcome of a request to the host of the given URI.
+     *
+     * @param uri       the URI of the request
+     * @param succeeded whether the host answered the request
+     */
+    public void recordOutcome(final URI uri, final boolean succeeded) {
+        if (!this.enabled) {
+            return;
+        }
+        final CircuitBreaker circuitBreaker = getCircuitBreaker(uri);
+        if (succeeded) {
+            circuitBreaker.recordSuccess();
+        } else {
+            circuitBreaker.recordFailure();
+        }
+    }
+
+    /**
+     * Gets the circuit breaker of the host of the given URI, creating it if needed.
+     *
+     * @param uri the URI
+     * @return the circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker(final URI uri) {
+        return this.circuitBreakers.getUnchecked(getHost(uri));
+    }
+
+    /**
+     * Gets the circuit breakers of all hosts called so far.
+     *
+     * @return the circuit breakers, keyed by scheme, host and port
+     */
+    public Map<String, CircuitBreaker> getCircuitBreakers() {
+        return Collections.unmodifiableMap(this.circuitBreakers.asMap());
+    }
+
+    private static String getHost(final URI uri) {
+        final String scheme = StringUtils.lowerCase(uri.getScheme(), Locale.ENGLISH);
+        final int port;
+        if (uri.getPort() != -1) {
+            port = uri.getPort();
+        } else {
+            port = "https".equals(scheme) ? HTTPS_PORT : HTTP_PORT;
+        }
+        return scheme + "://" + StringUtils.lowerCase(uri.getHost(), Locale.ENGLISH) + ':' + port;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setFailureThreshold(final int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public void setOpenDurationInSeconds(final long openDurationInSeconds) {
+        this.openDurationInSeconds = openDurationInSeconds;
+    }
+}
@@ -2,6 +2,7 @@ package org.jasig.cas.util.http;
 
 import javax.validation.constraints.NotNull;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Define the behaviour of a HTTP client.
@@ -39,6 +40,30 @@ public interface HttpClient {
      */
     boolean isValidEndPoint(@NotNull URL url);
 
+    /**
+     * Sends a message to a particular endpoint without blocking the caller.
+     * Implementations that do not support non-blocking I/O send the message before returning.
+     *
+     * @param message The message that should be sent to the http endpoint
+     * @return the future outcome, true if the endpoint accepted the message
+     * @since 4.3.0
+     */
+    default CompletableFuture<Boolean> sendMessageToEndPointAsync(@NotNull final HttpMessage message) {
+        return CompletableFuture.completedFuture(sendMessageToEndPoint(message));
+    }
+
+    /**
+     * Make an HTTP(S) call to ensure that the url is reachable, without blocking the caller.
+     * Implementations that do not support non-blocking I/O make the call before returning.
+     *
+     * @param url the url to call
+     * @return the future outcome, true if the url is valid
+     * @since 4.3.0
+     */
+    default CompletableFuture<Boolean> isValidEndPointAsync(@NotNull final URL url) {
+        return CompletableFuture.completedFuture(isValidEndPoint(url));
+    }
+
     /**
      * Gets wrapped http client.
      *
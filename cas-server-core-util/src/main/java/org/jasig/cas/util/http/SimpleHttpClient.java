@@ -3,34 +3,51 @@ package org.jasig.cas.util.http;
 import com.google.common.collect.ImmutableList;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.BackoffManager;
+import org.apache.http.client.ConnectionBackoffStrategy;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.BasicResponseHandler;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.FutureRequestExecutionService;
-import org.apache.http.impl.client.HttpRequestFutureTask;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.util.Assert;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URL;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * Implementation of CAS {@link HttpClient}
- * which delegates requests to a {@link #httpClient} instance.
+ * which sends requests through a non-blocking {@link #asyncHttpClient}, multiplexing
+ * in-flight requests over a few I/O threads, and wraps a blocking {@link #httpClient}
+ * for components that need one. Requests to hosts whose circuit is open in the
+ * {@link CircuitBreakerRegistry} are not sent, and fail right away. Non-blocking requests
+ * follow the same retry and backoff strategies as the blocking client. HTTPS requests are
+ * sent by the blocking client from an executor when no SSL context is known for non-blocking ones.
  *
  * @author Jerome Leleu
  * @author Scott Battaglia
@@ -50,52 +67,92 @@ final class SimpleHttpClient implements HttpClient, Serializable, DisposableBean
     /** the HTTP client for this client. */
     private final CloseableHttpClient httpClient;
 
-    /** the request executor service for this client. */
-    private final FutureRequestExecutionService requestExecutorService;
+    /** the non-blocking HTTP client that sends the requests of this client. */
+    private final CloseableHttpAsyncClient asyncHttpClient;
+
+    /** the circuit breakers of the hosts called by this client. */
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+
+    /** decides whether non-blocking requests answered as unavailable are retried. */
+    private final ServiceUnavailableRetryStrategy serviceUnavailableRetryStrategy;
+
+    /** decides whether the outcome of a non-blocking request backs its route off. */
+    private final ConnectionBackoffStrategy connectionBackoffStrategy;
+
+    /** backs off and probes the routes of non-blocking connections. */
+    private final BackoffManager backoffManager;
+
+    /** sends HTTPS requests through the blocking client, or null if non-blocking connections handle HTTPS. */
+    private final ExecutorService httpsExecutorService;
+
+    /** schedules the retries of non-blocking requests. */
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "SimpleHttpClientRetry");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Instantiates a new Simple HTTP client, based on the provided inputs.
      *
      * @param acceptableCodes the acceptable codes of the client
      * @param httpClient the HTTP client used by the client
-     * @param requestExecutorService the request executor service used by the client
+     * @param asyncHttpClient the started non-blocking HTTP client used by the client
+     * @param circuitBreakerRegistry the circuit breakers of the hosts called by the client
+     * @param serviceUnavailableRetryStrategy the retry strategy of non-blocking requests
+     * @param connectionBackoffStrategy the backoff strategy of non-blocking requests
+     * @param backoffManager the backoff manager of non-blocking connections
+     * @param httpsExecutorService the executor of HTTPS requests sent by the blocking client, or null
      */
     SimpleHttpClient(final List<Integer> acceptableCodes, final CloseableHttpClient httpClient,
-            final FutureRequestExecutionService requestExecutorService) {
+            final CloseableHttpAsyncClient asyncHttpClient, final CircuitBreakerRegistry circuitBreakerRegistry,
+            final ServiceUnavailableRetryStrategy serviceUnavailableRetryStrategy,
+            final ConnectionBackoffStrategy connectionBackoffStrategy, final BackoffManager backoffManager,
+            final ExecutorService httpsExecutorService) {
         Collections.sort(acceptableCodes);
         this.acceptableCodes = ImmutableList.copyOf(acceptableCodes);
         this.httpClient = httpClient;
-        this.requestExecutorService = requestExecutorService;
+        this.asyncHttpClient = asyncHttpClient;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.serviceUnavailableRetryStrategy = serviceUnavailableRetryStrategy;
+        this.connectionBackoffStrategy = connectionBackoffStrategy;
+        this.backoffManager = backoffManager;
+        this.httpsExecutorService = httpsExecutorService;
     }
 
     @Override
     public boolean sendMessageToEndPoint(final HttpMessage message) {
-        Assert.notNull(this.httpClient);
+        final CompletableFuture<Boolean> result = sendMessageToEndPointAsync(message);
+        if (message.isAsynchronous()) {
+            return !result.isDone() || result.join();
+        }
+        return result.join();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> sendMessageToEndPointAsync(final HttpMessage message) {
+        Assert.notNull(this.asyncHttpClient);
 
         try {
             final HttpPost request = new HttpPost(message.getUrl().toURI());
             request.addHeader("Content-Type", message.getContentType());
-            
+
             final StringEntity entity = new StringEntity(message.getMessage(), ContentType.create(message.getContentType()));
             request.setEntity(entity);
 
-            final HttpRequestFutureTask<String> task = this.requestExecutorService.execute(request,
-                    HttpClientContext.create(), new BasicResponseHandler());
-
-            if (message.isAsynchronous()) {
-                return true;
-            }
-            
-            return StringUtils.isNotBlank(task.get());
-        } catch (final RejectedExecutionException e) {
-            LOGGER.warn(e.getMessage(), e);
-            return false;
+            return execute(request, response -> {
+                if (response.getStatusLine().getStatusCode() >= HttpStatus.SC_MULTIPLE_CHOICES) {
+                    LOGGER.trace("Message to [{}] was answered with [{}]", message.getUrl(), response.getStatusLine());
+                    return false;
+                }
+                return StringUtils.isNotBlank(toString(response));
+            });
         } catch (final Exception e) {
             LOGGER.trace(e.getMessage(), e);
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
     }
-        
+
     @Override
     public boolean isValidEndPoint(final String url) {
         try {
@@ -109,42 +166,176 @@ final class SimpleHttpClient implements HttpClient, Serializable, DisposableBean
 
     @Override
     public boolean isValidEndPoint(final URL url) {
-        Assert.notNull(this.httpClient);
+        return isValidEndPointAsync(url).join();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isValidEndPointAsync(final URL url) {
+        Assert.notNull(this.asyncHttpClient);
+
+        try {
+            return execute(new HttpGet(url.toURI()), response -> {
+                final int responseCode = response.getStatusLine().getStatusCode();
+
+                final int idx = Collections.binarySearch(this.acceptableCodes, responseCode);
+                if (idx >= 0) {
+                    LOGGER.debug("Response code from server matched {}.", responseCode);
+                    return true;
+                }
 
-        HttpEntity entity = null;
+                LOGGER.debug("Response code did not match any of the acceptable response codes. Code returned was {}", responseCode);
+
+                if (responseCode == HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                    final String value = response.getStatusLine().getReasonPhrase();
+                    LOGGER.error("There was an error contacting the endpoint: {}; The error was:\n{}", url.toExternalForm(), value);
+                }
+                return false;
+            });
+        } catch (final Exception e) {
+            LOGGER.error(e.getMessage(), e);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    /**
+     * Executes a request without blocking, unless the circuit of its host is open, and evaluates
+     * its response on an I/O thread. Failures to connect and server errors count against the host.
+     *
+     * @param request the request
+     * @param evaluator evaluates the response
+     * @return the future outcome, false if the request fails
+     */
+    private CompletableFuture<Boolean> execute(final HttpUriRequest request, final Function<HttpResponse, Boolean> evaluator) {
+        final URI uri = request.getURI();
+        if (!this.circuitBreakerRegistry.allowRequest(uri)) {
+            LOGGER.debug("Circuit to [{}] is open; the request is not sent", uri);
+            return CompletableFuture.completedFuture(false);
+        }
+        if (this.httpsExecutorService != null && "https".equalsIgnoreCase(uri.getScheme())) {
+            return executeBlocking(request, evaluator);
+        }
 
-        try (final CloseableHttpResponse response = this.httpClient.execute(new HttpGet(url.toURI()))) {
-            final int responseCode = response.getStatusLine().getStatusCode();
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        execute(request, evaluator, result, 1);
+        return result;
+    }
 
-            final int idx = Collections.binarySearch(acceptableCodes, responseCode);
-            if (idx >= 0) {
-                LOGGER.debug("Response code from server matched {}.", responseCode);
-                return true;
+    /**
+     * Executes an attempt of a request without blocking, and schedules another attempt when
+     * the retry strategy asks for one.
+     *
+     * @param request the request
+     * @param evaluator evaluates the response
+     * @param result the future outcome of the request
+     * @param executionCount the number of this attempt
+     */
+    private void execute(final HttpUriRequest request, final Function<HttpResponse, Boolean> evaluator,
+                         final CompletableFuture<Boolean> result, final int executionCount) {
+        final URI uri = request.getURI();
+        final HttpClientContext context = HttpClientContext.create();
+        this.asyncHttpClient.execute(request, context, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(final HttpResponse response) {
+                circuitBreakerRegistry.recordOutcome(uri,
+                        response.getStatusLine().getStatusCode() < HttpStatus.SC_INTERNAL_SERVER_ERROR);
+                backOff(context, connectionBackoffStrategy.shouldBackoff(response));
+                if (serviceUnavailableRetryStrategy.retryRequest(response, executionCount, context)) {
+                    EntityUtils.consumeQuietly(response.getEntity());
+                    retry(request, evaluator, result, executionCount);
+                    return;
+                }
+                try {
+                    result.complete(evaluator.apply(response));
+                } catch (final Exception e) {
+                    LOGGER.trace(e.getMessage(), e);
+                    result.complete(false);
+                } finally {
+                    EntityUtils.consumeQuietly(response.getEntity());
+                }
             }
 
-            LOGGER.debug("Response code did not match any of the acceptable response codes. Code returned was {}", responseCode);
+            @Override
+            public void failed(final Exception e) {
+                LOGGER.trace("Request to [{}] failed: {}", uri, e.getMessage());
+                circuitBreakerRegistry.recordOutcome(uri, false);
+                backOff(context, connectionBackoffStrategy.shouldBackoff(e));
+                result.complete(false);
+            }
 
-            if (responseCode == HttpStatus.SC_INTERNAL_SERVER_ERROR) {
-                final String value = response.getStatusLine().getReasonPhrase();
-                LOGGER.error("There was an error contacting the endpoint: {}; The error was:\n{}", url.toExternalForm(), value);
+            @Override
+            public void cancelled() {
+                circuitBreakerRegistry.recordOutcome(uri, false);
+                result.complete(false);
             }
+        });
+    }
 
-            entity = response.getEntity();
-        } catch (final Exception e) {
-            LOGGER.error(e.getMessage(), e);
-        } finally {
-            EntityUtils.consumeQuietly(entity);
+    private void retry(final HttpUriRequest request, final Function<HttpResponse, Boolean> evaluator,
+                       final CompletableFuture<Boolean> result, final int executionCount) {
+        try {
+            this.retryScheduler.schedule(() -> execute(request, evaluator, result, executionCount + 1),
+                    this.serviceUnavailableRetryStrategy.getRetryInterval(), TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            LOGGER.trace("Request to [{}] is not retried since the client is closed", request.getURI());
+            result.complete(false);
+        }
+    }
+
+    private void backOff(final HttpClientContext context, final boolean backOff) {
+        if (context.getHttpRoute() == null) {
+            return;
+        }
+        if (backOff) {
+            this.backoffManager.backOff(context.getHttpRoute());
+        } else {
+            this.backoffManager.probe(context.getHttpRoute());
+        }
+    }
+
+    /**
+     * Executes a request through the blocking client, from the executor of HTTPS requests.
+     *
+     * @param request the request
+     * @param evaluator evaluates the response
+     * @return the future outcome, false if the request fails
+     */
+    private CompletableFuture<Boolean> executeBlocking(final HttpUriRequest request, final Function<HttpResponse, Boolean> evaluator) {
+        final URI uri = request.getURI();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try (final CloseableHttpResponse response = this.httpClient.execute(request)) {
+                    this.circuitBreakerRegistry.recordOutcome(uri,
+                            response.getStatusLine().getStatusCode() < HttpStatus.SC_INTERNAL_SERVER_ERROR);
+                    return evaluator.apply(response);
+                } catch (final Exception e) {
+                    LOGGER.trace("Request to [{}] failed: {}", uri, e.getMessage());
+                    this.circuitBreakerRegistry.recordOutcome(uri, false);
+                    return false;
+                }
+            }, this.httpsExecutorService);
+        } catch (final RejectedExecutionException e) {
+            LOGGER.warn("Request to [{}] is not sent; the executor of HTTPS requests is saturated", uri);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    private static String toString(final HttpResponse response) {
+        try {
+            return response.getEntity() == null ? null : EntityUtils.toString(response.getEntity());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return false;
     }
 
     /**
-     * Shutdown the executor service and close the http client.
-     * @throws Exception if the executor cannot properly shut down
+     * Close the http clients.
+     * @throws Exception if the clients cannot properly shut down
      */
     @Override
     public void destroy() throws Exception {
-        IOUtils.closeQuietly(this.requestExecutorService);
+        this.retryScheduler.shutdownNow();
+        IOUtils.closeQuietly(this.asyncHttpClient);
+        IOUtils.closeQuietly(this.httpClient);
     }
 
     @Override
@@ -22,14 +22,23 @@ import org.apache.http.conn.ssl.DefaultHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.DefaultConnectionReuseStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.AIMDBackoffManager;
 import org.apache.http.impl.client.DefaultBackoffStrategy;
 import org.apache.http.impl.client.DefaultRedirectStrategy;
 import org.apache.http.impl.client.DefaultServiceUnavailableRetryStrategy;
-import org.apache.http.impl.client.FutureRequestExecutionService;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.client.ProxyAuthenticationStrategy;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.ssl.SSLContexts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.FactoryBean;
@@ -40,6 +49,7 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PreDestroy;
 import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
@@ -54,7 +64,14 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
- * The factory to build a {@link SimpleHttpClient}.
+ * The factory to build a {@link SimpleHttpClient}. Requests are sent over non-blocking
+ * connections handled by a few I/O threads, with the same connection limits, timeouts,
+ * redirection, retry and backoff settings as the blocking client that is wrapped for other components.
+ * <p>
+ * HTTPS connections take their SSL context from socket factories that implement {@link SslContextProvider},
+ * or from {@link #setSslContext(SSLContext)}. When neither is available, HTTPS requests are sent by the
+ * blocking client, with the configured socket factory, from the {@link #executorService}.
+ * </p>
  *
  * @author Jerome Leleu
  * @since 4.1.0
@@ -81,10 +98,13 @@ public class SimpleHttpClientFactoryBean implements FactoryBean<SimpleHttpClient
     /** 20% of the total of threads in the pool to handle overhead. */
     private static final int DEFAULT_QUEUE_SIZE = (int) (DEFAULT_THREADS_NUMBER * 0.2);
 
-    /** The number of threads used to build the pool of threads (if no executorService provided). */
+    /** The number of threads used to build the pool of threads of blocking HTTPS requests (if no executorService provided). */
     private int threadsNumber = DEFAULT_THREADS_NUMBER;
 
-    /** The queue size to absorb additional tasks when the threads pool is saturated (if no executorService provided). */ 
+    /** The number of I/O threads that non-blocking connections are multiplexed over. */
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+
+    /** The queue size to absorb additional tasks when the threads pool is saturated (if no executorService provided). */
     private int queueSize = DEFAULT_QUEUE_SIZE;
 
     /** The Max pooled connections.  */
@@ -111,6 +131,12 @@ public class SimpleHttpClientFactoryBean implements FactoryBean<SimpleHttpClient
      */
     private SSLConnectionSocketFactory sslSocketFactory = SSLConnectionSocketFactory.getSocketFactory();
 
+    /**
+     * The SSL context of non-blocking connections, taken from the socket factory when it provides one;
+     * null when HTTPS requests are sent by the blocking client.
+     */
+    private SSLContext sslContext = SSLContexts.createDefault();
+
     /**
      * The hostname verifier to be used when verifying the validity of the endpoint.
      */
@@ -153,8 +179,12 @@ public class SimpleHttpClientFactoryBean implements FactoryBean<SimpleHttpClient
     /** Determines whether redirects should be handled automatically. **/
     private boolean redirectsEnabled = true;
 
+    /** The circuit breakers of the hosts called by the built clients. */
+    private CircuitBreakerRegistry circuitBreakerRegistry = new CircuitBreakerRegistry();
+
     /**
-     * The executor service used to create a {@link #buildRequestExecutorService}.
+     * The executor service that sends HTTPS requests through the blocking client, when the
+     * SSL context of the socket factory is not known.
      */
     private ExecutorService executorService;
 
@@ -163,9 +193,17 @@ public class SimpleHttpClientFactoryBean implements FactoryBean<SimpleHttpClient
 
         final CloseableHttpClient httpClient = buildHttpClient();
 
-        final FutureRequestExecutionService requestExecutorService = buildRequestExecutorService(httpClient);
+        final PoolingNHttpClientConnectionManager connMgmr = buildAsyncConnectionManager();
 
-        return new SimpleHttpClient(this.acceptableCodes, httpClient, requestExecutorService);
+        final CloseableHttpAsyncClient asyncHttpClient = buildAsyncHttpClient(connMgmr);
+
+        final AIMDBackoffManager backoffManager = new AIMDBackoffManager(connMgmr);
+        backoffManager.setPerHostConnectionCap(this.maxConnectionsPerRoute);
+
+        final ExecutorService httpsExecutorService = this.sslContext == null ? buildExecutorService() : null;
+
+        return new SimpleHttpClient(this.acceptableCodes, httpClient, asyncHttpClient, this.circuitBreakerRegistry,
+                this.serviceUnavailableRetryStrategy, this.connectionBackoffStrategy, backoffManager, httpsExecutorService);
     }
 
     @Override
@@ -203,19 +241,9 @@ public class SimpleHttpClientFactoryBean implements FactoryBean<SimpleHttpClient
             final HttpRoute httpRoute = new HttpRoute(httpHost);
             connMgmr.setMaxPerRoute(httpRoute, MAX_CONNECTIONS_PER_ROUTE);
     
-            final RequestConfig requestConfig = RequestConfig.custom()
-                    .setSocketTimeout(this.readTimeout)
-                    .setConnectTimeout(this.connectionTimeout)
-                    .setConnectionRequestTimeout(this.connectionTimeout)
-                    .setCircularRedirectsAllowed(this.circularRedirectsAllowed)
-                    .setRedirectsEnabled(this.redirectsEnabled)
-                    .setAuthenticationEnabled(this.authenticationEnabled)
-                    .build();
-
-
             final HttpClientBuilder builder = HttpClients.custom()
                     .setConnectionManager(connMgmr)
-                    .setDefaultRequestConfig(requestConfig)
+                    .setDefaultRequestConfig(buildRequestConfig())
                     .setSSLSocketFactory(sslsf)
                     .setSSLHostnameVerifier(this.hostnameVerifier)
                     .setRedirectStrategy(this.redirectionStrategy)
@@ -237,24 +265,100 @@ public class SimpleHttpClientFactoryBean implements FactoryBean<SimpleHttpClient
     }
 
     /**
-     * Build a {@link FutureRequestExecutionService} from the current properties and a HTTP client.
+     * Build the connection manager of non-blocking connections based on the current properties.
+     *
+     * @return the built connection manager
+     */
+    private PoolingNHttpClientConnectionManager buildAsyncConnectionManager() {
+        try {
+            final IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                    .setIoThreadCount(this.ioThreads)
+                    .setConnectTimeout(this.connectionTimeout)
+                    .setSoTimeout(this.readTimeout)
+                    .build();
+
+            final RegistryBuilder<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                    .register("http", NoopIOSessionStrategy.INSTANCE);
+            if (this.sslContext != null) {
+                registry.register("https", new SSLIOSessionStrategy(this.sslContext, this.hostnameVerifier));
+            } else {
+                LOGGER.info("The SSL socket factory does not provide its SSL context; HTTPS requests are sent by blocking connections");
+            }
+
+            final PoolingNHttpClientConnectionManager connMgmr =
+                    new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig), registry.build());
+            connMgmr.setMaxTotal(this.maxPooledConnections);
+            connMgmr.setDefaultMaxPerRoute(this.maxConnectionsPerRoute);
+            return connMgmr;
+
+        } catch (final Exception e) {
+            LOGGER.error(e.getMessage(), e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Build a started non-blocking HTTP client based on the current properties.
+     *
+     * @param connMgmr the connection manager of the client
+     * @return the built HTTP client
+     */
+    private CloseableHttpAsyncClient buildAsyncHttpClient(final PoolingNHttpClientConnectionManager connMgmr) {
+        try {
+            final CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                    .setConnectionManager(connMgmr)
+                    .setDefaultRequestConfig(buildRequestConfig())
+                    .setRedirectStrategy(this.redirectionStrategy)
+                    .setDefaultCredentialsProvider(this.credentialsProvider)
+                    .setDefaultCookieStore(this.cookieStore)
+                    .setConnectionReuseStrategy(this.connectionReuseStrategy)
+                    .setProxyAuthenticationStrategy(this.proxyAuthenticationStrategy)
+                    .setDefaultHeaders(this.defaultHeaders)
+                    .useSystemProperties()
+                    .build();
+            client.start();
+            return client;
+
+        } catch (final Exception e) {
+            LOGGER.error(e.getMessage(), e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Build the executor service of blocking HTTPS requests, unless one is provided.
      *
-     * @param httpClient the provided HTTP client
-     * @return the built request executor service
+     * @return the executor service
      */
-    private FutureRequestExecutionService buildRequestExecutorService(final CloseableHttpClient httpClient) {
+    private ExecutorService buildExecutorService() {
         if (this.executorService == null) {
             this.executorService = new ThreadPoolExecutor(this.threadsNumber, this.threadsNumber,
-                    0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(this.queueSize));
+                    0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(this.queueSize));
         }
+        return this.executorService;
+    }
 
-        return new FutureRequestExecutionService(httpClient, this.executorService);
+    private RequestConfig buildRequestConfig() {
+        return RequestConfig.custom()
+                .setSocketTimeout(this.readTimeout)
+                .setConnectTimeout(this.connectionTimeout)
+                .setConnectionRequestTimeout(this.connectionTimeout)
+                .setCircularRedirectsAllowed(this.circularRedirectsAllowed)
+                .setRedirectsEnabled(this.redirectsEnabled)
+                .setAuthenticationEnabled(this.authenticationEnabled)
+                .build();
     }
 
     public ExecutorService getExecutorService() {
         return this.executorService;
     }
 
+    /**
+     * Sets the executor service of HTTPS requests sent by the blocking client, which is
+     * only used when the SSL context of the socket factory is not known.
+     *
+     * @param executorService the executor service
+     */
     public void setExecutorService(final ExecutorService executorService) {
         this.executorService = executorService;
     }
@@ -275,6 +379,21 @@ public class SimpleHttpClientFactoryBean implements FactoryBean<SimpleHttpClient
         this.queueSize = queueSize;
     }
 
+    public int getIoThreads() {
+        return this.ioThreads;
+    }
+
+    /**
+     * Sets the number of I/O threads.
+     *
+     * @param ioThreads the number of I/O threads, or 0 for the number of processors
+     */
+    @Autowired
+    public void setIoThreads(@Value("${http.client.ioThreads:0}")
+                             final int ioThreads) {
+        this.ioThreads = ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors();
+    }
+
     public int getMaxPooledConnections() {
         return this.maxPooledConnections;
     }
@@ -319,6 +438,16 @@ public class SimpleHttpClientFactoryBean implements FactoryBean<SimpleHttpClient
         this.readTimeout = readTimeout;
     }
 
+    public CircuitBreakerRegistry getCircuitBreakerRegistry() {
+        return this.circuitBreakerRegistry;
+    }
+
+    @Autowired(required = false)
+    public void setCircuitBreakerRegistry(@Qualifier("circuitBreakerRegistry")
+                                          final CircuitBreakerRegistry circuitBreakerRegistry) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+    }
+
     public RedirectStrategy getRedirectionStrategy() {
         return this.redirectionStrategy;
     }
@@ -331,8 +460,31 @@ public class SimpleHttpClientFactoryBean implements FactoryBean<SimpleHttpClient
         return this.sslSocketFactory;
     }
 
+    /**
+     * Sets the SSL socket factory, and the SSL context of non-blocking connections
+     * when the factory provides one. Otherwise, HTTPS requests are sent by the blocking
+     * client, unless an SSL context is set afterwards.
+     *
+     * @param sslSocketFactory the SSL socket factory
+     */
     public void setSslSocketFactory(final SSLConnectionSocketFactory sslSocketFactory) {
         this.sslSocketFactory = sslSocketFactory;
+        this.sslContext = sslSocketFactory instanceof SslContextProvider
+                ? ((SslContextProvider) sslSocketFactory).getSslContext() : null;
+    }
+
+    public SSLContext getSslContext() {
+        return this.sslContext;
+    }
+
+    /**
+     * Sets the SSL context of non-blocking connections, which should trust the same
+     * certificates as the SSL socket factory.
+     *
+     * @param sslContext the SSL context
+     */
+    public void setSslContext(final SSLContext sslContext) {
+        this.sslContext = sslContext;
     }
 
     public HostnameVerifier getHostnameVerifier() {
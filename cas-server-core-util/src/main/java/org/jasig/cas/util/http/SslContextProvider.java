@@ -0,0 +1,21 @@
+package org.jasig.cas.util.http;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * Implemented by SSL socket factories that can share their SSL context, so that
+ * the non-blocking connections of the {@link SimpleHttpClientFactoryBean} trust the
+ * same certificates as its blocking connections.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public interface SslContextProvider {
+
+    /**
+     * Gets the SSL context.
+     *
+     * @return the SSL context
+     */
+    SSLContext getSslContext();
+}
@@ -0,0 +1,70 @@
+package org.jasig.cas.util;
+
+import org.jasig.cas.CipherExecutor;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link AesGcmCipherExecutor}.
+ * @author agent
+ * @since 4.3.0
+ */
+public class AesGcmCipherExecutorTests {
+
+    private static final String VALUE = "ThisIsATestValueThatIsGoingToBeEncodedAndDecodedAgainAndAgain";
+
+    private static final String ENCRYPTION_KEY = "1234567890123456";
+
+    private static final String SIGNING_KEY =
+            "szxK-5_eJjs-aUj-64MpUZ-GPPzGLhYPLGl0wrYjYNVAGva2P0lLe6UGKGM7k8dWxsOVGutZWgvmY3l5oVPO3w";
+
+    private final CipherExecutor<byte[], byte[]> cipher = new AesGcmCipherExecutor(ENCRYPTION_KEY, SIGNING_KEY);
+
+    @Test
+    public void checkEncodingDecoding() {
+        final byte[] encoded = this.cipher.encode(VALUE.getBytes(StandardCharsets.UTF_8));
+        assertEquals(AesGcmCipherExecutor.ENVELOPE_VERSION, encoded[0]);
+        assertEquals(VALUE, new String(this.cipher.decode(encoded), StandardCharsets.UTF_8));
+        assertFalse(new String(encoded, StandardCharsets.ISO_8859_1).contains("ThisIsATestValue"));
+    }
+
+    @Test
+    public void checkEncodingIsRandomized() {
+        final byte[] value = VALUE.getBytes(StandardCharsets.UTF_8);
+        assertFalse(Arrays.equals(this.cipher.encode(value), this.cipher.encode(value)));
+    }
+
+    @Test
+    public void checkDecodingOfValueEncodedByShiroCipherExecutor() {
+        final byte[] encoded = new ShiroCipherExecutor(ENCRYPTION_KEY, SIGNING_KEY).encode(VALUE.getBytes(StandardCharsets.UTF_8));
+        assertEquals(VALUE, new String(this.cipher.decode(encoded), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void checkKeyIsDerivedFromSecretsOfOtherLengths() {
+        final CipherExecutor<byte[], byte[]> cc = new AesGcmCipherExecutor("N0$ecr3T", SIGNING_KEY);
+        assertEquals(VALUE, new String(cc.decode(cc.encode(VALUE.getBytes(StandardCharsets.UTF_8))), StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void checkTamperedValueIsRejected() {
+        final byte[] encoded = this.cipher.encode(VALUE.getBytes(StandardCharsets.UTF_8));
+        encoded[encoded.length - 1] ^= 1;
+        this.cipher.decode(encoded);
+    }
+
+    @Test
+    public void checkTruncatedValueIsRejected() {
+        final byte[] encoded = this.cipher.encode(VALUE.getBytes(StandardCharsets.UTF_8));
+        try {
+            this.cipher.decode(Arrays.copyOf(encoded, 1 + 12));
+            fail("Truncated value should not be decoded");
+        } catch (final RuntimeException e) {
+            assertEquals(RuntimeException.class, e.getClass());
+        }
+    }
+}
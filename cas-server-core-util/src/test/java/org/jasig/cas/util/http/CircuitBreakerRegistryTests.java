@@ -0,0 +1,39 @@
+package org.jasig.cas.util.http;
+
+import org.junit.Test;
+
+import java.net.URI;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link CircuitBreakerRegistry}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class CircuitBreakerRegistryTests {
+
+    @Test
+    public void verifyDisabledByDefault() {
+        final CircuitBreakerRegistry registry = new CircuitBreakerRegistry();
+        final URI uri = URI.create("https://app.example.org/logout");
+        for (int i = 0; i < 10; i++) {
+            registry.recordOutcome(uri, false);
+        }
+        assertTrue(registry.allowRequest(uri));
+        assertTrue(registry.getCircuitBreakers().isEmpty());
+    }
+
+    @Test
+    public void verifyImplicitPortsAreResolved() {
+        final CircuitBreakerRegistry registry = new CircuitBreakerRegistry();
+        registry.setEnabled(true);
+        assertSame(registry.getCircuitBreaker(URI.create("https://app.example.org/logout")),
+                registry.getCircuitBreaker(URI.create("HTTPS://App.Example.org:443/callback")));
+        assertNotSame(registry.getCircuitBreaker(URI.create("https://app.example.org/logout")),
+                registry.getCircuitBreaker(URI.create("http://app.example.org/logout")));
+        assertTrue(registry.getCircuitBreakers().containsKey("https://app.example.org:443"));
+        assertTrue(registry.getCircuitBreakers().containsKey("http://app.example.org:80"));
+    }
+}
@@ -0,0 +1,57 @@
+package org.jasig.cas.util.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link CircuitBreaker}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class CircuitBreakerTests {
+
+    @Test
+    public void verifyCircuitOpensAfterConsecutiveFailures() {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(3, 60000);
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void verifySingleProbeClosesCircuit() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(1, 50);
+        circuitBreaker.recordFailure();
+        assertFalse(circuitBreaker.allowRequest());
+
+        Thread.sleep(60);
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+
+        circuitBreaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void verifyFailedProbeOpensCircuitAgain() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(5, 50);
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.recordFailure();
+        }
+        Thread.sleep(60);
+        assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+    }
+}
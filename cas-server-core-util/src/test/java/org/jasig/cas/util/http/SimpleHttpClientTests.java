@@ -1,13 +1,27 @@
 package org.jasig.cas.util.http;
 
+import com.sun.net.httpserver.HttpServer;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.DefaultServiceUnavailableRetryStrategy;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -18,6 +32,48 @@ import static org.junit.Assert.*;
  */
 public class SimpleHttpClientTests  {
 
+    private HttpServer server;
+
+    private String serverUrl;
+
+    private final AtomicInteger unavailableRequests = new AtomicInteger();
+
+    @Before
+    public void startServer() throws Exception {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/ok", exchange -> {
+            final byte[] body = "OK".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        this.server.createContext("/error", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        this.server.createContext("/unavailable", exchange -> {
+            if (this.unavailableRequests.incrementAndGet() == 1) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            final byte[] body = "OK".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        this.server.setExecutor(Executors.newFixedThreadPool(4));
+        this.server.start();
+        this.serverUrl = "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        this.server.stop(0);
+    }
+
     private SimpleHttpClient getHttpClient() throws Exception {
         final SimpleHttpClient httpClient = new SimpleHttpClientFactoryBean().getObject();
         return httpClient;
@@ -49,6 +105,78 @@ public class SimpleHttpClientTests  {
         assertTrue(client.isValidEndPoint("https://static.ak.connect.facebook.com"));
     }
 
+    @Test
+    public void verifyLocalEndPoints() throws Exception {
+        final SimpleHttpClient client = this.getHttpClient();
+        assertTrue(client.isValidEndPoint(this.serverUrl + "/ok"));
+        assertFalse(client.isValidEndPoint(this.serverUrl + "/error"));
+        assertFalse(client.isValidEndPoint("http://127.0.0.1:1/unreachable"));
+    }
+
+    @Test
+    public void verifyUnavailableEndPointIsRetried() throws Exception {
+        final SimpleHttpClientFactoryBean clientFactory = new SimpleHttpClientFactoryBean();
+        clientFactory.setServiceUnavailableRetryStrategy(new DefaultServiceUnavailableRetryStrategy(1, 10));
+        final SimpleHttpClient client = clientFactory.getObject();
+
+        assertTrue(client.sendMessageToEndPointAsync(new HttpMessage(new URL(this.serverUrl + "/unavailable"), "message"))
+                .get(10, TimeUnit.SECONDS));
+        assertEquals(2, this.unavailableRequests.get());
+        client.destroy();
+    }
+
+    @Test
+    public void verifyBlockingExecutorIsBuiltWithoutSslContext() throws Exception {
+        final SimpleHttpClientFactoryBean clientFactory = new SimpleHttpClientFactoryBean();
+        clientFactory.setSslSocketFactory(getFriendlyToAllSSLSocketFactory());
+        assertNull(clientFactory.getSslContext());
+        final SimpleHttpClient client = clientFactory.getObject();
+
+        assertTrue(client.isValidEndPoint(this.serverUrl + "/ok"));
+        assertNotNull(clientFactory.getExecutorService());
+        client.destroy();
+        clientFactory.destroy();
+    }
+
+    @Test
+    public void verifyMessagesAreSentWithoutBlocking() throws Exception {
+        final SimpleHttpClientFactoryBean clientFactory = new SimpleHttpClientFactoryBean();
+        clientFactory.setIoThreads(1);
+        final SimpleHttpClient client = clientFactory.getObject();
+
+        final List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(client.sendMessageToEndPointAsync(new HttpMessage(new URL(this.serverUrl + "/ok"), "message " + i)));
+        }
+        results.add(client.isValidEndPointAsync(new URL(this.serverUrl + "/ok")));
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()])).get(10, TimeUnit.SECONDS);
+        assertTrue(results.stream().allMatch(CompletableFuture::join));
+
+        assertFalse(client.sendMessageToEndPointAsync(new HttpMessage(new URL(this.serverUrl + "/error"), "message"))
+                .get(10, TimeUnit.SECONDS));
+        assertTrue(client.sendMessageToEndPoint(new HttpMessage(new URL(this.serverUrl + "/ok"), "message", false)));
+        client.destroy();
+    }
+
+    @Test
+    public void verifyFailingHostIsNoLongerCalled() throws Exception {
+        final CircuitBreakerRegistry circuitBreakerRegistry = new CircuitBreakerRegistry();
+        circuitBreakerRegistry.setEnabled(true);
+        circuitBreakerRegistry.setFailureThreshold(2);
+        final SimpleHttpClientFactoryBean clientFactory = new SimpleHttpClientFactoryBean();
+        clientFactory.setCircuitBreakerRegistry(circuitBreakerRegistry);
+        final SimpleHttpClient client = clientFactory.getObject();
+
+        assertFalse(client.isValidEndPoint(this.serverUrl + "/error"));
+        assertFalse(client.sendMessageToEndPoint(new HttpMessage(new URL(this.serverUrl + "/error"), "message", false)));
+        final CircuitBreaker circuitBreaker = circuitBreakerRegistry.getCircuitBreaker(new URL(this.serverUrl).toURI());
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        assertFalse(client.isValidEndPoint(this.serverUrl + "/ok"));
+        assertEquals(2, circuitBreaker.getConsecutiveFailures());
+        client.destroy();
+    }
+
     private SSLConnectionSocketFactory getFriendlyToAllSSLSocketFactory() throws Exception {
         final TrustManager trm = new X509TrustManager() {
             @Override
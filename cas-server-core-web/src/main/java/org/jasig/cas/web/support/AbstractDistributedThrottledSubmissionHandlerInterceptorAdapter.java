@@ -0,0 +1,209 @@
+package org.jasig.cas.web.support;
+
+import org.jasig.cas.util.http.CircuitBreaker;
+import org.jasig.inspektr.common.web.ClientInfoHolder;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throttles failed login attempts with counters shared by all CAS nodes through a distributed cache, so that
+ * attempts spread over the nodes of a cluster are held to the same rate as attempts sent to a single node.
+ * <p>
+ * Failures of a key are counted per window of {@code failureRangeInSeconds}, and the failures of the previous window
+ * are weighted by how much of it still overlaps the sliding window that ends now. Failures are first added up
+ * locally, and sent to the cache as one increment per key every {@code flushIntervalInMillis}, so that a burst
+ * of attempts does not turn into as many round trips. Counters expire with the window after next.
+ * </p>
+ * <p>
+ * Failures are also counted in memory by a {@link SlidingWindowCountMinSketch}. When the cache cannot be reached,
+ * the throttle falls back to those counts until the cache is tried again, so that attempts are still throttled,
+ * if only per node.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public abstract class AbstractDistributedThrottledSubmissionHandlerInterceptorAdapter
+            extends AbstractThrottledSubmissionHandlerInterceptorAdapter implements DisposableBean {
+
+    /** Consecutive failures of the cache after which the throttle falls back to local counts. */
+    private static final int BACKEND_FAILURE_THRESHOLD = 3;
+
+    /** Prefix of the counters kept in the cache. */
+    private static final String COUNTER_PREFIX = "cas.throttle:";
+
+    private final ConcurrentMap<String, Long> pendingFailures = new ConcurrentHashMap<>();
+
+    @Value("${cas.throttle.distributed.flush.interval:100}")
+    private long flushIntervalInMillis = 100;
+
+    @Value("${cas.throttle.distributed.retry.seconds:30}")
+    private long retryIntervalInSeconds = 30;
+
+    @Value("${cas.throttle.sketch.depth:4}")
+    private int depth = 4;
+
+    @Value("${cas.throttle.sketch.width:16384}")
+    private int width = 16384;
+
+    @Value("${cas.throttle.sketch.subwindows:10}")
+    private int subWindows = 10;
+
+    private long windowInMillis;
+
+    private SlidingWindowCountMinSketch localFailures;
+
+    private CircuitBreaker circuitBreaker;
+
+    private ScheduledExecutorService flusher;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        super.afterPropertiesSet();
+        this.windowInMillis = TimeUnit.SECONDS.toMillis(getFailureRangeInSeconds());
+        this.localFailures = new SlidingWindowCountMinSketch(this.depth, this.width, this.windowInMillis, this.subWindows);
+        this.circuitBreaker = new CircuitBreaker(BACKEND_FAILURE_THRESHOLD, TimeUnit.SECONDS.toMillis(this.retryIntervalInSeconds));
+        if (this.flusher == null) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, getName() + "-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.flusher.scheduleWithFixedDelay(this::flush, this.flushIntervalInMillis,
+                    this.flushIntervalInMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (this.flusher != null) {
+            this.flusher.shutdown();
+            this.flusher.awaitTermination(this.flushIntervalInMillis, TimeUnit.MILLISECONDS);
+            this.flusher = null;
+        }
+        flush();
+    }
+
+    @Override
+    protected boolean exceedsThreshold(final HttpServletRequest request) {
+        final String key = constructKey(request);
+        final long now = System.currentTimeMillis();
+        if (!this.circuitBreaker.allowRequest()) {
+            return this.localFailures.estimate(key, now) >= getFailureThreshold();
+        }
+
+        final long window = now / this.windowInMillis;
+        final String current = counterKey(key, window);
+        final String previous = counterKey(key, window - 1);
+        // Pending failures are read before the cache, so that failures flushed in between are counted twice rather than missed
+        final long pendingCurrent = getPendingFailures(current);
+        final long pendingPrevious = getPendingFailures(previous);
+        try {
+            final Map<String, Long> failures = getFailures(Arrays.asList(current, previous));
+            this.circuitBreaker.recordSuccess();
+            final double overlap = 1.0 - (double) (now % this.windowInMillis) / this.windowInMillis;
+            final double estimate = failures.getOrDefault(current, 0L) + pendingCurrent
+                    + overlap * (failures.getOrDefault(previous, 0L) + pendingPrevious);
+            return estimate >= getFailureThreshold();
+        } catch (final Exception e) {
+            this.circuitBreaker.recordFailure();
+            logger.warn("Could not read failures from {}; throttling with local counts: {}", getName(), e.getMessage());
+            return this.localFailures.estimate(key, now) >= getFailureThreshold();
+        }
+    }
+
+    @Override
+    protected void recordSubmissionFailure(final HttpServletRequest request) {
+        final String key = constructKey(request);
+        final long now = System.currentTimeMillis();
+        this.localFailures.add(key, now);
+        if (this.circuitBreaker.getState() != CircuitBreaker.State.OPEN) {
+            this.pendingFailures.merge(counterKey(key, now / this.windowInMillis), 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Sends the failures added up locally since the last flush to the cache.
+     * Failures are dropped if the cache cannot be reached, since they are counted locally as well.
+     */
+    public void flush() {
+        final Map<String, Long> increments = new HashMap<>();
+        // Each counter is read and removed at once, so that failures recorded meanwhile start a new pending count
+        this.pendingFailures.keySet().forEach(counter -> this.pendingFailures.computeIfPresent(counter, (k, increment) -> {
+            increments.put(k, increment);
+            return null;
+        }));
+        if (increments.isEmpty()) {
+            return;
+        }
+        try {
+            addFailures(increments, (int) TimeUnit.MILLISECONDS.toSeconds(2 * this.windowInMillis) + 1);
+            this.circuitBreaker.recordSuccess();
+        } catch (final Exception e) {
+            this.circuitBreaker.recordFailure();
+            logger.warn("Could not send {} failure counters to {}: {}", increments.size(), getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Construct key to be used by the throttling agent to track requests.
+     *
+     * @param request the request
+     * @return the key
+     */
+    protected String constructKey(final HttpServletRequest request) {
+        final String username = request.getParameter(getUsernameParameter());
+
+        if (username == null) {
+            return request.getRemoteAddr();
+        }
+
+        return ClientInfoHolder.getClientInfo().getClientIpAddress() + ';' + username.toLowerCase();
+    }
+
+    /**
+     * Reads counters from the cache.
+     *
+     * @param counters the names of the counters
+     * @return the values of the counters that exist
+     * @throws Exception if the cache cannot be reached
+     */
+    protected abstract Map<String, Long> getFailures(Collection<String> counters) throws Exception;
+
+    /**
+     * Increments counters in the cache, creating those that do not exist.
+     *
+     * @param increments         the increment of every counter
+     * @param timeToLiveInSeconds how long created counters are kept
+     * @throws Exception if the cache cannot be reached
+     */
+    protected abstract void addFailures(Map<String, Long> increments, int timeToLiveInSeconds) throws Exception;
+
+    private long getPendingFailures(final String counter) {
+        return this.pendingFailures.getOrDefault(counter, 0L);
+    }
+
+    private static String counterKey(final String key, final long window) {
+        return COUNTER_PREFIX + key + ':' + window;
+    }
+
+    public void setFlushIntervalInMillis(final long flushIntervalInMillis) {
+        this.flushIntervalInMillis = flushIntervalInMillis;
+    }
+
+    public void setRetryIntervalInSeconds(final long retryIntervalInSeconds) {
+        this.retryIntervalInSeconds = retryIntervalInSeconds;
+    }
+}
@@ -0,0 +1,153 @@
+package org.jasig.cas.web.support;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate count of the events of every key within a sliding time window, held in a fixed amount of memory
+ * whatever the number of keys.
+ * <p>
+ * The window is split into sub-windows, each of which is a count-min sketch of {@code depth} rows
+ * of {@code width} counters. An event increments one counter per row of the current sub-window, and the count
+ * of a key is the smallest of its row sums over the sub-windows of the window. Counts may be overestimated when
+ * keys collide, but are never underestimated, and the window slides one sub-window at a time.
+ * Sub-windows are cleared lazily when they are reused, so no timer is needed to expire counts.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class SlidingWindowCountMinSketch {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private static final int INT_BITS = 32;
+
+    private final int depth;
+
+    private final int width;
+
+    private final long subWindowInMillis;
+
+    private final AtomicIntegerArray[] counters;
+
+    private final AtomicLongArray epochs;
+
+    /**
+     * Instantiates a new sketch.
+     *
+     * @param depth           the number of rows, which lowers the odds of overestimating counts
+     * @param width           the number of counters per row, which lowers the amount of overestimation
+     * @param windowInMillis  the length of the window
+     * @param subWindows      the number of sub-windows the window is split into
+     */
+    public SlidingWindowCountMinSketch(final int depth, final int width, final long windowInMillis, final int subWindows) {
+        if (depth < 1 || width < 1 || subWindows < 1 || windowInMillis < 1) {
+            throw new IllegalArgumentException("Depth, width, window and sub-windows of the sketch must be positive");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.subWindowInMillis = Math.max(1, windowInMillis / subWindows);
+        this.counters = new AtomicIntegerArray[subWindows];
+        this.epochs = new AtomicLongArray(subWindows);
+        for (int i = 0; i < subWindows; i++) {
+            this.counters[i] = new AtomicIntegerArray(depth * width);
+            this.epochs.set(i, -1);
+        }
+    }
+
+    /**
+     * Records an event of the key, and estimates the events of the key within the window.
+     *
+     * @param key           the key
+     * @param nowInMillis   the current time
+     * @return the estimated number of events, including this one
+     */
+    public long add(final String key, final long nowInMillis) {
+        final long epoch = nowInMillis / this.subWindowInMillis;
+        final AtomicIntegerArray current = currentSubWindow(epoch);
+        final int[] indexes = indexesOf(key);
+        for (final int index : indexes) {
+            current.incrementAndGet(index);
+        }
+        return estimate(indexes, epoch);
+    }
+
+    /**
+     * Estimates the events of the key within the window.
+     *
+     * @param key           the key
+     * @param nowInMillis   the current time
+     * @return the estimated number of events
+     */
+    public long estimate(final String key, final long nowInMillis) {
+        return estimate(indexesOf(key), nowInMillis / this.subWindowInMillis);
+    }
+
+    /**
+     * Gets the number of counters of the sketch, which bounds its memory footprint.
+     *
+     * @return the number of counters
+     */
+    public int size() {
+        return this.counters.length * this.depth * this.width;
+    }
+
+    private long estimate(final int[] indexes, final long epoch) {
+        long min = Long.MAX_VALUE;
+        for (final int index : indexes) {
+            long sum = 0;
+            for (int i = 0; i < this.counters.length; i++) {
+                final long subWindowEpoch = this.epochs.get(i);
+                if (subWindowEpoch <= epoch && subWindowEpoch > epoch - this.counters.length) {
+                    sum += this.counters[i].get(index);
+                }
+            }
+            min = Math.min(min, sum);
+        }
+        return min;
+    }
+
+    /**
+     * Gets the sub-window of the epoch, clearing it first if it still holds the counts of an older epoch.
+     *
+     * @param epoch the epoch
+     * @return the counters of the sub-window
+     */
+    private AtomicIntegerArray currentSubWindow(final long epoch) {
+        final int slot = (int) (epoch % this.counters.length);
+        final AtomicIntegerArray subWindow = this.counters[slot];
+        if (this.epochs.get(slot) < epoch) {
+            synchronized (subWindow) {
+                if (this.epochs.get(slot) < epoch) {
+                    for (int i = 0; i < subWindow.length(); i++) {
+                        subWindow.set(i, 0);
+                    }
+                    this.epochs.set(slot, epoch);
+                }
+            }
+        }
+        return subWindow;
+    }
+
+    /**
+     * Computes the counter of the key in every row, deriving the row hashes from a single 64-bit hash.
+     *
+     * @param key the key
+     * @return the index of the counter of every row
+     */
+    private int[] indexesOf(final String key) {
+        final long hash = HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asLong();
+        final int first = (int) hash;
+        final int second = (int) (hash >>> INT_BITS);
+        final int[] indexes = new int[this.depth];
+        for (int row = 0; row < this.depth; row++) {
+            indexes[row] = row * this.width + Math.floorMod(first + row * second, this.width);
+        }
+        return indexes;
+    }
+}
@@ -0,0 +1,40 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.registry.support.ValidateServiceTicketEntryProcessor;
+
+/**
+ * Service ticket delegator that tracks the usage of the ticket stored by
+ * {@link HazelcastTicketRegistry} on the owner of its partition, instead of writing back
+ * the whole ticket. The result of validating the stored ticket is authoritative.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class HazelcastServiceTicketDelegator extends ServiceTicketDelegator<ServiceTicket> {
+
+    private static final long serialVersionUID = 2671925089634216537L;
+
+    private final HazelcastTicketRegistry ticketRegistry;
+
+    /**
+     * Instantiates a new service ticket delegator.
+     *
+     * @param ticketRegistry the ticket registry
+     * @param serviceTicket the service ticket
+     * @param callback the callback
+     */
+    HazelcastServiceTicketDelegator(final AbstractTicketRegistry ticketRegistry,
+                                    final ServiceTicket serviceTicket, final boolean callback) {
+        super(ticketRegistry, serviceTicket, callback);
+        this.ticketRegistry = (HazelcastTicketRegistry) ticketRegistry;
+    }
+
+    @Override
+    public boolean isValidFor(final Service service) {
+        this.getTicket().isValidFor(service);
+        final Object valid = this.ticketRegistry.executeOnTicket(this.getTicket(), new ValidateServiceTicketEntryProcessor(service));
+        return Boolean.TRUE.equals(valid);
+    }
+}
@@ -0,0 +1,54 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.ticket.ExpirationPolicy;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.registry.support.GrantServiceTicketEntryProcessor;
+import org.jasig.cas.ticket.registry.support.MarkTicketExpiredEntryProcessor;
+
+/**
+ * Ticket-granting ticket delegator that applies changes to the ticket stored by
+ * {@link HazelcastTicketRegistry} on the owner of its partition, instead of writing back
+ * the whole ticket. The loaded ticket is changed as well so that it stays consistent
+ * with the returned values.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class HazelcastTicketGrantingTicketDelegator extends TicketGrantingTicketDelegator<TicketGrantingTicket> {
+
+    private static final long serialVersionUID = -3587429916320754013L;
+
+    private final HazelcastTicketRegistry ticketRegistry;
+
+    /**
+     * Instantiates a new ticket granting ticket delegator.
+     *
+     * @param ticketRegistry the ticket registry
+     * @param ticketGrantingTicket the ticket granting ticket
+     * @param callback the callback
+     */
+    HazelcastTicketGrantingTicketDelegator(final AbstractTicketRegistry ticketRegistry,
+                                           final TicketGrantingTicket ticketGrantingTicket, final boolean callback) {
+        super(ticketRegistry, ticketGrantingTicket, callback);
+        this.ticketRegistry = (HazelcastTicketRegistry) ticketRegistry;
+    }
+
+    @Override
+    public ServiceTicket grantServiceTicket(final String id, final Service service,
+                                            final ExpirationPolicy expirationPolicy, final boolean credentialsProvided,
+                                            final boolean onlyTrackMostRecentSession) {
+        final ServiceTicket t = this.getTicket().grantServiceTicket(id, service,
+                expirationPolicy, credentialsProvided, onlyTrackMostRecentSession);
+        this.ticketRegistry.executeOnTicket(this.getTicket(), new GrantServiceTicketEntryProcessor(id, service,
+                expirationPolicy, credentialsProvided, onlyTrackMostRecentSession));
+        return t;
+    }
+
+    @Override
+    public void markTicketExpired() {
+        this.getTicket().markTicketExpired();
+        this.ticketRegistry.executeOnTicket(this.getTicket(), new MarkTicketExpiredEntryProcessor());
+    }
+}
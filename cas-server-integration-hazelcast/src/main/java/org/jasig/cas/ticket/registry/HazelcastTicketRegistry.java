@@ -3,9 +3,20 @@ package org.jasig.cas.ticket.registry;
 import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.Ticket;
 import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.proxy.ProxyGrantingTicket;
+import org.jasig.cas.ticket.proxy.ProxyTicket;
+import org.jasig.cas.ticket.registry.config.HazelcastProperties;
+import org.jasig.cas.ticket.registry.support.AbstractTicketEntryProcessor;
+import org.jasig.cas.util.Pair;
 
+import com.hazelcast.config.Config;
+import com.hazelcast.config.PartitioningStrategyConfig;
+import com.hazelcast.core.EntryView;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IMap;
+import com.hazelcast.partition.strategy.StringPartitioningStrategy;
+import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -13,8 +24,11 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import java.lang.reflect.Constructor;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Hazelcast-based implementation of a {@link TicketRegistry}.
@@ -22,6 +36,15 @@ import java.util.concurrent.TimeUnit;
  * which is an extension of the standard Java's {@code ConcurrentMap}.</p>
  * <p>The heavy lifting of distributed data partitioning, network cluster discovery and
  * join, data replication, etc. is done by Hazelcast's Map implementation.</p>
+ * <p>Unless tickets are encrypted, changes to stored tickets such as granting a service ticket
+ * are applied by entry processors on the owner of the partition of the ticket, and the map
+ * is indexed on ticket ids and principals so that counts and lookups by principal are
+ * answered by the members from their indexes.</p>
+ * <p>Ticket ids that carry an affinity key (see {@link org.jasig.cas.ticket.TicketAffinity}) are placed
+ * on the partition of that key when the ticket map partitions keys with Hazelcast's
+ * {@link StringPartitioningStrategy}, so that a ticket-granting ticket and the tickets granted from it
+ * share a partition and changes that span them are handled by a single member. This does not apply
+ * to encrypted tickets, whose ids are digested.</p>
  *
  * @author Dmitriy Kopylenko
  * @author Jonathan Johnson
@@ -30,6 +53,15 @@ import java.util.concurrent.TimeUnit;
 @Component("hazelcastTicketRegistry")
 public class HazelcastTicketRegistry extends AbstractTicketRegistry implements DisposableBean {
 
+    /** Attribute of stored tickets that holds the id of the authenticated principal. */
+    public static final String PRINCIPAL_ATTRIBUTE = "authentication.principal.id";
+
+    /** Query attribute that refers to the key of an entry, i.e. the ticket id. */
+    private static final String KEY_ATTRIBUTE = "__key";
+
+    /** Upper bound of the characters that may follow a ticket id prefix. */
+    private static final char MAX_ID_CHAR = Character.MAX_VALUE;
+
     private final IMap<String, Ticket> registry;
 
     private final long serviceTicketTimeoutInSeconds;
@@ -71,6 +103,49 @@ public class HazelcastTicketRegistry extends AbstractTicketRegistry implements D
         logger.debug("Hazelcast instance: {} with name {}", this.hz, this.registry.getName());
         logger.debug("Ticket-granting ticket timeout: [{}s]", this.ticketGrantingTicketTimeoutInSeconds);
         logger.debug("Service ticket timeout: [{}s]", this.serviceTicketTimeoutInSeconds);
+        if (isCipherExecutorEnabled()) {
+            logger.info("Tickets are encrypted; changes to tickets are written back as whole tickets, the map is not indexed "
+                    + "and tickets are not partitioned by their affinity key, since encrypted ticket ids do not carry it");
+            return;
+        }
+        if (!isPartitionedByAffinityKey()) {
+            logger.info("Hazelcast does not partition tickets by their affinity key; set the partitioning strategy of map [{}] "
+                    + "to [{}] to store tickets granted from a ticket-granting ticket with it", this.registry.getName(),
+                    StringPartitioningStrategy.class.getName());
+        }
+        this.registry.addIndex(KEY_ATTRIBUTE, true);
+        this.registry.addIndex(PRINCIPAL_ATTRIBUTE, false);
+        setTicketDelegators(getTicketDelegators().stream().map(this::getHazelcastTicketDelegator).collect(Collectors.toList()));
+    }
+
+    /**
+     * Whether the ticket map partitions keys by the text after their {@code @}, either through its own
+     * partitioning strategy or through the strategy of the instance.
+     *
+     * @return true if tickets are partitioned by their affinity key
+     */
+    private boolean isPartitionedByAffinityKey() {
+        final Config config = this.hz.getConfig();
+        final PartitioningStrategyConfig strategy = config.getMapConfig(this.registry.getName()).getPartitioningStrategyConfig();
+        if (strategy != null) {
+            return strategy.getPartitioningStrategy() instanceof StringPartitioningStrategy
+                    || StringPartitioningStrategy.class.getName().equals(strategy.getPartitioningStrategyClass());
+        }
+        return StringPartitioningStrategy.class.getName().equals(config.getProperty(HazelcastProperties.PARTITIONING_STRATEGY_PROP));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Pair<Class<? extends Ticket>, Constructor<? extends AbstractTicketDelegator>> getHazelcastTicketDelegator(
+            final Pair<Class<? extends Ticket>, Constructor<? extends AbstractTicketDelegator>> delegator) {
+        if (delegator.getFirst() == TicketGrantingTicket.class) {
+            return new Pair(TicketGrantingTicket.class,
+                    AbstractTicketDelegator.getDefaultConstructor(HazelcastTicketGrantingTicketDelegator.class));
+        }
+        if (delegator.getFirst() == ServiceTicket.class) {
+            return new Pair(ServiceTicket.class,
+                    AbstractTicketDelegator.getDefaultConstructor(HazelcastServiceTicketDelegator.class));
+        }
+        return delegator;
     }
 
     @Override
@@ -123,6 +198,98 @@ public class HazelcastTicketRegistry extends AbstractTicketRegistry implements D
         return decodeTickets(this.registry.values());
     }
 
+    @Override
+    public int sessionCount() {
+        if (isCipherExecutorEnabled()) {
+            return super.sessionCount();
+        }
+        return this.registry.keySet(Predicates.or(
+                withIdPrefix(TicketGrantingTicket.PREFIX),
+                withIdPrefix(ProxyGrantingTicket.PROXY_GRANTING_TICKET_PREFIX))).size();
+    }
+
+    @Override
+    public int serviceTicketCount() {
+        if (isCipherExecutorEnabled()) {
+            return super.serviceTicketCount();
+        }
+        return this.registry.keySet(Predicates.or(
+                withIdPrefix(ServiceTicket.PREFIX),
+                withIdPrefix(ProxyTicket.PROXY_TICKET_PREFIX))).size();
+    }
+
+    /**
+     * Gets the ticket-granting tickets of a principal.
+     *
+     * @param principalId the principal id
+     * @return the ticket-granting tickets of the principal
+     * @throws UnsupportedOperationException if tickets are encrypted
+     */
+    public Collection<Ticket> getTicketGrantingTickets(final String principalId) {
+        if (isCipherExecutorEnabled()) {
+            throw new UnsupportedOperationException("Encrypted tickets cannot be looked up by principal");
+        }
+        return this.registry.values(Predicates.and(
+                withIdPrefix(TicketGrantingTicket.PREFIX),
+                Predicates.equal(PRINCIPAL_ATTRIBUTE, principalId)))
+                .stream()
+                .map(this::getProxiedTicketInstance)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Applies a change to a stored ticket on the member that owns the partition of the ticket.
+     * The time to live of the ticket is then reset, as it is when a whole ticket is updated.
+     *
+     * @param ticket    the ticket
+     * @param processor the change
+     * @return the value returned by the processor, or null if the ticket was not found
+     */
+    Object executeOnTicket(final Ticket ticket, final AbstractTicketEntryProcessor<?> processor) {
+        logger.debug("Applying [{}] to ticket [{}]", processor.getClass().getSimpleName(), ticket.getId());
+        final Object result = this.registry.executeOnKey(ticket.getId(), processor);
+        resetTimeToLive(ticket.getId(), getTimeout(ticket));
+        return result;
+    }
+
+    /**
+     * Sets the time to live of a ticket changed by an entry processor, unless it was kept.
+     * Hazelcast 3.x stores the value set by an entry processor with the default time to live
+     * of the map, which is unbounded unless configured, so the time to live the ticket was
+     * added with may be lost. Entry processors wait for the lock of the entry, so the ticket
+     * cannot change between reading it back and setting it again.
+     *
+     * @param ticketId the ticket id
+     * @param ttl      the time to live in seconds
+     */
+    private void resetTimeToLive(final String ticketId, final long ttl) {
+        final EntryView<String, Ticket> entry = this.registry.getEntryView(ticketId);
+        if (entry == null || entry.getTtl() == TimeUnit.SECONDS.toMillis(ttl)) {
+            return;
+        }
+        logger.debug("Resetting ttl of ticket [{}] to [{}s]", ticketId, ttl);
+        this.registry.lock(ticketId);
+        try {
+            final Ticket stored = this.registry.get(ticketId);
+            if (stored != null) {
+                this.registry.set(ticketId, stored, ttl, TimeUnit.SECONDS);
+            }
+        } finally {
+            this.registry.unlock(ticketId);
+        }
+    }
+
+    /**
+     * Matches the tickets whose ids start with the given prefix, as a range of the ordered key index.
+     *
+     * @param prefix the ticket id prefix
+     * @return the predicate
+     */
+    private static Predicate withIdPrefix(final String prefix) {
+        final String from = prefix + '-';
+        return Predicates.between(KEY_ATTRIBUTE, from, from + MAX_ID_CHAR);
+    }
+
     /**
      * A method to get the starting TTL for a ticket based upon type.
      *
@@ -6,10 +6,12 @@ import com.hazelcast.config.MapConfig;
 import com.hazelcast.config.MaxSizeConfig;
 import com.hazelcast.config.MulticastConfig;
 import com.hazelcast.config.NetworkConfig;
+import com.hazelcast.config.PartitioningStrategyConfig;
 import com.hazelcast.config.TcpIpConfig;
 import com.hazelcast.config.XmlConfigBuilder;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.partition.strategy.StringPartitioningStrategy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -110,11 +112,18 @@ public class HazelcastInstanceConfiguration {
                             .setSize(this.hazelcastProperties.getMaxHeapSizePercentage()));
 
             final Map<String, MapConfig> mapConfigs = new HashMap<>();
-            mapConfigs.put("tickets", mapConfig);
+            mapConfigs.put(this.hazelcastProperties.getMapName(), mapConfig);
 
             //Finally aggregate all those config into the main Config
             config.setMapConfigs(mapConfigs).setNetworkConfig(networkConfig);
         }
+        //Partition ticket ids by their affinity key, unless the configuration source chose a strategy.
+        //The strategy is set on the ticket map alone, so that other maps of the instance are not affected.
+        final MapConfig ticketMapConfig = config.getMapConfig(this.hazelcastProperties.getMapName());
+        if (ticketMapConfig.getPartitioningStrategyConfig() == null
+                && config.getProperty(HazelcastProperties.PARTITIONING_STRATEGY_PROP) == null) {
+            ticketMapConfig.setPartitioningStrategyConfig(new PartitioningStrategyConfig(StringPartitioningStrategy.class.getName()));
+        }
         //Add additional default config properties regardless of the configuration source
         return config.setInstanceName(hazelcastProperties.getInstanceName())
                 .setProperty(HazelcastProperties.LOGGING_TYPE_PROP, this.hazelcastProperties.getLoggingType())
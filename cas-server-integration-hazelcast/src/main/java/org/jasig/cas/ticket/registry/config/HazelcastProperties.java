@@ -26,6 +26,11 @@ public class HazelcastProperties {
      */
     public static final String MAX_HEARTBEAT_SECONDS_PROP = "hazelcast.max.no.heartbeat.seconds";
 
+    /**
+     * Partitioning strategy property name.
+     */
+    public static final String PARTITIONING_STRATEGY_PROP = "hazelcast.partitioning.strategy.class";
+
     /**
      * Map name.
      */
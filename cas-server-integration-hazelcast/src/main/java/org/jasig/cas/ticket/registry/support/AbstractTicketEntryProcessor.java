@@ -0,0 +1,74 @@
+package org.jasig.cas.ticket.registry.support;
+
+import org.jasig.cas.ticket.Ticket;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Base class for Hazelcast entry processors that change a stored ticket.
+ * <p>The processor is sent to the member that owns the partition of the ticket
+ * and changes the ticket in place, so only the arguments of the change travel to
+ * the owner instead of reading and writing back the whole serialized ticket.
+ * Changes of the same ticket are applied one after another by the owner,
+ * so concurrent changes made through different members are not lost.</p>
+ * <p>Backups are not changed by running the processor again, since changes such as
+ * the last time a ticket was used depend on the time they are applied; they are
+ * instead given the ticket that resulted from the change on the owner.</p>
+ *
+ * @param <T> the type of ticket changed by this processor
+ * @author agent
+ * @since 4.3.0
+ */
+public abstract class AbstractTicketEntryProcessor<T extends Ticket>
+        implements EntryProcessor<String, Ticket>, EntryBackupProcessor<String, Ticket> {
+
+    private static final long serialVersionUID = -2307845217049312346L;
+
+    private final Class<T> ticketType;
+
+    private Ticket result;
+
+    /**
+     * Instantiates a new entry processor.
+     *
+     * @param ticketType the type of ticket changed by this processor
+     */
+    protected AbstractTicketEntryProcessor(final Class<T> ticketType) {
+        this.ticketType = ticketType;
+    }
+
+    @Override
+    public final Object process(final Map.Entry<String, Ticket> entry) {
+        final Ticket ticket = entry.getValue();
+        if (!this.ticketType.isInstance(ticket)) {
+            return null;
+        }
+        final Object value = apply(this.ticketType.cast(ticket));
+        entry.setValue(ticket);
+        this.result = ticket;
+        return value;
+    }
+
+    @Override
+    public final EntryBackupProcessor<String, Ticket> getBackupProcessor() {
+        return this;
+    }
+
+    @Override
+    public final void processBackup(final Map.Entry<String, Ticket> entry) {
+        if (this.result != null) {
+            entry.setValue(this.result);
+        }
+    }
+
+    /**
+     * Changes the ticket stored by the owner of its partition.
+     *
+     * @param ticket the stored ticket
+     * @return the value returned to the caller; must be serializable
+     */
+    protected abstract Object apply(T ticket);
+}
@@ -0,0 +1,55 @@
+package org.jasig.cas.ticket.registry.support;
+
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.ticket.ExpirationPolicy;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+
+/**
+ * Records a service ticket granted by a ticket-granting ticket: the service is added to the
+ * services of the ticket-granting ticket and its usage is tracked. The service ticket itself
+ * is not returned; the caller holds an equivalent instance and stores it separately.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class GrantServiceTicketEntryProcessor extends AbstractTicketEntryProcessor<TicketGrantingTicket> {
+
+    private static final long serialVersionUID = 8562184392074816520L;
+
+    private final String serviceTicketId;
+
+    private final Service service;
+
+    private final ExpirationPolicy expirationPolicy;
+
+    private final boolean credentialsProvided;
+
+    private final boolean onlyTrackMostRecentSession;
+
+    /**
+     * Instantiates a new entry processor.
+     *
+     * @param serviceTicketId            the id of the granted service ticket
+     * @param service                    the service the ticket is granted for
+     * @param expirationPolicy           the expiration policy of the service ticket
+     * @param credentialsProvided        whether credentials were provided
+     * @param onlyTrackMostRecentSession whether only the most recent session of the service is tracked
+     */
+    public GrantServiceTicketEntryProcessor(final String serviceTicketId, final Service service,
+                                            final ExpirationPolicy expirationPolicy, final boolean credentialsProvided,
+                                            final boolean onlyTrackMostRecentSession) {
+        super(TicketGrantingTicket.class);
+        this.serviceTicketId = serviceTicketId;
+        this.service = service;
+        this.expirationPolicy = expirationPolicy;
+        this.credentialsProvided = credentialsProvided;
+        this.onlyTrackMostRecentSession = onlyTrackMostRecentSession;
+    }
+
+    @Override
+    protected Object apply(final TicketGrantingTicket ticket) {
+        ticket.grantServiceTicket(this.serviceTicketId, this.service, this.expirationPolicy,
+                this.credentialsProvided, this.onlyTrackMostRecentSession);
+        return Boolean.TRUE;
+    }
+}
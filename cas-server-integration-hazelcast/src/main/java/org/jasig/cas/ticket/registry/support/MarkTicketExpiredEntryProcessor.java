@@ -0,0 +1,27 @@
+package org.jasig.cas.ticket.registry.support;
+
+import org.jasig.cas.ticket.TicketGrantingTicket;
+
+/**
+ * Marks a stored ticket-granting ticket as expired.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class MarkTicketExpiredEntryProcessor extends AbstractTicketEntryProcessor<TicketGrantingTicket> {
+
+    private static final long serialVersionUID = -4180259871635213307L;
+
+    /**
+     * Instantiates a new entry processor.
+     */
+    public MarkTicketExpiredEntryProcessor() {
+        super(TicketGrantingTicket.class);
+    }
+
+    @Override
+    protected Object apply(final TicketGrantingTicket ticket) {
+        ticket.markTicketExpired();
+        return Boolean.TRUE;
+    }
+}
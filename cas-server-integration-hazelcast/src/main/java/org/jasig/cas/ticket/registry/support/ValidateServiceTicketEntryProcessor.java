@@ -0,0 +1,35 @@
+package org.jasig.cas.ticket.registry.support;
+
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.ticket.ServiceTicket;
+
+/**
+ * Validates a stored service ticket for a service, tracking the usage of the ticket.
+ * Since validations of the same ticket are applied one after another by the owner of
+ * its partition, a ticket cannot be used more times than its expiration policy allows
+ * by validating it concurrently through different members.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class ValidateServiceTicketEntryProcessor extends AbstractTicketEntryProcessor<ServiceTicket> {
+
+    private static final long serialVersionUID = 3298455706915823871L;
+
+    private final Service service;
+
+    /**
+     * Instantiates a new entry processor.
+     *
+     * @param service the service the ticket is validated for
+     */
+    public ValidateServiceTicketEntryProcessor(final Service service) {
+        super(ServiceTicket.class);
+        this.service = service;
+    }
+
+    @Override
+    protected Object apply(final ServiceTicket ticket) {
+        return ticket.isValidFor(this.service);
+    }
+}
@@ -0,0 +1,122 @@
+package org.jasig.cas.web.support;
+
+import com.hazelcast.core.EntryView;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throttles failed login attempts for a particular username from the same IP address across all CAS nodes,
+ * with counters kept in the Hazelcast cluster of the ticket registry.
+ * <p>
+ * Counters are incremented by {@link IncrementFailuresEntryProcessor} on the members that own them, so that
+ * increments sent by different nodes at once are not lost. Each counter is then given the time-to-live asked for
+ * by the throttle, so that counters expire on every member whatever the configuration of their map.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@Component("hazelcastIpAddressUsernameThrottle")
+public class HazelcastThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter
+            extends AbstractDistributedThrottledSubmissionHandlerInterceptorAdapter {
+
+    @Autowired(required = false)
+    @Qualifier("hazelcast")
+    private HazelcastInstance hazelcastInstance;
+
+    @Value("${cas.throttle.hazelcast.mapname:throttle}")
+    private String mapName = "throttle";
+
+    private IMap<String, Long> failures;
+
+    /**
+     * Instantiates a new throttle.
+     */
+    public HazelcastThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter() {}
+
+    /**
+     * Instantiates a new throttle.
+     *
+     * @param hazelcastInstance the hazelcast instance
+     * @param mapName           the name of the map of counters
+     */
+    public HazelcastThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter(final HazelcastInstance hazelcastInstance,
+                                                                                       final String mapName) {
+        this.hazelcastInstance = hazelcastInstance;
+        this.mapName = mapName;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        super.afterPropertiesSet();
+        if (this.hazelcastInstance == null) {
+            logger.debug("No Hazelcast instance is defined for {}. Failures are throttled with local counts", getName());
+            return;
+        }
+        this.failures = this.hazelcastInstance.getMap(this.mapName);
+    }
+
+    @Override
+    protected Map<String, Long> getFailures(final Collection<String> counters) throws Exception {
+        return getMap().getAll(new HashSet<>(counters));
+    }
+
+    @Override
+    protected void addFailures(final Map<String, Long> increments, final int timeToLiveInSeconds) throws Exception {
+        final Map<Long, Set<String>> countersByIncrement = new HashMap<>();
+        increments.forEach((counter, increment) ->
+                countersByIncrement.computeIfAbsent(increment, k -> new HashSet<>()).add(counter));
+        final IMap<String, Long> map = getMap();
+        countersByIncrement.forEach((increment, counters) -> {
+            map.executeOnKeys(counters, new IncrementFailuresEntryProcessor(increment));
+            counters.forEach(counter -> resetTimeToLive(map, counter, timeToLiveInSeconds));
+        });
+    }
+
+    /**
+     * Sets the time-to-live of a counter, unless it is set already.
+     * The counter is locked meanwhile, so that increments sent by other nodes wait rather than being overwritten.
+     *
+     * @param map     the map of counters
+     * @param counter the name of the counter
+     * @param ttl     the time-to-live in seconds
+     */
+    private static void resetTimeToLive(final IMap<String, Long> map, final String counter, final long ttl) {
+        final EntryView<String, Long> entry = map.getEntryView(counter);
+        if (entry == null || entry.getTtl() == TimeUnit.SECONDS.toMillis(ttl)) {
+            return;
+        }
+        map.lock(counter);
+        try {
+            final Long failures = map.get(counter);
+            if (failures != null) {
+                map.set(counter, failures, ttl, TimeUnit.SECONDS);
+            }
+        } finally {
+            map.unlock(counter);
+        }
+    }
+
+    private IMap<String, Long> getMap() {
+        if (this.failures == null) {
+            throw new IllegalStateException("No Hazelcast instance is defined for " + getName());
+        }
+        return this.failures;
+    }
+
+    @Override
+    protected String getName() {
+        return "hazelcastIpAddressUsernameThrottle";
+    }
+}
@@ -0,0 +1,36 @@
+package org.jasig.cas.web.support;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Increments a failure counter of the throttle on the member that owns its partition,
+ * creating the counter if it does not exist, and returns the new value.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class IncrementFailuresEntryProcessor extends AbstractEntryProcessor<String, Long> {
+
+    private static final long serialVersionUID = 5209431713863283271L;
+
+    private final long increment;
+
+    /**
+     * Instantiates a new entry processor.
+     *
+     * @param increment the number of failures to add
+     */
+    public IncrementFailuresEntryProcessor(final long increment) {
+        this.increment = increment;
+    }
+
+    @Override
+    public Object process(final Map.Entry<String, Long> entry) {
+        final Long failures = entry.getValue();
+        final long result = (failures == null ? 0 : failures) + this.increment;
+        entry.setValue(result);
+        return result;
+    }
+}
@@ -5,15 +5,20 @@ import org.jasig.cas.authentication.principal.Service;
 import org.jasig.cas.services.TestUtils;
 import org.jasig.cas.ticket.ExpirationPolicy;
 import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketAffinity;
 import org.jasig.cas.ticket.TicketGrantingTicket;
 import org.jasig.cas.ticket.TicketGrantingTicketImpl;
 import org.jasig.cas.ticket.proxy.ProxyGrantingTicket;
 import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
 import org.jasig.cas.util.DateTimeUtils;
 
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
@@ -22,6 +27,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -35,12 +41,23 @@ import static org.junit.Assert.*;
 @ContextConfiguration(locations = "classpath:HazelcastTicketRegistryTests-context.xml")
 public class HazelcastTicketRegistryTests {
 
+    /** Time to live of tickets in seconds, as configured in the test context. */
+    private static final long TICKET_TIMEOUT = 10;
+
     @Autowired
     private HazelcastTicketRegistry hzTicketRegistry1;
 
     @Autowired
     private HazelcastTicketRegistry hzTicketRegistry2;
 
+    @Autowired
+    @Qualifier("hzInstance1")
+    private HazelcastInstance hzInstance1;
+
+    @Autowired
+    @Qualifier("hzInstance2")
+    private HazelcastInstance hzInstance2;
+
     public void setHzTicketRegistry1(final HazelcastTicketRegistry hzTicketRegistry1) {
         this.hzTicketRegistry1 = hzTicketRegistry1;
     }
@@ -103,6 +120,101 @@ public class HazelcastTicketRegistryTests {
         assertNull(this.hzTicketRegistry1.getTicket("ST3", ServiceTicket.class));
     }
 
+    @Test
+    public void verifyTicketChangesAreAppliedOnTheStoredTicket() throws Exception {
+        this.hzTicketRegistry1.addTicket(new TicketGrantingTicketImpl(
+                "TGT-PROCESSOR", org.jasig.cas.authentication.TestUtils.getAuthentication(),
+                new NeverExpiresExpirationPolicy()));
+        final Service service = TestUtils.getService("TGT_PROCESSOR_TEST");
+
+        final TicketGrantingTicket tgt1 = this.hzTicketRegistry1.getTicket("TGT-PROCESSOR", TicketGrantingTicket.class);
+        final TicketGrantingTicket tgt2 = this.hzTicketRegistry2.getTicket("TGT-PROCESSOR", TicketGrantingTicket.class);
+        final ServiceTicket st1 = tgt1.grantServiceTicket("ST-PROCESSOR-1", service, new NeverExpiresExpirationPolicy(), true, false);
+        final ServiceTicket st2 = tgt2.grantServiceTicket("ST-PROCESSOR-2", service, new NeverExpiresExpirationPolicy(), true, false);
+        assertEquals("ST-PROCESSOR-1", st1.getId());
+        assertEquals(tgt1.getId(), st1.getGrantingTicket().getId());
+
+        final TicketGrantingTicket stored = this.hzTicketRegistry1.getTicket("TGT-PROCESSOR", TicketGrantingTicket.class);
+        assertEquals(2, stored.getCountOfUses());
+        assertTrue(stored.getServices().containsKey(st1.getId()));
+        assertTrue(stored.getServices().containsKey(st2.getId()));
+        final IMap<String, Ticket> tickets = this.hzInstance1.getMap("tickets");
+        assertEquals(TimeUnit.SECONDS.toMillis(TICKET_TIMEOUT), tickets.getEntryView("TGT-PROCESSOR").getTtl());
+
+        this.hzTicketRegistry2.addTicket(st1);
+        final ServiceTicket storedSt = this.hzTicketRegistry1.getTicket(st1.getId(), ServiceTicket.class);
+        assertTrue(storedSt.isValidFor(service));
+        assertEquals(1, this.hzTicketRegistry2.getTicket(st1.getId(), ServiceTicket.class).getCountOfUses());
+        assertEquals(TimeUnit.SECONDS.toMillis(TICKET_TIMEOUT), tickets.getEntryView(st1.getId()).getTtl());
+
+        stored.markTicketExpired();
+        assertTrue(this.hzTicketRegistry2.getTicket("TGT-PROCESSOR", TicketGrantingTicket.class).isExpired());
+
+        this.hzTicketRegistry1.deleteTicket("TGT-PROCESSOR");
+        assertNull(this.hzTicketRegistry2.getTicket(st1.getId()));
+    }
+
+    @Test
+    public void verifyCountsAndPrincipalLookup() throws Exception {
+        final int sessions = this.hzTicketRegistry1.sessionCount();
+        final int serviceTickets = this.hzTicketRegistry2.serviceTicketCount();
+
+        this.hzTicketRegistry1.addTicket(new TicketGrantingTicketImpl(
+                "TGT-COUNT-1", org.jasig.cas.authentication.TestUtils.getAuthentication("hzuser"),
+                new NeverExpiresExpirationPolicy()));
+        this.hzTicketRegistry2.addTicket(new TicketGrantingTicketImpl(
+                "TGT-COUNT-2", org.jasig.cas.authentication.TestUtils.getAuthentication("otheruser"),
+                new NeverExpiresExpirationPolicy()));
+        final TicketGrantingTicket tgt = this.hzTicketRegistry1.getTicket("TGT-COUNT-1", TicketGrantingTicket.class);
+        this.hzTicketRegistry1.addTicket(tgt.grantServiceTicket("ST-COUNT-1",
+                TestUtils.getService("TGT_COUNT_TEST"), new NeverExpiresExpirationPolicy(), true, false));
+
+        assertEquals(sessions + 2, this.hzTicketRegistry2.sessionCount());
+        assertEquals(serviceTickets + 1, this.hzTicketRegistry1.serviceTicketCount());
+
+        final Collection<Ticket> tickets = this.hzTicketRegistry2.getTicketGrantingTickets("hzuser");
+        assertEquals(1, tickets.size());
+        assertEquals("TGT-COUNT-1", tickets.iterator().next().getId());
+
+        this.hzTicketRegistry1.deleteTicket("TGT-COUNT-1");
+        this.hzTicketRegistry1.deleteTicket("TGT-COUNT-2");
+        assertEquals(sessions, this.hzTicketRegistry2.sessionCount());
+        assertEquals(serviceTickets, this.hzTicketRegistry1.serviceTicketCount());
+    }
+
+    @Test
+    public void verifyTicketGrantingTicketAndChildrenShareAPartition() throws Exception {
+        final String tgtId = TicketAffinity.newAffinityId(TicketGrantingTicket.PREFIX, "TGT-1-AFFINITY-cas01.example.org");
+        this.hzTicketRegistry1.addTicket(new TicketGrantingTicketImpl(
+                tgtId, org.jasig.cas.authentication.TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy()));
+        final TicketGrantingTicket tgt = this.hzTicketRegistry1.getTicket(tgtId, TicketGrantingTicket.class);
+
+        final Service service = TestUtils.getService("TGT_AFFINITY_TEST");
+        final ServiceTicket st = tgt.grantServiceTicket(
+                TicketAffinity.inheritAffinityId(ServiceTicket.PREFIX, "ST-1-AFFINITY-cas02.example.org", tgt),
+                service, new NeverExpiresExpirationPolicy(), true, false);
+        this.hzTicketRegistry2.addTicket(st);
+        final ProxyGrantingTicket pgt = st.grantProxyGrantingTicket(
+                TicketAffinity.inheritAffinityId(ProxyGrantingTicket.PROXY_GRANTING_TICKET_PREFIX,
+                        "PGT-1-AFFINITY-cas02.example.org", st),
+                org.jasig.cas.authentication.TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy());
+        this.hzTicketRegistry2.addTicket(pgt);
+
+        assertEquals(TicketAffinity.getAffinityKey(tgtId), TicketAffinity.getAffinityKey(st.getId()));
+        assertEquals(TicketAffinity.getAffinityKey(tgtId), TicketAffinity.getAffinityKey(pgt.getId()));
+        for (final HazelcastInstance instance : new HazelcastInstance[] {this.hzInstance1, this.hzInstance2}) {
+            final IMap<String, Ticket> tickets = instance.getMap("tickets");
+            final boolean local = tickets.localKeySet().contains(tgtId);
+            assertEquals(local, tickets.localKeySet().contains(st.getId()));
+            assertEquals(local, tickets.localKeySet().contains(pgt.getId()));
+        }
+        assertNull(this.hzInstance1.getConfig().getProperty("hazelcast.partitioning.strategy.class"));
+
+        this.hzTicketRegistry1.deleteTicket(tgtId);
+        assertNull(this.hzTicketRegistry2.getTicket(st.getId()));
+        this.hzTicketRegistry2.deleteTicket(pgt.getId());
+    }
+
     private TicketGrantingTicket newTestTgt() {
         return new MockTgt();
     }
@@ -216,6 +328,15 @@ public class HazelcastTicketRegistryTests {
             return false;
         }
 
+        /**
+         * Read by the principal index of the registry, like {@code TicketState#getAuthentication()}.
+         *
+         * @return null
+         */
+        public Authentication getAuthentication() {
+            return null;
+        }
+
         @Override
         public ProxyGrantingTicket grantProxyGrantingTicket(final String id,
                                                             final Authentication authentication,
@@ -4,6 +4,7 @@ import com.hazelcast.config.Config;
 import com.hazelcast.config.EvictionPolicy;
 import com.hazelcast.config.MapConfig;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.partition.strategy.StringPartitioningStrategy;
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -46,6 +47,9 @@ public class DefaultHazelcastInstanceConfigurationTests {
         assertEquals(28800, mapConfig.getMaxIdleSeconds());
         assertEquals(EvictionPolicy.LRU, mapConfig.getEvictionPolicy());
         assertEquals(10, mapConfig.getEvictionPercentage());
+        assertEquals(StringPartitioningStrategy.class.getName(),
+                mapConfig.getPartitioningStrategyConfig().getPartitioningStrategyClass());
+        assertNull(config.getProperty(HazelcastProperties.PARTITIONING_STRATEGY_PROP));
     }
 
     @After
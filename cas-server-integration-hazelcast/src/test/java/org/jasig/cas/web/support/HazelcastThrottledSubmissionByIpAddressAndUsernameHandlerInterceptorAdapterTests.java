@@ -0,0 +1,143 @@
+package org.jasig.cas.web.support;
+
+import org.jasig.inspektr.common.web.ClientInfo;
+import org.jasig.inspektr.common.web.ClientInfoHolder;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.webflow.execution.Event;
+import org.springframework.webflow.test.MockRequestContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link HazelcastThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:HazelcastTicketRegistryTests-context.xml")
+public class HazelcastThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapterTests {
+
+    private static final int FAILURE_THRESHOLD = 3;
+
+    private static final int FAILURE_RANGE = 60;
+
+    private static final String IP_ADDRESS = "1.2.3.4";
+
+    @Autowired
+    @Qualifier("hzInstance1")
+    private HazelcastInstance hzInstance1;
+
+    @Autowired
+    @Qualifier("hzInstance2")
+    private HazelcastInstance hzInstance2;
+
+    private HazelcastThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter throttle1;
+
+    private HazelcastThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter throttle2;
+
+    @Before
+    public void setUp() throws Exception {
+        ClientInfoHolder.setClientInfo(new ClientInfo(IP_ADDRESS, IP_ADDRESS));
+        this.throttle1 = newThrottle(this.hzInstance1);
+        this.throttle2 = newThrottle(this.hzInstance2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ClientInfoHolder.setClientInfo(null);
+        this.throttle1.destroy();
+        this.throttle2.destroy();
+        this.hzInstance1.getMap("throttle").clear();
+    }
+
+    @Test
+    public void verifyFailuresAreCountedAcrossNodes() throws Exception {
+        assertEquals(200, loginUnsuccessfully(this.throttle1, "mog").getStatus());
+        assertEquals(200, loginUnsuccessfully(this.throttle1, "mog").getStatus());
+        this.throttle1.flush();
+        assertEquals(200, loginUnsuccessfully(this.throttle2, "mog").getStatus());
+        this.throttle2.flush();
+
+        assertEquals(403, loginUnsuccessfully(this.throttle1, "mog").getStatus());
+        assertEquals(403, loginUnsuccessfully(this.throttle2, "mog").getStatus());
+        assertEquals(200, loginUnsuccessfully(this.throttle2, "other").getStatus());
+    }
+
+    @Test
+    public void verifyCountersExpireAfterWindowAfterNext() throws Exception {
+        loginUnsuccessfully(this.throttle1, "mog");
+        this.throttle1.flush();
+        loginUnsuccessfully(this.throttle2, "mog");
+        this.throttle2.flush();
+
+        final IMap<String, Long> failures = this.hzInstance2.getMap("throttle");
+        assertFalse(failures.isEmpty());
+        for (final String counter : failures.keySet()) {
+            assertEquals(TimeUnit.SECONDS.toMillis(2 * FAILURE_RANGE + 1), failures.getEntryView(counter).getTtl());
+        }
+    }
+
+    @Test
+    public void verifyPendingFailuresAreCountedBeforeFlush() throws Exception {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            assertEquals(200, loginUnsuccessfully(this.throttle1, "mog").getStatus());
+        }
+        assertEquals(403, loginUnsuccessfully(this.throttle1, "mog").getStatus());
+        assertEquals(200, loginUnsuccessfully(this.throttle2, "mog").getStatus());
+    }
+
+    @Test
+    public void verifyLocalFailuresAreCountedWithoutHazelcast() throws Exception {
+        final HazelcastThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter throttle = newThrottle(null);
+        try {
+            for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+                assertEquals(200, loginUnsuccessfully(throttle, "mog").getStatus());
+            }
+            assertEquals(403, loginUnsuccessfully(throttle, "mog").getStatus());
+        } finally {
+            throttle.destroy();
+        }
+    }
+
+    private static HazelcastThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter newThrottle(
+            final HazelcastInstance hazelcastInstance) throws Exception {
+        final HazelcastThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter throttle =
+                new HazelcastThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter(hazelcastInstance, "throttle");
+        throttle.setFailureThreshold(FAILURE_THRESHOLD);
+        throttle.setFailureRangeInSeconds(FAILURE_RANGE);
+        throttle.setFlushIntervalInMillis(60000);
+        throttle.afterPropertiesSet();
+        return throttle;
+    }
+
+    private static MockHttpServletResponse loginUnsuccessfully(final AbstractThrottledSubmissionHandlerInterceptorAdapter throttle,
+                                                               final String username) throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        request.setMethod("POST");
+        request.setParameter("username", username);
+        request.setRemoteAddr(IP_ADDRESS);
+        final MockRequestContext context = new MockRequestContext();
+        context.setCurrentEvent(new Event("", "error"));
+        request.setAttribute("flowRequestContext", context);
+        if (throttle.preHandle(request, response, null)) {
+            throttle.postHandle(request, response, null, null);
+        }
+        return response;
+    }
+}
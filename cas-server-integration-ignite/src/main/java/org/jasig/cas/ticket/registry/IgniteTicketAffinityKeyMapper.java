@@ -0,0 +1,32 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.ticket.TicketAffinity;
+
+import org.apache.ignite.cache.affinity.AffinityKeyMapper;
+
+/**
+ * Maps ticket ids to their affinity key, so that Ignite stores a ticket-granting ticket
+ * and the tickets granted from it on the same partition, across the caches of {@link IgniteTicketRegistry}.
+ * Ids without an affinity key are mapped to themselves.
+ *
+ * @author agent
+ * @since 4.3.0
+ * @see TicketAffinity
+ */
+public final class IgniteTicketAffinityKeyMapper implements AffinityKeyMapper {
+
+    private static final long serialVersionUID = 5271096473820193867L;
+
+    @Override
+    public Object affinityKey(final Object key) {
+        if (key instanceof String) {
+            final String affinityKey = TicketAffinity.getAffinityKey((String) key);
+            return affinityKey != null ? affinityKey : key;
+        }
+        return key;
+    }
+
+    @Override
+    public void reset() {
+    }
+}
@@ -4,7 +4,6 @@ import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.Ticket;
 import org.jasig.cas.ticket.TicketGrantingTicket;
 
-import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.ignite.Ignite;
@@ -45,6 +44,11 @@ import java.util.concurrent.TimeUnit;
  *   <li>Tuning : use cache level time to live with different values for TGT an ST.</li>
  *   <li>Monitoring : follow separately the number of TGT and ST.</li>
  * </ul>
+ * <p>
+ * Unless configured otherwise, both caches map ticket ids to their affinity key with
+ * {@link IgniteTicketAffinityKeyMapper}, so that partitioned caches store a ticket-granting
+ * ticket and the tickets granted from it on the same node.
+ * </p>
  *
  * @author Timur Duehr timur.duehr@nccgroup.trust
  * @since 4.3.0`
@@ -99,6 +103,13 @@ public final class IgniteTicketRegistry extends AbstractTicketRegistry {
     @Value("${st.timeToKillInSeconds:10}")
     private long serviceTicketTimeoutInSeconds = 10;
 
+    @Value("${ticket.registry.count.timeToLiveInSeconds:" + CachedTicketCount.DEFAULT_TTL_SECONDS + '}')
+    private int countTimeToLive = CachedTicketCount.DEFAULT_TTL_SECONDS;
+
+    private CachedTicketCount sessionCount;
+
+    private CachedTicketCount serviceTicketCount;
+
     private Ignite ignite;
 
     /**
@@ -256,6 +267,19 @@ public final class IgniteTicketRegistry extends AbstractTicketRegistry {
         }
     }
 
+    private void configureAffinity() {
+        final CacheConfiguration[] caches = this.igniteConfiguration.getCacheConfiguration();
+        if (caches == null) {
+            return;
+        }
+        for (final CacheConfiguration cache : caches) {
+            final boolean ticketCache = this.servicesCacheName.equals(cache.getName()) || this.ticketsCacheName.equals(cache.getName());
+            if (ticketCache && cache.getAffinityMapper() == null) {
+                cache.setAffinityMapper(new IgniteTicketAffinityKeyMapper());
+            }
+        }
+    }
+
     /**
      * Init.
      */
@@ -264,6 +288,7 @@ public final class IgniteTicketRegistry extends AbstractTicketRegistry {
         logger.info("Setting up Ignite Ticket Registry...");
 
         configureSecureTransport();
+        configureAffinity();
 
         if (logger.isDebugEnabled()) {
             logger.debug("igniteConfiguration.cacheConfiguration={}", igniteConfiguration.getCacheConfiguration());
@@ -286,18 +311,33 @@ public final class IgniteTicketRegistry extends AbstractTicketRegistry {
         ticketGrantingTicketsCache = ignite.getOrCreateCache(ticketsCacheName);
         ticketGrantingTicketsCache.getConfiguration(CacheConfiguration.class)
             .setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.SECONDS, ticketGrantingTicketTimeoutInSeconds)));
+
+        this.sessionCount = new CachedTicketCount(() -> ticketGrantingTicketsCache.size(CachePeekMode.PRIMARY), countTimeToLive);
+        this.serviceTicketCount = new CachedTicketCount(() -> serviceTicketsCache.size(CachePeekMode.PRIMARY), countTimeToLive);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>Ticket-granting tickets are kept in a cache of their own, so the count is the
+     * cluster-wide size of that cache. Only primary copies are counted; backups and
+     * replicas of a ticket on other nodes would otherwise be counted as well.</p>
+     */
     @Override
     public int sessionCount() {
-        return BooleanUtils.toInteger(this.supportRegistryState, this.ticketGrantingTicketsCache
-            .size(CachePeekMode.ALL), (int) super.sessionCount());
+        return this.supportRegistryState ? this.sessionCount.get() : super.sessionCount();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>Service tickets are kept in a cache of their own; see {@link #sessionCount()}.</p>
+     */
     @Override
     public int serviceTicketCount() {
-        return BooleanUtils.toInteger(this.supportRegistryState, this.serviceTicketsCache
-            .size(CachePeekMode.ALL), (int) super.serviceTicketCount());
+        return this.supportRegistryState ? this.serviceTicketCount.get() : super.serviceTicketCount();
+    }
+
+    public void setCountTimeToLive(final int countTimeToLive) {
+        this.countTimeToLive = countTimeToLive;
     }
 
     /**
@@ -4,10 +4,13 @@ import org.jasig.cas.authentication.TestUtils;
 import org.jasig.cas.authentication.principal.Service;
 import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketAffinity;
 import org.jasig.cas.ticket.TicketGrantingTicket;
 import org.jasig.cas.ticket.TicketGrantingTicketImpl;
 import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
 
+import org.apache.ignite.Ignite;
+import org.apache.ignite.Ignition;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -249,6 +252,28 @@ public final class IgniteTicketRegistryTests {
         assertNull(this.ticketRegistry.getTicket("ST3", ServiceTicket.class));
     }
 
+    @Test
+    public void verifyTicketGrantingTicketAndChildrenShareAPartition() {
+        final String tgtId = TicketAffinity.newAffinityId(TicketGrantingTicket.PREFIX, "TGT-1-AFFINITY-cas01.example.org");
+        this.ticketRegistry.addTicket(new TicketGrantingTicketImpl(
+                tgtId, TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy()));
+        final TicketGrantingTicket tgt = this.ticketRegistry.getTicket(tgtId, TicketGrantingTicket.class);
+        final ServiceTicket st = tgt.grantServiceTicket(
+                TicketAffinity.inheritAffinityId(ServiceTicket.PREFIX, "ST-1-AFFINITY-cas02.example.org", tgt),
+                org.jasig.cas.services.TestUtils.getService("TGT_AFFINITY_TEST"), new NeverExpiresExpirationPolicy(), true, false);
+        this.ticketRegistry.addTicket(st);
+
+        final IgniteTicketRegistry registry = (IgniteTicketRegistry) this.ticketRegistry;
+        final Ignite ignite = Ignition.ignite();
+        final Object affinityKey = ignite.affinity(registry.getTicketsCacheName()).affinityKey(tgtId);
+        assertEquals(TicketAffinity.getAffinityKey(tgtId), affinityKey);
+        assertEquals(affinityKey, ignite.affinity(registry.getServicesCacheName()).affinityKey(st.getId()));
+        assertEquals(ignite.affinity(registry.getTicketsCacheName()).partition(tgtId),
+                ignite.affinity(registry.getServicesCacheName()).partition(st.getId()));
+
+        this.ticketRegistry.deleteTicket(tgtId);
+        assertNull(this.ticketRegistry.getTicket(st.getId()));
+    }
 
     /**
      * Cleaning ticket registry to start afresh, after newing up the instance.
@@ -1,18 +1,44 @@
 package org.jasig.cas.ticket.registry;
 
+import org.jasig.cas.ticket.AbstractTicket;
+import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.support.AbstractCasExpirationPolicy;
 
 import org.infinispan.Cache;
+import org.infinispan.commons.util.CloseableIterable;
+import org.infinispan.container.entries.CacheEntry;
+import org.infinispan.filter.Converter;
+import org.infinispan.filter.KeyValueFilter;
+import org.infinispan.metadata.Metadata;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.stream.Collectors;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This is {@link InfinispanTicketRegistry}. Infinispan is a distributed in-memory key/value data store with optional schema.
  * It offers advanced functionality such as transactions, events, querying and distributed processing.
  * See <a href="http://infinispan.org/features/">http://infinispan.org/features/</a> for more info.
+ * <p>
+ * Each ticket is stored with a lifespan that ends when its expiration policy expires it, so that Infinispan
+ * removes expired tickets itself and no ticket registry cleaner is needed. Tickets are stored again whenever
+ * they are used, which moves the end of the lifespan of tickets that expire for being idle. Tickets whose
+ * policy does not report an expiration time live for the configured ticket timeouts, and only tickets
+ * whose policy never expires them are kept indefinitely. Tickets are counted and listed by iterating over the
+ * cluster with filters that run on the nodes owning the entries, so that only matching entries, or
+ * markers for them, are transferred.
+ * </p>
  *
  * @author Misagh Moayyed
  * @since 4.2.0
@@ -23,15 +49,37 @@ public final class InfinispanTicketRegistry extends AbstractTicketRegistry {
     @Resource(name="infinispanTicketsCache")
     private Cache<String, Ticket> cache;
 
+    @Value("${ticket.registry.count.timeToLiveInSeconds:" + CachedTicketCount.DEFAULT_TTL_SECONDS + '}')
+    private int countTimeToLive = CachedTicketCount.DEFAULT_TTL_SECONDS;
+
+    @Value("${tgt.maxTimeToLiveInSeconds:28800}")
+    private int tgtTimeout = 28800;
+
+    @Value("${st.timeToKillInSeconds:10}")
+    private int stTimeout = 10;
+
+    private CachedTicketCount sessionCount;
+
+    private CachedTicketCount serviceTicketCount;
+
     /**
      * Instantiates a new Infinispan ticket registry.
      */
     public InfinispanTicketRegistry() {
     }
 
+    /**
+     * Init.
+     */
+    @PostConstruct
+    public void init() {
+        this.sessionCount = new CachedTicketCount(() -> countTickets(TicketGrantingTicket.class), this.countTimeToLive);
+        this.serviceTicketCount = new CachedTicketCount(() -> countTickets(ServiceTicket.class), this.countTimeToLive);
+    }
+
     @Override
     protected void updateTicket(final Ticket ticket) {
-        this.cache.put(ticket.getId(), ticket);
+        putTicket(ticket);
     }
 
     @Override
@@ -46,8 +94,19 @@ public final class InfinispanTicketRegistry extends AbstractTicketRegistry {
      */
     @Override
     public void addTicket(final Ticket ticketToAdd) {
-        final Ticket ticket = encodeTicket(ticketToAdd);
-        this.cache.put(ticket.getId(), ticket);
+        putTicket(ticketToAdd);
+    }
+
+    /**
+     * Stores a ticket with the lifespan given by its expiration policy.
+     *
+     * @param ticketToPut the ticket
+     */
+    private void putTicket(final Ticket ticketToPut) {
+        final long lifespan = getLifespan(ticketToPut);
+        final Ticket ticket = encodeTicket(ticketToPut);
+        logger.debug("Storing ticket [{}] with lifespan {} ms", ticket.getId(), lifespan);
+        this.cache.put(ticket.getId(), ticket, lifespan, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -68,8 +127,7 @@ public final class InfinispanTicketRegistry extends AbstractTicketRegistry {
 
     @Override
     public boolean deleteSingleTicket(final String ticketId) {
-        this.cache.evict(ticketId);
-        return getTicket(ticketId) == null;
+        return this.cache.remove(encodeTicketId(ticketId)) != null;
     }
 
     /**
@@ -77,17 +135,139 @@ public final class InfinispanTicketRegistry extends AbstractTicketRegistry {
      * Retrieve all tickets from the registry.
      *
      * Note! Usage of this method can be computational and I/O intensive and should not be used for other than
-     * debugging.
+     * debugging. Tickets that are known to be expired are left out by the nodes that own them.
      *
      * @return collection of tickets currently stored in the registry. Tickets
      *         might or might not be valid i.e. expired.
      */
     @Override
     public Collection<Ticket> getTickets() {
-        return decodeTickets(this.cache.values().stream().map(this::getProxiedTicketInstance).collect(Collectors.toList()));
+        final List<Ticket> tickets = new ArrayList<>();
+        try (CloseableIterable<CacheEntry<String, Ticket>> entries = this.cache.getAdvancedCache()
+                .filterEntries(UnexpiredTicketFilter.INSTANCE)) {
+            for (final CacheEntry<String, Ticket> entry : entries) {
+                tickets.add(getProxiedTicketInstance(decodeTicket(entry.getValue())));
+            }
+        }
+        return tickets;
+    }
+
+    @Override
+    public int sessionCount() {
+        if (isCipherExecutorEnabled()) {
+            return super.sessionCount();
+        }
+        return this.sessionCount.get();
+    }
+
+    @Override
+    public int serviceTicketCount() {
+        if (isCipherExecutorEnabled()) {
+            return super.serviceTicketCount();
+        }
+        return this.serviceTicketCount.get();
+    }
+
+    /**
+     * Counts the tickets of the given type across the cluster. Tickets are filtered by the nodes
+     * that own them and only a marker is sent back for each matching ticket, rather than the ticket.
+     *
+     * @param type the ticket type
+     * @return the count
+     */
+    private int countTickets(final Class<? extends Ticket> type) {
+        int count = 0;
+        try (CloseableIterable<CacheEntry<String, Boolean>> entries = this.cache.getAdvancedCache()
+                .filterEntries(new TicketTypeFilter(type))
+                .converter(MatchConverter.INSTANCE)) {
+            for (final CacheEntry<String, Boolean> ignored : entries) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the lifespan of a ticket entry, which ends when the expiration policy of the ticket expires it.
+     * Tickets whose policy does not report when they expire live for the configured timeout of their type.
+     *
+     * @param ticket the ticket
+     * @return the lifespan in milliseconds, or -1 if the policy of the ticket never expires it
+     */
+    private long getLifespan(final Ticket ticket) {
+        final ZonedDateTime expirationTime = ticket instanceof AbstractTicket
+                ? ((AbstractTicket) ticket).getExpirationTime() : null;
+        if (expirationTime == null) {
+            return TimeUnit.SECONDS.toMillis(ticket instanceof ServiceTicket ? this.stTimeout : this.tgtTimeout);
+        }
+        if (!expirationTime.isBefore(AbstractCasExpirationPolicy.NEVER)) {
+            return -1;
+        }
+        return Math.max(1, Duration.between(ZonedDateTime.now(ZoneOffset.UTC), expirationTime).toMillis());
     }
 
     public void setCache(final Cache<String, Ticket> cache) {
         this.cache = cache;
     }
+
+    public void setCountTimeToLive(final int countTimeToLive) {
+        this.countTimeToLive = countTimeToLive;
+    }
+
+    public void setTgtTimeout(final int tgtTimeout) {
+        this.tgtTimeout = tgtTimeout;
+    }
+
+    public void setStTimeout(final int stTimeout) {
+        this.stTimeout = stTimeout;
+    }
+
+    /**
+     * Accepts the tickets of a given type.
+     */
+    private static final class TicketTypeFilter implements KeyValueFilter<String, Ticket>, Serializable {
+
+        private static final long serialVersionUID = 5293618570634165014L;
+
+        private final Class<? extends Ticket> type;
+
+        TicketTypeFilter(final Class<? extends Ticket> type) {
+            this.type = type;
+        }
+
+        @Override
+        public boolean accept(final String key, final Ticket value, final Metadata metadata) {
+            return this.type.isInstance(value);
+        }
+    }
+
+    /**
+     * Accepts the tickets that are not expired, and encoded tickets, whose state cannot be read where they are stored.
+     */
+    private static final class UnexpiredTicketFilter implements KeyValueFilter<String, Ticket>, Serializable {
+
+        static final UnexpiredTicketFilter INSTANCE = new UnexpiredTicketFilter();
+
+        private static final long serialVersionUID = -3590412474915786201L;
+
+        @Override
+        public boolean accept(final String key, final Ticket value, final Metadata metadata) {
+            return value instanceof EncodedTicket || !value.isExpired();
+        }
+    }
+
+    /**
+     * Replaces matching tickets with a marker, so that tickets are not transferred to be counted.
+     */
+    private static final class MatchConverter implements Converter<String, Ticket, Boolean>, Serializable {
+
+        static final MatchConverter INSTANCE = new MatchConverter();
+
+        private static final long serialVersionUID = -1782209315278631730L;
+
+        @Override
+        public Boolean convert(final String key, final Ticket value, final Metadata metadata) {
+            return Boolean.TRUE;
+        }
+    }
 }
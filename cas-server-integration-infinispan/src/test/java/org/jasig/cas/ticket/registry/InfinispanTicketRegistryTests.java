@@ -2,10 +2,15 @@ package org.jasig.cas.ticket.registry;
 
 import org.jasig.cas.authentication.Authentication;
 import org.jasig.cas.authentication.TestUtils;
+import org.jasig.cas.ticket.ExpirationPolicy;
 import org.jasig.cas.ticket.Ticket;
 import org.jasig.cas.ticket.TicketGrantingTicket;
 import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.TicketState;
 import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+import org.jasig.cas.ticket.support.TicketGrantingTicketExpirationPolicy;
+import org.infinispan.Cache;
+import org.infinispan.container.entries.CacheEntry;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +18,9 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.*;
 
 /**
@@ -28,6 +36,9 @@ public class InfinispanTicketRegistryTests {
     @Qualifier("infinispanTicketRegistry")
     private TicketRegistry infinispanTicketRegistry;
 
+    @Resource(name = "infinispanTicketsCache")
+    private Cache<String, Ticket> cache;
+
     @Test
     public void updateTicketShouldOverwriteTicketInStorage() {
         final Ticket ticket = getTicket();
@@ -68,6 +79,75 @@ public class InfinispanTicketRegistryTests {
         assertNull(infinispanTicketRegistry.getTicket(""));
     }
 
+    @Test
+    public void verifySessionAndServiceTicketCounts() {
+        final int sessions = infinispanTicketRegistry.sessionCount();
+        final int serviceTickets = infinispanTicketRegistry.serviceTicketCount();
+
+        final TicketGrantingTicket tgt = new TicketGrantingTicketImpl("TGT-COUNT", TestUtils.getAuthentication(),
+                new NeverExpiresExpirationPolicy());
+        infinispanTicketRegistry.addTicket(tgt);
+        infinispanTicketRegistry.addTicket(tgt.grantServiceTicket("ST-COUNT", TestUtils.getService(),
+                new NeverExpiresExpirationPolicy(), true, false));
+
+        assertEquals(sessions + 1, infinispanTicketRegistry.sessionCount());
+        assertEquals(serviceTickets + 1, infinispanTicketRegistry.serviceTicketCount());
+
+        infinispanTicketRegistry.deleteTicket(tgt.getId());
+        assertEquals(sessions, infinispanTicketRegistry.sessionCount());
+        assertEquals(serviceTickets, infinispanTicketRegistry.serviceTicketCount());
+    }
+
+    @Test
+    public void verifyEntriesExpireWithTickets() {
+        final TicketGrantingTicket tgt = new TicketGrantingTicketImpl("TGT-EXPIRY", TestUtils.getAuthentication(),
+                new TicketGrantingTicketExpirationPolicy(60, 10, TimeUnit.SECONDS));
+        infinispanTicketRegistry.addTicket(tgt);
+
+        final CacheEntry<String, Ticket> entry = this.cache.getAdvancedCache().getCacheEntry(tgt.getId());
+        assertTrue(entry.getLifespan() > 0 && entry.getLifespan() <= TimeUnit.SECONDS.toMillis(10));
+        assertEquals(-1, entry.getMaxIdle());
+
+        final Ticket ticket = getTicket();
+        infinispanTicketRegistry.addTicket(ticket);
+        assertEquals(-1, this.cache.getAdvancedCache().getCacheEntry(ticket.getId()).getLifespan());
+
+        infinispanTicketRegistry.deleteTicket(tgt.getId());
+    }
+
+    @Test
+    public void verifyEntriesOfCustomPoliciesLiveForConfiguredTimeout() {
+        final TicketGrantingTicket tgt = new TicketGrantingTicketImpl("TGT-CUSTOM", TestUtils.getAuthentication(),
+                new ExpirationPolicy() {
+                    private static final long serialVersionUID = -6009185512040224543L;
+
+                    @Override
+                    public boolean isExpired(final TicketState ticketState) {
+                        return false;
+                    }
+                });
+        infinispanTicketRegistry.addTicket(tgt);
+
+        final long lifespan = this.cache.getAdvancedCache().getCacheEntry(tgt.getId()).getLifespan();
+        assertTrue(lifespan > 0 && lifespan <= TimeUnit.SECONDS.toMillis(28800));
+
+        infinispanTicketRegistry.deleteTicket(tgt.getId());
+    }
+
+    @Test
+    public void verifyExpiredTicketsAreNotListed() {
+        final TicketGrantingTicket tgt = new TicketGrantingTicketImpl("TGT-LISTED", TestUtils.getAuthentication(),
+                new NeverExpiresExpirationPolicy());
+        infinispanTicketRegistry.addTicket(tgt);
+        assertTrue(infinispanTicketRegistry.getTickets().contains(tgt));
+
+        tgt.markTicketExpired();
+        infinispanTicketRegistry.addTicket(tgt);
+        assertFalse(infinispanTicketRegistry.getTickets().contains(tgt));
+
+        infinispanTicketRegistry.deleteTicket(tgt.getId());
+    }
+
     private Ticket getTicket() {
         final Authentication authentication = TestUtils.getAuthentication();
         return new TicketGrantingTicketImpl("123", authentication, new NeverExpiresExpirationPolicy());
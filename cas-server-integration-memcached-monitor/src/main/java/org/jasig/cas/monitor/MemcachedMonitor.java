@@ -1,5 +1,8 @@
 package org.jasig.cas.monitor;
 
+import org.jasig.cas.ticket.registry.support.kryo.CompressionAlgorithm;
+import org.jasig.cas.ticket.registry.support.kryo.KryoTranscoder;
+
 import net.spy.memcached.MemcachedClientIF;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -15,6 +18,8 @@ import java.util.Map;
 
 /**
  * Monitors the memcached hosts known to an instance of {@link net.spy.memcached.MemcachedClientIF}.
+ * If the client compresses payloads with a {@link KryoTranscoder}, the compression ratio and
+ * the average compression and decompression times are reported as well.
  *
  * @author Marvin S. Addison
  * @since 3.5.1
@@ -57,7 +62,9 @@ public class MemcachedMonitor extends AbstractCacheMonitor {
         final Collection<SocketAddress> unavailableList = memcachedClient.getUnavailableServers();
         final CacheStatus status;
         if (!unavailableList.isEmpty()) {
-            final String description = "One or more memcached servers is unavailable: " + unavailableList;
+            final String compression = getDescription();
+            final String description = "One or more memcached servers is unavailable: " + unavailableList
+                    + (compression != null ? ". " + compression : "");
             status = new CacheStatus(StatusCode.WARN, description, getStatistics());
         } else {
             status = super.observe();
@@ -66,6 +73,24 @@ public class MemcachedMonitor extends AbstractCacheMonitor {
     }
 
 
+    /**
+     * Describes the compression performed by the transcoder of the memcached client, if any.
+     *
+     * @return the compression description, or null if payloads are not compressed
+     */
+    @Override
+    protected String getDescription() {
+        if (!(memcachedClient.getTranscoder() instanceof KryoTranscoder)) {
+            return null;
+        }
+        final KryoTranscoder transcoder = (KryoTranscoder) memcachedClient.getTranscoder();
+        if (transcoder.getCompression() == CompressionAlgorithm.NONE) {
+            return null;
+        }
+        return transcoder.getCompression() + " compression: " + transcoder.getCompressionStatistics();
+    }
+
+
     /**
      * Get cache statistics for all memcached hosts known to {@link MemcachedClientIF}.
      *
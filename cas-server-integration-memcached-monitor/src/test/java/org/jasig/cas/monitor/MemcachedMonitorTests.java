@@ -1,8 +1,15 @@
 package org.jasig.cas.monitor;
 
-import net.spy.memcached.MemcachedClientIF;
 import org.jasig.cas.AbstractMemcachedTests;
+import org.jasig.cas.ticket.registry.support.kryo.CompressionAlgorithm;
+import org.jasig.cas.ticket.registry.support.kryo.KryoTranscoder;
+
+import net.spy.memcached.AddrUtil;
+import net.spy.memcached.ConnectionFactoryBuilder;
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.MemcachedClientIF;
 import org.junit.AfterClass;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -12,6 +19,10 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
 
 /**
  * This is {@link MemcachedMonitorTests}.
@@ -46,4 +57,33 @@ public class MemcachedMonitorTests extends AbstractMemcachedTests {
     public void verifyMonitorRunning() {
         this.monitor.observe();
     }
+
+    @Test
+    public void verifyMonitorReportsCompression() throws Exception {
+        Assume.assumeTrue(isMemcachedListening());
+        final KryoTranscoder transcoder = new KryoTranscoder();
+        transcoder.setCompression(CompressionAlgorithm.LZ4);
+        transcoder.setCompressionThreshold(1024);
+        transcoder.initialize();
+
+        final MemcachedClient client = new MemcachedClient(new ConnectionFactoryBuilder()
+                .setProtocol(ConnectionFactoryBuilder.Protocol.BINARY)
+                .setTranscoder(transcoder)
+                .build(), AddrUtil.getAddresses("localhost:11211"));
+        try {
+            final Map<String, String> value = new HashMap<>();
+            for (int i = 0; i < 500; i++) {
+                value.put("attribute" + i, "value" + i);
+            }
+            assertTrue(client.set("compressed", 60, value).get());
+            assertEquals(value, client.get("compressed"));
+
+            final String description = new MemcachedMonitor(client).observe().getDescription();
+            assertTrue(description.contains("LZ4 compression"));
+            assertEquals(1, transcoder.getCompressionStatistics().getCompressedCount());
+            assertEquals(1, transcoder.getCompressionStatistics().getDecompressedCount());
+        } finally {
+            client.shutdown();
+        }
+    }
 }
@@ -199,6 +199,15 @@ public final class MemCacheTicketRegistry extends AbstractTicketRegistry impleme
         return true;
     }
 
+    /**
+     * Gets the memcached client, so that other components may share its connections.
+     *
+     * @return the client, or null if no memcached host is defined
+     */
+    public MemcachedClientIF getClient() {
+        return this.client;
+    }
+
     /**
      * Gets the timeout value for the ticket.
      *
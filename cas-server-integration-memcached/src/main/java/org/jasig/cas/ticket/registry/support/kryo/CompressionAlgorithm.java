@@ -0,0 +1,47 @@
+package org.jasig.cas.ticket.registry.support.kryo;
+
+/**
+ * Compression algorithms supported by the {@link KryoTranscoder} for payloads above the compression threshold.
+ * Each algorithm marks compressed payloads with its own {@link net.spy.memcached.CachedData} flag, so payloads
+ * written with any algorithm, or without compression, can always be decoded.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public enum CompressionAlgorithm {
+
+    /** Payloads are never compressed. */
+    NONE(0),
+
+    /** Deflate compression, slower but more compact. */
+    DEFLATE(1 << 1),
+
+    /** LZ4 block compression, fast with a moderate ratio. */
+    LZ4(1 << 2);
+
+    private final int flag;
+
+    CompressionAlgorithm(final int flag) {
+        this.flag = flag;
+    }
+
+    public int getFlag() {
+        return this.flag;
+    }
+
+    /**
+     * Finds the algorithm that produced a payload with the given flags.
+     *
+     * @param flags the flags of the cached payload
+     * @return the algorithm, or {@link #NONE} if the payload is not compressed
+     */
+    public static CompressionAlgorithm fromFlags(final int flags) {
+        if ((flags & LZ4.flag) != 0) {
+            return LZ4;
+        }
+        if ((flags & DEFLATE.flag) != 0) {
+            return DEFLATE;
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,103 @@
+package org.jasig.cas.ticket.registry.support.kryo;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of the payloads compressed and decompressed by a {@link KryoTranscoder}.
+ * Safe to update from many threads at once.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class CompressionStatistics {
+
+    private final LongAdder compressedCount = new LongAdder();
+
+    private final LongAdder originalBytes = new LongAdder();
+
+    private final LongAdder compressedBytes = new LongAdder();
+
+    private final LongAdder compressionNanos = new LongAdder();
+
+    private final LongAdder decompressedCount = new LongAdder();
+
+    private final LongAdder decompressionNanos = new LongAdder();
+
+    /**
+     * Records a compression attempt. Payloads that did not shrink are stored
+     * uncompressed and recorded with equal sizes.
+     *
+     * @param original   the size of the serialized payload in bytes
+     * @param compressed the size of the stored payload in bytes
+     * @param nanos      the time spent compressing
+     */
+    void recordCompression(final int original, final int compressed, final long nanos) {
+        this.compressedCount.increment();
+        this.originalBytes.add(original);
+        this.compressedBytes.add(compressed);
+        this.compressionNanos.add(nanos);
+    }
+
+    /**
+     * Records the decompression of a payload.
+     *
+     * @param nanos the time spent decompressing
+     */
+    void recordDecompression(final long nanos) {
+        this.decompressedCount.increment();
+        this.decompressionNanos.add(nanos);
+    }
+
+    public long getCompressedCount() {
+        return this.compressedCount.sum();
+    }
+
+    public long getOriginalBytes() {
+        return this.originalBytes.sum();
+    }
+
+    public long getCompressedBytes() {
+        return this.compressedBytes.sum();
+    }
+
+    public long getDecompressedCount() {
+        return this.decompressedCount.sum();
+    }
+
+    /**
+     * Gets the ratio of serialized to stored bytes over all compression attempts.
+     *
+     * @return the compression ratio, or 1 if nothing was compressed yet
+     */
+    public double getCompressionRatio() {
+        final long stored = getCompressedBytes();
+        return stored > 0 ? (double) getOriginalBytes() / stored : 1;
+    }
+
+    /**
+     * Gets the average time spent compressing a payload.
+     *
+     * @return the average time in nanoseconds
+     */
+    public long getAverageCompressionNanos() {
+        final long count = getCompressedCount();
+        return count > 0 ? this.compressionNanos.sum() / count : 0;
+    }
+
+    /**
+     * Gets the average time spent decompressing a payload.
+     *
+     * @return the average time in nanoseconds
+     */
+    public long getAverageDecompressionNanos() {
+        final long count = getDecompressedCount();
+        return count > 0 ? this.decompressionNanos.sum() / count : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d payloads compressed at ratio %.2f in %d ns on average, %d decompressed in %d ns on average",
+                getCompressedCount(), getCompressionRatio(), getAverageCompressionNanos(),
+                getDecompressedCount(), getAverageDecompressionNanos());
+    }
+}
@@ -24,6 +24,7 @@ import org.jasig.cas.ticket.support.TimeoutExpirationPolicy;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.factories.ReflectionSerializerFactory;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers;
@@ -41,29 +42,51 @@ import de.javakaffee.kryoserializers.guava.ImmutableListSerializer;
 import de.javakaffee.kryoserializers.guava.ImmutableMapSerializer;
 import de.javakaffee.kryoserializers.guava.ImmutableMultimapSerializer;
 import de.javakaffee.kryoserializers.guava.ImmutableSetSerializer;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
 import net.spy.memcached.CachedData;
 import net.spy.memcached.transcoders.Transcoder;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.impl.CasDelegatingLogger;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.net.URI;
 import java.net.URL;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * {@link net.spy.memcached.MemcachedClient} transcoder implementation based on Kryo fast serialization framework
  * suited for efficient serialization of tickets.
+ * <p>
+ * Kryo instances are not thread-safe, while transcoders are shared by the memcached I/O thread and
+ * application threads. Each encode or decode operation therefore borrows a Kryo instance, along with
+ * its reusable input and output buffers, from a bounded pool. All pooled instances are configured
+ * identically, so that class registration ids match across instances. Serializers are bound to the Kryo
+ * instance that created them and are not thread-safe either: additional serializers are therefore configured
+ * by class, and instantiated anew for every pooled instance.
+ * <p>
+ * Serialized payloads of at least {@link #setCompressionThreshold(int) the compression threshold} are
+ * optionally compressed, and stored with the {@link CachedData} flag of the {@link CompressionAlgorithm}
+ * that compressed them. Compressed payloads carry the length of the serialized payload as a four byte prefix.
+ * Decoding honors the flags of each payload rather than the configured algorithm, so that payloads written
+ * with and without compression can coexist.
  *
  * @author Marvin S. Addison
  * @since 3.0.0
@@ -71,11 +94,50 @@ import java.util.regex.Pattern;
 @SuppressWarnings("rawtypes")
 public class KryoTranscoder implements Transcoder<Object> {
 
-    /** Kryo serializer. */
-    private final Kryo kryo = new KryoReflectionFactorySupport();
+    /** Default number of idle Kryo instances retained by the pool. */
+    public static final int DEFAULT_POOL_SIZE = 64;
 
-    /** Map of class to serializer that handles it. */
-    private Map<Class<?>, Serializer> serializerMap;
+    /** Initial size of the output buffer of each pooled Kryo instance. */
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    /** Output buffers that grew beyond this size are not retained once the operation completes. */
+    private static final int RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    /** Default size in bytes of serialized payloads above which payloads are compressed. */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 4096;
+
+    private static final byte[] EMPTY_BUFFER = new byte[0];
+
+    /** Size of the prefix of compressed payloads that holds the length of the serialized payload. */
+    private static final int LENGTH_PREFIX = 4;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private static final int[] LENGTH_SHIFTS = {24, 16, 8, 0};
+
+    /** Additional types that are registered, in order, with every Kryo instance. */
+    private final List<Pair<Class<?>, Class<? extends Serializer>>> registrations = new ArrayList<>();
+
+    /** Map of class to the class of the serializer that handles it. */
+    private Map<Class<?>, Class<? extends Serializer>> serializerMap;
+
+    /** Maximum number of idle Kryo instances retained by the pool. */
+    private int poolSize = DEFAULT_POOL_SIZE;
+
+    /** Pool of idle Kryo instances. */
+    private BlockingQueue<PooledKryo> pool;
+
+    /** Algorithm used to compress payloads above the threshold. */
+    private CompressionAlgorithm compression = CompressionAlgorithm.NONE;
+
+    /** Size in bytes of serialized payloads above which payloads are compressed. */
+    private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+
+    private final CompressionStatistics compressionStatistics = new CompressionStatistics();
+
+    private LZ4Compressor lz4Compressor;
+
+    private LZ4FastDecompressor lz4Decompressor;
 
     /**
      * Creates a Kryo-based transcoder.
@@ -87,16 +149,90 @@ public class KryoTranscoder implements Transcoder<Object> {
      * Sets a map of additional types that should be regisetered with Kryo,
      * for example GoogleAccountsService and OpenIdService.
      *
-     * @param map Map of class to the serializer instance that handles it.
+     * @param map Map of class to the class of the serializer that handles it.
      */
-    public void setSerializerMap(final Map<Class<?>, Serializer> map) {
+    public void setSerializerMap(final Map<Class<?>, Class<? extends Serializer>> map) {
         this.serializerMap = map;
     }
 
     /**
-     * Initialize and register classes with kryo.
+     * Sets the maximum number of idle Kryo instances retained by the pool.
+     * Operations that find the pool empty create a new instance, so this only bounds
+     * the memory held by idle instances, not the number of concurrent operations.
+     *
+     * @param poolSize the pool size
+     */
+    public void setPoolSize(final int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Sets the algorithm used to compress payloads above the compression threshold.
+     * Decoding always honors the algorithm a payload was compressed with; all nodes
+     * sharing a memcached tier must therefore support compression before it is enabled.
+     *
+     * @param compression the compression algorithm
+     */
+    public void setCompression(final CompressionAlgorithm compression) {
+        this.compression = compression;
+    }
+
+    public CompressionAlgorithm getCompression() {
+        return this.compression;
+    }
+
+    /**
+     * Sets the size in bytes of serialized payloads at and above which payloads are compressed.
+     *
+     * @param compressionThreshold the compression threshold
+     */
+    public void setCompressionThreshold(final int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public CompressionStatistics getCompressionStatistics() {
+        return this.compressionStatistics;
+    }
+
+    /**
+     * Registers an additional type with the default serializer. Must be called before {@link #initialize()}.
+     *
+     * @param type the type
+     */
+    public void register(final Class<?> type) {
+        register(type, null);
+    }
+
+    /**
+     * Registers an additional type with the given serializer. Must be called before {@link #initialize()}.
+     *
+     * @param type            the type
+     * @param serializerClass the class of the serializer, or null for the default serializer of the type
+     */
+    public void register(final Class<?> type, final Class<? extends Serializer> serializerClass) {
+        this.registrations.add(Pair.of(type, serializerClass));
+    }
+
+    /**
+     * Initialize the pool of Kryo instances.
      */
     public void initialize() {
+        this.pool = new ArrayBlockingQueue<>(Math.max(this.poolSize, 1));
+        final LZ4Factory lz4 = LZ4Factory.fastestInstance();
+        this.lz4Compressor = lz4.fastCompressor();
+        this.lz4Decompressor = lz4.fastDecompressor();
+        // fail fast on configuration errors rather than on first use
+        release(new PooledKryo(newKryo()));
+    }
+
+    /**
+     * Creates a new Kryo instance and registers the types we know about.
+     *
+     * @return the kryo instance
+     */
+    protected Kryo newKryo() {
+        final Kryo kryo = new KryoReflectionFactorySupport();
+
         // Register types we know about and do not require external configuration
         kryo.register(ArrayList.class);
         kryo.register(BasicCredentialMetaData.class);
@@ -144,16 +280,36 @@ public class KryoTranscoder implements Transcoder<Object> {
         kryo.register(Collections.EMPTY_SET.getClass(), new CollectionsEmptySetSerializer());
 
         // Register other types
+        for (final Pair<Class<?>, Class<? extends Serializer>> registration : this.registrations) {
+            register(kryo, registration.getKey(), registration.getValue());
+        }
         if (serializerMap != null) {
-            serializerMap.forEach(kryo::register);
+            serializerMap.forEach((type, serializerClass) -> register(kryo, type, serializerClass));
         }
 
-        // don't reinit the registered classes after every write or read
+        // don't reinit the registered classes after every write or read;
+        // the per-operation state is reset explicitly once the instance is released
         kryo.setAutoReset(false);
         // don't replace objects by references
         kryo.setReferences(false);
         // Catchall for any classes not explicitly registered
         kryo.setRegistrationRequired(false);
+        return kryo;
+    }
+
+    /**
+     * Registers a type with a new instance of its serializer, since serializers cannot be shared across Kryo instances.
+     *
+     * @param kryo            the kryo instance
+     * @param type            the type
+     * @param serializerClass the class of the serializer, or null for the default serializer of the type
+     */
+    private static void register(final Kryo kryo, final Class<?> type, final Class<? extends Serializer> serializerClass) {
+        if (serializerClass == null) {
+            kryo.register(type);
+        } else {
+            kryo.register(type, ReflectionSerializerFactory.makeSerializer(kryo, serializerClass, type));
+        }
     }
 
     /**
@@ -169,21 +325,36 @@ public class KryoTranscoder implements Transcoder<Object> {
 
     @Override
     public CachedData encode(final Object obj) {
-        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        try (final Output output = new Output(byteStream)) {
-            kryo.writeClassAndObject(output, obj);
-            output.flush();
-            final byte[] bytes = byteStream.toByteArray();
+        final PooledKryo pooled = borrow();
+        try {
+            final Output output = pooled.output;
+            output.clear();
+            pooled.kryo.writeClassAndObject(output, obj);
+            final int length = output.position();
+            if (this.compression != CompressionAlgorithm.NONE && length > LENGTH_PREFIX && length >= this.compressionThreshold) {
+                return compress(pooled, output.getBuffer(), length);
+            }
+            final byte[] bytes = output.toBytes();
             return new CachedData(0, bytes, bytes.length);
+        } finally {
+            release(pooled);
         }
     }
 
     @Override
     public Object decode(final CachedData d) {
-        final byte[] bytes = d.getData();
-        try (final Input input = new Input(new ByteArrayInputStream(bytes))) {
-            final Object obj =  kryo.readClassAndObject(input);
-            return obj;
+        final PooledKryo pooled = borrow();
+        try {
+            final Input input = pooled.input;
+            final CompressionAlgorithm algorithm = CompressionAlgorithm.fromFlags(d.getFlags());
+            if (algorithm == CompressionAlgorithm.NONE) {
+                input.setBuffer(d.getData());
+            } else {
+                input.setBuffer(pooled.scratch, 0, decompress(pooled, algorithm, d.getData()));
+            }
+            return pooled.kryo.readClassAndObject(input);
+        } finally {
+            release(pooled);
         }
     }
 
@@ -198,11 +369,185 @@ public class KryoTranscoder implements Transcoder<Object> {
     }
 
     /**
-     * Gets the kryo object that provides encoding and decoding services for this instance.
+     * Compresses a serialized payload. Payloads that do not shrink are stored uncompressed.
      *
-     * @return Underlying Kryo instance.
+     * @param pooled the pooled kryo instance, whose scratch buffer receives the compressed payload
+     * @param buffer the serialized payload
+     * @param length the length of the serialized payload
+     * @return the cached data
      */
-    public Kryo getKryo() {
-        return kryo;
+    private CachedData compress(final PooledKryo pooled, final byte[] buffer, final int length) {
+        final long start = System.nanoTime();
+        final int compressedLength = this.compression == CompressionAlgorithm.LZ4
+                ? compressLz4(pooled, buffer, length) : deflate(pooled, buffer, length);
+
+        final byte[] bytes;
+        final int flags;
+        if (compressedLength > 0 && compressedLength < length) {
+            writeLength(pooled.scratch, length);
+            bytes = Arrays.copyOf(pooled.scratch, compressedLength);
+            flags = this.compression.getFlag();
+        } else {
+            bytes = Arrays.copyOf(buffer, length);
+            flags = 0;
+        }
+        this.compressionStatistics.recordCompression(length, bytes.length, System.nanoTime() - start);
+        return new CachedData(flags, bytes, bytes.length);
+    }
+
+    private int compressLz4(final PooledKryo pooled, final byte[] buffer, final int length) {
+        final byte[] target = pooled.scratch(LENGTH_PREFIX + this.lz4Compressor.maxCompressedLength(length));
+        return LENGTH_PREFIX + this.lz4Compressor.compress(buffer, 0, length, target, LENGTH_PREFIX);
+    }
+
+    private static int deflate(final PooledKryo pooled, final byte[] buffer, final int length) {
+        final Deflater deflater = pooled.deflater();
+        deflater.reset();
+        deflater.setInput(buffer, 0, length);
+        deflater.finish();
+        final byte[] target = pooled.scratch(length);
+        final int compressedLength = deflater.deflate(target, LENGTH_PREFIX, length - LENGTH_PREFIX);
+        return deflater.finished() ? LENGTH_PREFIX + compressedLength : -1;
+    }
+
+    /**
+     * Decompresses a payload into the scratch buffer of the pooled instance.
+     *
+     * @param pooled    the pooled kryo instance
+     * @param algorithm the algorithm the payload was compressed with
+     * @param data      the compressed payload
+     * @return the length of the serialized payload
+     */
+    private int decompress(final PooledKryo pooled, final CompressionAlgorithm algorithm, final byte[] data) {
+        final long start = System.nanoTime();
+        final int length = readLength(data);
+        final byte[] target = pooled.scratch(length);
+        if (algorithm == CompressionAlgorithm.LZ4) {
+            this.lz4Decompressor.decompress(data, LENGTH_PREFIX, target, 0, length);
+        } else {
+            inflate(pooled, data, target, length);
+        }
+        this.compressionStatistics.recordDecompression(System.nanoTime() - start);
+        return length;
+    }
+
+    private static void inflate(final PooledKryo pooled, final byte[] data, final byte[] target, final int length) {
+        final Inflater inflater = pooled.inflater();
+        inflater.reset();
+        inflater.setInput(data, LENGTH_PREFIX, data.length - LENGTH_PREFIX);
+        try {
+            if (inflater.inflate(target, 0, length) != length) {
+                throw new IllegalArgumentException("Compressed payload is truncated");
+            }
+        } catch (final DataFormatException e) {
+            throw new IllegalArgumentException("Compressed payload is corrupt", e);
+        }
+    }
+
+    private static void writeLength(final byte[] target, final int length) {
+        for (int i = 0; i < LENGTH_PREFIX; i++) {
+            target[i] = (byte) (length >>> LENGTH_SHIFTS[i]);
+        }
+    }
+
+    private static int readLength(final byte[] data) {
+        if (data.length < LENGTH_PREFIX) {
+            throw new IllegalArgumentException("Compressed payload is truncated");
+        }
+        int length = 0;
+        for (int i = 0; i < LENGTH_PREFIX; i++) {
+            length |= (data[i] & BYTE_MASK) << LENGTH_SHIFTS[i];
+        }
+        if (length < 0 || length > CachedData.MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid length of compressed payload: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Borrows a Kryo instance from the pool, creating a new one if the pool is empty.
+     *
+     * @return the pooled kryo instance
+     */
+    private PooledKryo borrow() {
+        if (this.pool == null) {
+            throw new IllegalStateException("Transcoder is not initialized");
+        }
+        final PooledKryo pooled = this.pool.poll();
+        return pooled != null ? pooled : new PooledKryo(newKryo());
+    }
+
+    /**
+     * Resets the state of the Kryo instance, even if the operation failed half-way, and returns it to the pool.
+     * Instances are dropped, and their native compression resources freed, if the pool is full.
+     *
+     * @param pooled the pooled kryo instance
+     */
+    private void release(final PooledKryo pooled) {
+        pooled.kryo.reset();
+        pooled.input.setBuffer(EMPTY_BUFFER);
+        if (pooled.output.getBuffer().length > RETAINED_BUFFER_SIZE) {
+            pooled.output.setBuffer(new byte[INITIAL_BUFFER_SIZE], CachedData.MAX_SIZE);
+        }
+        if (pooled.scratch.length > RETAINED_BUFFER_SIZE) {
+            pooled.scratch = EMPTY_BUFFER;
+        }
+        if (!this.pool.offer(pooled)) {
+            pooled.close();
+        }
+    }
+
+    /**
+     * A Kryo instance along with the buffers it reads from and writes into,
+     * and the compression state it uses to transform them.
+     */
+    private static final class PooledKryo {
+        private final Kryo kryo;
+
+        private final Input input = new Input();
+
+        /** Grows as needed up to the maximum size of a memcached value. */
+        private final Output output = new Output(INITIAL_BUFFER_SIZE, CachedData.MAX_SIZE);
+
+        /** Holds compressed payloads while encoding and decompressed payloads while decoding. */
+        private byte[] scratch = EMPTY_BUFFER;
+
+        private Deflater deflater;
+
+        private Inflater inflater;
+
+        PooledKryo(final Kryo kryo) {
+            this.kryo = kryo;
+        }
+
+        byte[] scratch(final int size) {
+            if (this.scratch.length < size) {
+                this.scratch = new byte[size];
+            }
+            return this.scratch;
+        }
+
+        Deflater deflater() {
+            if (this.deflater == null) {
+                this.deflater = new Deflater();
+            }
+            return this.deflater;
+        }
+
+        Inflater inflater() {
+            if (this.inflater == null) {
+                this.inflater = new Inflater();
+            }
+            return this.inflater;
+        }
+
+        void close() {
+            if (this.deflater != null) {
+                this.deflater.end();
+            }
+            if (this.inflater != null) {
+                this.inflater.end();
+            }
+        }
     }
 }
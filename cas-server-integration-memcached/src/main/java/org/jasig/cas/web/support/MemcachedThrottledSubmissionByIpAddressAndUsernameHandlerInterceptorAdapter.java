@@ -0,0 +1,109 @@
+package org.jasig.cas.web.support;
+
+import org.jasig.cas.ticket.registry.MemCacheTicketRegistry;
+
+import com.google.common.hash.Hashing;
+import net.spy.memcached.MemcachedClientIF;
+import net.spy.memcached.transcoders.SerializingTranscoder;
+import net.spy.memcached.transcoders.Transcoder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Throttles failed login attempts for a particular username from the same IP address across all CAS nodes,
+ * with counters kept in the memcached servers of the ticket registry.
+ * <p>
+ * Counters are incremented with {@code incr}, which creates missing counters with their time-to-live in the same
+ * operation. The client of the ticket registry is used: either the {@code memcachedClient} bean, or the client of
+ * the {@code memcachedTicketRegistry} when it connects to the servers itself.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@Component("memcachedIpAddressUsernameThrottle")
+public class MemcachedThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter
+            extends AbstractDistributedThrottledSubmissionHandlerInterceptorAdapter {
+
+    /** Counters are stored as decimal strings by {@code incr}, which are read back without the ticket transcoder. */
+    private static final Transcoder<Object> COUNTER_TRANSCODER = new SerializingTranscoder();
+
+    @Autowired(required = false)
+    @Qualifier("memcachedClient")
+    private MemcachedClientIF client;
+
+    @Autowired(required = false)
+    @Qualifier("memcachedTicketRegistry")
+    private MemCacheTicketRegistry ticketRegistry;
+
+    /**
+     * Instantiates a new throttle.
+     */
+    public MemcachedThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter() {}
+
+    /**
+     * Instantiates a new throttle.
+     *
+     * @param client the memcached client
+     */
+    public MemcachedThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter(final MemcachedClientIF client) {
+        this.client = client;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        super.afterPropertiesSet();
+        if (this.client == null && this.ticketRegistry != null) {
+            this.client = this.ticketRegistry.getClient();
+        }
+        if (this.client == null) {
+            logger.debug("No memcached client is defined for {}. Failures are throttled with local counts", getName());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Keys are hashed, since usernames may hold characters that memcached does not accept in keys.
+     */
+    @Override
+    protected String constructKey(final HttpServletRequest request) {
+        return Hashing.sha256().hashString(super.constructKey(request), StandardCharsets.UTF_8).toString();
+    }
+
+    @Override
+    protected Map<String, Long> getFailures(final Collection<String> counters) throws Exception {
+        final Map<String, Long> failures = new HashMap<>();
+        getClient().getBulk(counters, COUNTER_TRANSCODER)
+                .forEach((counter, value) -> failures.put(counter, Long.valueOf(value.toString().trim())));
+        return failures;
+    }
+
+    @Override
+    protected void addFailures(final Map<String, Long> increments, final int timeToLiveInSeconds) throws Exception {
+        final MemcachedClientIF memcachedClient = getClient();
+        for (final Map.Entry<String, Long> increment : increments.entrySet()) {
+            if (memcachedClient.incr(increment.getKey(), increment.getValue(), increment.getValue(), timeToLiveInSeconds) < 0) {
+                throw new IllegalStateException("Failed incrementing " + increment.getKey());
+            }
+        }
+    }
+
+    private MemcachedClientIF getClient() {
+        if (this.client == null) {
+            throw new IllegalStateException("No memcached client is defined for " + getName());
+        }
+        return this.client;
+    }
+
+    @Override
+    protected String getName() {
+        return "memcachedIpAddressUsernameThrottle";
+    }
+}
@@ -0,0 +1,125 @@
+package org.jasig.cas.ticket.registry.support.kryo;
+
+import org.jasig.cas.authentication.AcceptUsersAuthenticationHandler;
+import org.jasig.cas.authentication.Authentication;
+import org.jasig.cas.authentication.BasicCredentialMetaData;
+import org.jasig.cas.authentication.CredentialMetaData;
+import org.jasig.cas.authentication.DefaultAuthenticationBuilder;
+import org.jasig.cas.authentication.DefaultHandlerResult;
+import org.jasig.cas.authentication.UsernamePasswordCredential;
+import org.jasig.cas.authentication.principal.DefaultPrincipalFactory;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+
+import net.spy.memcached.CachedData;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the payload compression of {@link KryoTranscoder}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class KryoTranscoderCompressionTests {
+
+    private static final int THRESHOLD = 1024;
+
+    private final TicketGrantingTicket largeTicket = newTicketGrantingTicket(500);
+
+    private final TicketGrantingTicket smallTicket = newTicketGrantingTicket(1);
+
+    @Test
+    public void verifyLz4RoundTrip() {
+        final KryoTranscoder transcoder = newTranscoder(CompressionAlgorithm.LZ4);
+        final CachedData data = transcoder.encode(this.largeTicket);
+        assertEquals(CompressionAlgorithm.LZ4.getFlag(), data.getFlags());
+        assertTicket(this.largeTicket, transcoder.decode(data));
+        assertStatistics(transcoder, data);
+    }
+
+    @Test
+    public void verifyDeflateRoundTrip() {
+        final KryoTranscoder transcoder = newTranscoder(CompressionAlgorithm.DEFLATE);
+        final CachedData data = transcoder.encode(this.largeTicket);
+        assertEquals(CompressionAlgorithm.DEFLATE.getFlag(), data.getFlags());
+        assertTicket(this.largeTicket, transcoder.decode(data));
+        assertStatistics(transcoder, data);
+    }
+
+    @Test
+    public void verifyPayloadBelowThresholdIsNotCompressed() {
+        final KryoTranscoder transcoder = newTranscoder(CompressionAlgorithm.LZ4);
+        final CachedData data = transcoder.encode(this.smallTicket);
+        assertEquals(0, data.getFlags());
+        assertTicket(this.smallTicket, transcoder.decode(data));
+        assertEquals(0, transcoder.getCompressionStatistics().getCompressedCount());
+    }
+
+    @Test
+    public void verifyCompressedAndUncompressedPayloadsCoexist() {
+        final KryoTranscoder uncompressed = newTranscoder(CompressionAlgorithm.NONE);
+        final KryoTranscoder lz4 = newTranscoder(CompressionAlgorithm.LZ4);
+        final KryoTranscoder deflate = newTranscoder(CompressionAlgorithm.DEFLATE);
+
+        final CachedData plain = uncompressed.encode(this.largeTicket);
+        assertEquals(0, plain.getFlags());
+        for (final KryoTranscoder transcoder : Arrays.asList(uncompressed, lz4, deflate)) {
+            assertTicket(this.largeTicket, transcoder.decode(plain));
+            assertTicket(this.largeTicket, transcoder.decode(lz4.encode(this.largeTicket)));
+            assertTicket(this.largeTicket, transcoder.decode(deflate.encode(this.largeTicket)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void verifyCorruptPayloadIsRejected() {
+        final KryoTranscoder transcoder = newTranscoder(CompressionAlgorithm.DEFLATE);
+        final byte[] data = transcoder.encode(this.largeTicket).getData();
+        final byte[] corrupt = Arrays.copyOf(data, data.length / 2);
+        transcoder.decode(new CachedData(CompressionAlgorithm.DEFLATE.getFlag(), corrupt, corrupt.length));
+    }
+
+    private static KryoTranscoder newTranscoder(final CompressionAlgorithm algorithm) {
+        final KryoTranscoder transcoder = new KryoTranscoder();
+        transcoder.setCompression(algorithm);
+        transcoder.setCompressionThreshold(THRESHOLD);
+        transcoder.initialize();
+        return transcoder;
+    }
+
+    private static void assertStatistics(final KryoTranscoder transcoder, final CachedData data) {
+        final CompressionStatistics statistics = transcoder.getCompressionStatistics();
+        assertEquals(1, statistics.getCompressedCount());
+        assertEquals(1, statistics.getDecompressedCount());
+        assertEquals(data.getData().length, statistics.getCompressedBytes());
+        assertTrue(statistics.getOriginalBytes() > statistics.getCompressedBytes());
+        assertTrue(statistics.getCompressionRatio() > 1);
+    }
+
+    private static void assertTicket(final TicketGrantingTicket expected, final Object actual) {
+        assertEquals(expected, actual);
+        assertEquals(expected.getAuthentication().getPrincipal().getAttributes(),
+                ((TicketGrantingTicket) actual).getAuthentication().getPrincipal().getAttributes());
+    }
+
+    private static TicketGrantingTicket newTicketGrantingTicket(final int attributeCount) {
+        final Map<String, Object> attributes = new HashMap<>();
+        for (int i = 0; i < attributeCount; i++) {
+            attributes.put("attribute" + i, "value" + i);
+        }
+        final CredentialMetaData meta = new BasicCredentialMetaData(new UsernamePasswordCredential("casuser", "Mellon"));
+        final Authentication authentication = new DefaultAuthenticationBuilder(
+                new DefaultPrincipalFactory().createPrincipal("casuser", attributes))
+                .addCredential(meta)
+                .addSuccess("handler", new DefaultHandlerResult(new AcceptUsersAuthenticationHandler(), meta))
+                .build();
+        return new TicketGrantingTicketImpl("TGT-" + attributeCount + "-compression", authentication,
+                new NeverExpiresExpirationPolicy());
+    }
+}
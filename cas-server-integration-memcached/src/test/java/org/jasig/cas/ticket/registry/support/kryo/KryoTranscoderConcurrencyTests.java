@@ -0,0 +1,122 @@
+package org.jasig.cas.ticket.registry.support.kryo;
+
+import org.jasig.cas.authentication.AcceptUsersAuthenticationHandler;
+import org.jasig.cas.authentication.Authentication;
+import org.jasig.cas.authentication.BasicCredentialMetaData;
+import org.jasig.cas.authentication.CredentialMetaData;
+import org.jasig.cas.authentication.DefaultAuthenticationBuilder;
+import org.jasig.cas.authentication.DefaultHandlerResult;
+import org.jasig.cas.authentication.UsernamePasswordCredential;
+import org.jasig.cas.authentication.principal.DefaultPrincipalFactory;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+
+import net.spy.memcached.CachedData;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stress tests a single {@link KryoTranscoder} shared by many threads.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class KryoTranscoderConcurrencyTests {
+
+    private static final int THREADS = 16;
+
+    private static final int ITERATIONS = 500;
+
+    /** Large enough for some payloads to outgrow the retained output buffer. */
+    private static final int LARGE_ATTRIBUTE_COUNT = 2000;
+
+    @Test
+    public void verifyConcurrentEncodeDecode() throws Exception {
+        final KryoTranscoder transcoder = new KryoTranscoder();
+        transcoder.setPoolSize(THREADS / 4);
+        transcoder.initialize();
+
+        final TicketGrantingTicket[] tickets = new TicketGrantingTicket[THREADS];
+        final CachedData[] encoded = new CachedData[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            tickets[i] = newTicketGrantingTicket(i, i % 2 == 0 ? i + 1 : LARGE_ATTRIBUTE_COUNT);
+            encoded[i] = transcoder.encode(tickets[i]);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            final List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                results.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        assertTicket(tickets[thread], transcoder.decode(transcoder.encode(tickets[thread])));
+
+                        final int other = (thread + i) % THREADS;
+                        assertTicket(tickets[other], transcoder.decode(encoded[other]));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (final Future<Void> result : results) {
+                result.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void verifyEncodingIsStableAcrossPooledInstances() throws Exception {
+        final KryoTranscoder transcoder = new KryoTranscoder();
+        transcoder.setPoolSize(1);
+        transcoder.initialize();
+
+        final TicketGrantingTicket ticket = newTicketGrantingTicket(0, LARGE_ATTRIBUTE_COUNT);
+        final byte[] expected = transcoder.encode(ticket).getData();
+
+        final KryoTranscoder other = new KryoTranscoder();
+        other.initialize();
+        assertArrayEquals(expected, other.encode(ticket).getData());
+        assertArrayEquals(expected, transcoder.encode(ticket).getData());
+    }
+
+    private static void assertTicket(final TicketGrantingTicket expected, final Object actual) {
+        assertTrue(actual instanceof TicketGrantingTicket);
+        final TicketGrantingTicket ticket = (TicketGrantingTicket) actual;
+        assertEquals(expected.getId(), ticket.getId());
+        assertEquals(expected.getAuthentication().getPrincipal().getId(), ticket.getAuthentication().getPrincipal().getId());
+        assertEquals(expected.getAuthentication().getPrincipal().getAttributes(),
+                ticket.getAuthentication().getPrincipal().getAttributes());
+    }
+
+    private static TicketGrantingTicket newTicketGrantingTicket(final int index, final int attributeCount) {
+        final Map<String, Object> attributes = new HashMap<>();
+        for (int i = 0; i < attributeCount; i++) {
+            attributes.put("attribute" + i, "value-" + index + '-' + i);
+        }
+        final CredentialMetaData meta = new BasicCredentialMetaData(new UsernamePasswordCredential("user" + index, "Mellon"));
+        final Authentication authentication = new DefaultAuthenticationBuilder(
+                new DefaultPrincipalFactory().createPrincipal("user" + index, attributes))
+                .addCredential(meta)
+                .addSuccess("handler", new DefaultHandlerResult(new AcceptUsersAuthenticationHandler(), meta))
+                .build();
+        return new TicketGrantingTicketImpl("TGT-" + index + "-concurrency", authentication, new NeverExpiresExpirationPolicy());
+    }
+}
@@ -26,6 +26,8 @@ import org.jasig.cas.ticket.proxy.ProxyGrantingTicket;
 import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
 import org.jasig.cas.util.DateTimeUtils;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
 import net.spy.memcached.CachedData;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.junit.Test;
@@ -73,8 +75,8 @@ public class KryoTranscoderTests {
 
     public KryoTranscoderTests() {
         transcoder = new KryoTranscoder();
-        transcoder.getKryo().register(MockServiceTicket.class);
-        transcoder.getKryo().register(MockTicketGrantingTicket.class);
+        transcoder.register(MockServiceTicket.class);
+        transcoder.register(MockTicketGrantingTicket.class);
         transcoder.initialize();
 
         this.principalAttributes = new HashMap<>();
@@ -114,6 +116,21 @@ public class KryoTranscoderTests {
 
     }
 
+    @Test
+    public void verifySerializerIsCreatedForEachKryoInstance() throws Exception {
+        final KryoTranscoder pooled = new KryoTranscoder();
+        pooled.setSerializerMap(Collections.singletonMap(MockServiceTicket.class, FieldSerializer.class));
+        pooled.initialize();
+
+        final Kryo first = pooled.newKryo();
+        final Kryo second = pooled.newKryo();
+        assertTrue(first.getSerializer(MockServiceTicket.class) instanceof FieldSerializer);
+        assertNotSame(first.getSerializer(MockServiceTicket.class), second.getSerializer(MockServiceTicket.class));
+
+        final ServiceTicket expectedST = new MockServiceTicket(ST_ID);
+        assertEquals(expectedST, pooled.decode(pooled.encode(expectedST)));
+    }
+
     @Test
     public void verifyEncodeDecode() throws Exception {
         final ServiceTicket expectedST =
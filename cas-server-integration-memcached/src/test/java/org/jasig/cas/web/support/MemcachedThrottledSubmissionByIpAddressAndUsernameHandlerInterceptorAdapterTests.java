@@ -0,0 +1,104 @@
+package org.jasig.cas.web.support;
+
+import org.jasig.inspektr.common.web.ClientInfo;
+import org.jasig.inspektr.common.web.ClientInfoHolder;
+
+import net.spy.memcached.MemcachedClientIF;
+import net.spy.memcached.OperationTimeoutException;
+import net.spy.memcached.transcoders.Transcoder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.webflow.execution.Event;
+import org.springframework.webflow.test.MockRequestContext;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link MemcachedThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class MemcachedThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapterTests {
+
+    private static final int FAILURE_THRESHOLD = 3;
+
+    private static final int FAILURE_RANGE = 60;
+
+    private static final String IP_ADDRESS = "1.2.3.4";
+
+    private final MemcachedClientIF client = mock(MemcachedClientIF.class);
+
+    private MemcachedThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter throttle;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        ClientInfoHolder.setClientInfo(new ClientInfo(IP_ADDRESS, IP_ADDRESS));
+        when(this.client.getBulk(anyCollectionOf(String.class), any(Transcoder.class))).thenReturn(Collections.emptyMap());
+        this.throttle = new MemcachedThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter(this.client);
+        this.throttle.setFailureThreshold(FAILURE_THRESHOLD);
+        this.throttle.setFailureRangeInSeconds(FAILURE_RANGE);
+        this.throttle.setFlushIntervalInMillis(60000);
+        this.throttle.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ClientInfoHolder.setClientInfo(null);
+        this.throttle.destroy();
+    }
+
+    @Test
+    public void verifyFailuresAreIncrementedOncePerFlush() throws Exception {
+        loginUnsuccessfully("mog");
+        loginUnsuccessfully("mog");
+        this.throttle.flush();
+
+        verify(this.client, times(1)).incr(anyString(), eq(2L), eq(2L), eq(2 * FAILURE_RANGE + 1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void verifyFailuresOfOtherNodesAreCounted() throws Exception {
+        when(this.client.getBulk(anyCollectionOf(String.class), any(Transcoder.class)))
+                .thenAnswer(invocation -> Collections.singletonMap(
+                        ((Iterable<String>) invocation.getArguments()[0]).iterator().next(), String.valueOf(FAILURE_THRESHOLD)));
+
+        assertEquals(403, loginUnsuccessfully("mog").getStatus());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void verifyLocalFailuresAreCountedWhenMemcachedIsUnreachable() throws Exception {
+        when(this.client.getBulk(anyCollectionOf(String.class), any(Transcoder.class)))
+                .thenThrow(new OperationTimeoutException("Timed out"));
+
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            assertEquals(200, loginUnsuccessfully("mog").getStatus());
+        }
+        assertEquals(403, loginUnsuccessfully("mog").getStatus());
+        assertEquals(200, loginUnsuccessfully("other").getStatus());
+    }
+
+    private MockHttpServletResponse loginUnsuccessfully(final String username) throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        request.setMethod("POST");
+        request.setParameter("username", username);
+        request.setRemoteAddr(IP_ADDRESS);
+        final MockRequestContext context = new MockRequestContext();
+        context.setCurrentEvent(new Event("", "error"));
+        request.setAttribute("flowRequestContext", context);
+        if (this.throttle.preHandle(request, response, null)) {
+            this.throttle.postHandle(request, response, null, null);
+        }
+        return response;
+    }
+}
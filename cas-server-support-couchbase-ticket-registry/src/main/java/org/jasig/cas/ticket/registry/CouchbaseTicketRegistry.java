@@ -1,29 +1,53 @@
 package org.jasig.cas.ticket.registry;
 
 import org.jasig.cas.couchbase.core.CouchbaseClientFactory;
+import org.jasig.cas.ticket.AbstractTicket;
 import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.Ticket;
 import org.jasig.cas.ticket.TicketGrantingTicket;
-
-import com.couchbase.client.java.document.SerializableDocument;
+import org.jasig.cas.ticket.registry.support.kryo.KryoTranscoder;
+
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.deps.io.netty.util.ReferenceCountUtil;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.document.BinaryDocument;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
 import com.couchbase.client.java.view.DefaultView;
+import com.couchbase.client.java.view.Stale;
 import com.couchbase.client.java.view.View;
 import com.couchbase.client.java.view.ViewQuery;
 import com.couchbase.client.java.view.ViewResult;
 import com.couchbase.client.java.view.ViewRow;
+import net.spy.memcached.CachedData;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import rx.Observable;
+import rx.subjects.PublishSubject;
+import rx.subjects.SerializedSubject;
+import rx.subjects.Subject;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -31,6 +55,15 @@ import java.util.List;
  * CouchBase is a multi host NoSQL database with a memcached interface
  * to persistent storage which also is quite usable as a replicated
  * tickage storage engine for multiple front end CAS servers.
+ * <p>
+ * Tickets are stored as binary documents serialized by a pooled {@link KryoTranscoder},
+ * with an expiry derived from the expiration policy of each ticket, so that the server
+ * removes expired tickets by itself. Writes are queued without blocking the caller and sent
+ * to the bucket in batches through the asynchronous API, skipping writes of a ticket that were
+ * superseded by a later one. Tickets with queued writes are decoded from the queued data, so a node
+ * always reads the tickets it wrote and each caller gets a copy of its own. A batch that fails is reported as failed to its callers and the
+ * writer carries on with the next batch.
+ * </p>
  *
  * @author Fredrik Jönsson "fjo@kth.se"
  * @author Misagh Moayyed
@@ -38,7 +71,7 @@ import java.util.List;
  */
 @Component("couchbaseTicketRegistry")
 public final class CouchbaseTicketRegistry extends AbstractTicketRegistry implements TicketRegistryState {
-    private static final String END_TOKEN = "\u02ad";
+    private static final String END_TOKEN = "ʭ";
 
     private static final View ALL_TICKETS_VIEW = DefaultView.create(
             "all_tickets",
@@ -49,6 +82,9 @@ public final class CouchbaseTicketRegistry extends AbstractTicketRegistry implem
     });
     private static final String UTIL_DOCUMENT = "statistics";
 
+    /** Couchbase reads expiry values larger than 30 days as absolute unix times. */
+    private static final long MAX_RELATIVE_EXPIRY = TimeUnit.DAYS.toSeconds(30);
+
     /* Couchbase client factory */
     @NotNull
     @Autowired
@@ -67,6 +103,42 @@ public final class CouchbaseTicketRegistry extends AbstractTicketRegistry implem
     @Value("${ticketreg.couchbase.query.enabled:true}")
     private boolean queryEnabled;
 
+    @Min(0)
+    @Value("${ticket.registry.count.timeToLiveInSeconds:" + CachedTicketCount.DEFAULT_TTL_SECONDS + '}')
+    private int countTimeToLive = CachedTicketCount.DEFAULT_TTL_SECONDS;
+
+    @Min(1)
+    @Value("${ticketreg.couchbase.timeout:10}")
+    private long timeout = 10;
+
+    @Min(1)
+    @Value("${ticketreg.couchbase.batch.size:100}")
+    private int batchSize = 100;
+
+    @Min(1)
+    @Value("${ticketreg.couchbase.batch.windowInMillis:5}")
+    private long batchWindow = 5;
+
+    @Min(1)
+    @Value("${ticketreg.couchbase.kryo.poolSize:" + KryoTranscoder.DEFAULT_POOL_SIZE + '}')
+    private int kryoPoolSize = KryoTranscoder.DEFAULT_POOL_SIZE;
+
+    private final KryoTranscoder transcoder = new KryoTranscoder();
+
+    /** Queued writes by ticket id, until they are acknowledged by the bucket. */
+    private final ConcurrentMap<String, Write> pendingWrites = new ConcurrentHashMap<>();
+
+    /** Orders the writes of each ticket, so that the writer can tell which one is the latest. */
+    private final AtomicLong writeSequence = new AtomicLong();
+
+    private final CountDownLatch writerStopped = new CountDownLatch(1);
+
+    private Subject<Write, Write> writes;
+
+    private CachedTicketCount sessionCount;
+
+    private CachedTicketCount serviceTicketCount;
+
     /**
      * Default constructor.
      */
@@ -75,41 +147,38 @@ public final class CouchbaseTicketRegistry extends AbstractTicketRegistry implem
     @Override
     protected void updateTicket(final Ticket ticket) {
         logger.debug("Updating ticket {}", ticket);
-        try {
-            final SerializableDocument document =
-                    SerializableDocument.create(ticket.getId(), getTimeout(ticket), ticket);
-            couchbase.bucket().upsert(document);
-        } catch (final Exception e) {
-            logger.error("Failed updating {}: {}", ticket, e);
-        }
+        write(ticket);
     }
 
     @Override
     public void addTicket(final Ticket ticketToAdd) {
         logger.debug("Adding ticket {}", ticketToAdd);
-        try {
-            final Ticket ticket = encodeTicket(ticketToAdd);
-            final SerializableDocument document =
-                    SerializableDocument.create(ticket.getId(), getTimeout(ticket), ticket);
-            couchbase.bucket().upsert(document);
-        } catch (final Exception e) {
-            logger.error("Failed adding {}: {}", ticketToAdd, e);
-        }
+        write(ticketToAdd);
     }
 
     @Override
     public Ticket getTicket(final String ticketId) {
         try {
-            final String encTicketId = encodeTicketId(ticketId);
             if (ticketId == null) {
                 return null;
             }
+            final String encTicketId = encodeTicketId(ticketId);
 
-            final SerializableDocument document = couchbase.bucket().get(encTicketId, SerializableDocument.class);
-            if (document != null) {
-                final Ticket t = (Ticket) document.content();
+            final Write pending = this.pendingWrites.get(encTicketId);
+            final Ticket t;
+            if (pending != null) {
+                // decoded from the queued bytes, so that each caller changes a copy of its own
+                t = pending.data != null ? decodeData(pending.data) : null;
+            } else {
+                t = async().get(encTicketId, BinaryDocument.class)
+                        .map(this::decodeDocument)
+                        .timeout(this.timeout, TimeUnit.SECONDS)
+                        .toBlocking()
+                        .singleOrDefault(null);
+            }
+            if (t != null) {
                 logger.debug("Got ticket {} from registry.", t);
-                return getProxiedTicketInstance(t);
+                return getProxiedTicketInstance(decodeTicket(t));
             }
             logger.debug("Ticket {} not found in registry.", encTicketId);
             return null;
@@ -121,22 +190,52 @@ public final class CouchbaseTicketRegistry extends AbstractTicketRegistry implem
 
 
     /**
-     * Starts the couchbase client.
+     * Starts the couchbase client and the writer that sends queued writes to the bucket.
      */
     @PostConstruct
     public void initialize() {
         System.setProperty("com.couchbase.queryEnabled", Boolean.toString(this.queryEnabled));
         couchbase.ensureIndexes(UTIL_DOCUMENT, ALL_VIEWS);
         couchbase.initialize();
+        this.sessionCount = new CachedTicketCount(() -> runQuery(TicketGrantingTicket.PREFIX + '-'), this.countTimeToLive);
+        this.serviceTicketCount = new CachedTicketCount(() -> runQuery(ServiceTicket.PREFIX + '-'), this.countTimeToLive);
+
+        this.transcoder.setPoolSize(this.kryoPoolSize);
+        this.transcoder.initialize();
+
+        this.writes = new SerializedSubject<>(PublishSubject.<Write>create());
+        this.writes.onBackpressureBuffer()
+                .buffer(this.batchWindow, TimeUnit.MILLISECONDS, this.batchSize)
+                .filter(batch -> !batch.isEmpty())
+                .concatMap(batch -> Observable.defer(() -> writeBatch(batch))
+                        .onErrorResumeNext(e -> {
+                            logger.error("Failed writing a batch of {} tickets", batch.size(), e);
+                            batch.forEach(write -> complete(write, Boolean.FALSE));
+                            return Observable.empty();
+                        }))
+                .retry()
+                .subscribe(
+                    written -> { },
+                    e -> {
+                        logger.error("Ticket writer stopped on an error", e);
+                        this.writerStopped.countDown();
+                    },
+                    this.writerStopped::countDown);
     }
 
 
     /**
-     * Stops the couchbase client.
+     * Sends the queued writes to the bucket and stops the couchbase client.
      */
     @PreDestroy
     public void destroy() {
         try {
+            if (this.writes != null) {
+                this.writes.onCompleted();
+                if (!this.writerStopped.await(this.timeout, TimeUnit.SECONDS)) {
+                    logger.warn("{} queued ticket writes were not sent before shutdown", this.pendingWrites.size());
+                }
+            }
             couchbase.shutdown();
         } catch (final Exception e) {
             throw new RuntimeException(e);
@@ -155,30 +254,46 @@ public final class CouchbaseTicketRegistry extends AbstractTicketRegistry implem
 
     @Override
     public int sessionCount() {
-        return runQuery(TicketGrantingTicket.PREFIX + '-');
+        return this.sessionCount.get();
     }
 
     @Override
     public int serviceTicketCount() {
-        return runQuery(ServiceTicket.PREFIX + '-');
+        return this.serviceTicketCount.get();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>The removal is queued like other writes; this method waits for it to be acknowledged
+     * by the bucket, since it reports whether the ticket was found.</p>
+     */
     @Override
     public boolean deleteSingleTicket(final String ticketId) {
         logger.debug("Deleting ticket {}", ticketId);
         try {
-            return couchbase.bucket().remove(ticketId) != null;
+            final Write removal = new Write(ticketId, null, 0);
+            enqueue(removal);
+            return removal.result.get(this.timeout, TimeUnit.SECONDS);
         } catch (final Exception e) {
             logger.error("Failed deleting {}: {}", ticketId, e);
             return false;
         }
     }
 
+    /**
+     * Counts the tickets whose ids start with the given prefix, using the reduce function of the view.
+     * The view index is not updated before the query, since counts are only reported as statistics;
+     * updating the index is left to the indexer of the server.
+     *
+     * @param prefix the ticket id prefix
+     * @return the count
+     */
     private int runQuery(final String prefix) {
         final ViewResult allKeys = couchbase.bucket().query(
                 ViewQuery.from(UTIL_DOCUMENT, "all_tickets")
                         .startKey(prefix)
                         .endKey(prefix + END_TOKEN)
+                        .stale(Stale.TRUE)
                         .reduce());
         final Iterator<ViewRow> iterator = allKeys.iterator();
         if (iterator.hasNext()) {
@@ -189,6 +304,133 @@ public final class CouchbaseTicketRegistry extends AbstractTicketRegistry implem
         }
     }
 
+    /**
+     * Serializes the ticket and queues it to be written with an expiry taken from its expiration policy.
+     *
+     * @param ticketToWrite the ticket
+     */
+    private void write(final Ticket ticketToWrite) {
+        try {
+            final int expiry = getExpiry(ticketToWrite);
+            final Ticket ticket = encodeTicket(ticketToWrite);
+            enqueue(new Write(ticket.getId(), this.transcoder.encode(ticket).getData(), expiry));
+        } catch (final Exception e) {
+            logger.error("Failed writing {}: {}", ticketToWrite, e);
+        }
+    }
+
+    /**
+     * Queues a write. The write is numbered and made the pending write of its ticket atomically,
+     * so that writes queued concurrently for the same ticket are ordered the same way in the map
+     * of pending writes as by their sequence, whatever order they reach the writer in.
+     *
+     * @param write the write
+     */
+    private void enqueue(final Write write) {
+        this.pendingWrites.compute(write.id, (id, previous) -> {
+            write.sequence = this.writeSequence.incrementAndGet();
+            write.replacesPendingTicket = previous != null && previous.data != null;
+            return write;
+        });
+        this.writes.onNext(write);
+    }
+
+    /**
+     * Sends a batch of writes to the bucket. Only the latest write of each ticket is sent:
+     * writes that are no longer the pending write of their ticket have been superseded by a
+     * later one, which is sent instead, even if it reached the writer first. The batches are
+     * sent one after another, so that writes of a ticket are applied in order.
+     *
+     * @param batch the writes
+     * @return the results of the writes
+     */
+    private Observable<Boolean> writeBatch(final List<Write> batch) {
+        final Map<String, Write> latest = new LinkedHashMap<>();
+        for (final Write write : batch) {
+            final Write current = this.pendingWrites.get(write.id);
+            if (current == null || current.sequence != write.sequence) {
+                if (current != null) {
+                    current.replacesPendingTicket |= write.replacesPendingTicket;
+                }
+                write.result.complete(Boolean.TRUE);
+            } else {
+                latest.put(write.id, write);
+            }
+        }
+        logger.trace("Writing {} tickets out of a batch of {} writes", latest.size(), batch.size());
+        return Observable.from(latest.values())
+                .flatMap(write -> send(write)
+                        .onErrorReturn(e -> {
+                            logger.error("Failed writing ticket {}: {}", write.id, e);
+                            return Boolean.FALSE;
+                        })
+                        .doOnNext(result -> complete(write, result)));
+    }
+
+    /**
+     * Completes a write, so that the ticket is read from the bucket again unless a later write is pending.
+     *
+     * @param write  the write
+     * @param result whether the write succeeded
+     */
+    private void complete(final Write write, final Boolean result) {
+        this.pendingWrites.remove(write.id, write);
+        write.result.complete(result);
+    }
+
+    private Observable<Boolean> send(final Write write) {
+        if (write.data == null) {
+            return async().remove(write.id)
+                    .map(document -> Boolean.TRUE)
+                    .onErrorResumeNext(e -> e instanceof DocumentDoesNotExistException
+                            ? Observable.just(write.replacesPendingTicket) : Observable.error(e))
+                    .defaultIfEmpty(Boolean.FALSE);
+        }
+        return async().upsert(BinaryDocument.create(write.id, write.expiry, Unpooled.wrappedBuffer(write.data)))
+                .map(document -> Boolean.TRUE)
+                .defaultIfEmpty(Boolean.FALSE);
+    }
+
+    private Ticket decodeDocument(final BinaryDocument document) {
+        final ByteBuf content = document.content();
+        try {
+            final byte[] data = new byte[content.readableBytes()];
+            content.readBytes(data);
+            return decodeData(data);
+        } finally {
+            ReferenceCountUtil.release(content);
+        }
+    }
+
+    private Ticket decodeData(final byte[] data) {
+        return (Ticket) this.transcoder.decode(new CachedData(0, data, CachedData.MAX_SIZE));
+    }
+
+    /**
+     * Gets the expiry of the document of a ticket, i.e. the time its expiration policy reports it expires at.
+     * Tickets whose expiration policy cannot tell are given the configured timeout of their type.
+     *
+     * @param ticket the ticket
+     * @return the expiry in seconds, as a unix time beyond 30 days, or 0 if the ticket never expires
+     */
+    private int getExpiry(final Ticket ticket) {
+        final ZonedDateTime expirationTime = ticket instanceof AbstractTicket
+                ? ((AbstractTicket) ticket).getExpirationTime() : null;
+        if (expirationTime == null) {
+            return getTimeout(ticket);
+        }
+        final long seconds = Math.max(1, Duration.between(ZonedDateTime.now(ZoneOffset.UTC), expirationTime).getSeconds() + 1);
+        if (seconds <= MAX_RELATIVE_EXPIRY) {
+            return (int) seconds;
+        }
+        final long epochSecond = expirationTime.toEpochSecond();
+        return epochSecond > Integer.MAX_VALUE ? 0 : (int) epochSecond;
+    }
+
+    private AsyncBucket async() {
+        return couchbase.bucket().async();
+    }
+
 
     /**
      * Sets the time after which a ticket granting ticket will be
@@ -212,17 +454,46 @@ public final class CouchbaseTicketRegistry extends AbstractTicketRegistry implem
     }
 
 
+    /**
+     * Sets the time a ticket count is cached for.
+     *
+     * @param countTimeToLive time to live of ticket counts in seconds.
+     */
+    public void setCountTimeToLive(final int countTimeToLive) {
+        this.countTimeToLive = countTimeToLive;
+    }
+
+
+    /**
+     * Sets the number of writes sent to the bucket at once.
+     *
+     * @param batchSize the maximum number of writes in a batch.
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Sets the time writes are collected for before they are sent to the bucket.
+     *
+     * @param batchWindow the batch window in milliseconds.
+     */
+    public void setBatchWindow(final long batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+
     /**
      * @param t a CAS ticket.
-     * @return the ticket timeout for the ticket in the registry.
+     * @return the ticket timeout for the ticket in the registry; tickets other than service tickets
+     * are given the ticket granting ticket timeout.
      */
     private int getTimeout(final Ticket t) {
-        if (t instanceof TicketGrantingTicket) {
-            return tgtTimeout;
-        } else if (t instanceof ServiceTicket) {
+        if (t instanceof ServiceTicket) {
             return stTimeout;
         }
-        throw new IllegalArgumentException("Invalid ticket type");
+        return tgtTimeout;
     }
 
 
@@ -232,5 +503,29 @@ public final class CouchbaseTicketRegistry extends AbstractTicketRegistry implem
     public void setCouchbaseClientFactory(final CouchbaseClientFactory couchbase) {
         this.couchbase = couchbase;
     }
-}
 
+    /**
+     * A queued write of a serialized ticket, or removal when there is no data.
+     */
+    private static final class Write {
+        private final String id;
+
+        private final byte[] data;
+
+        private final int expiry;
+
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        /** Position of this write among the writes of this node, set when it is queued. */
+        private long sequence;
+
+        /** Whether a ticket written by this node was queued when this write was. */
+        private volatile boolean replacesPendingTicket;
+
+        Write(final String id, final byte[] data, final int expiry) {
+            this.id = id;
+            this.data = data;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.authentication.TestUtils;
+import org.jasig.cas.couchbase.core.CouchbaseClientFactory;
+import org.jasig.cas.ticket.ExpirationPolicy;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.support.MultiTimeUseOrTimeoutExpirationPolicy;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.BinaryDocument;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+import rx.Observable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for {@link CouchbaseTicketRegistry}, against a mocked bucket that keeps documents in memory.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class CouchbaseTicketRegistryTests {
+
+    private static final int TGT_TIMEOUT = 7200;
+
+    private final Map<String, byte[]> documents = new ConcurrentHashMap<>();
+
+    private AsyncBucket async;
+
+    private CouchbaseTicketRegistry registry;
+
+    @Before
+    public void setUp() {
+        this.async = mock(AsyncBucket.class);
+        when(this.async.upsert(any(BinaryDocument.class))).thenAnswer(invocation -> {
+            final BinaryDocument document = (BinaryDocument) invocation.getArguments()[0];
+            final ByteBuf content = document.content();
+            final byte[] data = new byte[content.readableBytes()];
+            content.getBytes(content.readerIndex(), data);
+            content.release();
+            this.documents.put(document.id(), data);
+            return Observable.just(document);
+        });
+        when(this.async.get(anyString(), eq(BinaryDocument.class))).thenAnswer(invocation -> {
+            final String id = (String) invocation.getArguments()[0];
+            final byte[] data = this.documents.get(id);
+            return data == null ? Observable.empty() : Observable.just(BinaryDocument.create(id, Unpooled.copiedBuffer(data)));
+        });
+        when(this.async.remove(anyString())).thenAnswer(invocation -> {
+            final String id = (String) invocation.getArguments()[0];
+            return this.documents.remove(id) == null
+                    ? Observable.error(new DocumentDoesNotExistException()) : Observable.just(JsonDocument.create(id));
+        });
+
+        final Bucket bucket = mock(Bucket.class);
+        when(bucket.async()).thenReturn(this.async);
+        final CouchbaseClientFactory factory = mock(CouchbaseClientFactory.class);
+        when(factory.bucket()).thenReturn(bucket);
+
+        this.registry = new CouchbaseTicketRegistry();
+        this.registry.setCouchbaseClientFactory(factory);
+        this.registry.setTgtTimeout(TGT_TIMEOUT);
+        this.registry.setStTimeout(10);
+    }
+
+    @After
+    public void tearDown() {
+        this.registry.destroy();
+    }
+
+    @Test
+    public void verifyTicketIsReadBackFromBucket() {
+        this.registry.initialize();
+        final TicketGrantingTicket tgt = newTicketGrantingTicket("TGT-1", new NeverExpiresExpirationPolicy());
+        this.registry.addTicket(tgt);
+
+        verify(this.async, timeout(1000)).upsert(any(BinaryDocument.class));
+        assertTrue(this.documents.containsKey(tgt.getId()));
+        final Ticket ticket = this.registry.getTicket(tgt.getId());
+        assertEquals(tgt, ticket);
+        assertEquals(tgt.getAuthentication().getPrincipal(), ((TicketGrantingTicket) ticket).getAuthentication().getPrincipal());
+    }
+
+    @Test
+    public void verifyDocumentExpiresWithTicket() {
+        this.registry.initialize();
+        this.registry.addTicket(newTicketGrantingTicket("TGT-1", new MultiTimeUseOrTimeoutExpirationPolicy(10, 60, TimeUnit.SECONDS)));
+        this.registry.addTicket(newTicketGrantingTicket("TGT-2", new NeverExpiresExpirationPolicy()));
+
+        final ArgumentCaptor<BinaryDocument> documents = ArgumentCaptor.forClass(BinaryDocument.class);
+        verify(this.async, timeout(1000).times(2)).upsert(documents.capture());
+        for (final BinaryDocument document : documents.getAllValues()) {
+            if ("TGT-1".equals(document.id())) {
+                assertTrue(document.expiry() >= 59 && document.expiry() <= 61);
+            } else {
+                assertEquals(0, document.expiry());
+            }
+        }
+    }
+
+    @Test
+    public void verifyDeleteReportsWhetherTicketExisted() {
+        this.registry.initialize();
+        final TicketGrantingTicket tgt = newTicketGrantingTicket("TGT-1", new NeverExpiresExpirationPolicy());
+        this.registry.addTicket(tgt);
+
+        assertTrue(this.registry.deleteTicket(tgt.getId()));
+        assertNull(this.registry.getTicket(tgt.getId()));
+        assertFalse(this.registry.deleteTicket("TGT-does-not-exist"));
+    }
+
+    @Test
+    public void verifyWritesOfTicketAreCoalescedInBatch() {
+        this.registry.setBatchWindow(500);
+        this.registry.initialize();
+        final TicketGrantingTicket tgt = newTicketGrantingTicket("TGT-1", new NeverExpiresExpirationPolicy());
+        this.registry.addTicket(tgt);
+        final ServiceTicket st = tgt.grantServiceTicket("ST-1", TestUtils.getService(),
+                new NeverExpiresExpirationPolicy(), true, false);
+        this.registry.updateTicket(tgt);
+
+        tgt.grantServiceTicket("ST-2", TestUtils.getService(), new NeverExpiresExpirationPolicy(), true, false);
+        final TicketGrantingTicket pending = (TicketGrantingTicket) this.registry.getTicket(tgt.getId());
+        assertEquals(1, pending.getServices().size());
+
+        verify(this.async, timeout(2000)).upsert(any(BinaryDocument.class));
+        verify(this.async, after(200).times(1)).upsert(any(BinaryDocument.class));
+        final TicketGrantingTicket stored = (TicketGrantingTicket) this.registry.getTicket(tgt.getId());
+        assertTrue(stored.getServices().containsKey(st.getId()));
+    }
+
+    @Test
+    public void verifyWriterCarriesOnAfterFailedBatch() {
+        final TicketGrantingTicket tgt1 = newTicketGrantingTicket("TGT-1", new NeverExpiresExpirationPolicy());
+        final TicketGrantingTicket tgt2 = newTicketGrantingTicket("TGT-2", new NeverExpiresExpirationPolicy());
+        doThrow(new IllegalStateException("Bucket closed")).when(this.async).upsert(argThat(new ArgumentMatcher<BinaryDocument>() {
+            @Override
+            public boolean matches(final Object argument) {
+                return "TGT-1".equals(((BinaryDocument) argument).id());
+            }
+        }));
+        this.registry.initialize();
+
+        this.registry.addTicket(tgt1);
+        verify(this.async, timeout(1000)).upsert(any(BinaryDocument.class));
+        this.registry.addTicket(tgt2);
+
+        verify(this.async, timeout(1000).times(2)).upsert(any(BinaryDocument.class));
+        assertTrue(this.documents.containsKey(tgt2.getId()));
+        assertNull(this.registry.getTicket(tgt1.getId()));
+    }
+
+    private static TicketGrantingTicket newTicketGrantingTicket(final String id, final ExpirationPolicy policy) {
+        return new TicketGrantingTicketImpl(id, TestUtils.getAuthentication(), policy);
+    }
+}
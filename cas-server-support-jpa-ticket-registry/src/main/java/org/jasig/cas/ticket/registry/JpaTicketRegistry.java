@@ -25,14 +25,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.context.support.SpringBeanAutowiringSupport;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
 import javax.persistence.LockModeType;
+import javax.persistence.LockTimeoutException;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PessimisticLockException;
 import javax.validation.constraints.NotNull;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -40,11 +50,22 @@ import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * JPA implementation of a CAS {@link TicketRegistry}. This implementation of
  * ticket registry is suitable for HA environments.
+ * <p>
+ * Tickets are read without database locks; concurrent updates of the same ticket are detected
+ * through the ticket version. Changes made to ticket-granting tickets through their delegators, such as
+ * granting a service ticket, are written in a transaction of their own. When that transaction finds the
+ * ticket updated in the meantime, the ticket is loaded again, locked for the length of that short transaction,
+ * and the change is applied once more, up to {@code ticketreg.database.jpa.optimistic.maxAttempts} times.
+ * The copy of the ticket held by the calling transaction is then refreshed, so that the caller does not
+ * overwrite the update when it commits.
+ * The cleaner removes expired tickets with set-based statements keyed on the indexed expiration
+ * time of each ticket, in chunks of {@code ticketreg.database.cleaner.chunkSize} tickets per transaction.
  *
  * @author Scott Battaglia
  * @author Marvin S. Addison
@@ -53,6 +74,12 @@ import java.util.stream.Collectors;
 @Component("jpaTicketRegistry")
 public final class JpaTicketRegistry extends AbstractTicketRegistry implements Job {
 
+    /** Default number of expired tickets removed per cleaner transaction. */
+    public static final int DEFAULT_CLEANER_CHUNK_SIZE = 500;
+
+    /** Default number of attempts to write a change of a ticket-granting ticket. */
+    public static final int DEFAULT_MAX_UPDATE_ATTEMPTS = 5;
+
     @Value("${ticket.registry.cleaner.repeatinterval:5000}")
     private int refreshInterval;
 
@@ -75,19 +102,118 @@ public final class JpaTicketRegistry extends AbstractTicketRegistry implements J
     @Qualifier("jpaLockingStrategy")
     private LockingStrategy jpaLockingStrategy;
 
-    @Value("${ticketreg.database.jpa.locking.tgt.enabled:true}")
-    private boolean lockTgt = true;
+    @Autowired
+    @Qualifier("ticketTransactionManager")
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${ticketreg.database.cleaner.chunkSize:" + DEFAULT_CLEANER_CHUNK_SIZE + '}')
+    private int cleanerChunkSize = DEFAULT_CLEANER_CHUNK_SIZE;
+
+    @Value("${ticketreg.database.jpa.optimistic.maxAttempts:" + DEFAULT_MAX_UPDATE_ATTEMPTS + '}')
+    private int maxUpdateAttempts = DEFAULT_MAX_UPDATE_ATTEMPTS;
 
     @NotNull
     @PersistenceContext(unitName = "ticketEntityManagerFactory")
     private EntityManager entityManager;
 
+    /**
+     * Updates a ticket in the transaction of the caller, or in a transaction of its own if there is none,
+     * since callers such as the {@link TieredTicketRegistry} reach this method behind the transactional proxy.
+     *
+     * @param ticket the ticket
+     */
     @Override
     public void updateTicket(final Ticket ticket) {
-        entityManager.merge(ticket);
+        inTransaction(status -> entityManager.merge(ticket));
         logger.debug("Updated ticket [{}].", ticket);
     }
 
+    @Override
+    protected void writeBufferedTicketUpdate(final Ticket ticket) {
+        inTransaction(status -> {
+            updateTicket(ticket);
+            return null;
+        });
+    }
+
+    @Override
+    protected <T extends TicketGrantingTicket> void updateTicketFromDelegator(final T ticket, final Consumer<T> change) {
+        if (getTicketUpdateBuffer() != null) {
+            super.updateTicketFromDelegator(ticket, change);
+            return;
+        }
+
+        for (int attempt = 1;; attempt++) {
+            final boolean reload = attempt > 1;
+            try {
+                final boolean stored = inNewTransaction(status -> {
+                    if (reload) {
+                        change.accept(getTicketForUpdate(ticket));
+                    } else if (entityManager.find(TicketGrantingTicketImpl.class, ticket.getId()) != null) {
+                        entityManager.merge(ticket);
+                    } else {
+                        return false;
+                    }
+                    entityManager.flush();
+                    return true;
+                });
+                if (!stored) {
+                    // added by the calling transaction, which writes the ticket as changed when it commits
+                    updateTicket(ticket);
+                    return;
+                }
+                break;
+            } catch (final RuntimeException e) {
+                if (attempt >= this.maxUpdateAttempts || !isConcurrencyFailure(e)) {
+                    throw e;
+                }
+                logger.debug("Ticket [{}] was updated concurrently. Applying the change to its latest version...", ticket.getId(), e);
+            }
+        }
+
+        if (TransactionSynchronizationManager.isActualTransactionActive() && entityManager.contains(ticket)) {
+            entityManager.refresh(ticket);
+        }
+    }
+
+    /**
+     * Loads the latest version of a ticket-granting ticket and locks it until the transaction completes.
+     *
+     * @param ticket the ticket
+     * @param <T>    the type of the ticket
+     * @return the latest version of the ticket
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends TicketGrantingTicket> T getTicketForUpdate(final T ticket) {
+        final TicketGrantingTicketImpl latest = entityManager.find(TicketGrantingTicketImpl.class, ticket.getId(),
+                LockModeType.PESSIMISTIC_WRITE);
+        if (latest == null || latest.isExpired()) {
+            throw new IllegalStateException("Ticket [" + ticket.getId() + "] was expired or removed by a concurrent request");
+        }
+        return (T) latest;
+    }
+
+    /**
+     * Determines whether the given exception, or any of its causes, indicates a concurrent
+     * update of the same ticket by another transaction.
+     *
+     * @param e the exception
+     * @return true if the change may be applied again to the latest version of the ticket
+     */
+    private static boolean isConcurrencyFailure(final Throwable e) {
+        Throwable cause = e;
+        while (cause != null) {
+            if (cause instanceof ConcurrencyFailureException
+                    || cause instanceof OptimisticLockException
+                    || cause instanceof PessimisticLockException
+                    || cause instanceof LockTimeoutException) {
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
     @Override
     public void addTicket(final Ticket ticket) {
         entityManager.persist(ticket);
@@ -127,8 +253,7 @@ public final class JpaTicketRegistry extends AbstractTicketRegistry implements J
             if (ticketId.startsWith(TicketGrantingTicket.PREFIX)
                     || ticketId.startsWith(ProxyGrantingTicket.PROXY_GRANTING_TICKET_PREFIX)) {
                 // There is no need to distinguish between TGTs and PGTs since PGTs inherit from TGTs
-                return entityManager.find(TicketGrantingTicketImpl.class, ticketId,
-                        lockTgt ? LockModeType.PESSIMISTIC_WRITE : null);
+                return entityManager.find(TicketGrantingTicketImpl.class, ticketId);
             } else if (ticketId.startsWith(OAuthCode.PREFIX) || ticketId.startsWith(AccessToken.PREFIX)) {
                 return entityManager.find(OAuthCodeImpl.class, ticketId);
             }
@@ -172,8 +297,19 @@ public final class JpaTicketRegistry extends AbstractTicketRegistry implements J
         return countToInt(entityManager.createQuery("select count(t) from ServiceTicketImpl t").getSingleResult());
     }
 
+    /**
+     * Removes a ticket in the transaction of the caller, or in a transaction of its own if there is none,
+     * for the same reason as {@link #updateTicket(Ticket)}.
+     *
+     * @param ticketId the ticket id
+     * @return true if the ticket and the tickets it granted were removed
+     */
     @Override
     public boolean deleteSingleTicket(final String ticketId) {
+        return inTransaction(status -> removeSingleTicket(ticketId));
+    }
+
+    private boolean removeSingleTicket(final String ticketId) {
         final Ticket ticket = getTicket(ticketId);
         int failureCount = 0;
 
@@ -301,24 +437,8 @@ public final class JpaTicketRegistry extends AbstractTicketRegistry implements J
             logger.debug("Acquired lock.  Proceeding with cleanup.");
 
             logger.info("Beginning ticket cleanup...");
-            this.getTickets().stream()
-                    .filter(ticket -> ticket.isExpired())
-                    .collect(Collectors.toSet())
-                    .forEach(ticket -> {
-                        if (ticket instanceof TicketGrantingTicket) {
-                            logger.debug("Cleaning up expired ticket-granting ticket [{}]", ticket.getId());
-                            logoutManager.performLogout((TicketGrantingTicket) ticket);
-                            deleteTicket(ticket.getId());
-                        } else if (ticket instanceof OAuthToken) {
-                            logger.debug("Cleaning up expired OAuth token [{}]", ticket.getId());
-                            deleteTicket(ticket.getId());
-                        } else if (ticket instanceof ServiceTicket) {
-                            logger.debug("Cleaning up expired service ticket [{}]", ticket.getId());
-                            deleteTicket(ticket.getId());
-                        } else {
-                            logger.warn("Unknown ticket type [{} found to clean", ticket.getClass().getSimpleName());
-                        }
-                });
+            final int count = cleanExpiredTickets();
+            logger.info("{} expired tickets removed.", count);
         } catch (final Exception e) {
             logger.error(e.getMessage(), e);
         } finally {
@@ -329,6 +449,156 @@ public final class JpaTicketRegistry extends AbstractTicketRegistry implements J
 
     }
 
+    /**
+     * Removes expired tickets along with the tickets they granted. Expired ticket-granting tickets
+     * are logged out before they are removed. Tickets whose expiration time is recorded are found
+     * and removed with set-based statements; tickets whose expiration policy cannot tell their
+     * expiration time are loaded and checked one by one.
+     *
+     * @return the number of removed tickets, excluding the tickets removed along with their parents
+     */
+    public int cleanExpiredTickets() {
+        final ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        int count = 0;
+
+        count += cleanInChunks(() -> entityManager.createQuery(
+                "select t.id from TicketGrantingTicketImpl t where t.expirationTime <= :now", String.class)
+                .setParameter("now", now)
+                .setMaxResults(this.cleanerChunkSize)
+                .getResultList(), this::removeTicketGrantingTickets);
+        count += cleanInChunks(() -> entityManager.createQuery(
+                "select s.id from ServiceTicketImpl s where s.expirationTime <= :now", String.class)
+                .setParameter("now", now)
+                .setMaxResults(this.cleanerChunkSize)
+                .getResultList(), ids -> removeByIds("ServiceTicketImpl", ids));
+        count += cleanInChunks(() -> entityManager.createQuery(
+                "select o.id from OAuthCodeImpl o where o.expirationTime <= :now", String.class)
+                .setParameter("now", now)
+                .setMaxResults(this.cleanerChunkSize)
+                .getResultList(), ids -> removeByIds("OAuthCodeImpl", ids));
+
+        count += cleanUnknownExpiration("TicketGrantingTicketImpl", this::removeTicketGrantingTickets);
+        count += cleanUnknownExpiration("ServiceTicketImpl", ids -> removeByIds("ServiceTicketImpl", ids));
+        count += cleanUnknownExpiration("OAuthCodeImpl", ids -> removeByIds("OAuthCodeImpl", ids));
+        return count;
+    }
+
+    /**
+     * Repeatedly finds and removes a chunk of expired tickets, each in its own transaction,
+     * until fewer than a full chunk is found.
+     *
+     * @param finder  finds the ids of the next chunk of expired tickets
+     * @param remover removes the tickets with the given ids
+     * @return the number of removed tickets
+     */
+    private int cleanInChunks(final TransactionCallback<List<String>> finder, final TicketRemover remover) {
+        int count = 0;
+        int found;
+        do {
+            found = inTransaction(status -> {
+                final List<String> ids = finder.doInTransaction(status);
+                if (!ids.isEmpty()) {
+                    remover.remove(ids);
+                }
+                return ids.size();
+            });
+            count += found;
+        } while (found >= this.cleanerChunkSize);
+        return count;
+    }
+
+    /**
+     * Removes expired tickets of the given entity whose expiration time is not recorded,
+     * by loading them and asking each for its expiration.
+     *
+     * @param entity  the ticket entity name
+     * @param remover removes the tickets with the given ids
+     * @return the number of removed tickets
+     */
+    private int cleanUnknownExpiration(final String entity, final TicketRemover remover) {
+        final List<String> expired = inTransaction(status -> entityManager.createQuery(
+                "select t from " + entity + " t where t.expirationTime is null", Ticket.class)
+                .getResultList()
+                .stream()
+                .filter(Ticket::isExpired)
+                .map(Ticket::getId)
+                .collect(Collectors.toList()));
+        for (int i = 0; i < expired.size(); i += this.cleanerChunkSize) {
+            final List<String> chunk = expired.subList(i, Math.min(i + this.cleanerChunkSize, expired.size()));
+            inTransaction(status -> {
+                remover.remove(chunk);
+                return null;
+            });
+        }
+        return expired.size();
+    }
+
+    /**
+     * Logs out and removes the given ticket-granting tickets, along with the proxy-granting tickets
+     * they granted and all service and proxy tickets granted by any of them. Children are removed
+     * before their parents, level by level, with one statement per level.
+     *
+     * @param ids the ids of the ticket-granting tickets
+     */
+    private void removeTicketGrantingTickets(final List<String> ids) {
+        final List<List<String>> levels = new ArrayList<>();
+        final List<String> all = new ArrayList<>();
+        List<String> level = ids;
+        while (!level.isEmpty()) {
+            levels.add(level);
+            all.addAll(level);
+            level = entityManager.createQuery(
+                    "select t.id from TicketGrantingTicketImpl t where t.ticketGrantingTicket.id in :ids", String.class)
+                    .setParameter("ids", level)
+                    .getResultList();
+        }
+
+        entityManager.createQuery("select t from TicketGrantingTicketImpl t where t.id in :ids", TicketGrantingTicketImpl.class)
+                .setParameter("ids", all)
+                .getResultList()
+                .forEach(ticket -> {
+                    logger.debug("Cleaning up expired ticket-granting ticket [{}]", ticket.getId());
+                    logoutManager.performLogout(ticket);
+                });
+        entityManager.clear();
+
+        entityManager.createQuery("delete from ServiceTicketImpl s where s.ticketGrantingTicket.id in :ids")
+                .setParameter("ids", all)
+                .executeUpdate();
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            removeByIds("TicketGrantingTicketImpl", levels.get(i));
+        }
+    }
+
+    private void removeByIds(final String entity, final List<String> ids) {
+        final int count = entityManager.createQuery("delete from " + entity + " t where t.id in :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
+        logger.debug("Removed {} expired tickets of type {}", count, entity);
+    }
+
+    private <T> T inTransaction(final TransactionCallback<T> callback) {
+        return new TransactionTemplate(this.transactionManager).execute(callback);
+    }
+
+    private <T> T inNewTransaction(final TransactionCallback<T> callback) {
+        final TransactionTemplate template = new TransactionTemplate(this.transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template.execute(callback);
+    }
+
+    /**
+     * Removes a chunk of tickets by id.
+     */
+    @FunctionalInterface
+    private interface TicketRemover {
+        void remove(List<String> ids);
+    }
+
+    public void setMaxUpdateAttempts(final int maxUpdateAttempts) {
+        this.maxUpdateAttempts = maxUpdateAttempts;
+    }
+
     private boolean shouldScheduleCleanerJob() {
         if (this.startDelay > 0 && this.applicationContext.getParent() == null && scheduler != null) {
             logger.debug("Found CAS servlet application context for ticket management");
@@ -12,12 +12,14 @@ import org.jasig.cas.ticket.TicketGrantingTicketImpl;
 import org.jasig.cas.ticket.UniqueTicketIdGenerator;
 import org.jasig.cas.ticket.proxy.ProxyGrantingTicket;
 import org.jasig.cas.ticket.proxy.ProxyTicket;
+import org.jasig.cas.ticket.support.AlwaysExpiresExpirationPolicy;
 import org.jasig.cas.ticket.support.HardTimeoutExpirationPolicy;
 import org.jasig.cas.ticket.support.MultiTimeUseOrTimeoutExpirationPolicy;
 import org.jasig.cas.util.DefaultUniqueTicketIdGenerator;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.quartz.Job;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
@@ -63,11 +65,14 @@ public class JpaTicketRegistryTests {
 
     private TicketRegistry jpaTicketRegistry;
 
+    private Job jpaTicketRegistryCleaner;
+
     @Before
     public void setup() {
         final ClassPathXmlApplicationContext ctx = new
             ClassPathXmlApplicationContext("classpath:/jpaSpringContext.xml");
         this.jpaTicketRegistry = ctx.getBean("jpaTicketRegistry", TicketRegistry.class);
+        this.jpaTicketRegistryCleaner = ctx.getBean("jpaTicketRegistry", Job.class);
         this.txManager = ctx.getBean("ticketTransactionManager", PlatformTransactionManager.class);
     }
 
@@ -160,6 +165,31 @@ public class JpaTicketRegistryTests {
         assertEquals(CONCURRENT_SIZE, tgtFromDb.getCountOfUses());
     }
 
+    @Test
+    public void verifyCleanerRemovesExpiredTicketsWithTheirChildren() throws Exception {
+        final TicketGrantingTicket expiredTgt = new TicketGrantingTicketImpl(
+                ID_GENERATOR.getNewTicketId(TicketGrantingTicket.PREFIX),
+                TestUtils.getAuthentication(),
+                new AlwaysExpiresExpirationPolicy());
+        addTicketInTransaction(expiredTgt);
+        final ServiceTicket st = grantServiceTicketInTransaction(expiredTgt);
+        final ProxyGrantingTicket pgt = grantProxyGrantingTicketInTransaction(st);
+        final ProxyTicket pt = grantProxyTicketInTransaction(pgt);
+
+        final TicketGrantingTicket validTgt = newTGT();
+        addTicketInTransaction(validTgt);
+        final ServiceTicket validSt = grantServiceTicketInTransaction(validTgt);
+
+        this.jpaTicketRegistryCleaner.execute(null);
+
+        assertNull(getTicketInTransaction(expiredTgt.getId()));
+        assertNull(getTicketInTransaction(st.getId()));
+        assertNull(getTicketInTransaction(pgt.getId()));
+        assertNull(getTicketInTransaction(pt.getId()));
+        assertNotNull(getTicketInTransaction(validTgt.getId()));
+        assertNotNull(getTicketInTransaction(validSt.getId()));
+    }
+
 
     static TicketGrantingTicket newTGT() {
         final Principal principal = new DefaultPrincipalFactory().createPrincipal(
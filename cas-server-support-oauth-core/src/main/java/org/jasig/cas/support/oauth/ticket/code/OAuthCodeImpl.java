@@ -14,6 +14,7 @@ import javax.persistence.Column;
 import javax.persistence.DiscriminatorColumn;
 import javax.persistence.DiscriminatorValue;
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
@@ -25,7 +26,7 @@ import javax.validation.constraints.NotNull;
  * @since 4.3.0
  */
 @Entity
-@Table(name="OAUTH_TOKENS")
+@Table(name="OAUTH_TOKENS", indexes = @Index(name="OAUTH_TOKENS_EXPIRATION_IDX", columnList="EXPIRATION_TIME"))
 @DiscriminatorColumn(name="TYPE")
 @DiscriminatorValue(OAuthCode.PREFIX)
 public class OAuthCodeImpl extends AbstractTicket implements OAuthCode {
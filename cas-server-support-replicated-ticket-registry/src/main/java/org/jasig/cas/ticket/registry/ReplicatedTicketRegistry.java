@@ -0,0 +1,493 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.registry.support.kryo.KryoTranscoder;
+
+import net.spy.memcached.CachedData;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ticket registry for small clusters that keeps all tickets in memory on every node, in a
+ * {@link DefaultTicketRegistry}, and replicates every change to the other nodes over TCP,
+ * without any external infrastructure.
+ * <p>
+ * Changes are applied locally, then queued and sent asynchronously to each peer in batches, with tickets
+ * encoded by Kryo; peers acknowledge each batch, and batches are sent again until they are acknowledged.
+ * Every change carries a version made of the time it was made at and the id of the node, which must be
+ * configured and unique to each node; nodes apply a change only if it is newer than what they hold for the
+ * ticket, and keep removed tickets as tombstones for a while, so that changes may be replayed or received out
+ * of order. A node that starts asks its peers for their tickets, and a peer that misses changes because its
+ * queue overflowed is sent all tickets once it can be reached again, in frames of bounded size.
+ * </p>
+ * <p>
+ * Frames are authenticated with a secret shared by all nodes, but not encrypted; replication traffic should
+ * stay on a private network. Expired tickets are removed by each node on its own.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@Component("replicatedTicketRegistry")
+public final class ReplicatedTicketRegistry extends AbstractTicketRegistry {
+
+    private static final int NODE_BITS = 10;
+
+    private static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private static final int MAX_FRAME_SIZE = 4 * 1024 * 1024;
+
+    private final DefaultTicketRegistry store = new DefaultTicketRegistry();
+
+    /** Version and removal state of every ticket known to this node. */
+    private final Map<String, TicketVersion> versions = new ConcurrentHashMap<>();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final KryoTranscoder transcoder = new KryoTranscoder();
+
+    private final List<ReplicationPeer> peers = new ArrayList<>();
+
+    private final ExecutorService receivers = Executors.newCachedThreadPool(r -> {
+        final Thread thread = new Thread(r, "ReplicatedTicketRegistryReceiver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "ReplicatedTicketRegistryCleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${ticketreg.replicated.bindAddress:0.0.0.0}")
+    private String bindAddress = "0.0.0.0";
+
+    @Value("${ticketreg.replicated.port:7911}")
+    private int port = 7911;
+
+    @Value("${ticketreg.replicated.peers:}")
+    private String peerAddresses = "";
+
+    @Value("${ticketreg.replicated.nodeId:-1}")
+    private int nodeId = -1;
+
+    @Value("${ticketreg.replicated.secret:}")
+    private String secret = "";
+
+    @Value("${ticketreg.replicated.batch.size:100}")
+    private int batchSize = 100;
+
+    @Value("${ticketreg.replicated.batch.windowInMillis:5}")
+    private long batchWindowInMillis = 5;
+
+    @Value("${ticketreg.replicated.queue.size:100000}")
+    private int queueSize = 100000;
+
+    @Value("${ticketreg.replicated.timeoutInMillis:5000}")
+    private int timeoutInMillis = 5000;
+
+    @Value("${ticketreg.replicated.tombstone.timeToLiveInSeconds:600}")
+    private long tombstoneTimeToLiveInSeconds = 600;
+
+    @Value("${ticketreg.replicated.cleaner.intervalInSeconds:60}")
+    private long cleanerIntervalInSeconds = 60;
+
+    private ReplicationProtocol protocol;
+
+    private ServerSocket serverSocket;
+
+    private volatile boolean running;
+
+    /**
+     * Starts listening for changes from peers, asks the peers for their tickets, and starts replicating.
+     */
+    @PostConstruct
+    public void init() {
+        final List<InetSocketAddress> addresses = parsePeers(this.peerAddresses);
+        if (addresses.isEmpty()) {
+            logger.info("No replication peers are defined; tickets are kept on this node only");
+            return;
+        }
+        if (StringUtils.isBlank(this.secret)) {
+            throw new IllegalStateException("ticketreg.replicated.secret must be defined to replicate tickets to peers");
+        }
+        if (this.nodeId < 0 || this.nodeId > MAX_NODE_ID) {
+            throw new IllegalStateException("ticketreg.replicated.nodeId must be set to a number between 0 and " + MAX_NODE_ID
+                    + " that is unique to each node to replicate tickets to peers");
+        }
+        try {
+            this.transcoder.initialize();
+            this.protocol = new ReplicationProtocol(this.secret, MAX_FRAME_SIZE);
+            this.serverSocket = new ServerSocket(this.port, 0, InetAddress.getByName(this.bindAddress));
+            this.running = true;
+            this.receivers.execute(this::accept);
+            logger.info("Listening for replicated tickets on [{}] as node {}", this.serverSocket.getLocalSocketAddress(), this.nodeId);
+
+            for (final InetSocketAddress address : addresses) {
+                synchronize(address);
+            }
+            for (final InetSocketAddress address : addresses) {
+                this.peers.add(new ReplicationPeer(address, this.protocol, this::snapshot, this.queueSize,
+                        this.batchSize, this.batchWindowInMillis, this.timeoutInMillis));
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException("Cannot listen for replicated tickets on " + this.bindAddress + ':' + this.port, e);
+        }
+        if (this.cleanerIntervalInSeconds > 0) {
+            this.cleaner.scheduleWithFixedDelay(this::clean, this.cleanerIntervalInSeconds,
+                    this.cleanerIntervalInSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Sends queued changes to peers for a while, then stops replicating.
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.running = false;
+        this.peers.forEach(peer -> peer.shutdown(this.timeoutInMillis));
+        this.cleaner.shutdownNow();
+        if (this.serverSocket != null) {
+            try {
+                this.serverSocket.close();
+            } catch (final IOException e) {
+                logger.trace(e.getMessage(), e);
+            }
+        }
+        this.receivers.shutdownNow();
+    }
+
+    @Override
+    public void addTicket(final Ticket ticket) {
+        final long version = nextVersion();
+        if (applyPut(ticket.getId(), ticket, version)) {
+            replicate(put(ticket, version));
+        }
+    }
+
+    @Override
+    public Ticket getTicket(final String ticketId) {
+        if (ticketId == null) {
+            return null;
+        }
+        return getProxiedTicketInstance(getLocalTicket(ticketId));
+    }
+
+    @Override
+    protected void updateTicket(final Ticket ticket) {
+        addTicket(ticket);
+    }
+
+    @Override
+    public boolean deleteSingleTicket(final String ticketId) {
+        if (this.store.getTicket(ticketId) == null) {
+            return false;
+        }
+        final long version = nextVersion();
+        if (applyDelete(ticketId, version)) {
+            replicate(ReplicationEvent.delete(ticketId, version));
+        }
+        return true;
+    }
+
+    @Override
+    public Collection<Ticket> getTickets() {
+        return this.store.getTickets();
+    }
+
+    @Override
+    public int sessionCount() {
+        return this.store.sessionCount();
+    }
+
+    @Override
+    public int serviceTicketCount() {
+        return this.store.serviceTicketCount();
+    }
+
+    /**
+     * Tickets are stored with copies of their granting tickets, which other nodes may have
+     * changed since, so granting tickets are looked up again to check whether they have expired.
+     *
+     * @return true
+     */
+    @Override
+    protected boolean needsCallback() {
+        return true;
+    }
+
+    /**
+     * Gets the number of changes waiting to be sent to each peer.
+     *
+     * @return the backlog of each peer, keyed by address
+     */
+    public Map<String, Integer> getReplicationBacklog() {
+        final Map<String, Integer> backlog = new ConcurrentHashMap<>();
+        this.peers.forEach(peer -> backlog.put(peer.getAddress().toString(), peer.getBacklog()));
+        return backlog;
+    }
+
+    /**
+     * Applies a change made by this node or received from a peer, unless this node already
+     * holds a newer version of the ticket.
+     *
+     * @param event the change
+     */
+    void apply(final ReplicationEvent event) {
+        if (event.getOperation() == ReplicationEvent.Operation.DELETE) {
+            applyDelete(event.getTicketId(), event.getVersion());
+        } else {
+            final Ticket ticket = (Ticket) this.transcoder.decode(new CachedData(event.getFlags(), event.getData(), CachedData.MAX_SIZE));
+            applyPut(event.getTicketId(), ticket, event.getVersion());
+        }
+        this.clock.accumulateAndGet(event.getVersion(), Math::max);
+    }
+
+    /**
+     * Gets the current state of all tickets known to this node, including removals.
+     *
+     * @return the events that reproduce the state
+     */
+    List<ReplicationEvent> snapshot() {
+        final List<ReplicationEvent> events = new ArrayList<>(this.versions.size());
+        this.versions.forEach((ticketId, version) -> {
+            if (version.isDeleted()) {
+                events.add(ReplicationEvent.delete(ticketId, version.getVersion()));
+            } else {
+                final Ticket ticket = getLocalTicket(ticketId);
+                if (ticket != null) {
+                    events.add(put(ticket, version.getVersion()));
+                }
+            }
+        });
+        return events;
+    }
+
+    /**
+     * Removes expired tickets from this node, and tombstones that are old enough for
+     * changes that predate them to have been delivered.
+     */
+    void clean() {
+        try {
+            this.store.getTickets().stream()
+                    .filter(Ticket::isExpired)
+                    .map(Ticket::getId)
+                    .forEach(ticketId -> {
+                        logger.debug("Removing expired ticket [{}] from this node", ticketId);
+                        this.store.deleteSingleTicket(ticketId);
+                        this.versions.remove(ticketId);
+                    });
+            final long oldest = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(this.tombstoneTimeToLiveInSeconds);
+            this.versions.entrySet().removeIf(entry -> entry.getValue().isDeleted() && entry.getValue().getRecordedAt() < oldest);
+        } catch (final Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    private boolean applyPut(final String ticketId, final Ticket ticket, final long version) {
+        final boolean[] applied = new boolean[1];
+        this.versions.compute(ticketId, (id, current) -> {
+            if (current != null && current.getVersion() >= version) {
+                return current;
+            }
+            this.store.addTicket(ticket);
+            applied[0] = true;
+            return new TicketVersion(version, false);
+        });
+        return applied[0];
+    }
+
+    private boolean applyDelete(final String ticketId, final long version) {
+        final boolean[] applied = new boolean[1];
+        this.versions.compute(ticketId, (id, current) -> {
+            if (current != null && current.getVersion() >= version) {
+                return current;
+            }
+            this.store.deleteSingleTicket(ticketId);
+            applied[0] = true;
+            return new TicketVersion(version, true);
+        });
+        return applied[0];
+    }
+
+    private Ticket getLocalTicket(final String ticketId) {
+        final Ticket ticket = this.store.getTicket(ticketId);
+        if (ticket instanceof AbstractTicketDelegator) {
+            return ((AbstractTicketDelegator<?>) ticket).getTicket();
+        }
+        return ticket;
+    }
+
+    private long nextVersion() {
+        final long now = System.currentTimeMillis() << NODE_BITS | this.nodeId;
+        return this.clock.updateAndGet(last -> Math.max(now, ((last >> NODE_BITS) + 1) << NODE_BITS | this.nodeId));
+    }
+
+    private ReplicationEvent put(final Ticket ticket, final long version) {
+        final CachedData data = this.transcoder.encode(ticket);
+        return new ReplicationEvent(ReplicationEvent.Operation.PUT, ticket.getId(), version, data.getFlags(), data.getData());
+    }
+
+    private void replicate(final ReplicationEvent event) {
+        this.peers.forEach(peer -> peer.send(event));
+    }
+
+    private void synchronize(final InetSocketAddress address) {
+        try {
+            final List<ReplicationEvent> events = ReplicationPeer.requestSync(address, this.protocol,
+                    this.timeoutInMillis, this.timeoutInMillis);
+            events.forEach(this::apply);
+            logger.info("Received the state of {} tickets from [{}]", events.size(), address);
+        } catch (final IOException e) {
+            logger.info("Replication peer [{}] cannot be reached to synchronize tickets: {}", address, e.getMessage());
+        }
+    }
+
+    private void accept() {
+        while (this.running) {
+            try {
+                final Socket socket = this.serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                this.receivers.execute(() -> receive(socket));
+            } catch (final IOException e) {
+                if (this.running) {
+                    logger.warn("Failed to accept a replication connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void receive(final Socket socket) {
+        try (Socket s = socket) {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            while (this.running) {
+                final ReplicationProtocol.Frame frame = this.protocol.read(in);
+                if (frame.getType() == ReplicationProtocol.SYNC_REQUEST) {
+                    for (final List<ReplicationEvent> events : this.protocol.split(snapshot(), Integer.MAX_VALUE)) {
+                        this.protocol.write(out, ReplicationProtocol.BATCH, events);
+                    }
+                    this.protocol.write(out, ReplicationProtocol.SYNC_END, Collections.emptyList());
+                } else if (frame.getType() == ReplicationProtocol.BATCH) {
+                    frame.getEvents().forEach(this::apply);
+                    this.protocol.write(out, ReplicationProtocol.ACK, Collections.emptyList());
+                }
+            }
+        } catch (final EOFException e) {
+            logger.trace("Replication connection from [{}] closed", socket.getRemoteSocketAddress());
+        } catch (final Exception e) {
+            logger.warn("Dropping replication connection from [{}]: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        }
+    }
+
+    private static List<InetSocketAddress> parsePeers(final String peers) {
+        final List<InetSocketAddress> addresses = new ArrayList<>();
+        for (final String peer : StringUtils.split(StringUtils.defaultString(peers), ", ")) {
+            final int separator = peer.lastIndexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Replication peer [" + peer + "] must be defined as host:port");
+            }
+            addresses.add(new InetSocketAddress(peer.substring(0, separator), Integer.parseInt(peer.substring(separator + 1))));
+        }
+        return addresses;
+    }
+
+    public void setBindAddress(final String bindAddress) {
+        this.bindAddress = bindAddress;
+    }
+
+    public void setPort(final int port) {
+        this.port = port;
+    }
+
+    public void setPeerAddresses(final String peerAddresses) {
+        this.peerAddresses = peerAddresses;
+    }
+
+    public void setNodeId(final int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public void setSecret(final String secret) {
+        this.secret = secret;
+    }
+
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setBatchWindowInMillis(final long batchWindowInMillis) {
+        this.batchWindowInMillis = batchWindowInMillis;
+    }
+
+    public void setQueueSize(final int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public void setTimeoutInMillis(final int timeoutInMillis) {
+        this.timeoutInMillis = timeoutInMillis;
+    }
+
+    public void setTombstoneTimeToLiveInSeconds(final long tombstoneTimeToLiveInSeconds) {
+        this.tombstoneTimeToLiveInSeconds = tombstoneTimeToLiveInSeconds;
+    }
+
+    public void setCleanerIntervalInSeconds(final long cleanerIntervalInSeconds) {
+        this.cleanerIntervalInSeconds = cleanerIntervalInSeconds;
+    }
+
+    /**
+     * Version of a ticket held by this node, and whether the ticket is removed.
+     */
+    private static final class TicketVersion {
+
+        private final long version;
+
+        private final boolean deleted;
+
+        private final long recordedAt = System.currentTimeMillis();
+
+        TicketVersion(final long version, final boolean deleted) {
+            this.version = version;
+            this.deleted = deleted;
+        }
+
+        long getVersion() {
+            return this.version;
+        }
+
+        boolean isDeleted() {
+            return this.deleted;
+        }
+
+        long getRecordedAt() {
+            return this.recordedAt;
+        }
+    }
+}
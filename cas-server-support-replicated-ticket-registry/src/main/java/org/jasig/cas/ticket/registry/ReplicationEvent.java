@@ -0,0 +1,139 @@
+package org.jasig.cas.ticket.registry;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Change of a single ticket, replicated between the nodes of a {@link ReplicatedTicketRegistry}.
+ * <p>
+ * Each event carries the version the change was made at; nodes apply an event only if its version is
+ * newer than the one they hold for the ticket, so that events can be replayed and received in any order.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+final class ReplicationEvent {
+
+    /** Bytes written for an event besides its ticket id and data: operation, id length, version, flags, data length. */
+    private static final int HEADER_SIZE = 1 + 2 + 8 + 4 + 4;
+
+    /**
+     * Replicated operations.
+     */
+    enum Operation {
+        /** The ticket is added or updated. */
+        PUT,
+        /** The ticket is removed. */
+        DELETE
+    }
+
+    private final Operation operation;
+
+    private final String ticketId;
+
+    private final long version;
+
+    private final int flags;
+
+    private final byte[] data;
+
+    /**
+     * Instantiates a new replication event.
+     *
+     * @param operation the operation
+     * @param ticketId  the ticket id
+     * @param version   the version the change was made at
+     * @param flags     the flags of the encoded ticket
+     * @param data      the encoded ticket, or an empty array for removals
+     */
+    ReplicationEvent(final Operation operation, final String ticketId, final long version, final int flags, final byte[] data) {
+        this.operation = operation;
+        this.ticketId = ticketId;
+        this.version = version;
+        this.flags = flags;
+        this.data = data;
+    }
+
+    /**
+     * Creates the event of a removal.
+     *
+     * @param ticketId the ticket id
+     * @param version  the version the ticket is removed at
+     * @return the event
+     */
+    static ReplicationEvent delete(final String ticketId, final long version) {
+        return new ReplicationEvent(Operation.DELETE, ticketId, version, 0, new byte[0]);
+    }
+
+    Operation getOperation() {
+        return this.operation;
+    }
+
+    String getTicketId() {
+        return this.ticketId;
+    }
+
+    long getVersion() {
+        return this.version;
+    }
+
+    int getFlags() {
+        return this.flags;
+    }
+
+    byte[] getData() {
+        return this.data;
+    }
+
+    /**
+     * Gets the number of bytes the event is written in.
+     *
+     * @return the size of the event
+     */
+    int getSize() {
+        return HEADER_SIZE + this.ticketId.getBytes(StandardCharsets.UTF_8).length + this.data.length;
+    }
+
+    /**
+     * Writes the event.
+     *
+     * @param out the output
+     * @throws IOException if the event cannot be written
+     */
+    void writeTo(final DataOutputStream out) throws IOException {
+        out.writeByte(this.operation.ordinal());
+        out.writeUTF(this.ticketId);
+        out.writeLong(this.version);
+        out.writeInt(this.flags);
+        out.writeInt(this.data.length);
+        out.write(this.data);
+    }
+
+    /**
+     * Reads an event.
+     *
+     * @param in the input
+     * @return the event
+     * @throws IOException if the event cannot be read
+     */
+    static ReplicationEvent readFrom(final DataInputStream in) throws IOException {
+        final int ordinal = in.readUnsignedByte();
+        if (ordinal >= Operation.values().length) {
+            throw new IOException("Unknown replication operation " + ordinal);
+        }
+        final String ticketId = in.readUTF();
+        final long version = in.readLong();
+        final int flags = in.readInt();
+        final byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return new ReplicationEvent(Operation.values()[ordinal], ticketId, version, flags, data);
+    }
+
+    @Override
+    public String toString() {
+        return this.operation + " " + this.ticketId + " @" + this.version;
+    }
+}
@@ -0,0 +1,257 @@
+package org.jasig.cas.ticket.registry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Node that a {@link ReplicatedTicketRegistry} sends its changes to. Events are queued and sent
+ * asynchronously by a dedicated thread, in batches, over a connection that is opened again when it fails.
+ * Each batch is sent again until the peer acknowledges it, which the peer applies idempotently.
+ * <p>
+ * When the queue overflows, the oldest events are dropped and the whole state of the registry is sent
+ * once the peer can be reached again, split into frames of bounded size.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+final class ReplicationPeer implements Runnable {
+
+    private static final long RETRY_DELAY_IN_MILLIS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final InetSocketAddress address;
+
+    private final ReplicationProtocol protocol;
+
+    private final Supplier<List<ReplicationEvent>> snapshot;
+
+    private final BlockingDeque<ReplicationEvent> queue;
+
+    private final int batchSize;
+
+    private final long batchWindowInMillis;
+
+    private final int timeoutInMillis;
+
+    private final Thread sender;
+
+    private volatile boolean running = true;
+
+    private volatile boolean resyncRequired;
+
+    private Socket socket;
+
+    private DataOutputStream out;
+
+    private DataInputStream in;
+
+    /**
+     * Instantiates a new peer and starts sending to it.
+     *
+     * @param address                the address the peer listens on
+     * @param protocol               the wire protocol
+     * @param snapshot               supplies the state of all tickets, sent when events were dropped
+     * @param queueSize              the maximum number of events waiting to be sent
+     * @param batchSize              the maximum number of events sent at once
+     * @param batchWindowInMillis    how long events are collected before a batch is sent
+     * @param timeoutInMillis        how long to wait for the peer to accept a connection or acknowledge a batch
+     */
+    ReplicationPeer(final InetSocketAddress address, final ReplicationProtocol protocol,
+                    final Supplier<List<ReplicationEvent>> snapshot, final int queueSize, final int batchSize,
+                    final long batchWindowInMillis, final int timeoutInMillis) {
+        this.address = address;
+        this.protocol = protocol;
+        this.snapshot = snapshot;
+        this.queue = new LinkedBlockingDeque<>(queueSize);
+        this.batchSize = batchSize;
+        this.batchWindowInMillis = batchWindowInMillis;
+        this.timeoutInMillis = timeoutInMillis;
+        this.sender = new Thread(this, "ReplicationPeer-" + address.getHostString() + ':' + address.getPort());
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    /**
+     * Queues an event to be sent. When the queue is full, the oldest event is dropped
+     * and the whole state is sent instead once the peer can be reached.
+     *
+     * @param event the event
+     */
+    void send(final ReplicationEvent event) {
+        while (!this.queue.offerLast(event)) {
+            if (this.queue.pollFirst() != null && !this.resyncRequired) {
+                logger.warn("Replication queue of [{}] is full; the peer will be sent the whole state", this.address);
+                this.resyncRequired = true;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of events waiting to be sent.
+     *
+     * @return the backlog
+     */
+    int getBacklog() {
+        return this.queue.size();
+    }
+
+    InetSocketAddress getAddress() {
+        return this.address;
+    }
+
+    @Override
+    public void run() {
+        final Deque<List<ReplicationEvent>> frames = new ArrayDeque<>();
+        while (this.running) {
+            try {
+                if (this.resyncRequired) {
+                    this.resyncRequired = false;
+                    frames.clear();
+                    this.queue.clear();
+                    final List<ReplicationEvent> state = this.snapshot.get();
+                    frames.addAll(this.protocol.split(state, Integer.MAX_VALUE));
+                    logger.debug("Sending the state of {} tickets to [{}] in {} frames", state.size(), this.address, frames.size());
+                }
+                if (frames.isEmpty()) {
+                    final ReplicationEvent first = this.queue.pollFirst(RETRY_DELAY_IN_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    final List<ReplicationEvent> batch = new ArrayList<>(this.batchSize);
+                    batch.add(first);
+                    if (this.batchWindowInMillis > 0) {
+                        Thread.sleep(this.batchWindowInMillis);
+                    }
+                    this.queue.drainTo(batch, this.batchSize - 1);
+                    frames.addAll(this.protocol.split(batch, this.batchSize));
+                }
+                if (!frames.isEmpty()) {
+                    this.protocol.write(connect(), ReplicationProtocol.BATCH, frames.peekFirst());
+                    awaitAcknowledgement();
+                    frames.pollFirst();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final Exception e) {
+                logger.debug("Failed to send {} frames to [{}]: {}", frames.size(), this.address, e.getMessage());
+                disconnect();
+                sleepBeforeRetry();
+            }
+        }
+    }
+
+    /**
+     * Stops sending, after trying to send the events that are already queued for a while.
+     *
+     * @param timeoutInMillis how long to wait for queued events to be sent
+     */
+    void shutdown(final long timeoutInMillis) {
+        final long deadline = System.currentTimeMillis() + timeoutInMillis;
+        while (!this.queue.isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(this.batchWindowInMillis + 1);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        this.running = false;
+        this.sender.interrupt();
+        disconnect();
+    }
+
+    private DataOutputStream connect() throws IOException {
+        if (this.out == null) {
+            final Socket newSocket = new Socket();
+            newSocket.setTcpNoDelay(true);
+            newSocket.connect(this.address, this.timeoutInMillis);
+            newSocket.setSoTimeout(this.timeoutInMillis);
+            this.socket = newSocket;
+            this.out = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream()));
+            this.in = new DataInputStream(new BufferedInputStream(newSocket.getInputStream()));
+            logger.info("Connected to replication peer [{}]", this.address);
+        }
+        return this.out;
+    }
+
+    /**
+     * Waits for the peer to acknowledge the batch that was just sent.
+     *
+     * @throws IOException if the peer does not acknowledge the batch in time
+     */
+    private void awaitAcknowledgement() throws IOException {
+        final ReplicationProtocol.Frame frame = this.protocol.read(this.in);
+        if (frame.getType() != ReplicationProtocol.ACK) {
+            throw new IOException("Expected an acknowledgement but received a frame of type " + frame.getType());
+        }
+    }
+
+    private void disconnect() {
+        this.out = null;
+        this.in = null;
+        if (this.socket != null) {
+            try {
+                this.socket.close();
+            } catch (final IOException e) {
+                logger.trace(e.getMessage(), e);
+            }
+            this.socket = null;
+        }
+    }
+
+    private void sleepBeforeRetry() {
+        try {
+            Thread.sleep(RETRY_DELAY_IN_MILLIS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.running = false;
+        }
+    }
+
+    /**
+     * Asks a node for the state of all its tickets, which it sends in as many frames as needed.
+     *
+     * @param address                the address the node listens on
+     * @param protocol               the wire protocol
+     * @param connectTimeoutInMillis the connection timeout
+     * @param readTimeoutInMillis    how long to wait for the state
+     * @return the state of all tickets of the node
+     * @throws IOException if the node cannot be reached
+     */
+    static List<ReplicationEvent> requestSync(final InetSocketAddress address, final ReplicationProtocol protocol,
+                                              final int connectTimeoutInMillis, final int readTimeoutInMillis) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(address, connectTimeoutInMillis);
+            socket.setSoTimeout(readTimeoutInMillis);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            protocol.write(out, ReplicationProtocol.SYNC_REQUEST, new ArrayList<>());
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final List<ReplicationEvent> events = new ArrayList<>();
+            ReplicationProtocol.Frame frame = protocol.read(in);
+            while (frame.getType() != ReplicationProtocol.SYNC_END) {
+                events.addAll(frame.getEvents());
+                frame = protocol.read(in);
+            }
+            return events;
+        }
+    }
+}
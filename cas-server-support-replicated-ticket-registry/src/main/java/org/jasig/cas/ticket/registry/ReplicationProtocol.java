@@ -0,0 +1,206 @@
+package org.jasig.cas.ticket.registry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Wire format of the {@link ReplicatedTicketRegistry}. Nodes exchange frames made of a type, the length
+ * of the payload, the payload, and an HMAC-SHA256 of the type and payload keyed with a secret shared by
+ * all nodes. Frames whose MAC does not match are rejected before their payload is decoded.
+ * <p>
+ * A {@link #BATCH} frame carries a list of {@link ReplicationEvent}s, and is answered with an {@link #ACK}
+ * frame once its events are applied; batches that are not acknowledged are sent again. A {@link #SYNC_REQUEST}
+ * frame, sent by a node that joins, is answered with batches holding the state of all tickets of the receiving
+ * node, followed by a {@link #SYNC_END} frame. Large lists of events, such as the state of all tickets, are
+ * split into frames no larger than the maximum frame size.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+final class ReplicationProtocol {
+
+    /** Frame holding replication events. */
+    static final byte BATCH = 1;
+
+    /** Frame asking for the state of all tickets. */
+    static final byte SYNC_REQUEST = 2;
+
+    /** Frame acknowledging a batch, once its events are applied. */
+    static final byte ACK = 3;
+
+    /** Frame ending the batches that answer a sync request. */
+    static final byte SYNC_END = 4;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final int MAC_LENGTH = 32;
+
+    /** Bytes of the event count that starts the payload of a frame. */
+    private static final int COUNT_SIZE = 4;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final SecretKeySpec key;
+
+    private final int maxFrameSize;
+
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * Instantiates a new protocol.
+     *
+     * @param secret       the secret shared by all nodes
+     * @param maxFrameSize the maximum size of a frame payload, in bytes
+     */
+    ReplicationProtocol(final String secret, final int maxFrameSize) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+        this.maxFrameSize = maxFrameSize;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(this.key);
+                return mac;
+            } catch (final GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * Splits events into lists that each fit in a frame. Events too large to fit in a frame on their own
+     * cannot be replicated, and are left out.
+     *
+     * @param events    the events
+     * @param maxEvents the maximum number of events of a frame
+     * @return the events of each frame, in order
+     */
+    List<List<ReplicationEvent>> split(final List<ReplicationEvent> events, final int maxEvents) {
+        final List<List<ReplicationEvent>> frames = new ArrayList<>();
+        List<ReplicationEvent> frame = new ArrayList<>();
+        int size = COUNT_SIZE;
+        for (final ReplicationEvent event : events) {
+            final int eventSize = event.getSize();
+            if (COUNT_SIZE + eventSize > this.maxFrameSize) {
+                logger.warn("Replication event {} of {} bytes exceeds the maximum frame size of {} and is not sent",
+                        event, eventSize, this.maxFrameSize);
+                continue;
+            }
+            if (!frame.isEmpty() && (size + eventSize > this.maxFrameSize || frame.size() >= maxEvents)) {
+                frames.add(frame);
+                frame = new ArrayList<>();
+                size = COUNT_SIZE;
+            }
+            frame.add(event);
+            size += eventSize;
+        }
+        if (!frame.isEmpty()) {
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    /**
+     * Writes a frame.
+     *
+     * @param out    the output
+     * @param type   the frame type
+     * @param events the events of the frame
+     * @throws IOException if the frame cannot be written
+     */
+    void write(final DataOutputStream out, final byte type, final List<ReplicationEvent> events) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final DataOutputStream payload = new DataOutputStream(buffer);
+        payload.writeInt(events.size());
+        for (final ReplicationEvent event : events) {
+            event.writeTo(payload);
+        }
+        payload.flush();
+        final byte[] bytes = buffer.toByteArray();
+        if (bytes.length > this.maxFrameSize) {
+            throw new IOException("Replication frame of " + bytes.length + " bytes exceeds the maximum of " + this.maxFrameSize);
+        }
+
+        out.writeByte(type);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.write(mac(type, bytes));
+        out.flush();
+    }
+
+    /**
+     * Reads a frame.
+     *
+     * @param in the input
+     * @return the frame
+     * @throws IOException if the frame cannot be read, or is not authentic
+     */
+    Frame read(final DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        final int length = in.readInt();
+        if (length < 0 || length > this.maxFrameSize) {
+            throw new IOException("Replication frame of " + length + " bytes exceeds the maximum of " + this.maxFrameSize);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        final byte[] mac = new byte[MAC_LENGTH];
+        in.readFully(mac);
+        if (!MessageDigest.isEqual(mac, mac(type, bytes))) {
+            throw new IOException("Replication frame is not signed with the shared secret");
+        }
+
+        final DataInputStream payload = new DataInputStream(new ByteArrayInputStream(bytes));
+        final int count = payload.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid replication event count " + count);
+        }
+        final List<ReplicationEvent> events = new ArrayList<>(Math.min(count, length));
+        for (int i = 0; i < count; i++) {
+            events.add(ReplicationEvent.readFrom(payload));
+        }
+        return new Frame(type, events);
+    }
+
+    private byte[] mac(final byte type, final byte[] payload) {
+        final Mac mac = this.macs.get();
+        mac.update(type);
+        return mac.doFinal(payload);
+    }
+
+    /**
+     * Frame received from a node.
+     */
+    static final class Frame {
+
+        private final byte type;
+
+        private final List<ReplicationEvent> events;
+
+        Frame(final byte type, final List<ReplicationEvent> events) {
+            this.type = type;
+            this.events = Collections.unmodifiableList(events);
+        }
+
+        byte getType() {
+            return this.type;
+        }
+
+        List<ReplicationEvent> getEvents() {
+            return this.events;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.authentication.TestUtils;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ReplicatedTicketRegistry}, with three nodes replicating over the loopback interface.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class ReplicatedTicketRegistryTests {
+
+    private static final String SECRET = "replicated-ticket-registry-tests";
+
+    private static final long TIMEOUT_IN_MILLIS = 10000;
+
+    private final List<ReplicatedTicketRegistry> nodes = new ArrayList<>();
+
+    private int[] ports;
+
+    @Before
+    public void setUp() throws Exception {
+        this.ports = new int[] {freePort(), freePort(), freePort()};
+    }
+
+    @After
+    public void tearDown() {
+        this.nodes.forEach(ReplicatedTicketRegistry::shutdown);
+    }
+
+    @Test
+    public void verifyChangesAreReplicatedToAllNodes() throws Exception {
+        final ReplicatedTicketRegistry node1 = startNode(0);
+        final ReplicatedTicketRegistry node2 = startNode(1);
+        final ReplicatedTicketRegistry node3 = startNode(2);
+
+        node1.addTicket(new TicketGrantingTicketImpl("TGT-1", TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy()));
+        await(() -> node2.getTicket("TGT-1") != null && node3.getTicket("TGT-1") != null);
+
+        final TicketGrantingTicket tgt = node2.getTicket("TGT-1", TicketGrantingTicket.class);
+        final ServiceTicket st = tgt.grantServiceTicket("ST-1", org.jasig.cas.services.TestUtils.getService(),
+                new NeverExpiresExpirationPolicy(), false, false);
+        node2.addTicket(st);
+        await(() -> node1.getTicket("ST-1") != null && node3.getTicket("ST-1") != null);
+        await(() -> node3.getTicket("TGT-1", TicketGrantingTicket.class).getCountOfUses() == 1);
+        assertEquals(1, node1.serviceTicketCount());
+
+        node3.deleteTicket("TGT-1");
+        await(() -> node1.getTicket("TGT-1") == null && node2.getTicket("TGT-1") == null);
+        await(() -> node1.getTicket("ST-1") == null && node2.getTicket("ST-1") == null);
+        assertEquals(0, node1.sessionCount());
+    }
+
+    @Test
+    public void verifyJoiningNodeReceivesExistingTickets() throws Exception {
+        final ReplicatedTicketRegistry node1 = startNode(0);
+        final ReplicatedTicketRegistry node2 = startNode(1);
+        node1.addTicket(new TicketGrantingTicketImpl("TGT-1", TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy()));
+        node2.addTicket(new TicketGrantingTicketImpl("TGT-2", TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy()));
+        node1.addTicket(new TicketGrantingTicketImpl("TGT-3", TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy()));
+        node1.deleteTicket("TGT-3");
+        await(() -> node1.getTicket("TGT-2") != null && node2.getTicket("TGT-1") != null);
+
+        final ReplicatedTicketRegistry node3 = startNode(2);
+        assertNotNull(node3.getTicket("TGT-1"));
+        assertNotNull(node3.getTicket("TGT-2"));
+        assertNull(node3.getTicket("TGT-3"));
+        assertEquals(2, node3.sessionCount());
+    }
+
+    @Test
+    public void verifyReplayedAndStaleEventsAreIgnored() throws Exception {
+        final ReplicatedTicketRegistry node1 = startNode(0);
+        final ReplicatedTicketRegistry node2 = startNode(1);
+        node1.addTicket(new TicketGrantingTicketImpl("TGT-1", TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy()));
+        await(() -> node2.getTicket("TGT-1") != null);
+
+        final List<ReplicationEvent> added = node1.snapshot();
+        node1.deleteTicket("TGT-1");
+        await(() -> node2.getTicket("TGT-1") == null);
+        final List<ReplicationEvent> deleted = node1.snapshot();
+
+        added.forEach(node2::apply);
+        assertNull(node2.getTicket("TGT-1"));
+        deleted.forEach(node2::apply);
+        deleted.forEach(node2::apply);
+        assertNull(node2.getTicket("TGT-1"));
+        assertEquals(ReplicationEvent.Operation.DELETE, node2.snapshot().get(0).getOperation());
+    }
+
+    @Test
+    public void verifyRemovalsOfUnknownTicketsAreNotReplicated() throws Exception {
+        final ReplicatedTicketRegistry node1 = startNode(0);
+        assertFalse(node1.deleteSingleTicket("TGT-UNKNOWN"));
+        assertTrue(node1.snapshot().isEmpty());
+    }
+
+    @Test
+    public void verifyEventsAreSplitIntoBoundedFrames() {
+        final ReplicationProtocol protocol = new ReplicationProtocol(SECRET, 1024);
+        final List<ReplicationEvent> events = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            events.add(new ReplicationEvent(ReplicationEvent.Operation.PUT, "TGT-" + i, i, 0, new byte[100]));
+        }
+        events.add(new ReplicationEvent(ReplicationEvent.Operation.PUT, "TGT-LARGE", 50, 0, new byte[2048]));
+
+        final List<List<ReplicationEvent>> frames = protocol.split(events, Integer.MAX_VALUE);
+        assertTrue(frames.size() > 1);
+        int count = 0;
+        for (final List<ReplicationEvent> frame : frames) {
+            assertTrue(4 + frame.stream().mapToInt(ReplicationEvent::getSize).sum() <= 1024);
+            count += frame.size();
+        }
+        assertEquals(50, count);
+        assertEquals(5, protocol.split(events.subList(0, 50), 10).size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void verifyNodeIdMustBeConfigured() {
+        final ReplicatedTicketRegistry registry = new ReplicatedTicketRegistry();
+        registry.setPeerAddresses("127.0.0.1:" + this.ports[1]);
+        registry.setSecret(SECRET);
+        registry.init();
+    }
+
+    private ReplicatedTicketRegistry startNode(final int index) {
+        final StringBuilder peers = new StringBuilder();
+        for (int i = 0; i < this.ports.length; i++) {
+            if (i != index) {
+                peers.append(peers.length() > 0 ? "," : "").append("127.0.0.1:").append(this.ports[i]);
+            }
+        }
+        final ReplicatedTicketRegistry registry = new ReplicatedTicketRegistry();
+        registry.setBindAddress("127.0.0.1");
+        registry.setPort(this.ports[index]);
+        registry.setPeerAddresses(peers.toString());
+        registry.setSecret(SECRET);
+        registry.setNodeId(index);
+        registry.setTimeoutInMillis(1000);
+        registry.init();
+        this.nodes.add(registry);
+        return registry;
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Tickets were not replicated in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
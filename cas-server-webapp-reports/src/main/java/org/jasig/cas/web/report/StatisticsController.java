@@ -1,10 +1,14 @@
 package org.jasig.cas.web.report;
 
 import org.jasig.cas.CentralAuthenticationService;
+import org.jasig.cas.monitor.TicketRegistryMetricsMonitor;
 import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.Ticket;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.health.HealthCheckRegistry;
 import com.codahale.metrics.servlets.HealthCheckServlet;
 import com.codahale.metrics.servlets.MetricsServlet;
@@ -28,8 +32,12 @@ import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Scott Battaglia
@@ -49,6 +57,8 @@ public final class StatisticsController implements ServletContextAware {
 
     private static final int NUMBER_OF_BYTES_IN_A_KILOBYTE = 1024;
 
+    private static final String TIMER_SUFFIX = ".timer";
+
     private  static final String MONITORING_VIEW_STATISTICS = "monitoring/viewStatistics";
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
@@ -128,11 +138,50 @@ public final class StatisticsController implements ServletContextAware {
         modelAndView.addObject("unexpiredSts", unexpiredSts);
         modelAndView.addObject("expiredTgts", expiredTgts);
         modelAndView.addObject("expiredSts", expiredSts);
+        modelAndView.addObject("ticketRegistryMetrics", collectTicketRegistryMetrics());
         modelAndView.addObject("pageTitle", modelAndView.getViewName());
 
         return modelAndView;
     }
 
+    /**
+     * Collect the latency and error metrics published by an instrumented ticket registry,
+     * keyed by operation and ticket type.
+     *
+     * @return the ticket registry metrics, or an empty map if the registry is not instrumented
+     */
+    private Map<String, Map<String, Object>> collectTicketRegistryMetrics() {
+        final Map<String, Map<String, Object>> results = new LinkedHashMap<>();
+        final SortedMap<String, Timer> timers = this.metricsRegistry.getTimers(
+                (name, metric) -> name.startsWith(TicketRegistryMetricsMonitor.METRIC_PREFIX) && name.endsWith(TIMER_SUFFIX));
+        final SortedMap<String, Meter> meters = this.metricsRegistry.getMeters(
+                (name, metric) -> name.startsWith(TicketRegistryMetricsMonitor.METRIC_PREFIX));
+
+        timers.forEach((name, timer) -> {
+            final String operation = name.substring(TicketRegistryMetricsMonitor.METRIC_PREFIX.length(),
+                    name.length() - TIMER_SUFFIX.length());
+            final Snapshot snapshot = timer.getSnapshot();
+            final Meter errors = meters.get(TicketRegistryMetricsMonitor.METRIC_PREFIX + operation + ".errors");
+
+            final Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", timer.getCount());
+            values.put("mean", convertToMilliseconds(snapshot.getMean()));
+            values.put("p99", convertToMilliseconds(snapshot.get99thPercentile()));
+            values.put("errors", errors != null ? errors.getCount() : 0L);
+            results.put(operation, values);
+        });
+        return results;
+    }
+
+    /**
+     * Convert to milliseconds from nanoseconds, rounded to microsecond precision.
+     * @param nanos the duration in nanoseconds
+     * @return value converted to milliseconds
+     */
+    private static double convertToMilliseconds(final double nanos) {
+        return Math.round(nanos / TimeUnit.MICROSECONDS.toNanos(1)) / (double) TimeUnit.MILLISECONDS.toMicros(1);
+    }
+
     /**
      * Convert to megabytes from bytes.
      * @param bytes the total number of bytes
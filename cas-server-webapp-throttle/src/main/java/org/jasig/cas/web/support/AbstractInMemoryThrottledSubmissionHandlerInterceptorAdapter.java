@@ -1,76 +1,52 @@
 package org.jasig.cas.web.support;
 
-import org.jasig.cas.util.DateTimeUtils;
-
-import org.quartz.Job;
-import org.quartz.JobBuilder;
-import org.quartz.JobDetail;
-import org.quartz.JobExecutionContext;
-import org.quartz.JobExecutionException;
-import org.quartz.Scheduler;
-import org.quartz.SimpleScheduleBuilder;
-import org.quartz.Trigger;
-import org.quartz.TriggerBuilder;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.ApplicationContext;
-import org.springframework.web.context.support.SpringBeanAutowiringSupport;
 
-import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
-import javax.validation.constraints.NotNull;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
-import java.util.Iterator;
-import java.util.Map.Entry;
-import java.util.Set;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of a HandlerInterceptorAdapter that keeps track of a mapping
  * of IP Addresses to number of failures to authenticate.
  * <p>
- * Note, this class relies on an external method for decrementing the counts
- * (i.e. a Quartz Job) and runs independent of the threshold of the parent.
+ * Failures are tracked with a token bucket per key, which holds {@code burst} tokens and is refilled at the
+ * threshold rate. Every failure takes a token, and submissions are throttled once the bucket is empty; a failure
+ * while throttled empties the bucket again. With the default burst of one, a submission is throttled when it
+ * follows the previous failure by less than the threshold period, as with a plain rate check. Buckets are refilled
+ * lazily and reused once full again, so no external job is needed to decrement the counts. Buckets that are not
+ * full are never evicted: keys for which no bucket can be kept are throttled until one is refilled.
  *
  * @author Scott Battaglia
  * @since 3.0.0
  */
 public abstract class AbstractInMemoryThrottledSubmissionHandlerInterceptorAdapter
-                extends AbstractThrottledSubmissionHandlerInterceptorAdapter implements Job {
-
-    private static final double SUBMISSION_RATE_DIVIDEND = 1000.0;
-
-    @Value("${cas.throttle.inmemory.cleaner.repeatinterval:5000}")
-    private int refreshInterval;
+                extends AbstractThrottledSubmissionHandlerInterceptorAdapter {
 
-    @Value("${cas.throttle.inmemory.cleaner.startdelay:5000}")
-    private int startDelay;
+    @Value("${cas.throttle.inmemory.maxkeys:65536}")
+    private int maxKeys = 65536;
 
-    @Autowired
-    @NotNull
-    private ApplicationContext applicationContext;
+    @Value("${cas.throttle.inmemory.burst:1}")
+    private int burst = 1;
 
-    @Autowired(required = false)
-    @Qualifier("scheduler")
-    private Scheduler scheduler;
+    private ConcurrentTokenBuckets buckets;
 
-    private final ConcurrentMap<String, ZonedDateTime> ipMap = new ConcurrentHashMap<>();
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        super.afterPropertiesSet();
+        final long refillPeriodInMillis = TimeUnit.SECONDS.toMillis(getFailureRangeInSeconds()) * this.burst / getFailureThreshold();
+        this.buckets = new ConcurrentTokenBuckets(this.burst, Math.max(refillPeriodInMillis, 1), this.maxKeys);
+    }
 
     @Override
     protected final boolean exceedsThreshold(final HttpServletRequest request) {
-        final ZonedDateTime last = this.ipMap.get(constructKey(request));
-        return last != null && (submissionRate(ZonedDateTime.now(ZoneOffset.UTC), last) > getThresholdRate());
+        return this.buckets.isEmpty(constructKey(request), System.currentTimeMillis());
     }
 
     @Override
     protected final void recordSubmissionFailure(final HttpServletRequest request) {
-        this.ipMap.put(constructKey(request), ZonedDateTime.now(ZoneOffset.UTC));
+        if (!this.buckets.tryConsume(constructKey(request), System.currentTimeMillis())) {
+            logger.debug("No failure left for {} within {} seconds", request.getRemoteAddr(), getFailureRangeInSeconds());
+        }
     }
 
     /**
@@ -81,92 +57,11 @@ public abstract class AbstractInMemoryThrottledSubmissionHandlerInterceptorAdapt
      */
     protected abstract String constructKey(HttpServletRequest request);
 
-    /**
-     * This class relies on an external configuration to clean it up. It ignores the threshold data in the parent class.
-     */
-    public final void decrementCounts() {
-        final Set<Entry<String, ZonedDateTime>> keys = this.ipMap.entrySet();
-        logger.debug("Decrementing counts for throttler.  Starting key count: {}", keys.size());
-
-        final ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
-        for (final Iterator<Entry<String, ZonedDateTime>> iter = keys.iterator(); iter.hasNext();) {
-            final Entry<String, ZonedDateTime> entry = iter.next();
-            if (submissionRate(now, entry.getValue()) < getThresholdRate()) {
-                logger.trace("Removing entry for key {}", entry.getKey());
-                iter.remove();
-            }
-        }
-        logger.debug("Done decrementing count for throttler.");
+    public final void setMaxKeys(final int maxKeys) {
+        this.maxKeys = maxKeys;
     }
 
-    /**
-     * Computes the instantaneous rate in between two given dates corresponding to two submissions.
-     *
-     * @param a First date.
-     * @param b Second date.
-     *
-     * @return  Instantaneous submission rate in submissions/sec, e.g. {@code a - b}.
-     */
-    private double submissionRate(final ZonedDateTime a, final ZonedDateTime b) {
-        return SUBMISSION_RATE_DIVIDEND / (a.toInstant().toEpochMilli() - b.toInstant().toEpochMilli());
+    public final void setBurst(final int burst) {
+        this.burst = burst;
     }
-
-
-    /**
-     * Schedule throttle job.
-     */
-    @PostConstruct
-    public void scheduleThrottleJob() {
-        try {
-            if (shouldScheduleCleanerJob()) {
-                logger.info("Preparing to schedule throttle job");
-
-                final JobDetail job = JobBuilder.newJob(this.getClass())
-                    .withIdentity(this.getClass().getSimpleName().concat(UUID.randomUUID().toString()))
-                    .build();
-
-                final Trigger trigger = TriggerBuilder.newTrigger()
-                    .withIdentity(this.getClass().getSimpleName().concat(UUID.randomUUID().toString()))
-                    .startAt(DateTimeUtils.dateOf(ZonedDateTime.now(ZoneOffset.UTC).plus(this.startDelay, ChronoUnit.MILLIS)))
-                    .withSchedule(SimpleScheduleBuilder.simpleSchedule()
-                        .withIntervalInMinutes(this.refreshInterval)
-                        .repeatForever()).build();
-
-                logger.debug("Scheduling {} job", this.getClass().getName());
-                scheduler.scheduleJob(job, trigger);
-                logger.info("{} will clean tickets every {} seconds",
-                    this.getClass().getSimpleName(),
-                    TimeUnit.MILLISECONDS.toSeconds(this.refreshInterval));
-            }
-        } catch (final Exception e){
-            logger.warn(e.getMessage(), e);
-        }
-
-    }
-
-    private boolean shouldScheduleCleanerJob() {
-        if (this.startDelay > 0 && this.applicationContext.getParent() == null && scheduler != null) {
-            if (WebUtils.isCasServletInitializing(this.applicationContext)) {
-                logger.debug("Found CAS servlet application context");
-                final String[] aliases =
-                    this.applicationContext.getAutowireCapableBeanFactory().getAliases("authenticationThrottle");
-                logger.debug("{} is used as the active authentication throttle", this.getClass().getSimpleName());
-                return aliases.length > 0 && aliases[0].equals(getName());
-            }
-        }
-
-        return false;
-    }
-
-    @Override
-    public void execute(final JobExecutionContext jobExecutionContext) throws JobExecutionException {
-        SpringBeanAutowiringSupport.processInjectionBasedOnCurrentContext(this);
-        try {
-            logger.info("Beginning audit cleanup...");
-            decrementCounts();
-        } catch (final Exception e) {
-            logger.error(e.getMessage(), e);
-        }
-    }
-
 }
@@ -0,0 +1,207 @@
+package org.jasig.cas.web.support;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Token buckets of a bounded number of keys, updated without locks.
+ * <p>
+ * Every bucket holds up to {@code capacity} tokens and is refilled at a steady rate, so that it is full again
+ * {@code refillPeriodInMillis} after it was emptied. Buckets are kept in an open-addressing table: keys are replaced
+ * by their 64-bit SipHash under a random key of each instance, so that clients cannot choose keys that collide with
+ * the key of someone else to take the slots near it. The state of a bucket is a single long packing the time it was
+ * last updated with the number of tokens it then held. Each slot holds an immutable pair of hash and state, which is replaced with
+ * compare-and-set, so that the owner and the state of a slot always change together. Buckets are refilled lazily
+ * when accessed, so that no timer has to walk the table.
+ * </p>
+ * <p>
+ * Taking a token from a bucket with less than one token left empties it, so that only keys that slow down below
+ * the refill rate are let through again. The slot of a bucket that has been refilled entirely holds no information,
+ * and is reused by the next key that needs one. Buckets that are not full are never evicted: when no slot near a key
+ * is free, the key is reported as empty, so that the table failing to track it does not let it through.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public final class ConcurrentTokenBuckets {
+
+    /** Tokens are stored in thousandths, so that buckets refill smoothly. */
+    private static final long ONE_TOKEN = 1000;
+
+    private static final int TOKEN_BITS = 24;
+
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+
+    private static final int MAX_PROBES = 8;
+
+    private final long capacity;
+
+    private final long refillPeriodInMillis;
+
+    private final long origin = System.currentTimeMillis();
+
+    private final int mask;
+
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    private final HashFunction hashFunction;
+
+    /**
+     * Instantiates new token buckets.
+     *
+     * @param capacity             the number of tokens of a full bucket
+     * @param refillPeriodInMillis how long an empty bucket takes to be refilled
+     * @param maxKeys              the number of buckets kept, rounded up to a power of two
+     */
+    public ConcurrentTokenBuckets(final int capacity, final long refillPeriodInMillis, final int maxKeys) {
+        if (capacity < 1 || capacity * ONE_TOKEN > TOKEN_MASK) {
+            throw new IllegalArgumentException("Capacity of token buckets must be between 1 and " + TOKEN_MASK / ONE_TOKEN);
+        }
+        if (refillPeriodInMillis < 1 || maxKeys < 1) {
+            throw new IllegalArgumentException("Refill period and number of token buckets must be positive");
+        }
+        this.capacity = capacity * ONE_TOKEN;
+        this.refillPeriodInMillis = refillPeriodInMillis;
+        final int size = Integer.highestOneBit(Math.max(maxKeys, MAX_PROBES) - 1) << 1;
+        this.mask = size - 1;
+        this.buckets = new AtomicReferenceArray<>(size);
+        final SecureRandom random = new SecureRandom();
+        this.hashFunction = Hashing.sipHash24(random.nextLong(), random.nextLong());
+    }
+
+    /**
+     * Takes a token from the bucket of the key, creating the bucket if needed. When less than one token is left,
+     * the bucket is emptied instead.
+     *
+     * @param key         the key
+     * @param nowInMillis the current time
+     * @return true if a token was taken, false if the bucket had none left or no slot is free for the key
+     */
+    public boolean tryConsume(final String key, final long nowInMillis) {
+        final long hash = hashOf(key);
+        final long now = elapsedSince(nowInMillis);
+        while (true) {
+            final int found = findSlot(hash);
+            final int slot = found >= 0 ? found : findFreeSlot(hash, now);
+            if (slot < 0) {
+                return false;
+            }
+            final Bucket bucket = this.buckets.get(slot);
+            final boolean owned = bucket != null && bucket.hash == hash;
+            if (!owned && bucket != null && refill(bucket.state, now) < this.capacity) {
+                continue;
+            }
+            final long tokens = owned ? refill(bucket.state, now) : this.capacity;
+            final long timestamp = owned ? Math.max(now, timestampOf(bucket.state)) : now;
+            final boolean consumed = tokens >= ONE_TOKEN;
+            final Bucket updated = new Bucket(hash, pack(timestamp, consumed ? tokens - ONE_TOKEN : 0));
+            if (this.buckets.compareAndSet(slot, bucket, updated)) {
+                return consumed;
+            }
+        }
+    }
+
+    /**
+     * Whether the bucket of the key has no token left. Keys without a bucket have a full one, unless
+     * no slot is free for them.
+     *
+     * @param key         the key
+     * @param nowInMillis the current time
+     * @return true if the bucket is empty
+     */
+    public boolean isEmpty(final String key, final long nowInMillis) {
+        final long hash = hashOf(key);
+        final long now = elapsedSince(nowInMillis);
+        final int slot = findSlot(hash);
+        if (slot >= 0) {
+            final Bucket bucket = this.buckets.get(slot);
+            if (bucket != null && bucket.hash == hash) {
+                return refill(bucket.state, now) < ONE_TOKEN;
+            }
+        }
+        return findFreeSlot(hash, now) < 0;
+    }
+
+    /**
+     * Gets the number of buckets kept.
+     *
+     * @return the number of buckets
+     */
+    public int size() {
+        return this.buckets.length();
+    }
+
+    private int findSlot(final long hash) {
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final int slot = (int) (hash + i) & this.mask;
+            final Bucket bucket = this.buckets.get(slot);
+            if (bucket != null && bucket.hash == hash) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds a slot near the key that holds no bucket, or a bucket that has been refilled entirely.
+     *
+     * @param hash the hash of the key
+     * @param now  the time elapsed since the origin
+     * @return the slot, or -1 if every slot near the key holds a bucket that is not full
+     */
+    private int findFreeSlot(final long hash, final long now) {
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final int slot = (int) (hash + i) & this.mask;
+            final Bucket bucket = this.buckets.get(slot);
+            if (bucket == null || refill(bucket.state, now) == this.capacity) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private long refill(final long state, final long now) {
+        final long elapsed = Math.min(Math.max(now - timestampOf(state), 0), this.refillPeriodInMillis);
+        return Math.min(this.capacity, tokensOf(state) + elapsed * this.capacity / this.refillPeriodInMillis);
+    }
+
+    private long elapsedSince(final long nowInMillis) {
+        return Math.max(0, nowInMillis - this.origin);
+    }
+
+    private static long pack(final long timestamp, final long tokens) {
+        return timestamp << TOKEN_BITS | tokens;
+    }
+
+    private static long timestampOf(final long state) {
+        return state >>> TOKEN_BITS;
+    }
+
+    private static long tokensOf(final long state) {
+        return state & TOKEN_MASK;
+    }
+
+    private long hashOf(final String key) {
+        return this.hashFunction.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+
+    /**
+     * Bucket of a key, as the hash of the key and the packed state of the bucket.
+     */
+    private static final class Bucket {
+
+        private final long hash;
+
+        private final long state;
+
+        Bucket(final long hash, final long state) {
+            this.hash = hash;
+            this.state = state;
+        }
+    }
+}
@@ -46,6 +46,9 @@ public class InspektrThrottledSubmissionByIpAddressAndUsernameHandlerInterceptor
     private static final String INSPEKTR_ACTION = "THROTTLED_LOGIN_ATTEMPT";
     private static final double NUMBER_OF_MILLISECONDS_IN_SECOND = 1000.0;
 
+    /** Only the last two failures are needed to compute the rate, which the covering index returns first. */
+    private static final int MAX_FAILURES_QUERIED = 2;
+
     private static final String SQL_AUDIT_QUERY = "SELECT AUD_DATE FROM COM_AUDIT_TRAIL WHERE AUD_CLIENT_IP = ? AND AUD_USER = ? "
         + "AND AUD_ACTION = ? AND APPLIC_CD = ? AND AUD_DATE >= ? ORDER BY AUD_DATE DESC";
 
@@ -95,6 +98,7 @@ public class InspektrThrottledSubmissionByIpAddressAndUsernameHandlerInterceptor
 
         if (this.dataSource != null) {
             this.jdbcTemplate = new JdbcTemplate(this.dataSource);
+            this.jdbcTemplate.setMaxRows(MAX_FAILURES_QUERIED);
         } else {
             logger.debug("No data source is defined for {}. Ignoring the construction of JDBC template",
                     this.getName());
@@ -118,7 +122,7 @@ public class InspektrThrottledSubmissionByIpAddressAndUsernameHandlerInterceptor
                     (resultSet, i) -> {
                         return resultSet.getTimestamp(1);
                     });
-            if (failures.size() < 2) {
+            if (failures.size() < MAX_FAILURES_QUERIED) {
                 return false;
             }
             // Compute rate in submissions/sec between last two authn failures and compare with threshold
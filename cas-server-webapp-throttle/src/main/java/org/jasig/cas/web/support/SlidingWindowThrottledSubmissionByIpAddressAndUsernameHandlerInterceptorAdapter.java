@@ -0,0 +1,155 @@
+package org.jasig.cas.web.support;
+
+import org.jasig.cas.util.DateTimeUtils;
+import org.jasig.inspektr.audit.AuditActionContext;
+import org.jasig.inspektr.audit.AuditPointRuntimeInfo;
+import org.jasig.inspektr.audit.AuditTrailManager;
+import org.jasig.inspektr.common.web.ClientInfo;
+import org.jasig.inspektr.common.web.ClientInfoHolder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throttles failed login attempts for a particular username from the same IP address by counting them within
+ * a sliding window, in memory. Attempts are throttled once the failures within the last
+ * {@code failureRangeInSeconds} reach the {@code failureThreshold}.
+ * <p>
+ * Failures are counted by a {@link SlidingWindowCountMinSketch}, whose size is fixed up front, so that attacks
+ * spread over many usernames and addresses cannot exhaust the heap, and no database is queried on login attempts.
+ * Failures may optionally be recorded to the audit trail as well, which does not slow down logins when the audit
+ * trail manager records in the background.
+ * </p>
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+@Component("slidingWindowIpAddressUsernameThrottle")
+public class SlidingWindowThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter
+            extends AbstractThrottledSubmissionHandlerInterceptorAdapter {
+
+    private static final String DEFAULT_APPLICATION_CODE = "CAS";
+
+    private static final String INSPEKTR_ACTION = "THROTTLED_LOGIN_ATTEMPT";
+
+    @Nullable
+    @Autowired(required = false)
+    @Qualifier("auditTrailManager")
+    private AuditTrailManager auditTrailManager;
+
+    @Value("${cas.throttle.sketch.depth:4}")
+    private int depth = 4;
+
+    @Value("${cas.throttle.sketch.width:16384}")
+    private int width = 16384;
+
+    @Value("${cas.throttle.sketch.subwindows:10}")
+    private int subWindows = 10;
+
+    @Value("${cas.throttle.sketch.audit.enabled:false}")
+    private boolean auditEnabled;
+
+    @Value("${cas.throttle.appcode:" + DEFAULT_APPLICATION_CODE + '}')
+    private String applicationCode = DEFAULT_APPLICATION_CODE;
+
+    private SlidingWindowCountMinSketch sketch;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        super.afterPropertiesSet();
+        this.sketch = new SlidingWindowCountMinSketch(this.depth, this.width,
+                TimeUnit.SECONDS.toMillis(getFailureRangeInSeconds()), this.subWindows);
+        logger.debug("Created sketch of {} counters to throttle failures within {} seconds",
+                this.sketch.size(), getFailureRangeInSeconds());
+    }
+
+    @Override
+    protected boolean exceedsThreshold(final HttpServletRequest request) {
+        return this.sketch.estimate(constructKey(request), System.currentTimeMillis()) >= getFailureThreshold();
+    }
+
+    @Override
+    protected void recordSubmissionFailure(final HttpServletRequest request) {
+        final long failures = this.sketch.add(constructKey(request), System.currentTimeMillis());
+        logger.trace("{} failures recorded within the window for {}", failures, request.getRemoteAddr());
+        if (this.auditEnabled && this.auditTrailManager != null) {
+            recordAuditAction(request);
+        }
+    }
+
+    /**
+     * Construct key to be used by the throttling agent to track requests.
+     *
+     * @param request the request
+     * @return the key
+     */
+    protected String constructKey(final HttpServletRequest request) {
+        final String username = request.getParameter(getUsernameParameter());
+
+        if (username == null) {
+            return request.getRemoteAddr();
+        }
+
+        return ClientInfoHolder.getClientInfo().getClientIpAddress() + ';' + username.toLowerCase();
+    }
+
+    private void recordAuditAction(final HttpServletRequest request) {
+        final String username = request.getParameter(getUsernameParameter());
+        final ClientInfo clientInfo = ClientInfoHolder.getClientInfo();
+        final AuditPointRuntimeInfo auditPointRuntimeInfo = new AuditPointRuntimeInfo() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String asString() {
+                return String.format("%s.recordSubmissionFailure()", this.getClass().getName());
+            }
+        };
+        final AuditActionContext context = new AuditActionContext(
+                username,
+                username,
+                INSPEKTR_ACTION,
+                this.applicationCode,
+                DateTimeUtils.dateOf(ZonedDateTime.now(ZoneOffset.UTC)),
+                clientInfo.getClientIpAddress(),
+                clientInfo.getServerIpAddress(),
+                auditPointRuntimeInfo);
+        this.auditTrailManager.record(context);
+    }
+
+    public void setAuditTrailManager(final AuditTrailManager auditTrailManager) {
+        this.auditTrailManager = auditTrailManager;
+    }
+
+    public void setDepth(final int depth) {
+        this.depth = depth;
+    }
+
+    public void setWidth(final int width) {
+        this.width = width;
+    }
+
+    public void setSubWindows(final int subWindows) {
+        this.subWindows = subWindows;
+    }
+
+    public void setAuditEnabled(final boolean auditEnabled) {
+        this.auditEnabled = auditEnabled;
+    }
+
+    public void setApplicationCode(final String applicationCode) {
+        this.applicationCode = applicationCode;
+    }
+
+    @Override
+    protected String getName() {
+        return "slidingWindowIpAddressUsernameThrottle";
+    }
+}
@@ -5,16 +5,23 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import java.time.ZonedDateTime;
 
 /**
  * This is {@link AuditTrailEntity} that represents the audit table.
- * Schema is generated automatically.
+ * Schema is generated automatically, with an index on the date of records for purges,
+ * and a covering index for the lookups of the authentication throttle.
  *
  * @author Misagh Moayyed
  * @since 4.2.0
  */
 @Entity(name="COM_AUDIT_TRAIL")
+@Table(indexes = {
+        @Index(name = "COM_AUDIT_TRAIL_DATE_IDX", columnList = "AUD_DATE"),
+        @Index(name = "COM_AUDIT_TRAIL_THROTTLE_IDX", columnList = "AUD_CLIENT_IP,AUD_USER,AUD_ACTION,APPLIC_CD,AUD_DATE")
+})
 public class AuditTrailEntity {
 
     @Id
@@ -1,10 +1,13 @@
 package org.jasig.cas.web.support;
 
+import org.junit.Test;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.webflow.execution.Event;
 import org.springframework.webflow.test.MockRequestContext;
 
+import static org.junit.Assert.*;
+
 /**
  * Base class for in-memory throttled submission handlers.
  *
@@ -14,6 +17,32 @@ import org.springframework.webflow.test.MockRequestContext;
 public abstract class AbstractInMemoryThrottledSubmissionHandlerInterceptorAdapterTests
 extends AbstractThrottledSubmissionHandlerInterceptorAdapterTests {
 
+    @Test
+    public void verifyBurst() throws Exception {
+        final AbstractInMemoryThrottledSubmissionHandlerInterceptorAdapter throttle =
+                (AbstractInMemoryThrottledSubmissionHandlerInterceptorAdapter) getThrottle();
+        throttle.setFailureRangeInSeconds(FAILURE_RANGE);
+        throttle.setFailureThreshold(FAILURE_THRESHOLD);
+        throttle.setBurst(FAILURE_THRESHOLD);
+        try {
+            throttle.afterPropertiesSet();
+
+            // Ensure that a burst of failures up to the threshold is allowed, and throttled beyond
+            for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+                assertEquals(200, loginUnsuccessfully("mog", IP_ADDRESS).getStatus());
+            }
+            assertEquals(403, loginUnsuccessfully("mog", IP_ADDRESS).getStatus());
+
+            // Ensure that a single failure is allowed once the threshold period per failure has elapsed
+            Thread.sleep((long) (1000.0 * 1.2 * FAILURE_RANGE / FAILURE_THRESHOLD));
+            assertEquals(200, loginUnsuccessfully("mog", IP_ADDRESS).getStatus());
+            assertEquals(403, loginUnsuccessfully("mog", IP_ADDRESS).getStatus());
+        } finally {
+            throttle.setBurst(1);
+            throttle.afterPropertiesSet();
+        }
+    }
+
     @Override
     protected MockHttpServletResponse loginUnsuccessfully(final String username, final String fromAddress) throws Exception {
         final MockHttpServletRequest request = new MockHttpServletRequest();
@@ -12,7 +12,8 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({InMemoryThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapterTests.class,
         InMemoryThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapterTests.class,
-        InspektrThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapterTests.class
+        InspektrThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapterTests.class,
+        SlidingWindowThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapterTests.class
 })
 public class AllTestsSuite {
 }
@@ -0,0 +1,76 @@
+package org.jasig.cas.web.support;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link ConcurrentTokenBuckets}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class ConcurrentTokenBucketsTests {
+
+    @Test
+    public void verifyBucketIsRefilledAtSteadyRate() {
+        final ConcurrentTokenBuckets buckets = new ConcurrentTokenBuckets(2, 1000, 16);
+        final long now = System.currentTimeMillis();
+        assertTrue(buckets.tryConsume("mog", now));
+        assertTrue(buckets.tryConsume("mog", now));
+        assertFalse(buckets.tryConsume("mog", now));
+        assertTrue(buckets.isEmpty("mog", now + 400));
+        assertFalse(buckets.isEmpty("mog", now + 500));
+        assertTrue(buckets.tryConsume("mog", now + 500));
+        assertFalse(buckets.tryConsume("mog", now + 500));
+        assertFalse(buckets.isEmpty("other", now));
+    }
+
+    @Test
+    public void verifyFailureWhileEmptyDrainsBucket() {
+        final ConcurrentTokenBuckets buckets = new ConcurrentTokenBuckets(1, 1000, 16);
+        final long now = System.currentTimeMillis();
+        assertTrue(buckets.tryConsume("mog", now));
+        assertFalse(buckets.tryConsume("mog", now + 900));
+        assertTrue(buckets.isEmpty("mog", now + 1800));
+        assertFalse(buckets.isEmpty("mog", now + 1900));
+    }
+
+    @Test
+    public void verifyNumberOfBucketsIsBounded() {
+        final ConcurrentTokenBuckets buckets = new ConcurrentTokenBuckets(1, 60000, 1000);
+        final long now = System.currentTimeMillis();
+        assertEquals(1024, buckets.size());
+        assertTrue(buckets.tryConsume("mog", now));
+        for (int i = 0; i < 100000; i++) {
+            buckets.tryConsume("key" + i, now + 1 + i % 1000);
+        }
+        assertEquals(1024, buckets.size());
+        assertTrue(buckets.isEmpty("mog", now + 1000));
+    }
+
+    @Test
+    public void verifyKeysAreThrottledWhenNoBucketIsFree() {
+        final ConcurrentTokenBuckets buckets = new ConcurrentTokenBuckets(2, 1000, 8);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 8; i++) {
+            assertTrue(buckets.tryConsume("key" + i, now));
+        }
+        assertTrue(buckets.isEmpty("mog", now));
+        assertFalse(buckets.tryConsume("mog", now));
+        assertFalse(buckets.isEmpty("key0", now));
+        assertFalse(buckets.isEmpty("mog", now + 500));
+        assertTrue(buckets.tryConsume("mog", now + 500));
+    }
+
+    @Test
+    public void verifyRefilledBucketIsReused() {
+        final ConcurrentTokenBuckets buckets = new ConcurrentTokenBuckets(1, 1000, 8);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 8; i++) {
+            assertTrue(buckets.tryConsume("key" + i, now));
+        }
+        assertTrue(buckets.tryConsume("mog", now + 1000));
+        assertTrue(buckets.isEmpty("mog", now + 1000));
+    }
+}
@@ -0,0 +1,106 @@
+package org.jasig.cas.web.support;
+
+import org.jasig.inspektr.audit.AuditActionContext;
+import org.jasig.inspektr.audit.AuditTrailManager;
+import org.jasig.inspektr.common.web.ClientInfo;
+import org.jasig.inspektr.common.web.ClientInfoHolder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.webflow.execution.Event;
+import org.springframework.webflow.test.MockRequestContext;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for {@link SlidingWindowThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter}.
+ *
+ * @author agent
+ * @since 4.3.0
+ */
+public class SlidingWindowThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapterTests {
+
+    private static final int FAILURE_RANGE = 1;
+
+    private static final int FAILURE_THRESHOLD = 3;
+
+    private static final String IP_ADDRESS = "1.2.3.4";
+
+    private SlidingWindowThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter throttle;
+
+    @Before
+    public void setUp() throws Exception {
+        ClientInfoHolder.setClientInfo(new ClientInfo(IP_ADDRESS, IP_ADDRESS));
+        this.throttle = new SlidingWindowThrottledSubmissionByIpAddressAndUsernameHandlerInterceptorAdapter();
+        this.throttle.setFailureThreshold(FAILURE_THRESHOLD);
+        this.throttle.setFailureRangeInSeconds(FAILURE_RANGE);
+        this.throttle.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ClientInfoHolder.setClientInfo(null);
+    }
+
+    @Test
+    public void verifyThrottleOnceThresholdIsReached() throws Exception {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            assertEquals(200, loginUnsuccessfully("mog").getStatus());
+        }
+        assertEquals(403, loginUnsuccessfully("mog").getStatus());
+        assertEquals(200, loginUnsuccessfully("other").getStatus());
+    }
+
+    @Test
+    public void verifyThrottleIsLiftedOnceWindowHasSlid() throws Exception {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            loginUnsuccessfully("mog");
+        }
+        assertEquals(403, loginUnsuccessfully("mog").getStatus());
+        Thread.sleep(1200);
+        assertEquals(200, loginUnsuccessfully("mog").getStatus());
+    }
+
+    @Test
+    public void verifyFailuresAreRecordedToAuditTrail() throws Exception {
+        final AuditTrailManager auditTrailManager = mock(AuditTrailManager.class);
+        this.throttle.setAuditTrailManager(auditTrailManager);
+        this.throttle.setAuditEnabled(true);
+
+        loginUnsuccessfully("mog");
+        verify(auditTrailManager, times(1)).record(any(AuditActionContext.class));
+    }
+
+    @Test
+    public void verifySketchSizeIsBoundedByManyKeys() throws Exception {
+        final SlidingWindowCountMinSketch sketch = new SlidingWindowCountMinSketch(4, 64, 60000, 4);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            sketch.add(IP_ADDRESS + ';' + i, now);
+        }
+        sketch.add("mog", now);
+        sketch.add("mog", now);
+        assertEquals(4 * 64 * 4, sketch.size());
+        assertTrue(sketch.estimate("mog", now) >= 2);
+        assertTrue(sketch.estimate("mog", now + 60000) < 2);
+    }
+
+    private MockHttpServletResponse loginUnsuccessfully(final String username) throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        request.setMethod("POST");
+        request.setParameter("username", username);
+        request.setRemoteAddr(IP_ADDRESS);
+        final MockRequestContext context = new MockRequestContext();
+        context.setCurrentEvent(new Event("", "error"));
+        request.setAttribute("flowRequestContext", context);
+        if (this.throttle.preHandle(request, response, null)) {
+            this.throttle.postHandle(request, response, null, null);
+        }
+        return response;
+    }
+}
@@ -89,6 +89,33 @@
                     </div>
                 </div>
             </div>
+            <c:if test="${not empty ticketRegistryMetrics}">
+            <div class="adminPanels container-fluid">
+                <h4><spring:message code="cas.statistics.section.ticket.metrics.title" /></h4>
+                <table class="table table-striped">
+                    <thead>
+                        <tr>
+                            <th><spring:message code="cas.statistics.section.ticket.metrics.table.operation.label" /></th>
+                            <th><spring:message code="cas.statistics.section.ticket.metrics.table.count.label" /></th>
+                            <th><spring:message code="cas.statistics.section.ticket.metrics.table.mean.label" /></th>
+                            <th><spring:message code="cas.statistics.section.ticket.metrics.table.p99.label" /></th>
+                            <th><spring:message code="cas.statistics.section.ticket.metrics.table.errors.label" /></th>
+                        </tr>
+                    </thead>
+                    <tbody>
+                        <c:forEach var="metric" items="${ticketRegistryMetrics}">
+                        <tr>
+                            <td>${metric.key}</td>
+                            <td>${metric.value.count}</td>
+                            <td>${metric.value.mean}</td>
+                            <td>${metric.value.p99}</td>
+                            <td>${metric.value.errors}</td>
+                        </tr>
+                        </c:forEach>
+                    </tbody>
+                </table>
+            </div>
+            </c:if>
             <div class="adminPanels container-fluid">
                 <a id="viewSsoSessions" href="statistics/ssosessions" class="btn btn-primary pull-right"><spring:message code="cas.statistics.section.ticket.button" /></a>
             </div>